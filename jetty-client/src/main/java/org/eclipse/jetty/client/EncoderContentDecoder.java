@@ -0,0 +1,80 @@
+//
+// ========================================================================
+// Copyright (c) 1995-2022 Mort Bay Consulting Pty Ltd and others.
+//
+// This program and the accompanying materials are made available under the
+// terms of the Eclipse Public License v. 2.0 which is available at
+// https://www.eclipse.org/legal/epl-2.0, or the Apache License, Version 2.0
+// which is available at https://www.apache.org/licenses/LICENSE-2.0.
+//
+// SPDX-License-Identifier: EPL-2.0 OR Apache-2.0
+// ========================================================================
+//
+
+package org.eclipse.jetty.client;
+
+import java.nio.ByteBuffer;
+
+import org.eclipse.jetty.http.ContentEncoder;
+import org.eclipse.jetty.util.component.Destroyable;
+
+/**
+ * <p>{@link ContentDecoder} that decodes with the {@link ContentEncoder.Decoder}
+ * of a pluggable {@link ContentEncoder}.</p>
+ * <p>Typical usage, to decode all the content codings discovered by the
+ * {@link java.util.ServiceLoader}:</p>
+ * <pre>{@code
+ * for (ContentEncoder encoder : ContentEncoder.getContentEncoders())
+ *     httpClient.getContentDecoderFactories().add(new EncoderContentDecoder.Factory(encoder));
+ * }</pre>
+ */
+public class EncoderContentDecoder implements ContentDecoder, Destroyable
+{
+    private final ContentEncoder.Decoder decoder;
+
+    public EncoderContentDecoder(ContentEncoder.Decoder decoder)
+    {
+        this.decoder = decoder;
+    }
+
+    @Override
+    public ByteBuffer decode(ByteBuffer buffer)
+    {
+        return decoder.decode(buffer);
+    }
+
+    @Override
+    public void release(ByteBuffer decoded)
+    {
+        decoder.release(decoded);
+    }
+
+    @Override
+    public void destroy()
+    {
+        decoder.destroy();
+    }
+
+    /**
+     * Specialized {@link ContentDecoder.Factory} for a {@link ContentEncoder}.
+     */
+    public static class Factory extends ContentDecoder.Factory
+    {
+        private final ContentEncoder encoder;
+
+        public Factory(ContentEncoder encoder)
+        {
+            super(encoder.getEncoding());
+            this.encoder = encoder;
+        }
+
+        @Override
+        public ContentDecoder newContentDecoder()
+        {
+            ContentEncoder.Decoder decoder = encoder.newDecoder();
+            if (decoder == null)
+                throw new UnsupportedOperationException("Decoding not supported by " + encoder);
+            return new EncoderContentDecoder(decoder);
+        }
+    }
+}
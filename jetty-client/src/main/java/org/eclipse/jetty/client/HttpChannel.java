@@ -96,6 +96,31 @@ public abstract class HttpChannel implements CyclicTimeouts.Expirable
         return result;
     }
 
+    /**
+     * <p>Disassociates the given {@code exchange} from this channel, without terminating it,
+     * so that it can be sent again, possibly on another connection.</p>
+     * <p>Only exchanges that have not failed and whose response has not begun can be retried.</p>
+     *
+     * @param exchange the exchange to disassociate
+     * @return true if the exchange can be sent again, false otherwise
+     */
+    public boolean retry(HttpExchange exchange)
+    {
+        boolean result = false;
+        try (AutoLock l = _lock.lock())
+        {
+            if (_exchange == exchange && exchange.retry(this))
+            {
+                _exchange = null;
+                result = true;
+            }
+        }
+
+        if (LOG.isDebugEnabled())
+            LOG.debug("{} retry {} from {}", exchange, result, this);
+        return result;
+    }
+
     public HttpExchange getHttpExchange()
     {
         try (AutoLock l = _lock.lock())
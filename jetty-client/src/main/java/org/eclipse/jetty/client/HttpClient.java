@@ -17,6 +17,7 @@ import java.io.IOException;
 import java.net.CookieManager;
 import java.net.CookiePolicy;
 import java.net.CookieStore;
+import java.net.InetAddress;
 import java.net.InetSocketAddress;
 import java.net.Socket;
 import java.net.SocketAddress;
@@ -71,6 +72,7 @@ import org.eclipse.jetty.util.annotation.ManagedObject;
 import org.eclipse.jetty.util.component.ContainerLifeCycle;
 import org.eclipse.jetty.util.component.DumpableCollection;
 import org.eclipse.jetty.util.ssl.SslContextFactory;
+import org.eclipse.jetty.util.thread.AutoLock;
 import org.eclipse.jetty.util.thread.QueuedThreadPool;
 import org.eclipse.jetty.util.thread.ScheduledExecutorScheduler;
 import org.eclipse.jetty.util.thread.Scheduler;
@@ -139,6 +141,7 @@ public class HttpClient extends ContainerLifeCycle
     private int responseBufferSize = 16384;
     private int maxRedirects = 8;
     private long addressResolutionTimeout = 15000;
+    private long connectAttemptDelay;
     private boolean tcpNoDelay = true;
     private boolean strictEventOrdering = false;
     private HttpField encodingField;
@@ -576,7 +579,11 @@ public class HttpClient extends ContainerLifeCycle
             @Override
             public void succeeded(List<InetSocketAddress> socketAddresses)
             {
-                connect(socketAddresses, 0, context);
+                long delay = getConnectAttemptDelay();
+                if (delay > 0 && socketAddresses.size() > 1)
+                    new ParallelConnect(interleave(socketAddresses), context, promise, delay).connectNext();
+                else
+                    connect(socketAddresses, 0, context);
             }
 
             @Override
@@ -604,6 +611,45 @@ public class HttpClient extends ContainerLifeCycle
         });
     }
 
+    /**
+     * <p>Reorders the given addresses so that address families alternate,
+     * starting with the family of the first address, as specified by
+     * <a href="https://datatracker.ietf.org/doc/html/rfc8305#section-4">RFC 8305</a>.</p>
+     *
+     * @param socketAddresses the addresses to reorder
+     * @return the reordered addresses
+     */
+    private static List<InetSocketAddress> interleave(List<InetSocketAddress> socketAddresses)
+    {
+        Class<?> firstFamily = family(socketAddresses.get(0));
+        List<InetSocketAddress> first = new ArrayList<>();
+        List<InetSocketAddress> second = new ArrayList<>();
+        for (InetSocketAddress socketAddress : socketAddresses)
+        {
+            if (family(socketAddress) == firstFamily)
+                first.add(socketAddress);
+            else
+                second.add(socketAddress);
+        }
+        if (second.isEmpty())
+            return socketAddresses;
+        List<InetSocketAddress> result = new ArrayList<>(socketAddresses.size());
+        for (int i = 0; i < Math.max(first.size(), second.size()); ++i)
+        {
+            if (i < first.size())
+                result.add(first.get(i));
+            if (i < second.size())
+                result.add(second.get(i));
+        }
+        return result;
+    }
+
+    private static Class<?> family(InetSocketAddress socketAddress)
+    {
+        InetAddress address = socketAddress.getAddress();
+        return address == null ? null : address.getClass();
+    }
+
     private HttpConversation newConversation()
     {
         return new HttpConversation();
@@ -697,6 +743,35 @@ public class HttpClient extends ContainerLifeCycle
         this.addressResolutionTimeout = addressResolutionTimeout;
     }
 
+    /**
+     * @return the delay, in milliseconds, before attempting to connect to the next resolved address
+     * @see #setConnectAttemptDelay(long)
+     */
+    @ManagedAttribute("The delay, in milliseconds, before attempting to connect to the next resolved address")
+    public long getConnectAttemptDelay()
+    {
+        return connectAttemptDelay;
+    }
+
+    /**
+     * <p>Sets the delay, in milliseconds, before attempting to connect to the next
+     * resolved address, while the previous connection attempts are still in progress.</p>
+     * <p>When a host resolves to multiple addresses, a positive value enables parallel
+     * connection attempts, staggered by this delay, as specified by
+     * <a href="https://datatracker.ietf.org/doc/html/rfc8305">RFC 8305 (Happy Eyeballs)</a>.
+     * The first connection that is established is used, while the others are closed.
+     * Addresses of different families are interleaved, so that a broken IPv6 or IPv4
+     * network path does not delay the connection establishment by the connect timeout.</p>
+     * <p>A zero value, the default, means that the addresses are tried sequentially,
+     * trying the next one only when the previous one failed to connect.</p>
+     *
+     * @param connectAttemptDelay the delay, in milliseconds, before attempting to connect to the next resolved address
+     */
+    public void setConnectAttemptDelay(long connectAttemptDelay)
+    {
+        this.connectAttemptDelay = connectAttemptDelay;
+    }
+
     /**
      * @return the max time, in milliseconds, a connection can be idle (that is, without traffic of bytes in either direction)
      */
@@ -1294,4 +1369,117 @@ public class HttpClient extends ContainerLifeCycle
             }
         }
     }
+
+    private class ParallelConnect
+    {
+        private final AutoLock lock = new AutoLock();
+        private final List<InetSocketAddress> socketAddresses;
+        private final Map<String, Object> context;
+        private final Promise<Connection> promise;
+        private final long delay;
+        private Scheduler.Task task;
+        private Throwable failure;
+        private int next;
+        private int pending;
+        private boolean complete;
+
+        private ParallelConnect(List<InetSocketAddress> socketAddresses, Map<String, Object> context, Promise<Connection> promise, long delay)
+        {
+            this.socketAddresses = socketAddresses;
+            this.context = context;
+            this.promise = promise;
+            this.delay = delay;
+        }
+
+        private void connectNext()
+        {
+            InetSocketAddress socketAddress;
+            try (AutoLock l = lock.lock())
+            {
+                if (complete || next == socketAddresses.size())
+                    return;
+                socketAddress = socketAddresses.get(next++);
+                ++pending;
+                if (task != null)
+                    task.cancel();
+                task = next < socketAddresses.size() ? getScheduler().schedule(this::connectNext, delay, TimeUnit.MILLISECONDS) : null;
+            }
+
+            if (LOG.isDebugEnabled())
+                LOG.debug("Connection attempt to {}", socketAddress);
+
+            // Each attempt needs its own context, as the transport modifies it.
+            Map<String, Object> attemptContext = new ConcurrentHashMap<>(context);
+            attemptContext.put(HttpClientTransport.HTTP_CONNECTION_PROMISE_CONTEXT_KEY, new Promise<Connection>()
+            {
+                @Override
+                public void succeeded(Connection connection)
+                {
+                    onConnected(socketAddress, connection);
+                }
+
+                @Override
+                public void failed(Throwable x)
+                {
+                    onConnectFailed(socketAddress, x);
+                }
+            });
+            transport.connect((SocketAddress)socketAddress, attemptContext);
+        }
+
+        private void onConnected(InetSocketAddress socketAddress, Connection connection)
+        {
+            boolean winner;
+            try (AutoLock l = lock.lock())
+            {
+                --pending;
+                winner = !complete;
+                complete = true;
+                if (task != null)
+                    task.cancel();
+                task = null;
+            }
+
+            if (LOG.isDebugEnabled())
+                LOG.debug("Connection attempt to {} succeeded, {} {}", socketAddress, winner ? "using" : "closing", connection);
+
+            if (winner)
+                promise.succeeded(connection);
+            else
+                connection.close();
+        }
+
+        private void onConnectFailed(InetSocketAddress socketAddress, Throwable x)
+        {
+            if (LOG.isDebugEnabled())
+                LOG.debug("Connection attempt to {} failed", socketAddress, x);
+
+            boolean connectNext = false;
+            Throwable failed = null;
+            try (AutoLock l = lock.lock())
+            {
+                --pending;
+                if (complete)
+                    return;
+                if (failure == null)
+                    failure = x;
+                else if (failure != x)
+                    failure.addSuppressed(x);
+                if (next < socketAddresses.size())
+                {
+                    connectNext = true;
+                }
+                else if (pending == 0)
+                {
+                    complete = true;
+                    failed = failure;
+                }
+            }
+
+            if (connectNext)
+                connectNext();
+            else if (failed != null)
+                promise.failed(failed);
+        }
+    }
 }
@@ -142,6 +142,26 @@ public class HttpExchange implements CyclicTimeouts.Expirable
             request.abort(new IllegalStateException(toString()));
     }
 
+    /**
+     * <p>Disassociates the given {@code channel} from this exchange, resetting the request
+     * state, so that this exchange can be sent again, possibly on another connection.</p>
+     * <p>Works in strict collaboration with {@link HttpChannel#retry(HttpExchange)}.</p>
+     *
+     * @param channel the channel to disassociate from this exchange
+     * @return true if this exchange could be reset, false if it failed or its response has already begun
+     */
+    boolean retry(HttpChannel channel)
+    {
+        try (AutoLock l = lock.lock())
+        {
+            if (_channel != channel || requestFailure != null || responseState != State.PENDING || response.getStatus() != 0)
+                return false;
+            requestState = State.PENDING;
+            _channel = null;
+            return true;
+        }
+    }
+
     private HttpChannel getHttpChannel()
     {
         try (AutoLock l = lock.lock())
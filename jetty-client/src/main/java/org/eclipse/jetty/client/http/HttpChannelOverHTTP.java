@@ -77,13 +77,13 @@ public class HttpChannelOverHTTP extends HttpChannel
     public void send(HttpExchange exchange)
     {
         outMessages.increment();
-        sender.send(exchange);
+        connection.send(this, exchange);
     }
 
     @Override
     public void release()
     {
-        connection.release();
+        connection.release(this);
     }
 
     public void receive()
@@ -127,6 +127,11 @@ public class HttpChannelOverHTTP extends HttpChannel
             }
         }
 
+        // A pipelined request that failed before being
+        // written does not compromise the connection.
+        if (result.isFailed() && connection.onRequestFailed(this))
+            closeReason = null;
+
         if (closeReason != null)
         {
             if (LOG.isDebugEnabled())
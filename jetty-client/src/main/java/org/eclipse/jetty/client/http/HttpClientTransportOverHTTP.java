@@ -23,6 +23,8 @@ import org.eclipse.jetty.client.DuplexConnectionPool;
 import org.eclipse.jetty.client.DuplexHttpDestination;
 import org.eclipse.jetty.client.HttpDestination;
 import org.eclipse.jetty.client.HttpRequest;
+import org.eclipse.jetty.client.MultiplexConnectionPool;
+import org.eclipse.jetty.client.MultiplexHttpDestination;
 import org.eclipse.jetty.client.Origin;
 import org.eclipse.jetty.io.ClientConnectionFactory;
 import org.eclipse.jetty.io.ClientConnector;
@@ -42,6 +44,7 @@ public class HttpClientTransportOverHTTP extends AbstractConnectorHttpClientTran
     private final ClientConnectionFactory factory = new HttpClientConnectionFactory();
     private int headerCacheSize = 1024;
     private boolean headerCacheCaseSensitive;
+    private int maxPipelinedRequests = 1;
 
     public HttpClientTransportOverHTTP()
     {
@@ -57,7 +60,14 @@ public class HttpClientTransportOverHTTP extends AbstractConnectorHttpClientTran
     public HttpClientTransportOverHTTP(ClientConnector connector)
     {
         super(connector);
-        setConnectionPoolFactory(destination -> new DuplexConnectionPool(destination, getHttpClient().getMaxConnectionsPerDestination(), destination));
+        setConnectionPoolFactory(destination ->
+        {
+            int maxConnections = getHttpClient().getMaxConnectionsPerDestination();
+            int maxPipelinedRequests = getMaxPipelinedRequests();
+            if (maxPipelinedRequests > 1)
+                return new MultiplexConnectionPool(destination, maxConnections, destination, maxPipelinedRequests);
+            return new DuplexConnectionPool(destination, maxConnections, destination);
+        });
     }
 
     @Override
@@ -70,7 +80,10 @@ public class HttpClientTransportOverHTTP extends AbstractConnectorHttpClientTran
     public HttpDestination newHttpDestination(Origin origin)
     {
         SocketAddress address = origin.getAddress().getSocketAddress();
-        return new DuplexHttpDestination(getHttpClient(), origin, getClientConnector().isIntrinsicallySecure(address));
+        boolean intrinsicallySecure = getClientConnector().isIntrinsicallySecure(address);
+        if (getMaxPipelinedRequests() > 1)
+            return new MultiplexHttpDestination(getHttpClient(), origin, intrinsicallySecure);
+        return new DuplexHttpDestination(getHttpClient(), origin, intrinsicallySecure);
     }
 
     @Override
@@ -103,4 +116,32 @@ public class HttpClientTransportOverHTTP extends AbstractConnectorHttpClientTran
     {
         this.headerCacheCaseSensitive = headerCacheCaseSensitive;
     }
+
+    @ManagedAttribute("The maximum number of pipelined requests per connection")
+    public int getMaxPipelinedRequests()
+    {
+        return maxPipelinedRequests;
+    }
+
+    /**
+     * <p>Sets the maximum number of requests that can be outstanding on a single connection.</p>
+     * <p>A value greater than 1 enables HTTP/1.1 request pipelining: destinations use a
+     * {@link MultiplexConnectionPool}, whose max multiplex can be changed via
+     * {@link MultiplexHttpDestination#setMaxRequestsPerConnection(int)}, and requests are
+     * written on a connection before the responses of the previous requests have arrived.
+     * Responses are matched to requests in order.</p>
+     * <p>Only idempotent requests are pipelined; other requests, and requests that upgrade
+     * the connection or expect a {@code 100 Continue} response, are sent when all the previous
+     * responses have arrived, and no further requests are written until their response arrives.</p>
+     * <p>If the connection is closed, for example by the server, the pipelined requests for which
+     * no response has been received are sent again on another connection, provided that their
+     * content is {@link org.eclipse.jetty.client.api.Request.Content#isReproducible() reproducible}.</p>
+     * <p>This value must be set before the destinations are created.</p>
+     *
+     * @param maxPipelinedRequests the maximum number of requests outstanding on a single connection
+     */
+    public void setMaxPipelinedRequests(int maxPipelinedRequests)
+    {
+        this.maxPipelinedRequests = maxPipelinedRequests;
+    }
 }
@@ -13,11 +13,18 @@
 
 package org.eclipse.jetty.client.http;
 
+import java.io.EOFException;
+import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.nio.channels.AsynchronousCloseException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.Deque;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
+import java.util.Queue;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
 import java.util.concurrent.atomic.AtomicBoolean;
@@ -25,6 +32,7 @@ import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.LongAdder;
 
 import org.eclipse.jetty.client.HttpChannel;
+import org.eclipse.jetty.client.HttpClient;
 import org.eclipse.jetty.client.HttpClientTransport;
 import org.eclipse.jetty.client.HttpConnection;
 import org.eclipse.jetty.client.HttpConversation;
@@ -38,12 +46,18 @@ import org.eclipse.jetty.client.SendFailure;
 import org.eclipse.jetty.client.api.Connection;
 import org.eclipse.jetty.client.api.Request;
 import org.eclipse.jetty.client.api.Response;
+import org.eclipse.jetty.http.HttpFields;
 import org.eclipse.jetty.http.HttpHeader;
+import org.eclipse.jetty.http.HttpHeaderValue;
+import org.eclipse.jetty.http.HttpMethod;
 import org.eclipse.jetty.http.HttpVersion;
 import org.eclipse.jetty.io.AbstractConnection;
 import org.eclipse.jetty.io.EndPoint;
+import org.eclipse.jetty.io.RetainableByteBuffer;
+import org.eclipse.jetty.io.RetainableByteBufferPool;
 import org.eclipse.jetty.util.Attachable;
 import org.eclipse.jetty.util.Promise;
+import org.eclipse.jetty.util.thread.AutoLock;
 import org.eclipse.jetty.util.thread.Sweeper;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -59,6 +73,7 @@ public class HttpConnectionOverHTTP extends AbstractConnection implements IConne
     private final HttpChannelOverHTTP channel;
     private final LongAdder bytesIn = new LongAdder();
     private final LongAdder bytesOut = new LongAdder();
+    private final Pipeline pipeline;
     private long idleTimeout;
 
     public HttpConnectionOverHTTP(EndPoint endPoint, Map<String, Object> context)
@@ -83,6 +98,9 @@ public class HttpConnectionOverHTTP extends AbstractConnection implements IConne
         this.promise = promise;
         this.delegate = new Delegate(destination);
         this.channel = newHttpChannel();
+        HttpClientTransport transport = destination.getHttpClient().getTransport();
+        boolean pipelining = transport instanceof HttpClientTransportOverHTTP && ((HttpClientTransportOverHTTP)transport).getMaxPipelinedRequests() > 1;
+        this.pipeline = pipelining ? new Pipeline() : null;
     }
 
     protected HttpChannelOverHTTP newHttpChannel()
@@ -125,15 +143,37 @@ public class HttpConnectionOverHTTP extends AbstractConnection implements IConne
     @Override
     public long getMessagesIn()
     {
+        if (pipeline != null)
+            return pipeline.getMessagesIn();
         return getHttpChannel().getMessagesIn();
     }
 
     @Override
     public long getMessagesOut()
     {
+        if (pipeline != null)
+            return pipeline.getMessagesOut();
         return getHttpChannel().getMessagesOut();
     }
 
+    /**
+     * @return whether this connection pipelines requests
+     * @see HttpClientTransportOverHTTP#setMaxPipelinedRequests(int)
+     */
+    public boolean isPipelining()
+    {
+        return pipeline != null;
+    }
+
+    /**
+     * @return the number of requests that have been written while
+     * the responses of previous requests were still outstanding
+     */
+    public long getPipelinedRequests()
+    {
+        return pipeline == null ? 0 : pipeline.pipelined.longValue();
+    }
+
     @Override
     public void send(Request request, Response.CompleteListener listener)
     {
@@ -191,12 +231,16 @@ public class HttpConnectionOverHTTP extends AbstractConnection implements IConne
     @Override
     public void onFillable()
     {
-        channel.receive();
+        if (pipeline != null)
+            pipeline.receive();
+        else
+            channel.receive();
     }
 
     @Override
     public ByteBuffer onUpgradeFrom()
     {
+        HttpChannelOverHTTP channel = pipeline != null ? pipeline.getReceivingChannel() : this.channel;
         HttpReceiverOverHTTP receiver = channel.getHttpReceiver();
         return receiver.onUpgradeFrom();
     }
@@ -208,6 +252,44 @@ public class HttpConnectionOverHTTP extends AbstractConnection implements IConne
         getHttpDestination().release(this);
     }
 
+    void release(HttpChannelOverHTTP channel)
+    {
+        if (pipeline != null)
+        {
+            if (pipeline.release(channel))
+                getEndPoint().setIdleTimeout(idleTimeout);
+            getHttpDestination().release(this);
+        }
+        else
+        {
+            release();
+        }
+    }
+
+    void send(HttpChannelOverHTTP channel, HttpExchange exchange)
+    {
+        if (pipeline != null)
+            pipeline.send(channel);
+        else
+            channel.getHttpSender().send(exchange);
+    }
+
+    void onRequestSent(HttpChannelOverHTTP channel)
+    {
+        if (pipeline != null)
+            pipeline.onRequestSent(channel);
+    }
+
+    void onResponseComplete(HttpChannelOverHTTP channel, RetainableByteBuffer networkBuffer)
+    {
+        pipeline.onResponseComplete(channel, networkBuffer);
+    }
+
+    boolean onRequestFailed(HttpChannelOverHTTP channel)
+    {
+        return pipeline != null && pipeline.remove(channel);
+    }
+
     @Override
     public void close()
     {
@@ -220,7 +302,10 @@ public class HttpConnectionOverHTTP extends AbstractConnection implements IConne
         {
             getHttpDestination().remove(this);
             abort(failure);
-            channel.destroy();
+            if (pipeline != null)
+                pipeline.destroy();
+            else
+                channel.destroy();
             getEndPoint().shutdownOutput();
             if (LOG.isDebugEnabled())
                 LOG.debug("Shutdown {}", this);
@@ -232,6 +317,8 @@ public class HttpConnectionOverHTTP extends AbstractConnection implements IConne
 
     protected boolean abort(Throwable failure)
     {
+        if (pipeline != null)
+            return pipeline.abort(failure);
         HttpExchange exchange = channel.getHttpExchange();
         return exchange != null && exchange.getRequest().abort(failure);
     }
@@ -263,6 +350,340 @@ public class HttpConnectionOverHTTP extends AbstractConnection implements IConne
             channel);
     }
 
+    /**
+     * <p>Tracks the channels of a pipelining connection.</p>
+     * <p>Each outstanding request has its own channel; requests are written one
+     * at a time in order, and the responses are parsed in the same order by
+     * the receiver of the channel at the head of the responding queue, which
+     * hands over the network buffer to the next channel when its response is
+     * complete.</p>
+     */
+    private class Pipeline
+    {
+        private final AutoLock lock = new AutoLock();
+        private final List<HttpChannelOverHTTP> channels = new ArrayList<>();
+        private final Queue<HttpChannelOverHTTP> idleChannels = new ArrayDeque<>();
+        private final Deque<HttpChannelOverHTTP> pendingChannels = new ArrayDeque<>();
+        private final Deque<HttpChannelOverHTTP> respondingChannels = new ArrayDeque<>();
+        private final LongAdder pipelined = new LongAdder();
+        private final RetainableByteBufferPool retainableByteBufferPool;
+        private HttpChannelOverHTTP writingChannel;
+        private boolean exclusive;
+        private int activeCount;
+
+        private Pipeline()
+        {
+            channels.add(channel);
+            idleChannels.offer(channel);
+            HttpClient httpClient = getHttpDestination().getHttpClient();
+            retainableByteBufferPool = RetainableByteBufferPool.findOrAdapt(httpClient, httpClient.getByteBufferPool());
+        }
+
+        private HttpChannelOverHTTP acquire()
+        {
+            try (AutoLock l = lock.lock())
+            {
+                ++activeCount;
+                HttpChannelOverHTTP result = idleChannels.poll();
+                if (result == null)
+                {
+                    result = newHttpChannel();
+                    channels.add(result);
+                }
+                return result;
+            }
+        }
+
+        /**
+         * @return whether there are no more active channels
+         */
+        private boolean release(HttpChannelOverHTTP channel)
+        {
+            try (AutoLock l = lock.lock())
+            {
+                idleChannels.offer(channel);
+                return --activeCount == 0;
+            }
+        }
+
+        private int getActiveCount()
+        {
+            try (AutoLock l = lock.lock())
+            {
+                return activeCount;
+            }
+        }
+
+        private List<HttpChannel> getActiveChannels()
+        {
+            try (AutoLock l = lock.lock())
+            {
+                List<HttpChannel> result = new ArrayList<>(respondingChannels.size() + pendingChannels.size());
+                result.addAll(respondingChannels);
+                result.addAll(pendingChannels);
+                return result;
+            }
+        }
+
+        private HttpChannelOverHTTP getReceivingChannel()
+        {
+            try (AutoLock l = lock.lock())
+            {
+                HttpChannelOverHTTP result = respondingChannels.peek();
+                return result == null ? channel : result;
+            }
+        }
+
+        private long getMessagesIn()
+        {
+            try (AutoLock l = lock.lock())
+            {
+                return channels.stream().mapToLong(HttpChannelOverHTTP::getMessagesIn).sum();
+            }
+        }
+
+        private long getMessagesOut()
+        {
+            try (AutoLock l = lock.lock())
+            {
+                return channels.stream().mapToLong(HttpChannelOverHTTP::getMessagesOut).sum();
+            }
+        }
+
+        private void send(HttpChannelOverHTTP channel)
+        {
+            try (AutoLock l = lock.lock())
+            {
+                pendingChannels.offer(channel);
+            }
+            sendNext();
+        }
+
+        private void sendNext()
+        {
+            HttpChannelOverHTTP next;
+            HttpExchange exchange;
+            try (AutoLock l = lock.lock())
+            {
+                if (writingChannel != null)
+                    return;
+                next = pendingChannels.peek();
+                if (next == null)
+                    return;
+                exchange = next.getHttpExchange();
+                if (exchange == null)
+                    return;
+                boolean pipelinable = isPipelinable(exchange.getRequest());
+                // Requests that cannot be pipelined wait for all previous
+                // responses, and are not followed by other requests.
+                if (!respondingChannels.isEmpty() && (exclusive || !pipelinable))
+                    return;
+                pendingChannels.poll();
+                if (!respondingChannels.isEmpty())
+                    pipelined.increment();
+                respondingChannels.offer(next);
+                writingChannel = next;
+                exclusive = !pipelinable;
+            }
+
+            if (LOG.isDebugEnabled())
+                LOG.debug("Sending {} on {}", exchange, next);
+            next.getHttpSender().send(exchange);
+        }
+
+        private boolean isPipelinable(HttpRequest request)
+        {
+            HttpMethod method = HttpMethod.fromString(request.getMethod());
+            if (method == null || !method.isIdempotent())
+                return false;
+            if (request instanceof HttpProxy.TunnelRequest || request instanceof HttpUpgrader.Factory)
+                return false;
+            HttpFields headers = request.getHeaders();
+            return !headers.contains(HttpHeader.UPGRADE) &&
+                !headers.contains(HttpHeader.EXPECT, HttpHeaderValue.CONTINUE.asString());
+        }
+
+        private void onRequestSent(HttpChannelOverHTTP channel)
+        {
+            try (AutoLock l = lock.lock())
+            {
+                if (writingChannel == channel)
+                    writingChannel = null;
+            }
+            sendNext();
+        }
+
+        private boolean remove(HttpChannelOverHTTP channel)
+        {
+            boolean removed;
+            try (AutoLock l = lock.lock())
+            {
+                removed = pendingChannels.remove(channel);
+            }
+            if (removed)
+                sendNext();
+            return removed;
+        }
+
+        private void receive()
+        {
+            HttpChannelOverHTTP head;
+            try (AutoLock l = lock.lock())
+            {
+                head = respondingChannels.peek();
+            }
+            if (head != null)
+                head.receive();
+            else
+                receiveIdle();
+        }
+
+        /**
+         * <p>Reads from the network when there are no outstanding requests,
+         * typically to detect that the server closed the connection.</p>
+         */
+        private void receiveIdle()
+        {
+            HttpClient client = getHttpDestination().getHttpClient();
+            RetainableByteBuffer networkBuffer = retainableByteBufferPool.acquire(client.getResponseBufferSize(), client.isUseInputDirectByteBuffers());
+            try
+            {
+                int read = getEndPoint().fill(networkBuffer.getBuffer());
+                if (LOG.isDebugEnabled())
+                    LOG.debug("Read {} bytes in {} from {}", read, networkBuffer, getEndPoint());
+                if (read > 0)
+                {
+                    addBytesIn(read);
+                    HttpChannelOverHTTP head;
+                    try (AutoLock l = lock.lock())
+                    {
+                        head = respondingChannels.peek();
+                    }
+                    // A request may have been sent concurrently.
+                    if (head != null)
+                    {
+                        head.getHttpReceiver().receive(networkBuffer);
+                    }
+                    else
+                    {
+                        networkBuffer.release();
+                        close(new IOException("Unsolicited response on " + HttpConnectionOverHTTP.this));
+                    }
+                }
+                else if (read == 0)
+                {
+                    networkBuffer.release();
+                    fillInterested();
+                }
+                else
+                {
+                    networkBuffer.release();
+                    close(new EOFException(String.valueOf(HttpConnectionOverHTTP.this)));
+                }
+            }
+            catch (Throwable x)
+            {
+                if (LOG.isDebugEnabled())
+                    LOG.debug("Error receiving {}", getEndPoint(), x);
+                networkBuffer.release();
+                close(x);
+            }
+        }
+
+        private void onResponseComplete(HttpChannelOverHTTP channel, RetainableByteBuffer networkBuffer)
+        {
+            HttpChannelOverHTTP next;
+            try (AutoLock l = lock.lock())
+            {
+                HttpChannelOverHTTP head = respondingChannels.poll();
+                if (head != channel)
+                    throw new IllegalStateException("Invalid pipeline head " + head + ", expected " + channel);
+                if (respondingChannels.isEmpty())
+                    exclusive = false;
+                next = respondingChannels.peek();
+            }
+
+            if (LOG.isDebugEnabled())
+                LOG.debug("Response complete on {}, next {}", channel, next);
+
+            if (isClosed())
+            {
+                networkBuffer.release();
+                return;
+            }
+
+            // A request waiting for the previous responses may now be sent.
+            sendNext();
+
+            if (networkBuffer.hasRemaining())
+            {
+                if (next != null)
+                {
+                    next.getHttpReceiver().receive(networkBuffer);
+                    return;
+                }
+                if (LOG.isDebugEnabled())
+                    LOG.debug("Discarding unexpected content after response: {}", networkBuffer);
+            }
+            networkBuffer.release();
+            fillInterested();
+        }
+
+        private boolean abort(Throwable failure)
+        {
+            List<HttpChannelOverHTTP> active;
+            HttpChannelOverHTTP writing;
+            try (AutoLock l = lock.lock())
+            {
+                active = new ArrayList<>(respondingChannels);
+                active.addAll(pendingChannels);
+                respondingChannels.clear();
+                pendingChannels.clear();
+                writing = writingChannel;
+                writingChannel = null;
+            }
+
+            boolean aborted = false;
+            for (HttpChannelOverHTTP channel : active)
+            {
+                HttpExchange exchange = channel.getHttpExchange();
+                if (exchange == null)
+                    continue;
+                if (channel != writing && retry(channel, exchange))
+                    continue;
+                aborted |= exchange.getRequest().abort(failure);
+            }
+            return aborted;
+        }
+
+        private boolean retry(HttpChannelOverHTTP channel, HttpExchange exchange)
+        {
+            HttpRequest request = exchange.getRequest();
+            Request.Content body = request.getBody();
+            if (!isPipelinable(request) || (body != null && !body.isReproducible()))
+                return false;
+            if (!channel.retry(exchange))
+                return false;
+            if (LOG.isDebugEnabled())
+                LOG.debug("Retrying {} after failure of {}", exchange, HttpConnectionOverHTTP.this);
+            // Give back the pool slot held by the channel, so that the
+            // closed connection can be removed and replaced by a new one.
+            HttpConnectionOverHTTP.this.release(channel);
+            getHttpDestination().send(exchange);
+            return true;
+        }
+
+        private void destroy()
+        {
+            List<HttpChannelOverHTTP> all;
+            try (AutoLock l = lock.lock())
+            {
+                all = new ArrayList<>(channels);
+            }
+            all.forEach(HttpChannel::destroy);
+        }
+    }
+
     private class Delegate extends HttpConnection
     {
         private Delegate(HttpDestination destination)
@@ -273,6 +694,8 @@ public class HttpConnectionOverHTTP extends AbstractConnection implements IConne
         @Override
         protected Iterator<HttpChannel> getHttpChannels()
         {
+            if (pipeline != null)
+                return pipeline.getActiveChannels().iterator();
             return Collections.<HttpChannel>singleton(channel).iterator();
         }
 
@@ -282,14 +705,23 @@ public class HttpConnectionOverHTTP extends AbstractConnection implements IConne
             HttpRequest request = exchange.getRequest();
             normalizeRequest(request);
 
+            // Pipelined requests are sent over their own channel.
+            HttpChannelOverHTTP channel = HttpConnectionOverHTTP.this.channel;
+            boolean first = true;
+            if (pipeline != null)
+            {
+                channel = pipeline.acquire();
+                first = pipeline.getActiveCount() == 1;
+            }
+
             // Save the old idle timeout to restore it.
             EndPoint endPoint = getEndPoint();
-            idleTimeout = endPoint.getIdleTimeout();
+            if (first)
+                idleTimeout = endPoint.getIdleTimeout();
             long requestIdleTimeout = request.getIdleTimeout();
             if (requestIdleTimeout >= 0)
                 endPoint.setIdleTimeout(requestIdleTimeout);
 
-            // One channel per connection, just delegate the send.
             return send(channel, exchange);
         }
 
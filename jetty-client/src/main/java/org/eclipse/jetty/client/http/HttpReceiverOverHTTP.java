@@ -48,6 +48,7 @@ public class HttpReceiverOverHTTP extends HttpReceiver implements HttpParser.Res
     private boolean shutdown;
     private boolean complete;
     private boolean unsolicited;
+    private boolean handover;
     private String method;
     private int status;
 
@@ -91,6 +92,20 @@ public class HttpReceiverOverHTTP extends HttpReceiver implements HttpParser.Res
         process();
     }
 
+    /**
+     * <p>Receives the given network buffer from the receiver of the previous
+     * pipelined response, and parses the response from it.</p>
+     *
+     * @param networkBuffer the network buffer to parse
+     */
+    void receive(RetainableByteBuffer networkBuffer)
+    {
+        if (this.networkBuffer != null)
+            throw new IllegalStateException();
+        this.networkBuffer = networkBuffer;
+        process();
+    }
+
     private void acquireNetworkBuffer()
     {
         networkBuffer = newNetworkBuffer();
@@ -159,6 +174,15 @@ public class HttpReceiverOverHTTP extends HttpReceiver implements HttpParser.Res
                 // Always parse even empty buffers to advance the parser.
                 if (parse())
                 {
+                    if (handover)
+                    {
+                        // Hand over the network buffer to the
+                        // receiver of the next pipelined response.
+                        handover = false;
+                        RetainableByteBuffer buffer = networkBuffer;
+                        networkBuffer = null;
+                        connection.onResponseComplete(getHttpChannel(), buffer);
+                    }
                     // Return immediately, as this thread may be in a race
                     // with e.g. another thread demanding more content.
                     return;
@@ -247,6 +271,12 @@ public class HttpReceiverOverHTTP extends HttpReceiver implements HttpParser.Res
                 if (getHttpChannel().isTunnel(method, status))
                     return true;
 
+                if (getHttpConnection().isPipelining())
+                {
+                    handover = true;
+                    return true;
+                }
+
                 if (networkBuffer.isEmpty())
                     return false;
 
@@ -107,6 +107,14 @@ public class HttpSenderOverHTTP extends HttpSender
         }
     }
 
+    @Override
+    protected boolean someToSuccess(HttpExchange exchange)
+    {
+        // The request has been written, so a pipelined request may be written.
+        getHttpChannel().getHttpConnection().onRequestSent(getHttpChannel());
+        return super.someToSuccess(exchange);
+    }
+
     @Override
     protected void reset()
     {
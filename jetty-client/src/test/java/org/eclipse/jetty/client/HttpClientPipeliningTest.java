@@ -0,0 +1,226 @@
+//
+// ========================================================================
+// Copyright (c) 1995-2022 Mort Bay Consulting Pty Ltd and others.
+//
+// This program and the accompanying materials are made available under the
+// terms of the Eclipse Public License v. 2.0 which is available at
+// https://www.eclipse.org/legal/epl-2.0, or the Apache License, Version 2.0
+// which is available at https://www.apache.org/licenses/LICENSE-2.0.
+//
+// SPDX-License-Identifier: EPL-2.0 OR Apache-2.0
+// ========================================================================
+//
+
+package org.eclipse.jetty.client;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.eclipse.jetty.client.api.ContentResponse;
+import org.eclipse.jetty.client.http.HttpClientTransportOverHTTP;
+import org.eclipse.jetty.client.http.HttpConnectionOverHTTP;
+import org.eclipse.jetty.client.util.BufferingResponseListener;
+import org.eclipse.jetty.http.HttpHeader;
+import org.eclipse.jetty.http.HttpHeaderValue;
+import org.eclipse.jetty.http.HttpMethod;
+import org.eclipse.jetty.http.HttpStatus;
+import org.eclipse.jetty.server.Request;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ArgumentsSource;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.instanceOf;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class HttpClientPipeliningTest extends AbstractHttpClientServerTest
+{
+    private static final int MAX_PIPELINED_REQUESTS = 4;
+
+    private void startPipeliningClient(Scenario scenario) throws Exception
+    {
+        startClient(scenario, clientConnector ->
+        {
+            HttpClientTransportOverHTTP transport = new HttpClientTransportOverHTTP(clientConnector);
+            transport.setMaxPipelinedRequests(MAX_PIPELINED_REQUESTS);
+            return transport;
+        }, client -> client.setMaxConnectionsPerDestination(1));
+    }
+
+    private Map<String, String> sendConcurrently(Scenario scenario, int count, HttpMethod method) throws Exception
+    {
+        Map<String, String> responses = new ConcurrentHashMap<>();
+        CountDownLatch latch = new CountDownLatch(count);
+        for (int i = 0; i < count; ++i)
+        {
+            String path = "/" + i;
+            client.newRequest("localhost", connector.getLocalPort())
+                .scheme(scenario.getScheme())
+                .method(method)
+                .path(path)
+                .timeout(5, TimeUnit.SECONDS)
+                .send(new BufferingResponseListener()
+                {
+                    @Override
+                    public void onComplete(org.eclipse.jetty.client.api.Result result)
+                    {
+                        if (result.isSucceeded() && result.getResponse().getStatus() == HttpStatus.OK_200)
+                            responses.put(path, getContentAsString());
+                        latch.countDown();
+                    }
+                });
+        }
+        assertTrue(latch.await(10, TimeUnit.SECONDS));
+        return responses;
+    }
+
+    @ParameterizedTest
+    @ArgumentsSource(ScenarioProvider.class)
+    public void testPipelinedRequestsOnSingleConnection(Scenario scenario) throws Exception
+    {
+        startServer(scenario, new EmptyServerHandler()
+        {
+            @Override
+            protected void service(String target, Request jettyRequest, HttpServletRequest request, HttpServletResponse response) throws IOException
+            {
+                sleep(50);
+                response.getOutputStream().write(target.getBytes(StandardCharsets.UTF_8));
+            }
+        });
+        startPipeliningClient(scenario);
+
+        int count = 3 * MAX_PIPELINED_REQUESTS;
+        Map<String, String> responses = sendConcurrently(scenario, count, HttpMethod.GET);
+
+        // Responses are matched to their requests.
+        assertEquals(count, responses.size());
+        responses.forEach((path, content) -> assertEquals(path, content));
+
+        HttpDestination destination = (HttpDestination)client.getDestinations().get(0);
+        assertThat(destination, instanceOf(MultiplexHttpDestination.class));
+        AbstractConnectionPool connectionPool = (AbstractConnectionPool)destination.getConnectionPool();
+        assertEquals(1, connectionPool.getConnectionCount());
+        HttpConnectionOverHTTP connection = (HttpConnectionOverHTTP)connectionPool.getIdleConnections().iterator().next();
+        assertTrue(connection.isPipelining());
+        assertThat(connection.getPipelinedRequests(), greaterThan(0L));
+        assertEquals(count, connection.getMessagesOut());
+        assertEquals(count, connection.getMessagesIn());
+    }
+
+    @ParameterizedTest
+    @ArgumentsSource(ScenarioProvider.class)
+    public void testNonIdempotentRequestsAreNotPipelined(Scenario scenario) throws Exception
+    {
+        startServer(scenario, new EmptyServerHandler()
+        {
+            @Override
+            protected void service(String target, Request jettyRequest, HttpServletRequest request, HttpServletResponse response) throws IOException
+            {
+                sleep(50);
+                response.getOutputStream().write(target.getBytes(StandardCharsets.UTF_8));
+            }
+        });
+        startPipeliningClient(scenario);
+
+        int count = 2 * MAX_PIPELINED_REQUESTS;
+        Map<String, String> responses = sendConcurrently(scenario, count, HttpMethod.POST);
+
+        assertEquals(count, responses.size());
+        responses.forEach((path, content) -> assertEquals(path, content));
+        HttpDestination destination = (HttpDestination)client.getDestinations().get(0);
+        AbstractConnectionPool connectionPool = (AbstractConnectionPool)destination.getConnectionPool();
+        HttpConnectionOverHTTP connection = (HttpConnectionOverHTTP)connectionPool.getIdleConnections().iterator().next();
+        assertEquals(0, connection.getPipelinedRequests());
+        assertEquals(count, connection.getMessagesOut());
+    }
+
+    @ParameterizedTest
+    @ArgumentsSource(ScenarioProvider.class)
+    public void testPipelinedRequestsAreRetriedWhenConnectionIsClosed(Scenario scenario) throws Exception
+    {
+        AtomicInteger requests = new AtomicInteger();
+        startServer(scenario, new EmptyServerHandler()
+        {
+            @Override
+            protected void service(String target, Request jettyRequest, HttpServletRequest request, HttpServletResponse response) throws IOException
+            {
+                sleep(50);
+                // Close the connection after the first request,
+                // discarding the requests already pipelined.
+                if (requests.incrementAndGet() == 1)
+                    response.setHeader(HttpHeader.CONNECTION.asString(), HttpHeaderValue.CLOSE.asString());
+                response.getOutputStream().write(target.getBytes(StandardCharsets.UTF_8));
+            }
+        });
+        startPipeliningClient(scenario);
+
+        int count = MAX_PIPELINED_REQUESTS;
+        Map<String, String> responses = sendConcurrently(scenario, count, HttpMethod.GET);
+
+        assertEquals(count, responses.size());
+        responses.forEach((path, content) -> assertEquals(path, content));
+    }
+
+    @ParameterizedTest
+    @ArgumentsSource(ScenarioProvider.class)
+    public void testPipelinedRequestWithSlowResponseContent(Scenario scenario) throws Exception
+    {
+        byte[] content = new byte[64 * 1024];
+        startServer(scenario, new EmptyServerHandler()
+        {
+            @Override
+            protected void service(String target, Request jettyRequest, HttpServletRequest request, HttpServletResponse response) throws IOException
+            {
+                response.getOutputStream().write(content);
+            }
+        });
+        startPipeliningClient(scenario);
+
+        int count = 2 * MAX_PIPELINED_REQUESTS;
+        CountDownLatch latch = new CountDownLatch(count);
+        for (int i = 0; i < count; ++i)
+        {
+            client.newRequest("localhost", connector.getLocalPort())
+                .scheme(scenario.getScheme())
+                .path("/" + i)
+                .timeout(5, TimeUnit.SECONDS)
+                .send(new BufferingResponseListener(content.length)
+                {
+                    @Override
+                    public void onComplete(org.eclipse.jetty.client.api.Result result)
+                    {
+                        if (result.isSucceeded() && getContent().length == content.length)
+                            latch.countDown();
+                    }
+                });
+        }
+        assertTrue(latch.await(10, TimeUnit.SECONDS));
+
+        // The connection is still usable.
+        ContentResponse response = client.newRequest("localhost", connector.getLocalPort())
+            .scheme(scenario.getScheme())
+            .timeout(5, TimeUnit.SECONDS)
+            .send();
+        assertEquals(HttpStatus.OK_200, response.getStatus());
+    }
+
+    private static void sleep(long millis)
+    {
+        try
+        {
+            Thread.sleep(millis);
+        }
+        catch (InterruptedException x)
+        {
+            throw new RuntimeException(x);
+        }
+    }
+}
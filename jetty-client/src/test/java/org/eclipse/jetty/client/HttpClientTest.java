@@ -21,6 +21,7 @@ import java.net.HttpCookie;
 import java.net.InetSocketAddress;
 import java.net.ServerSocket;
 import java.net.Socket;
+import java.net.SocketAddress;
 import java.net.URI;
 import java.net.URLEncoder;
 import java.net.UnknownHostException;
@@ -865,6 +866,47 @@ public class HttpClientTest extends AbstractHttpClientServerTest
             .send();
     }
 
+    @ParameterizedTest
+    @ArgumentsSource(ScenarioProvider.class)
+    public void testParallelConnectHostWithMultipleAddresses(Scenario scenario) throws Exception
+    {
+        long connectTimeout = 10000;
+        // The first address simulates a connect attempt that hangs until the connect timeout.
+        InetSocketAddress hangingAddress = new InetSocketAddress("127.0.0.1", 1);
+        startServer(scenario, new EmptyServerHandler());
+        startClient(scenario, clientConnector -> new HttpClientTransportOverHTTP(clientConnector)
+        {
+            @Override
+            public void connect(SocketAddress address, Map<String, Object> context)
+            {
+                if (!hangingAddress.equals(address))
+                    super.connect(address, context);
+            }
+        }, client ->
+        {
+            client.setConnectTimeout(connectTimeout);
+            client.setConnectAttemptDelay(100);
+            client.setSocketAddressResolver((host, port, promise) ->
+                promise.succeeded(List.of(
+                    hangingAddress,
+                    new InetSocketAddress("127.0.0.1", port),
+                    new InetSocketAddress("127.0.0.1", port))));
+        });
+
+        long begin = System.nanoTime();
+        ContentResponse response = client.newRequest("localhost", connector.getLocalPort())
+            .scheme(scenario.getScheme())
+            .timeout(connectTimeout / 2, TimeUnit.MILLISECONDS)
+            .send();
+        assertEquals(HttpStatus.OK_200, response.getStatus());
+        assertThat(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - begin), Matchers.lessThan(connectTimeout / 2));
+
+        // Only the winning connection is pooled.
+        HttpDestination destination = (HttpDestination)client.getDestinations().get(0);
+        DuplexConnectionPool connectionPool = (DuplexConnectionPool)destination.getConnectionPool();
+        assertEquals(1, connectionPool.getConnectionCount());
+    }
+
     @ParameterizedTest
     @ArgumentsSource(ScenarioProvider.class)
     public void testCustomUserAgent(Scenario scenario) throws Exception
@@ -20,8 +20,11 @@ module org.eclipse.jetty.http
     exports org.eclipse.jetty.http;
     exports org.eclipse.jetty.http.pathmap;
 
+    uses org.eclipse.jetty.http.ContentEncoder;
     uses org.eclipse.jetty.http.HttpFieldPreEncoder;
 
+    provides org.eclipse.jetty.http.ContentEncoder with
+        org.eclipse.jetty.http.DeflateContentEncoder;
     provides org.eclipse.jetty.http.HttpFieldPreEncoder with
         org.eclipse.jetty.http.Http1FieldPreEncoder;
 }
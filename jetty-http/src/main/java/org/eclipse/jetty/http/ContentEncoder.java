@@ -0,0 +1,120 @@
+//
+// ========================================================================
+// Copyright (c) 1995-2022 Mort Bay Consulting Pty Ltd and others.
+//
+// This program and the accompanying materials are made available under the
+// terms of the Eclipse Public License v. 2.0 which is available at
+// https://www.eclipse.org/legal/epl-2.0, or the Apache License, Version 2.0
+// which is available at https://www.apache.org/licenses/LICENSE-2.0.
+//
+// SPDX-License-Identifier: EPL-2.0 OR Apache-2.0
+// ========================================================================
+//
+
+package org.eclipse.jetty.http;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.ServiceLoader;
+
+import org.eclipse.jetty.util.TypeUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * <p>A pluggable content coding, such as {@code deflate}, {@code br} or {@code zstd},
+ * identified by the {@link #getEncoding() encoding} name used in the
+ * {@code Accept-Encoding} and {@code Content-Encoding} headers.</p>
+ * <p>A {@link ContentEncoder} encodes content by wrapping an {@link OutputStream},
+ * which allows to plug the many encoder libraries that provide a stream API, and
+ * may decode content with a {@link Decoder} that works on {@link ByteBuffer}s, so
+ * that it can be used in asynchronous contexts.</p>
+ * <p>Implementations can be discovered with the {@link ServiceLoader} via
+ * {@link #getContentEncoders()}, and are used on the server by the
+ * {@code GzipHandler} to encode responses, and on the client by the
+ * {@code HttpClient} content decoders.</p>
+ */
+public interface ContentEncoder
+{
+    /**
+     * @return the content coding name, in lower case
+     */
+    String getEncoding();
+
+    /**
+     * <p>Returns a stream that encodes the bytes written to it into the given output stream.</p>
+     * <p>Flushing the returned stream must write to the output stream
+     * the encoded bytes for all the bytes written so far, if the encoding supports it;
+     * closing the returned stream must finish the encoding and close the output stream.</p>
+     *
+     * @param output the stream where the encoded bytes are written
+     * @return a stream that encodes the bytes written to it
+     * @throws IOException if the stream cannot be created
+     */
+    OutputStream newEncoderOutputStream(OutputStream output) throws IOException;
+
+    /**
+     * @return a new decoder for this content coding, or null if decoding is not supported
+     */
+    default Decoder newDecoder()
+    {
+        return null;
+    }
+
+    /**
+     * <p>A decoder of content encoded with a {@link ContentEncoder}.</p>
+     */
+    interface Decoder
+    {
+        /**
+         * <p>Decodes the bytes in the given buffer and returns the decoded bytes, if any.</p>
+         * <p>This method consumes the bytes of the given buffer, and may need to be
+         * called again with the same buffer while it has remaining bytes.</p>
+         *
+         * @param buffer the buffer containing encoded bytes
+         * @return a buffer containing decoded bytes, possibly empty
+         */
+        ByteBuffer decode(ByteBuffer buffer);
+
+        /**
+         * <p>Releases the buffer returned by {@link #decode(ByteBuffer)}.</p>
+         *
+         * @param decoded the buffer returned by {@link #decode(ByteBuffer)}
+         */
+        default void release(ByteBuffer decoded)
+        {
+        }
+
+        /**
+         * <p>Releases the resources held by this decoder.</p>
+         */
+        default void destroy()
+        {
+        }
+    }
+
+    /**
+     * @return the {@link ContentEncoder} implementations discovered by the {@link ServiceLoader}
+     */
+    static List<ContentEncoder> getContentEncoders()
+    {
+        List<ContentEncoder> encoders = new ArrayList<>();
+        TypeUtil.serviceProviderStream(ServiceLoader.load(ContentEncoder.class)).forEach(provider ->
+        {
+            try
+            {
+                encoders.add(provider.get());
+            }
+            catch (Error | RuntimeException x)
+            {
+                Logger logger = LoggerFactory.getLogger(ContentEncoder.class);
+                if (logger.isDebugEnabled())
+                    logger.debug("Unable to load ContentEncoder", x);
+            }
+        });
+        return encoders;
+    }
+}
@@ -0,0 +1,141 @@
+//
+// ========================================================================
+// Copyright (c) 1995-2022 Mort Bay Consulting Pty Ltd and others.
+//
+// This program and the accompanying materials are made available under the
+// terms of the Eclipse Public License v. 2.0 which is available at
+// https://www.eclipse.org/legal/epl-2.0, or the Apache License, Version 2.0
+// which is available at https://www.apache.org/licenses/LICENSE-2.0.
+//
+// SPDX-License-Identifier: EPL-2.0 OR Apache-2.0
+// ========================================================================
+//
+
+package org.eclipse.jetty.http;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.Inflater;
+
+import org.eclipse.jetty.util.BufferUtil;
+
+/**
+ * <p>The {@code deflate} content coding, that is the zlib format (RFC 1950)
+ * of the deflate compressed data (RFC 1951), implemented with the JDK
+ * {@link Deflater} and {@link Inflater}.</p>
+ */
+public class DeflateContentEncoder implements ContentEncoder
+{
+    private final int _level;
+    private final int _bufferSize;
+
+    public DeflateContentEncoder()
+    {
+        this(Deflater.DEFAULT_COMPRESSION, 8192);
+    }
+
+    /**
+     * @param level the compression level
+     * @param bufferSize the size of the buffers used to encode and decode
+     */
+    public DeflateContentEncoder(int level, int bufferSize)
+    {
+        _level = level;
+        _bufferSize = bufferSize;
+    }
+
+    @Override
+    public String getEncoding()
+    {
+        return "deflate";
+    }
+
+    @Override
+    public OutputStream newEncoderOutputStream(OutputStream output)
+    {
+        Deflater deflater = new Deflater(_level);
+        return new DeflaterOutputStream(output, deflater, _bufferSize, true)
+        {
+            @Override
+            public void close() throws IOException
+            {
+                try
+                {
+                    super.close();
+                }
+                finally
+                {
+                    deflater.end();
+                }
+            }
+        };
+    }
+
+    @Override
+    public Decoder newDecoder()
+    {
+        return new InflaterDecoder(_bufferSize);
+    }
+
+    @Override
+    public String toString()
+    {
+        return String.format("%s@%x{%s,level=%d}", getClass().getSimpleName(), hashCode(), getEncoding(), _level);
+    }
+
+    private static class InflaterDecoder implements Decoder
+    {
+        private final Inflater _inflater = new Inflater();
+        private final int _bufferSize;
+
+        private InflaterDecoder(int bufferSize)
+        {
+            _bufferSize = bufferSize;
+        }
+
+        @Override
+        public ByteBuffer decode(ByteBuffer buffer)
+        {
+            try
+            {
+                if (_inflater.finished())
+                {
+                    BufferUtil.clear(buffer);
+                    return BufferUtil.EMPTY_BUFFER;
+                }
+                ByteBuffer decoded = BufferUtil.allocate(_bufferSize);
+                int pos = BufferUtil.flipToFill(decoded);
+                while (decoded.hasRemaining() && !_inflater.finished())
+                {
+                    if (_inflater.needsInput())
+                    {
+                        if (!buffer.hasRemaining())
+                            break;
+                        _inflater.setInput(buffer);
+                    }
+                    if (_inflater.inflate(decoded) == 0 && _inflater.needsDictionary())
+                        throw new DataFormatException("Preset dictionary not supported");
+                }
+                BufferUtil.flipToFlush(decoded, pos);
+                // Skip any trailing bytes after the end of the compressed data.
+                if (_inflater.finished())
+                    BufferUtil.clear(buffer);
+                return decoded;
+            }
+            catch (DataFormatException x)
+            {
+                throw new BadMessageException("Invalid deflate content", x);
+            }
+        }
+
+        @Override
+        public void destroy()
+        {
+            _inflater.end();
+        }
+    }
+}
@@ -0,0 +1,170 @@
+//
+// ========================================================================
+// Copyright (c) 1995-2022 Mort Bay Consulting Pty Ltd and others.
+//
+// This program and the accompanying materials are made available under the
+// terms of the Eclipse Public License v. 2.0 which is available at
+// https://www.eclipse.org/legal/epl-2.0, or the Apache License, Version 2.0
+// which is available at https://www.apache.org/licenses/LICENSE-2.0.
+//
+// SPDX-License-Identifier: EPL-2.0 OR Apache-2.0
+// ========================================================================
+//
+
+package org.eclipse.jetty.http.pathmap;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.eclipse.jetty.util.Index;
+import org.eclipse.jetty.util.LiteralPrefixTree;
+
+/**
+ * <p>An immutable snapshot of {@link PathMappings} that finds the first
+ * matching mapping without iterating over all the mappings.</p>
+ * <p>Each mapping is bucketed in a character tree by the literal prefix
+ * that all the paths it matches must start with: the exact path or prefix
+ * of a {@link ServletPathSpec}, or the leading literal characters of the
+ * pattern of a {@link RegexPathSpec} or {@link UriTemplatePathSpec}.
+ * A lookup walks the tree along the path, and only tests the mappings of the
+ * buckets it encounters, in the same order as {@link PathMappings} iterates
+ * over them, so the result is the same as the linear search.</p>
+ * <p>Servlet suffix mappings such as {@code *.jsp} have no literal prefix,
+ * so they are looked up by suffix, like {@link PathMappings} does.</p>
+ *
+ * @param <E> the type of mapping endpoint
+ */
+class CompiledPathMatcher<E>
+{
+    private final LiteralPrefixTree<List<Candidate<E>>> _prefixes = new LiteralPrefixTree<>();
+    private final Index.Mutable<Candidate<E>> _suffixes = new Index.Builder<Candidate<E>>()
+        .caseSensitive(true)
+        .mutable()
+        .build();
+    private final int _size;
+
+    CompiledPathMatcher(Iterable<MappedResource<E>> mappings)
+    {
+        int order = 0;
+        for (MappedResource<E> mapping : mappings)
+        {
+            Candidate<E> candidate = new Candidate<>(order++, mapping);
+            PathSpec pathSpec = mapping.getPathSpec();
+            if (pathSpec instanceof ServletPathSpec && pathSpec.getGroup() == PathSpecGroup.SUFFIX_GLOB)
+            {
+                _suffixes.put(pathSpec.getSuffix(), candidate);
+            }
+            else
+            {
+                LiteralPrefixTree.Node<List<Candidate<E>>> node = _prefixes.add(literalPrefix(pathSpec));
+                if (node.getValue() == null)
+                    node.setValue(new ArrayList<>(1));
+                // Candidates are added in order, so the bucket stays sorted.
+                node.getValue().add(candidate);
+            }
+        }
+        _size = order;
+    }
+
+    /**
+     * @return the number of mappings in this matcher
+     */
+    int size()
+    {
+        return _size;
+    }
+
+    /**
+     * @param path the path to match
+     * @return the first mapping, in {@link PathMappings} order, that matches the path, or null if none matches
+     */
+    MatchedResource<E> getMatched(String path)
+    {
+        Candidate<E> best = null;
+        MatchedPath bestMatch = null;
+
+        // Test the mappings of every literal prefix of the path.
+        LiteralPrefixTree.Node<List<Candidate<E>>> node = _prefixes.getRoot();
+        int index = 0;
+        while (node != null)
+        {
+            List<Candidate<E>> candidates = node.getValue();
+            for (int i = 0; candidates != null && i < candidates.size(); ++i)
+            {
+                Candidate<E> candidate = candidates.get(i);
+                // Candidates are sorted, so the rest of the bucket cannot be better.
+                if (best != null && candidate._order > best._order)
+                    break;
+                MatchedPath matched = candidate._mapping.getPathSpec().matched(path);
+                if (matched != null)
+                {
+                    best = candidate;
+                    bestMatch = matched;
+                    break;
+                }
+            }
+            node = index < path.length() ? node.getChild(path.charAt(index++)) : null;
+        }
+
+        // Test the servlet suffix mappings, as PathMappings does.
+        if (!_suffixes.isEmpty())
+        {
+            int i = 0;
+            while ((i = path.indexOf('.', i + 1)) > 0)
+            {
+                Candidate<E> candidate = _suffixes.get(path, i + 1, path.length() - i - 1);
+                if (candidate == null || (best != null && candidate._order > best._order))
+                    continue;
+                MatchedPath matched = candidate._mapping.getPathSpec().matched(path);
+                if (matched != null)
+                {
+                    best = candidate;
+                    bestMatch = matched;
+                }
+            }
+        }
+
+        if (best == null)
+            return null;
+        MappedResource<E> mapping = best._mapping;
+        return new MatchedResource<>(mapping.getResource(), mapping.getPathSpec(), bestMatch);
+    }
+
+    /**
+     * <p>Returns the literal characters that any path matched by the given path spec must start with.</p>
+     * <p>The empty string is returned when the path spec type is unknown, or its pattern starts with
+     * a construct that is not a plain literal; this is always correct, just less selective.</p>
+     *
+     * @param pathSpec the path spec
+     * @return the literal prefix of the path spec
+     */
+    static String literalPrefix(PathSpec pathSpec)
+    {
+        if (pathSpec instanceof ServletPathSpec)
+        {
+            String prefix = null;
+            if (pathSpec.getGroup() == PathSpecGroup.EXACT)
+                prefix = pathSpec.getDeclaration();
+            else if (pathSpec.getGroup() == PathSpecGroup.PREFIX_GLOB)
+                prefix = pathSpec.getPrefix();
+            return prefix == null ? "" : prefix;
+        }
+        if (pathSpec instanceof RegexPathSpec)
+            return LiteralPrefixTree.literalPrefix(((RegexPathSpec)pathSpec).getPattern());
+        if (pathSpec instanceof UriTemplatePathSpec)
+            return LiteralPrefixTree.literalPrefix(((UriTemplatePathSpec)pathSpec).getPattern());
+        return "";
+    }
+
+    private static class Candidate<E>
+    {
+        private final int _order;
+        private final MappedResource<E> _mapping;
+
+        private Candidate(int order, MappedResource<E> mapping)
+        {
+            _order = order;
+            _mapping = mapping;
+        }
+    }
+}
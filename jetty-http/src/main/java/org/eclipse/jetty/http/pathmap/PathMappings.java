@@ -57,6 +57,8 @@ public class PathMappings<E> implements Iterable<MappedResource<E>>, Dumpable
         .caseSensitive(true)
         .mutable()
         .build();
+    private boolean _compiled;
+    private volatile CompiledPathMatcher<E> _compiledMatcher;
 
     @Override
     public String dump()
@@ -81,16 +83,41 @@ public class PathMappings<E> implements Iterable<MappedResource<E>>, Dumpable
         return _mappings.size();
     }
 
+    @ManagedAttribute("Whether lookups use a compiled matcher")
+    public boolean isCompiled()
+    {
+        return _compiled;
+    }
+
+    /**
+     * <p>Sets whether {@link #getMatched(String)} uses a compiled matcher.</p>
+     * <p>Without a compiled matcher, lookups are optimized only for {@link ServletPathSpec}s,
+     * and fall back to testing every {@link RegexPathSpec} and {@link UriTemplatePathSpec}
+     * in order, so the lookup cost grows with the number of such mappings.
+     * The compiled matcher buckets all the mappings by their literal prefix, so that only
+     * the mappings that can possibly match a path are tested.
+     * It is rebuilt on the first lookup after the mappings are modified.</p>
+     *
+     * @param compiled whether lookups use a compiled matcher
+     */
+    public void setCompiled(boolean compiled)
+    {
+        _compiled = compiled;
+        _compiledMatcher = null;
+    }
+
     public void reset()
     {
         _mappings.clear();
         _prefixMap.clear();
         _suffixMap.clear();
+        _compiledMatcher = null;
     }
 
     public void removeIf(Predicate<MappedResource<E>> predicate)
     {
         _mappings.removeIf(predicate);
+        _compiledMatcher = null;
     }
 
     /**
@@ -147,6 +174,17 @@ public class PathMappings<E> implements Iterable<MappedResource<E>>, Dumpable
 
     public MatchedResource<E> getMatched(String path)
     {
+        if (_compiled)
+        {
+            CompiledPathMatcher<E> matcher = _compiledMatcher;
+            if (matcher == null)
+            {
+                matcher = new CompiledPathMatcher<>(_mappings);
+                _compiledMatcher = matcher;
+            }
+            return matcher.getMatched(path);
+        }
+
         MatchedPath matchedPath;
         PathSpecGroup lastGroup = null;
 
@@ -295,6 +333,8 @@ public class PathMappings<E> implements Iterable<MappedResource<E>>, Dumpable
     {
         MappedResource<E> entry = new MappedResource<>(pathSpec, resource);
         boolean added = _mappings.add(entry);
+        if (added)
+            _compiledMatcher = null;
         if (LOG.isDebugEnabled())
             LOG.debug("{} {} to {}", added ? "Added" : "Ignored", entry, this);
 
@@ -377,6 +417,7 @@ public class PathMappings<E> implements Iterable<MappedResource<E>>, Dumpable
 
         if (removed)
         {
+            _compiledMatcher = null;
             switch (pathSpec.getGroup())
             {
                 case EXACT:
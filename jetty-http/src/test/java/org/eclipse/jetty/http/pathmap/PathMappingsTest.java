@@ -13,6 +13,11 @@
 
 package org.eclipse.jetty.http.pathmap;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
 import org.junit.jupiter.api.Test;
 
 import static org.hamcrest.CoreMatchers.equalTo;
@@ -449,4 +454,110 @@ public class PathMappingsTest
         assertThat(PathSpec.from("^.*"), instanceOf(RegexPathSpec.class));
         assertThat(PathSpec.from("^/"), instanceOf(RegexPathSpec.class));
     }
+
+    @Test
+    public void testCompiledMatchesLikeLinearSearch()
+    {
+        List<PathSpec> pathSpecs = new ArrayList<>();
+        pathSpecs.add(new ServletPathSpec(""));
+        pathSpecs.add(new ServletPathSpec("/"));
+        pathSpecs.add(new ServletPathSpec("/*"));
+        pathSpecs.add(new ServletPathSpec("*.do"));
+        pathSpecs.add(new ServletPathSpec("*.json"));
+        pathSpecs.add(new RegexPathSpec("^.*/middle/.*$"));
+        pathSpecs.add(new RegexPathSpec("^/(?<name>[a-z]+)/info$"));
+        pathSpecs.add(new RegexPathSpec("^/alt/a|/alt/b$"));
+        pathSpecs.add(new RegexPathSpec("^/api/v1/items/\\d+$"));
+        pathSpecs.add(new RegexPathSpec("^/api/v1x*/opt$"));
+        for (int i = 0; i < 50; ++i)
+        {
+            pathSpecs.add(new ServletPathSpec("/api/v1/exact" + i));
+            pathSpecs.add(new ServletPathSpec("/api/v1/prefix" + i + "/*"));
+            pathSpecs.add(new UriTemplatePathSpec("/api/v1/resource" + i + "/{id}"));
+            pathSpecs.add(new UriTemplatePathSpec("/api/v1/resource" + i + "/{id}/sub/{sub}"));
+            pathSpecs.add(new UriTemplatePathSpec("/{tenant}/resource" + i));
+            pathSpecs.add(new RegexPathSpec("^/api/v2/resource" + i + "/[^/]+$"));
+        }
+        Collections.shuffle(pathSpecs, new Random(42));
+
+        PathMappings<String> linear = new PathMappings<>();
+        PathMappings<String> compiled = new PathMappings<>();
+        compiled.setCompiled(true);
+        for (PathSpec pathSpec : pathSpecs)
+        {
+            linear.put(pathSpec, pathSpec.getDeclaration());
+            compiled.put(pathSpec, pathSpec.getDeclaration());
+        }
+
+        List<String> paths = new ArrayList<>(List.of("/", "", "/other", "/a.do", "/x/y.json", "/b/middle/c", "/abc/info",
+            "/alt/a", "/alt/b", "/api/v1/items/123", "/api/v1/items/x", "/api/v1/opt", "/api/v1xx/opt", "/api/v1/"));
+        for (int i = 0; i < 55; i += 5)
+        {
+            paths.add("/api/v1/exact" + i);
+            paths.add("/api/v1/exact" + i + "/more");
+            paths.add("/api/v1/prefix" + i);
+            paths.add("/api/v1/prefix" + i + "/a/b.do");
+            paths.add("/api/v1/resource" + i + "/42");
+            paths.add("/api/v1/resource" + i + "/42/sub/7");
+            paths.add("/api/v1/resource" + i + "/42/middle/7");
+            paths.add("/acme/resource" + i);
+            paths.add("/api/v2/resource" + i + "/42");
+            paths.add("/api/v2/resource" + i + "/42?query=1");
+        }
+
+        for (String path : paths)
+        {
+            MatchedResource<String> expected = linear.getMatched(path);
+            MatchedResource<String> actual = compiled.getMatched(path);
+            String msg = String.format(".getMatched(\"%s\")", path);
+            if (expected == null)
+            {
+                assertNull(actual, msg);
+            }
+            else
+            {
+                assertThat(msg, actual, notNullValue());
+                assertEquals(expected.getResource(), actual.getResource(), msg);
+                assertEquals(expected.getPathMatch(), actual.getPathMatch(), msg);
+                assertEquals(expected.getPathInfo(), actual.getPathInfo(), msg);
+            }
+        }
+    }
+
+    @Test
+    public void testCompiledIsRebuiltOnChange()
+    {
+        PathMappings<String> p = new PathMappings<>();
+        p.setCompiled(true);
+        p.put(new UriTemplatePathSpec("/a/{var}"), "template");
+        p.put(new ServletPathSpec("/"), "default");
+        assertMatch(p, "/a/b", "template");
+
+        p.put(new RegexPathSpec("^/a/b$"), "regex");
+        assertMatch(p, "/a/b", "regex");
+
+        p.remove(new RegexPathSpec("^/a/b$"));
+        assertMatch(p, "/a/b", "template");
+
+        p.removeIf(mapping -> mapping.getPathSpec() instanceof UriTemplatePathSpec);
+        assertMatch(p, "/a/b", "default");
+    }
+
+    @Test
+    public void testLiteralPrefix()
+    {
+        assertEquals("/a/b", CompiledPathMatcher.literalPrefix(new ServletPathSpec("/a/b")));
+        assertEquals("/a", CompiledPathMatcher.literalPrefix(new ServletPathSpec("/a/*")));
+        assertEquals("", CompiledPathMatcher.literalPrefix(new ServletPathSpec("*.do")));
+        assertEquals("", CompiledPathMatcher.literalPrefix(new ServletPathSpec("/")));
+        assertEquals("/a/", CompiledPathMatcher.literalPrefix(new UriTemplatePathSpec("/a/{var}")));
+        assertEquals("/", CompiledPathMatcher.literalPrefix(new UriTemplatePathSpec("/{var}/a")));
+        assertEquals("/a/", CompiledPathMatcher.literalPrefix(new RegexPathSpec("^/a/b*")));
+        assertEquals("/a/", CompiledPathMatcher.literalPrefix(new RegexPathSpec("^/a/b+")));
+        assertEquals("/a/", CompiledPathMatcher.literalPrefix(new RegexPathSpec("^/a/b{2}")));
+        assertEquals("/a", CompiledPathMatcher.literalPrefix(new RegexPathSpec("^/a\\Q/b\\E/")));
+        assertEquals("", CompiledPathMatcher.literalPrefix(new RegexPathSpec("^/a|/b")));
+        assertEquals("", CompiledPathMatcher.literalPrefix(new RegexPathSpec("^(?i)/a")));
+        assertEquals("", CompiledPathMatcher.literalPrefix(new RegexPathSpec("^.*/a")));
+    }
 }
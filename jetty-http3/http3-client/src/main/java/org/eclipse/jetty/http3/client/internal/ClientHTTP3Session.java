@@ -13,6 +13,7 @@
 
 package org.eclipse.jetty.http3.client.internal;
 
+import java.util.HashMap;
 import java.util.Map;
 import java.util.concurrent.CompletableFuture;
 
@@ -45,6 +46,7 @@ public class ClientHTTP3Session extends ClientProtocolSession
     private static final Logger LOG = LoggerFactory.getLogger(ClientHTTP3Session.class);
 
     private final HTTP3SessionClient session;
+    private final HTTP3Configuration configuration;
     private final QpackEncoder encoder;
     private final QpackDecoder decoder;
     private final ControlFlusher controlFlusher;
@@ -53,6 +55,7 @@ public class ClientHTTP3Session extends ClientProtocolSession
     public ClientHTTP3Session(HTTP3Configuration configuration, ClientQuicSession quicSession, Session.Client.Listener listener, Promise<Session.Client> promise)
     {
         super(quicSession);
+        this.configuration = configuration;
         this.session = new HTTP3SessionClient(this, listener, promise);
         addBean(session);
         session.setStreamIdleTimeout(configuration.getStreamIdleTimeout());
@@ -64,6 +67,8 @@ public class ClientHTTP3Session extends ClientProtocolSession
         QuicStreamEndPoint encoderEndPoint = openInstructionEndPoint(encoderStreamId);
         InstructionFlusher encoderInstructionFlusher = new InstructionFlusher(quicSession, encoderEndPoint, EncoderStreamConnection.STREAM_TYPE);
         this.encoder = new QpackEncoder(new InstructionHandler(encoderInstructionFlusher), configuration.getMaxBlockedStreams());
+        encoder.setMaxTableCapacity(configuration.getMaxEncoderTableCapacity());
+        encoder.setIndexingThreshold(configuration.getEncoderIndexingThreshold());
         addBean(encoder);
         if (LOG.isDebugEnabled())
             LOG.debug("created encoder stream #{} on {}", encoderStreamId, encoderEndPoint);
@@ -107,9 +112,12 @@ public class ClientHTTP3Session extends ClientProtocolSession
     {
         // Queue the mandatory SETTINGS frame.
         Map<Long, Long> settings = session.onPreface();
-        if (settings == null)
-            settings = Map.of();
-        // TODO: add default settings.
+        settings = settings == null ? new HashMap<>() : new HashMap<>(settings);
+        settings.putIfAbsent(SettingsFrame.MAX_TABLE_CAPACITY, (long)configuration.getMaxDecoderTableCapacity());
+        settings.putIfAbsent(SettingsFrame.MAX_BLOCKED_STREAMS, (long)configuration.getMaxBlockedStreams());
+        // The local decoder enforces the limits advertised to the remote encoder.
+        decoder.setMaxTableCapacity(settings.get(SettingsFrame.MAX_TABLE_CAPACITY).intValue());
+        decoder.setMaxBlockedStreams(settings.get(SettingsFrame.MAX_BLOCKED_STREAMS).intValue());
         SettingsFrame frame = new SettingsFrame(settings);
         if (controlFlusher.offer(frame, Callback.from(Invocable.InvocationType.NON_BLOCKING, session::onOpen, this::failControlStream)))
             controlFlusher.iterate();
@@ -150,7 +150,7 @@ public class HTTP3SessionClient extends HTTP3Session implements Session.Client
     @Override
     protected void onSettingMaxTableCapacity(long value)
     {
-        getProtocolSession().getQpackEncoder().setCapacity((int)value);
+        getProtocolSession().getQpackEncoder().setCapacity((int)Math.min(value, Integer.MAX_VALUE));
     }
 
     @Override
@@ -162,8 +162,7 @@ public class HTTP3SessionClient extends HTTP3Session implements Session.Client
     @Override
     protected void onSettingMaxBlockedStreams(long value)
     {
-        ClientHTTP3Session session = getProtocolSession();
-        session.getQpackDecoder().setMaxBlockedStreams((int)value);
-        session.getQpackEncoder().setMaxBlockedStreams((int)value);
+        // The local decoder uses the value advertised in the local SETTINGS.
+        getProtocolSession().getQpackEncoder().setMaxBlockedStreams((int)Math.min(value, Integer.MAX_VALUE));
     }
 }
@@ -28,6 +28,9 @@ public class HTTP3Configuration
     private boolean useInputDirectByteBuffers = true;
     private boolean useOutputDirectByteBuffers = true;
     private int maxBlockedStreams = 0;
+    private int maxDecoderTableCapacity = 4096;
+    private int maxEncoderTableCapacity = 4096;
+    private int encoderIndexingThreshold = 2;
     private int maxRequestHeadersSize = 8192;
     private int maxResponseHeadersSize = 8192;
 
@@ -97,6 +100,67 @@ public class HTTP3Configuration
         this.maxBlockedStreams = maxBlockedStreams;
     }
 
+    @ManagedAttribute("The max capacity of the QPACK decoder dynamic table")
+    public int getMaxDecoderTableCapacity()
+    {
+        return maxDecoderTableCapacity;
+    }
+
+    /**
+     * <p>Sets the max capacity of the QPACK decoder dynamic table, advertised
+     * to the remote peer via {@code SETTINGS_QPACK_MAX_TABLE_CAPACITY}.</p>
+     * <p>A value of {@code 0} disables the use of the dynamic table by the remote encoder.</p>
+     *
+     * @param maxDecoderTableCapacity the max capacity of the QPACK decoder dynamic table
+     */
+    public void setMaxDecoderTableCapacity(int maxDecoderTableCapacity)
+    {
+        this.maxDecoderTableCapacity = maxDecoderTableCapacity;
+    }
+
+    @ManagedAttribute("The max capacity of the QPACK encoder dynamic table")
+    public int getMaxEncoderTableCapacity()
+    {
+        return maxEncoderTableCapacity;
+    }
+
+    /**
+     * <p>Sets the max capacity of the QPACK encoder dynamic table.</p>
+     * <p>The encoder uses the smaller of this value and the capacity advertised
+     * by the remote peer; a value of {@code 0} disables the use of the dynamic table.</p>
+     *
+     * @param maxEncoderTableCapacity the max capacity of the QPACK encoder dynamic table
+     */
+    public void setMaxEncoderTableCapacity(int maxEncoderTableCapacity)
+    {
+        this.maxEncoderTableCapacity = maxEncoderTableCapacity;
+    }
+
+    @ManagedAttribute("The number of times a field must be encoded before the QPACK encoder indexes it")
+    public int getEncoderIndexingThreshold()
+    {
+        return encoderIndexingThreshold;
+    }
+
+    /**
+     * <p>Sets the number of times a field must be encoded before the QPACK encoder
+     * inserts it into the dynamic table.</p>
+     * <p>The default is {@code 2}, unlike the default of {@code 1} of a standalone
+     * {@link org.eclipse.jetty.http3.qpack.QpackEncoder}: fields that are sent only once,
+     * such as large one-off values, are encoded as literals, so that they do not evict the
+     * repeated fields from the dynamic table, and so that their encoded size is still checked
+     * against the max headers size.
+     * A value of {@code 1} inserts every indexable field the first time it is seen.</p>
+     *
+     * @param encoderIndexingThreshold the number of times a field must be encoded
+     * before the QPACK encoder inserts it into the dynamic table
+     * @see org.eclipse.jetty.http3.qpack.QpackEncoder#setIndexingThreshold(int)
+     */
+    public void setEncoderIndexingThreshold(int encoderIndexingThreshold)
+    {
+        this.encoderIndexingThreshold = encoderIndexingThreshold;
+    }
+
     @ManagedAttribute("The max size of the request headers")
     public int getMaxRequestHeadersSize()
     {
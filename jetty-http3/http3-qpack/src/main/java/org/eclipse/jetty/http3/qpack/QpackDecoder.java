@@ -57,6 +57,7 @@ public class QpackDecoder implements Dumpable
     private final Map<Long, AtomicInteger> _blockedStreams = new HashMap<>();
     private int _maxHeaderSize;
     private int _maxBlockedStreams;
+    private int _maxTableCapacity = -1;
 
     private static class MetaDataNotification
     {
@@ -113,6 +114,20 @@ public class QpackDecoder implements Dumpable
         _maxBlockedStreams = maxBlockedStreams;
     }
 
+    public int getMaxTableCapacity()
+    {
+        return _maxTableCapacity;
+    }
+
+    /**
+     * @param maxTableCapacity the max capacity of the dynamic table that the remote Encoder may set,
+     * as advertised in SETTINGS_QPACK_MAX_TABLE_CAPACITY, or a negative value for no limit
+     */
+    public void setMaxTableCapacity(int maxTableCapacity)
+    {
+        _maxTableCapacity = maxTableCapacity;
+    }
+
     public interface Handler
     {
         void onMetaData(long streamId, MetaData metadata);
@@ -154,7 +169,7 @@ public class QpackDecoder implements Dumpable
         // Decode the Required Insert Count using the DynamicTable state.
         DynamicTable dynamicTable = _context.getDynamicTable();
         int insertCount = dynamicTable.getInsertCount();
-        int maxDynamicTableSize = dynamicTable.getCapacity();
+        int maxDynamicTableSize = _maxTableCapacity >= 0 ? _maxTableCapacity : dynamicTable.getCapacity();
         int requiredInsertCount = decodeInsertCount(encodedInsertCount, insertCount, maxDynamicTableSize);
 
         try
@@ -335,8 +350,10 @@ public class QpackDecoder implements Dumpable
     class InstructionHandler implements DecoderInstructionParser.Handler
     {
         @Override
-        public void onSetDynamicTableCapacity(int capacity)
+        public void onSetDynamicTableCapacity(int capacity) throws QpackException
         {
+            if (_maxTableCapacity >= 0 && capacity > _maxTableCapacity)
+                throw new QpackException.SessionException(QPACK_ENCODER_STREAM_ERROR, "capacity_exceeds_max_table_capacity");
             _context.getDynamicTable().setCapacity(capacity);
         }
 
@@ -19,6 +19,7 @@ import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.EnumSet;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 
@@ -39,6 +40,9 @@ import org.eclipse.jetty.http3.qpack.internal.table.DynamicTable;
 import org.eclipse.jetty.http3.qpack.internal.table.Entry;
 import org.eclipse.jetty.http3.qpack.internal.util.NBitIntegerEncoder;
 import org.eclipse.jetty.util.BufferUtil;
+import org.eclipse.jetty.util.annotation.ManagedAttribute;
+import org.eclipse.jetty.util.annotation.ManagedObject;
+import org.eclipse.jetty.util.annotation.ManagedOperation;
 import org.eclipse.jetty.util.component.Dumpable;
 import org.eclipse.jetty.util.thread.AutoLock;
 import org.slf4j.Logger;
@@ -48,9 +52,11 @@ import static org.eclipse.jetty.http3.qpack.QpackException.H3_GENERAL_PROTOCOL_E
 import static org.eclipse.jetty.http3.qpack.QpackException.QPACK_DECODER_STREAM_ERROR;
 import static org.eclipse.jetty.http3.qpack.QpackException.QPACK_ENCODER_STREAM_ERROR;
 
+@ManagedObject
 public class QpackEncoder implements Dumpable
 {
     private static final Logger LOG = LoggerFactory.getLogger(QpackEncoder.class);
+    private static final int MAX_TRACKED_FIELDS = 512;
 
     public static final EnumSet<HttpHeader> DO_NOT_HUFFMAN =
         EnumSet.of(
@@ -95,8 +101,25 @@ public class QpackEncoder implements Dumpable
     private final Map<Long, StreamInfo> _streamInfoMap = new HashMap<>();
     private final EncoderInstructionParser _parser;
     private final InstructionHandler _instructionHandler = new InstructionHandler();
+    private final Map<HttpField, Integer> _fieldCounts = new LinkedHashMap<>(64, 0.75F, true)
+    {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<HttpField, Integer> eldest)
+        {
+            return size() > MAX_TRACKED_FIELDS;
+        }
+    };
     private int _knownInsertCount = 0;
     private int _blockedStreams = 0;
+    private int _maxTableCapacity = Integer.MAX_VALUE;
+    private int _decoderMaxTableCapacity;
+    private int _indexingThreshold = 1;
+    private long _encodedSections;
+    private long _uncompressedBytes;
+    private long _encodedBytes;
+    private long _insertions;
+    private long _blockedStreamEvents;
+    private long _blockedStreamRefusals;
 
     public QpackEncoder(Instruction.Handler handler, int maxBlockedStreams)
     {
@@ -111,6 +134,7 @@ public class QpackEncoder implements Dumpable
         return _streamInfoMap;
     }
 
+    @ManagedAttribute("The max number of streams that may be blocked on dynamic table entries")
     public int getMaxBlockedStreams()
     {
         return _maxBlockedStreams;
@@ -121,6 +145,7 @@ public class QpackEncoder implements Dumpable
         _maxBlockedStreams = maxBlockedStreams;
     }
 
+    @ManagedAttribute("The capacity of the dynamic table")
     public int getCapacity()
     {
         return _context.getDynamicTable().getCapacity();
@@ -128,16 +153,148 @@ public class QpackEncoder implements Dumpable
 
     /**
      * Set the capacity of the DynamicTable and send a instruction to set the capacity on the remote Decoder.
+     * The capacity is capped to the {@link #getMaxTableCapacity() max table capacity}.
      *
-     * @param capacity the new capacity.
+     * @param capacity the new capacity, usually the max table capacity allowed by the remote Decoder.
      */
     public void setCapacity(int capacity)
     {
+        // The Required Insert Count is encoded relative to the max capacity of the remote Decoder.
+        _decoderMaxTableCapacity = capacity;
+        capacity = Math.min(capacity, getMaxTableCapacity());
         _context.getDynamicTable().setCapacity(capacity);
         _handler.onInstructions(List.of(new SetCapacityInstruction(capacity)));
         notifyInstructionHandler();
     }
 
+    @ManagedAttribute("The max capacity of the dynamic table, regardless of the capacity allowed by the remote decoder")
+    public int getMaxTableCapacity()
+    {
+        return _maxTableCapacity;
+    }
+
+    /**
+     * <p>Sets the max capacity that this encoder uses for its dynamic table.</p>
+     * <p>The remote decoder advertises the capacity it allows via SETTINGS, and
+     * {@link #setCapacity(int)} uses the smaller of the two, so that an encoder
+     * can bound the memory it retains for each connection.</p>
+     *
+     * @param maxTableCapacity the max capacity of the dynamic table
+     */
+    public void setMaxTableCapacity(int maxTableCapacity)
+    {
+        if (maxTableCapacity < 0)
+            throw new IllegalArgumentException("Invalid max table capacity " + maxTableCapacity);
+        _maxTableCapacity = maxTableCapacity;
+    }
+
+    @ManagedAttribute("The number of times a field must be encoded before it is inserted into the dynamic table")
+    public int getIndexingThreshold()
+    {
+        return _indexingThreshold;
+    }
+
+    /**
+     * <p>Sets the number of times a field (name and value) must be encoded
+     * before it is inserted into the dynamic table.</p>
+     * <p>A threshold of {@code 1} inserts every indexable field the first time
+     * it is seen; higher values only spend dynamic table capacity on fields
+     * that are sent repeatedly, such as the {@code server} or {@code content-type}
+     * response headers, and avoid evicting them with one-off values.
+     * Once the threshold is reached the field is inserted proactively, so that
+     * subsequent header blocks can reference it after the remote decoder has
+     * acknowledged the insertion.</p>
+     *
+     * @param indexingThreshold the number of times a field must be encoded before being indexed
+     */
+    public void setIndexingThreshold(int indexingThreshold)
+    {
+        if (indexingThreshold < 1)
+            throw new IllegalArgumentException("Invalid indexing threshold " + indexingThreshold);
+        try (AutoLock l = lock.lock())
+        {
+            _indexingThreshold = indexingThreshold;
+            _fieldCounts.clear();
+        }
+    }
+
+    @ManagedAttribute("The number of header blocks encoded")
+    public long getEncodedSections()
+    {
+        try (AutoLock l = lock.lock())
+        {
+            return _encodedSections;
+        }
+    }
+
+    @ManagedAttribute("The total length of the names and values of the encoded fields")
+    public long getUncompressedBytes()
+    {
+        try (AutoLock l = lock.lock())
+        {
+            return _uncompressedBytes;
+        }
+    }
+
+    @ManagedAttribute("The total length of the encoded header blocks")
+    public long getEncodedBytes()
+    {
+        try (AutoLock l = lock.lock())
+        {
+            return _encodedBytes;
+        }
+    }
+
+    @ManagedAttribute("The ratio between the encoded bytes and the uncompressed bytes")
+    public double getCompressionRatio()
+    {
+        try (AutoLock l = lock.lock())
+        {
+            return _uncompressedBytes == 0 ? 1.0D : (double)_encodedBytes / _uncompressedBytes;
+        }
+    }
+
+    @ManagedAttribute("The number of entries inserted into the dynamic table")
+    public long getInsertions()
+    {
+        try (AutoLock l = lock.lock())
+        {
+            return _insertions;
+        }
+    }
+
+    @ManagedAttribute("The number of times a stream was allowed to block on unacknowledged entries")
+    public long getBlockedStreamEvents()
+    {
+        try (AutoLock l = lock.lock())
+        {
+            return _blockedStreamEvents;
+        }
+    }
+
+    @ManagedAttribute("The number of times an unacknowledged entry was not referenced because of the max blocked streams")
+    public long getBlockedStreamRefusals()
+    {
+        try (AutoLock l = lock.lock())
+        {
+            return _blockedStreamRefusals;
+        }
+    }
+
+    @ManagedOperation(value = "Resets the statistics", impact = "ACTION")
+    public void resetStatistics()
+    {
+        try (AutoLock l = lock.lock())
+        {
+            _encodedSections = 0;
+            _uncompressedBytes = 0;
+            _encodedBytes = 0;
+            _insertions = 0;
+            _blockedStreamEvents = 0;
+            _blockedStreamRefusals = 0;
+        }
+    }
+
     /**
      * <p>Encodes a {@link MetaData} object into the supplied {@link ByteBuffer} for a specific HTTP/s stream.</p>
      * <p>This method may generate instructions to be sent back over the Encoder stream to the remote Decoder.</p>
@@ -186,9 +343,16 @@ public class QpackEncoder implements Dumpable
 
             try
             {
+                int position = buffer.position();
+                long uncompressedBytes = 0;
                 int requiredInsertCount = 0;
                 for (HttpField field : new Http3Fields(metadata))
                 {
+                    uncompressedBytes += field.getName().length();
+                    String value = field.getValue();
+                    if (value != null)
+                        uncompressedBytes += value.length();
+
                     EncodableEntry entry = encode(streamInfo, field);
                     encodableEntries.add(entry);
 
@@ -208,7 +372,7 @@ public class QpackEncoder implements Dumpable
                 }
 
                 int base = dynamicTable.getBase();
-                int encodedInsertCount = encodeInsertCount(requiredInsertCount, dynamicTable.getCapacity());
+                int encodedInsertCount = encodeInsertCount(requiredInsertCount, _decoderMaxTableCapacity);
                 boolean signBit = base < requiredInsertCount;
                 int deltaBase = signBit ? requiredInsertCount - base - 1 : base - requiredInsertCount;
 
@@ -223,6 +387,10 @@ public class QpackEncoder implements Dumpable
                     entry.encode(buffer, base);
                 }
 
+                _encodedSections++;
+                _uncompressedBytes += uncompressedBytes;
+                _encodedBytes += buffer.position() - position;
+
                 notifyInstructionHandler();
             }
             catch (BufferOverflowException e)
@@ -295,6 +463,7 @@ public class QpackEncoder implements Dumpable
             int index = _context.indexOf(entry);
             dynamicTable.add(new Entry(field));
             _instructions.add(new DuplicateInstruction(index));
+            _insertions++;
             notifyInstructionHandler();
             return true;
         }
@@ -307,6 +476,7 @@ public class QpackEncoder implements Dumpable
             int index = _context.indexOf(nameEntry);
             dynamicTable.add(new Entry(field));
             _instructions.add(new IndexedNameEntryInstruction(!nameEntry.isStatic(), index, huffman, field.getValue()));
+            _insertions++;
             notifyInstructionHandler();
             return true;
         }
@@ -314,6 +484,7 @@ public class QpackEncoder implements Dumpable
         // Add the entry without referencing an existing entry.
         dynamicTable.add(new Entry(field));
         _instructions.add(new LiteralNameEntryInstruction(field, huffman));
+        _insertions++;
         notifyInstructionHandler();
         return true;
     }
@@ -351,27 +522,27 @@ public class QpackEncoder implements Dumpable
         if (field instanceof PreEncodedHttpField)
             return EncodableEntry.getPreEncodedEntry((PreEncodedHttpField)field);
 
-        boolean canCreateEntry = shouldIndex(field) && dynamicTable.canInsert(field);
-
         Entry entry = _context.get(field);
         if (referenceEntry(entry, streamInfo))
-        {
             return EncodableEntry.getReferencedEntry(entry);
-        }
-        else
+
+        // An entry that is not yet acknowledged is not inserted again, as it will become
+        // referenceable soon; an entry that is about to be evicted is duplicated instead.
+        boolean canCreateEntry = shouldIndex(field) && dynamicTable.canInsert(field) &&
+            (entry == null ? isFrequent(field) : !dynamicTable.canReference(entry));
+
+        // Should we duplicate this entry.
+        if (entry != null && canCreateEntry)
         {
-            // Should we duplicate this entry.
-            if (entry != null && canCreateEntry)
-            {
-                int index = _context.indexOf(entry);
-                Entry newEntry = new Entry(field);
-                dynamicTable.add(newEntry);
-                _instructions.add(new DuplicateInstruction(index));
+            int index = _context.indexOf(entry);
+            Entry newEntry = new Entry(field);
+            dynamicTable.add(newEntry);
+            _instructions.add(new DuplicateInstruction(index));
+            _insertions++;
 
-                // Should we reference this entry and risk blocking.
-                if (referenceEntry(newEntry, streamInfo))
-                    return EncodableEntry.getReferencedEntry(newEntry);
-            }
+            // Should we reference this entry and risk blocking.
+            if (referenceEntry(newEntry, streamInfo))
+                return EncodableEntry.getReferencedEntry(newEntry);
         }
 
         boolean huffman = shouldHuffmanEncode(field);
@@ -385,6 +556,7 @@ public class QpackEncoder implements Dumpable
                 Entry newEntry = new Entry(field);
                 dynamicTable.add(newEntry);
                 _instructions.add(new IndexedNameEntryInstruction(!nameEntry.isStatic(), index, huffman, field.getValue()));
+                _insertions++;
 
                 // Should we reference this entry and risk blocking.
                 if (referenceEntry(newEntry, streamInfo))
@@ -400,6 +572,7 @@ public class QpackEncoder implements Dumpable
                 Entry newEntry = new Entry(field);
                 dynamicTable.add(newEntry);
                 _instructions.add(new LiteralNameEntryInstruction(field, huffman));
+                _insertions++;
 
                 // Should we reference this entry and risk blocking.
                 if (referenceEntry(newEntry, streamInfo))
@@ -442,14 +615,29 @@ public class QpackEncoder implements Dumpable
         if (_blockedStreams < getMaxBlockedStreams())
         {
             _blockedStreams++;
+            _blockedStreamEvents++;
             sectionInfo.block();
             sectionInfo.reference(entry);
             return true;
         }
 
+        _blockedStreamRefusals++;
         return false;
     }
 
+    private boolean isFrequent(HttpField field)
+    {
+        if (_indexingThreshold <= 1)
+            return true;
+        // Only fields that are not in the dynamic table are tracked, so once
+        // a field reaches the threshold it is forgotten until it is evicted.
+        int count = _fieldCounts.merge(field, 1, Integer::sum);
+        if (count < _indexingThreshold)
+            return false;
+        _fieldCounts.remove(field);
+        return true;
+    }
+
     private static int encodeInsertCount(int reqInsertCount, int maxTableCapacity)
     {
         if (reqInsertCount == 0)
@@ -0,0 +1,138 @@
+//
+// ========================================================================
+// Copyright (c) 1995-2022 Mort Bay Consulting Pty Ltd and others.
+//
+// This program and the accompanying materials are made available under the
+// terms of the Eclipse Public License v. 2.0 which is available at
+// https://www.eclipse.org/legal/epl-2.0, or the Apache License, Version 2.0
+// which is available at https://www.apache.org/licenses/LICENSE-2.0.
+//
+// SPDX-License-Identifier: EPL-2.0 OR Apache-2.0
+// ========================================================================
+//
+
+package org.eclipse.jetty.http3.qpack;
+
+import java.nio.ByteBuffer;
+
+import org.eclipse.jetty.http.HttpFields;
+import org.eclipse.jetty.http.HttpHeader;
+import org.eclipse.jetty.http.HttpVersion;
+import org.eclipse.jetty.http.MetaData;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.lessThan;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class EncoderStatisticsTest
+{
+    private static final int MAX_HEADER_SIZE = 1024;
+
+    private final TestDecoderHandler _decoderHandler = new TestDecoderHandler();
+    private final TestEncoderHandler _encoderHandler = new TestEncoderHandler();
+    private QpackDecoder _decoder;
+
+    @BeforeEach
+    public void before()
+    {
+        _decoder = new QpackDecoder(_decoderHandler, MAX_HEADER_SIZE);
+    }
+
+    private MetaData newResponse()
+    {
+        HttpFields fields = HttpFields.build()
+            .put(HttpHeader.SERVER, "Jetty(10.0.x)")
+            .put(HttpHeader.CONTENT_TYPE, "application/json;charset=utf-8")
+            .put("x-request-class", "interactive-api");
+        return new MetaData.Response(HttpVersion.HTTP_3, 200, fields);
+    }
+
+    private int encodeAndDecode(QpackEncoder encoder, long streamId, MetaData metaData) throws Exception
+    {
+        ByteBuffer buffer = ByteBuffer.allocate(1024);
+        encoder.encode(buffer, streamId, metaData);
+        _decoder.parseInstructions(_encoderHandler.getInstructionBuffer());
+        buffer.flip();
+        int length = buffer.remaining();
+        _decoder.decode(streamId, buffer, _decoderHandler);
+        encoder.parseInstructions(_decoderHandler.getInstructionBuffer());
+        MetaData result = _decoderHandler.getMetaData();
+        assertTrue(result.getFields().isEqualTo(metaData.getFields()));
+        return length;
+    }
+
+    @Test
+    public void testRepeatedFieldsAreIndexedAfterThreshold() throws Exception
+    {
+        QpackEncoder encoder = new QpackEncoder(_encoderHandler, 0);
+        encoder.setIndexingThreshold(3);
+        encoder.setCapacity(1024);
+
+        MetaData response = newResponse();
+        int first = encodeAndDecode(encoder, 0, response);
+        encodeAndDecode(encoder, 4, response);
+        assertEquals(0, encoder.getInsertions());
+
+        // The threshold is reached, the fields are inserted but cannot be
+        // referenced until the decoder acknowledges them, as streams cannot block.
+        encodeAndDecode(encoder, 8, response);
+        assertEquals(3, encoder.getInsertions());
+        assertThat(encoder.getBlockedStreamRefusals(), greaterThan(0L));
+
+        int last = 0;
+        for (int i = 3; i < 10; ++i)
+        {
+            last = encodeAndDecode(encoder, 4L * i, response);
+        }
+
+        // The entries have been acknowledged and are now referenced.
+        assertEquals(3, encoder.getInsertions());
+        assertEquals(0, encoder.getBlockedStreamEvents());
+        assertThat(last, lessThan(first));
+        assertEquals(10, encoder.getEncodedSections());
+        assertThat(encoder.getCompressionRatio(), lessThan(1.0D));
+
+        encoder.resetStatistics();
+        assertEquals(0, encoder.getEncodedSections());
+        assertEquals(0, encoder.getEncodedBytes());
+    }
+
+    @Test
+    public void testUnacknowledgedEntriesAreNotInsertedAgain() throws Exception
+    {
+        QpackEncoder encoder = new QpackEncoder(_encoderHandler, 1);
+        encoder.setCapacity(1024);
+
+        // The first stream may block on the entries it inserts.
+        MetaData response = newResponse();
+        ByteBuffer buffer = ByteBuffer.allocate(1024);
+        encoder.encode(buffer, 0, response);
+        assertEquals(3, encoder.getInsertions());
+        assertEquals(1, encoder.getBlockedStreamEvents());
+
+        // A second stream cannot block, and the entries are not duplicated.
+        buffer.clear();
+        encoder.encode(buffer, 4, response);
+        assertEquals(3, encoder.getInsertions());
+        assertEquals(1, encoder.getBlockedStreamEvents());
+        assertThat(encoder.getBlockedStreamRefusals(), greaterThan(0L));
+    }
+
+    @Test
+    public void testMaxTableCapacity() throws Exception
+    {
+        QpackEncoder encoder = new QpackEncoder(_encoderHandler, 0);
+        encoder.setMaxTableCapacity(512);
+        encoder.setCapacity(4096);
+        assertEquals(512, encoder.getCapacity());
+
+        _decoder.setMaxTableCapacity(256);
+        ByteBuffer instructions = _encoderHandler.getInstructionBuffer();
+        assertThrows(QpackException.SessionException.class, () -> _decoder.parseInstructions(instructions));
+    }
+}
@@ -98,7 +98,7 @@ public class HTTP3SessionServer extends HTTP3Session implements Session.Server
     @Override
     protected void onSettingMaxTableCapacity(long value)
     {
-        getProtocolSession().getQpackEncoder().setCapacity((int)value);
+        getProtocolSession().getQpackEncoder().setCapacity((int)Math.min(value, Integer.MAX_VALUE));
     }
 
     @Override
@@ -110,9 +110,8 @@ public class HTTP3SessionServer extends HTTP3Session implements Session.Server
     @Override
     protected void onSettingMaxBlockedStreams(long value)
     {
-        ServerHTTP3Session session = getProtocolSession();
-        session.getQpackDecoder().setMaxBlockedStreams((int)value);
-        session.getQpackEncoder().setMaxBlockedStreams((int)value);
+        // The local decoder uses the value advertised in the local SETTINGS.
+        getProtocolSession().getQpackEncoder().setMaxBlockedStreams((int)Math.min(value, Integer.MAX_VALUE));
     }
 
     private void notifyAccept()
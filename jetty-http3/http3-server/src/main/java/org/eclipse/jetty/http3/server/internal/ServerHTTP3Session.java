@@ -13,6 +13,7 @@
 
 package org.eclipse.jetty.http3.server.internal;
 
+import java.util.HashMap;
 import java.util.Map;
 import java.util.concurrent.CompletableFuture;
 
@@ -44,6 +45,7 @@ public class ServerHTTP3Session extends ServerProtocolSession
     private static final Logger LOG = LoggerFactory.getLogger(ServerHTTP3Session.class);
 
     private final HTTP3SessionServer session;
+    private final HTTP3Configuration configuration;
     private final QpackEncoder encoder;
     private final QpackDecoder decoder;
     private final ControlFlusher controlFlusher;
@@ -52,6 +54,7 @@ public class ServerHTTP3Session extends ServerProtocolSession
     public ServerHTTP3Session(HTTP3Configuration configuration, ServerQuicSession quicSession, Session.Server.Listener listener)
     {
         super(quicSession);
+        this.configuration = configuration;
         this.session = new HTTP3SessionServer(this, listener);
         addBean(session);
         session.setStreamIdleTimeout(configuration.getStreamIdleTimeout());
@@ -63,6 +66,8 @@ public class ServerHTTP3Session extends ServerProtocolSession
         QuicStreamEndPoint encoderEndPoint = openInstructionEndPoint(encoderStreamId);
         InstructionFlusher encoderInstructionFlusher = new InstructionFlusher(quicSession, encoderEndPoint, EncoderStreamConnection.STREAM_TYPE);
         this.encoder = new QpackEncoder(new InstructionHandler(encoderInstructionFlusher), configuration.getMaxBlockedStreams());
+        encoder.setMaxTableCapacity(configuration.getMaxEncoderTableCapacity());
+        encoder.setIndexingThreshold(configuration.getEncoderIndexingThreshold());
         addBean(encoder);
         if (LOG.isDebugEnabled())
             LOG.debug("created encoder stream #{} on {}", encoderStreamId, encoderEndPoint);
@@ -106,9 +111,12 @@ public class ServerHTTP3Session extends ServerProtocolSession
     {
         // Queue the mandatory SETTINGS frame.
         Map<Long, Long> settings = session.onPreface();
-        if (settings == null)
-            settings = Map.of();
-        // TODO: add default settings.
+        settings = settings == null ? new HashMap<>() : new HashMap<>(settings);
+        settings.putIfAbsent(SettingsFrame.MAX_TABLE_CAPACITY, (long)configuration.getMaxDecoderTableCapacity());
+        settings.putIfAbsent(SettingsFrame.MAX_BLOCKED_STREAMS, (long)configuration.getMaxBlockedStreams());
+        // The local decoder enforces the limits advertised to the remote encoder.
+        decoder.setMaxTableCapacity(settings.get(SettingsFrame.MAX_TABLE_CAPACITY).intValue());
+        decoder.setMaxBlockedStreams(settings.get(SettingsFrame.MAX_BLOCKED_STREAMS).intValue());
         SettingsFrame frame = new SettingsFrame(settings);
         if (controlFlusher.offer(frame, Callback.from(Invocable.InvocationType.NON_BLOCKING, session::onOpen, this::failControlStream)))
             controlFlusher.iterate();
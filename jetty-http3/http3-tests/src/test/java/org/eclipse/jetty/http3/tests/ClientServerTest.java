@@ -17,11 +17,13 @@ import java.nio.ByteBuffer;
 import java.util.AbstractMap;
 import java.util.Map;
 import java.util.Random;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicReference;
 
 import org.eclipse.jetty.http.HttpFields;
+import org.eclipse.jetty.http.HttpHeader;
 import org.eclipse.jetty.http.HttpMethod;
 import org.eclipse.jetty.http.HttpStatus;
 import org.eclipse.jetty.http.HttpVersion;
@@ -34,6 +36,7 @@ import org.eclipse.jetty.http3.frames.HeadersFrame;
 import org.eclipse.jetty.http3.frames.SettingsFrame;
 import org.eclipse.jetty.http3.internal.HTTP3ErrorCode;
 import org.eclipse.jetty.http3.internal.HTTP3Session;
+import org.eclipse.jetty.http3.qpack.QpackEncoder;
 import org.eclipse.jetty.http3.server.AbstractHTTP3ServerConnectionFactory;
 import org.eclipse.jetty.http3.server.internal.HTTP3SessionServer;
 import org.eclipse.jetty.quic.client.ClientQuicSession;
@@ -42,6 +45,8 @@ import org.junit.jupiter.api.Test;
 import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.ValueSource;
 
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.lessThan;
 import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
@@ -146,6 +151,51 @@ public class ClientServerTest extends AbstractClientServerTest
         assertEquals(maxHeaderSize.getValue(), clientSession.getProtocolSession().getQpackDecoder().getMaxHeaderSize());
     }
 
+    @Test
+    public void testRepeatedResponseHeadersUseDynamicTable() throws Exception
+    {
+        HttpFields responseFields = HttpFields.build()
+            .put(HttpHeader.CONTENT_TYPE, "application/json;charset=utf-8")
+            .put("x-api-version", "2022-03-01");
+        AtomicReference<HTTP3SessionServer> serverSessionRef = new AtomicReference<>();
+        start(new Session.Server.Listener()
+        {
+            @Override
+            public Stream.Server.Listener onRequest(Stream.Server stream, HeadersFrame frame)
+            {
+                serverSessionRef.set((HTTP3SessionServer)stream.getSession());
+                stream.respond(new HeadersFrame(new MetaData.Response(HttpVersion.HTTP_3, HttpStatus.OK_200, responseFields), true));
+                return null;
+            }
+        });
+
+        Session.Client clientSession = newSession(new Session.Client.Listener() {});
+
+        int count = 10;
+        for (int i = 0; i < count; ++i)
+        {
+            CompletableFuture<MetaData.Response> responseFuture = new CompletableFuture<>();
+            clientSession.newRequest(new HeadersFrame(newRequest("/" + i), true), new Stream.Client.Listener()
+                {
+                    @Override
+                    public void onResponse(Stream.Client stream, HeadersFrame frame)
+                    {
+                        responseFuture.complete((MetaData.Response)frame.getMetaData());
+                    }
+                })
+                .get(5, TimeUnit.SECONDS);
+            MetaData.Response response = responseFuture.get(5, TimeUnit.SECONDS);
+            assertEquals(responseFields.get(HttpHeader.CONTENT_TYPE), response.getFields().get(HttpHeader.CONTENT_TYPE));
+            assertEquals(responseFields.get("x-api-version"), response.getFields().get("x-api-version"));
+        }
+
+        QpackEncoder encoder = serverSessionRef.get().getProtocolSession().getQpackEncoder();
+        assertEquals(count, encoder.getEncodedSections());
+        // The repeated response fields are inserted once, then referenced.
+        assertEquals(responseFields.size(), encoder.getInsertions());
+        assertThat(encoder.getCompressionRatio(), lessThan(0.5D));
+    }
+
     @Test
     public void testGETThenResponseWithoutContent() throws Exception
     {
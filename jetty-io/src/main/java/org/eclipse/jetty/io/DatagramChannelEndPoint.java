@@ -20,6 +20,7 @@ import java.nio.ByteBuffer;
 import java.nio.channels.DatagramChannel;
 import java.nio.channels.SelectionKey;
 import java.nio.channels.WritePendingException;
+import java.util.concurrent.atomic.LongAdder;
 
 import org.eclipse.jetty.util.BufferUtil;
 import org.eclipse.jetty.util.Callback;
@@ -29,12 +30,20 @@ import org.slf4j.LoggerFactory;
 
 /**
  * <p>An {@link EndPoint} implementation based on {@link DatagramChannel}.</p>
+ * <p>Datagrams can be received in batches with {@link #receive(ByteBuffer[], SocketAddress[])}
+ * and sent in batches with {@link #send(SocketAddress, ByteBuffer...)}; the number of datagrams
+ * and the number of batches are counted, so that the average batch size can be monitored.</p>
  */
 public class DatagramChannelEndPoint extends SelectableChannelEndPoint
 {
     public static final SocketAddress EOF = InetSocketAddress.createUnresolved("", 0);
     private static final Logger LOG = LoggerFactory.getLogger(DatagramChannelEndPoint.class);
 
+    private final LongAdder receivedPackets = new LongAdder();
+    private final LongAdder receiveBatches = new LongAdder();
+    private final LongAdder sentPackets = new LongAdder();
+    private final LongAdder sendBatches = new LongAdder();
+
     public DatagramChannelEndPoint(DatagramChannel channel, ManagedSelector selector, SelectionKey key, Scheduler scheduler)
     {
         super(scheduler, channel, selector, key);
@@ -66,6 +75,8 @@ public class DatagramChannelEndPoint extends SelectableChannelEndPoint
             return null;
 
         notIdle();
+        receivedPackets.increment();
+        receiveBatches.increment();
 
         int filled = buffer.remaining();
         if (LOG.isDebugEnabled())
@@ -73,6 +84,48 @@ public class DatagramChannelEndPoint extends SelectableChannelEndPoint
         return peer;
     }
 
+    /**
+     * <p>Receives as many datagrams as available, up to the number of the given buffers.</p>
+     * <p>The i-th datagram is received into the i-th buffer, which is cleared before
+     * being filled, and its peer address is stored at the i-th index of the
+     * given addresses array.</p>
+     *
+     * @param buffers the buffers to fill with data, one datagram per buffer
+     * @param peers the array to store the peer addresses into, at least as long as the buffers array
+     * @return the number of datagrams received, or -1 if the input is shut down
+     * @throws IOException if the receive fails
+     */
+    public int receive(ByteBuffer[] buffers, SocketAddress[] peers) throws IOException
+    {
+        if (isInputShutdown())
+            return -1;
+
+        DatagramChannel channel = getChannel();
+        int count = 0;
+        while (count < buffers.length)
+        {
+            ByteBuffer buffer = buffers[count];
+            BufferUtil.clear(buffer);
+            int pos = BufferUtil.flipToFill(buffer);
+            SocketAddress peer = channel.receive(buffer);
+            BufferUtil.flipToFlush(buffer, pos);
+            if (peer == null)
+                break;
+            peers[count++] = peer;
+        }
+
+        if (count > 0)
+        {
+            notIdle();
+            receivedPackets.add(count);
+            receiveBatches.increment();
+        }
+
+        if (LOG.isDebugEnabled())
+            LOG.debug("received {} datagram(s) on {}", count, this);
+        return count;
+    }
+
     /**
      * <p>Sends to the given address the data in the given buffers.</p>
      * <p>This methods should be used to send UDP data.</p>
@@ -91,8 +144,13 @@ public class DatagramChannelEndPoint extends SelectableChannelEndPoint
         {
             if (LOG.isDebugEnabled())
                 LOG.debug("flushing {} buffer(s) to {}", buffers.length, address);
+            int packets = 0;
             for (ByteBuffer buffer : buffers)
             {
+                // Skip empty buffers, as zero-length datagrams
+                // cannot be distinguished from a failed send.
+                if (!buffer.hasRemaining())
+                    continue;
                 int sent = getChannel().send(buffer, address);
                 if (sent == 0)
                 {
@@ -100,6 +158,12 @@ public class DatagramChannelEndPoint extends SelectableChannelEndPoint
                     break;
                 }
                 flushed += sent;
+                ++packets;
+            }
+            if (packets > 0)
+            {
+                sentPackets.add(packets);
+                sendBatches.increment();
             }
             if (LOG.isDebugEnabled())
                 LOG.debug("flushed {} byte(s), all flushed? {} - {}", flushed, flushedAll, this);
@@ -129,4 +193,47 @@ public class DatagramChannelEndPoint extends SelectableChannelEndPoint
     {
         getWriteFlusher().write(callback, address, buffers);
     }
+
+    /**
+     * @return the number of datagrams received
+     */
+    public long getReceivedPackets()
+    {
+        return receivedPackets.sum();
+    }
+
+    /**
+     * @return the number of receive operations that received at least one datagram
+     */
+    public long getReceiveBatches()
+    {
+        return receiveBatches.sum();
+    }
+
+    /**
+     * @return the number of datagrams sent
+     */
+    public long getSentPackets()
+    {
+        return sentPackets.sum();
+    }
+
+    /**
+     * @return the number of send operations that sent at least one datagram
+     */
+    public long getSendBatches()
+    {
+        return sendBatches.sum();
+    }
+
+    /**
+     * <p>Resets the datagram statistics.</p>
+     */
+    public void resetStatistics()
+    {
+        receivedPackets.reset();
+        receiveBatches.reset();
+        sentPackets.reset();
+        sendBatches.reset();
+    }
 }
@@ -0,0 +1,108 @@
+//
+// ========================================================================
+// Copyright (c) 1995-2022 Mort Bay Consulting Pty Ltd and others.
+//
+// This program and the accompanying materials are made available under the
+// terms of the Eclipse Public License v. 2.0 which is available at
+// https://www.eclipse.org/legal/epl-2.0, or the Apache License, Version 2.0
+// which is available at https://www.apache.org/licenses/LICENSE-2.0.
+//
+// SPDX-License-Identifier: EPL-2.0 OR Apache-2.0
+// ========================================================================
+//
+
+package org.eclipse.jetty.io;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.jetty.util.BufferUtil;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class DatagramChannelEndPointTest
+{
+    private DatagramChannelEndPoint sender;
+    private DatagramChannelEndPoint receiver;
+
+    @BeforeEach
+    public void prepare() throws Exception
+    {
+        InetSocketAddress loopback = new InetSocketAddress(InetAddress.getLoopbackAddress(), 0);
+        DatagramChannel senderChannel = DatagramChannel.open().bind(loopback);
+        senderChannel.configureBlocking(false);
+        sender = new DatagramChannelEndPoint(senderChannel, null, null, null);
+        DatagramChannel receiverChannel = DatagramChannel.open().bind(loopback);
+        receiverChannel.configureBlocking(false);
+        receiver = new DatagramChannelEndPoint(receiverChannel, null, null, null);
+    }
+
+    @AfterEach
+    public void dispose()
+    {
+        sender.close();
+        receiver.close();
+    }
+
+    @Test
+    public void testBatchSendAndReceive() throws Exception
+    {
+        int count = 5;
+        ByteBuffer[] packets = new ByteBuffer[count];
+        for (int i = 0; i < count; ++i)
+        {
+            packets[i] = BufferUtil.toBuffer("packet_" + i);
+        }
+        SocketAddress receiverAddress = receiver.getChannel().getLocalAddress();
+        assertTrue(sender.send(receiverAddress, packets));
+        assertEquals(count, sender.getSentPackets());
+        assertEquals(1, sender.getSendBatches());
+
+        ByteBuffer[] buffers = new ByteBuffer[3];
+        for (int i = 0; i < buffers.length; ++i)
+        {
+            buffers[i] = BufferUtil.allocate(64);
+        }
+        SocketAddress[] peers = new SocketAddress[buffers.length];
+        List<String> received = new ArrayList<>();
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (received.size() < count && System.nanoTime() < deadline)
+        {
+            int filled = receiver.receive(buffers, peers);
+            assertTrue(filled <= buffers.length);
+            for (int i = 0; i < filled; ++i)
+            {
+                assertEquals(sender.getChannel().getLocalAddress(), peers[i]);
+                received.add(BufferUtil.toString(buffers[i]));
+            }
+            if (filled == 0)
+                Thread.sleep(10);
+        }
+
+        assertEquals(List.of("packet_0", "packet_1", "packet_2", "packet_3", "packet_4"), received);
+        assertEquals(count, receiver.getReceivedPackets());
+        assertTrue(receiver.getReceiveBatches() >= 2);
+
+        receiver.resetStatistics();
+        assertEquals(0, receiver.getReceivedPackets());
+        assertEquals(0, receiver.getReceiveBatches());
+    }
+
+    @Test
+    public void testBatchReceiveAfterInputShutdown() throws Exception
+    {
+        receiver.shutdownInput();
+        ByteBuffer[] buffers = {BufferUtil.allocate(64)};
+        assertEquals(-1, receiver.receive(buffers, new SocketAddress[1]));
+    }
+}
@@ -40,6 +40,9 @@ etc/jetty-openid.xml
 ## Whether to Authenticate users not found by base LoginService
 # jetty.openid.authenticateNewUsers=false
 
+## The interval in milliseconds between refreshes of the discovered provider metadata (0 to never refresh)
+# jetty.openid.metadataRefreshInterval=0
+
 ## True if all certificates should be trusted by the default SslContextFactory
 # jetty.openid.sslContextFactory.trustAll=false
 
@@ -18,15 +18,21 @@ import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 
 import org.eclipse.jetty.client.HttpClient;
+import org.eclipse.jetty.client.api.Result;
 import org.eclipse.jetty.client.http.HttpClientTransportOverHTTP;
+import org.eclipse.jetty.client.util.BufferingResponseListener;
+import org.eclipse.jetty.http.HttpStatus;
 import org.eclipse.jetty.io.ClientConnector;
 import org.eclipse.jetty.util.ajax.JSON;
 import org.eclipse.jetty.util.annotation.Name;
 import org.eclipse.jetty.util.component.ContainerLifeCycle;
 import org.eclipse.jetty.util.ssl.SslContextFactory;
+import org.eclipse.jetty.util.thread.AutoLock;
+import org.eclipse.jetty.util.thread.Scheduler;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -35,11 +41,17 @@ import org.slf4j.LoggerFactory;
  *
  * This uses the OpenID Provider URL with the path {@link #CONFIG_PATH} to discover
  * the required information about the OIDC service.
+ *
+ * The discovered metadata is cached, and it can be refreshed in the background
+ * every {@link #getMetadataRefreshInterval() metadata refresh interval}, so that
+ * changes of the provider are picked up without fetching the metadata for every
+ * login; if a refresh fails, the previously discovered metadata is kept.
  */
 public class OpenIdConfiguration extends ContainerLifeCycle
 {
     private static final Logger LOG = LoggerFactory.getLogger(OpenIdConfiguration.class);
     private static final String CONFIG_PATH = "/.well-known/openid-configuration";
+    private static final long METADATA_TIMEOUT = TimeUnit.SECONDS.toMillis(30);
 
     private final HttpClient httpClient;
     private final String issuer;
@@ -47,9 +59,14 @@ public class OpenIdConfiguration extends ContainerLifeCycle
     private final String clientSecret;
     private final List<String> scopes = new ArrayList<>();
     private final String authMethod;
-    private String authEndpoint;
-    private String tokenEndpoint;
+    private final boolean discoverEndpoints;
+    private final AutoLock lock = new AutoLock();
+    private volatile Map<String, Object> metadata = Collections.emptyMap();
+    private volatile String authEndpoint;
+    private volatile String tokenEndpoint;
     private boolean authenticateNewUsers = false;
+    private long metadataRefreshInterval;
+    private Scheduler.Task metadataRefreshTask;
 
     /**
      * Create an OpenID configuration for a specific OIDC provider.
@@ -102,6 +119,7 @@ public class OpenIdConfiguration extends ContainerLifeCycle
         this.tokenEndpoint = tokenEndpoint;
         this.httpClient = httpClient != null ? httpClient : newHttpClient();
         this.authMethod = authMethod;
+        this.discoverEndpoints = authorizationEndpoint == null || tokenEndpoint == null;
 
         if (this.issuer == null)
             throw new IllegalArgumentException("Issuer was not configured");
@@ -114,23 +132,88 @@ public class OpenIdConfiguration extends ContainerLifeCycle
     {
         super.doStart();
 
-        if (authEndpoint == null || tokenEndpoint == null)
+        if (discoverEndpoints)
         {
-            Map<String, Object> discoveryDocument = fetchOpenIdConnectMetadata(issuer, httpClient);
+            updateMetadata(fetchOpenIdConnectMetadata(issuer, httpClient));
+            scheduleMetadataRefresh();
+        }
+    }
 
-            authEndpoint = (String)discoveryDocument.get("authorization_endpoint");
-            if (authEndpoint == null)
-                throw new IllegalArgumentException("authorization_endpoint");
+    @Override
+    protected void doStop() throws Exception
+    {
+        try (AutoLock l = lock.lock())
+        {
+            if (metadataRefreshTask != null)
+                metadataRefreshTask.cancel();
+            metadataRefreshTask = null;
+        }
+        super.doStop();
+    }
+
+    private void updateMetadata(Map<String, Object> discoveryDocument)
+    {
+        String authEndpoint = (String)discoveryDocument.get("authorization_endpoint");
+        if (authEndpoint == null)
+            throw new IllegalArgumentException("authorization_endpoint");
 
-            tokenEndpoint = (String)discoveryDocument.get("token_endpoint");
-            if (tokenEndpoint == null)
-                throw new IllegalArgumentException("token_endpoint");
+        String tokenEndpoint = (String)discoveryDocument.get("token_endpoint");
+        if (tokenEndpoint == null)
+            throw new IllegalArgumentException("token_endpoint");
 
-            if (!Objects.equals(discoveryDocument.get("issuer"), issuer))
-                LOG.warn("The issuer in the metadata is not correct.");
+        if (!Objects.equals(discoveryDocument.get("issuer"), issuer))
+            LOG.warn("The issuer in the metadata is not correct.");
+
+        this.authEndpoint = authEndpoint;
+        this.tokenEndpoint = tokenEndpoint;
+        metadata = Collections.unmodifiableMap(discoveryDocument);
+    }
+
+    private void scheduleMetadataRefresh()
+    {
+        long interval = getMetadataRefreshInterval();
+        if (interval <= 0)
+            return;
+        try (AutoLock l = lock.lock())
+        {
+            if (isRunning())
+                metadataRefreshTask = httpClient.getScheduler().schedule(this::refreshMetadata, interval, TimeUnit.MILLISECONDS);
         }
     }
 
+    private void refreshMetadata()
+    {
+        // The scheduler thread only sends the request: it also runs the timeouts of the
+        // HttpClient, so it must not wait for the response of a slow OpenID provider.
+        httpClient.newRequest(metadataURI(issuer))
+            .timeout(METADATA_TIMEOUT, TimeUnit.MILLISECONDS)
+            .send(new BufferingResponseListener()
+            {
+                @Override
+                public void onComplete(Result result)
+                {
+                    try
+                    {
+                        if (result.isFailed())
+                            throw new IllegalArgumentException("invalid identity provider " + issuer, result.getFailure());
+                        if (result.getResponse().getStatus() != HttpStatus.OK_200)
+                            throw new IllegalArgumentException("invalid identity provider " + issuer + ": " + result.getResponse().getStatus());
+                        updateMetadata(parseOpenIdConnectMetadata(getContentAsString()));
+                        if (LOG.isDebugEnabled())
+                            LOG.debug("Refreshed metadata of {}", issuer);
+                    }
+                    catch (Throwable x)
+                    {
+                        LOG.warn("Unable to refresh the metadata of {}, keeping the previous metadata", issuer, x);
+                    }
+                    finally
+                    {
+                        scheduleMetadataRefresh();
+                    }
+                }
+            });
+    }
+
     private static HttpClient newHttpClient()
     {
         ClientConnector connector = new ClientConnector();
@@ -138,32 +221,22 @@ public class OpenIdConfiguration extends ContainerLifeCycle
         return new HttpClient(new HttpClientTransportOverHTTP(connector));
     }
 
+    private static String metadataURI(String provider)
+    {
+        if (provider.endsWith("/"))
+            provider = provider.substring(0, provider.length() - 1);
+        return provider + CONFIG_PATH;
+    }
+
     private static Map<String, Object> fetchOpenIdConnectMetadata(String provider, HttpClient httpClient)
     {
         try
         {
-            if (provider.endsWith("/"))
-                provider = provider.substring(0, provider.length() - 1);
-
-            Map<String, Object> result;
-            String responseBody = httpClient.GET(provider + CONFIG_PATH).getContentAsString();
-            Object parsedResult = new JSON().fromJSON(responseBody);
-
-            if (parsedResult instanceof Map)
-            {
-                Map<?, ?> rawResult = (Map<?, ?>)parsedResult;
-                result = rawResult.entrySet().stream()
-                        .filter(entry -> entry.getValue() != null)
-                        .collect(Collectors.toMap(it -> it.getKey().toString(), Map.Entry::getValue));
-                if (LOG.isDebugEnabled())
-                    LOG.debug("discovery document {}", result);
-                return result;
-            }
-            else
-            {
-                LOG.warn("OpenID provider did not return a proper JSON object response. Result was '{}'", responseBody);
-                throw new IllegalStateException("Could not parse OpenID provider's malformed response");
-            }
+            String responseBody = httpClient.newRequest(metadataURI(provider))
+                .timeout(METADATA_TIMEOUT, TimeUnit.MILLISECONDS)
+                .send()
+                .getContentAsString();
+            return parseOpenIdConnectMetadata(responseBody);
         }
         catch (Exception e)
         {
@@ -171,6 +244,53 @@ public class OpenIdConfiguration extends ContainerLifeCycle
         }
     }
 
+    private static Map<String, Object> parseOpenIdConnectMetadata(String responseBody)
+    {
+        Object parsedResult = new JSON().fromJSON(responseBody);
+        if (parsedResult instanceof Map)
+        {
+            Map<?, ?> rawResult = (Map<?, ?>)parsedResult;
+            Map<String, Object> result = rawResult.entrySet().stream()
+                    .filter(entry -> entry.getValue() != null)
+                    .collect(Collectors.toMap(it -> it.getKey().toString(), Map.Entry::getValue));
+            if (LOG.isDebugEnabled())
+                LOG.debug("discovery document {}", result);
+            return result;
+        }
+        else
+        {
+            LOG.warn("OpenID provider did not return a proper JSON object response. Result was '{}'", responseBody);
+            throw new IllegalStateException("Could not parse OpenID provider's malformed response");
+        }
+    }
+
+    /**
+     * @return the metadata discovered from the OpenID provider, or an empty map if the endpoints were configured explicitly
+     */
+    public Map<String, Object> getMetadata()
+    {
+        return metadata;
+    }
+
+    /**
+     * @return the interval in milliseconds between refreshes of the discovered metadata, or 0 if it is never refreshed
+     */
+    public long getMetadataRefreshInterval()
+    {
+        return metadataRefreshInterval;
+    }
+
+    /**
+     * @param metadataRefreshInterval the interval in milliseconds between refreshes of the discovered metadata,
+     * or 0 if it should never be refreshed
+     */
+    public void setMetadataRefreshInterval(long metadataRefreshInterval)
+    {
+        if (isRunning())
+            throw new IllegalStateException("Running");
+        this.metadataRefreshInterval = metadataRefreshInterval;
+    }
+
     public HttpClient getHttpClient()
     {
         return httpClient;
@@ -0,0 +1,127 @@
+//
+// ========================================================================
+// Copyright (c) 1995-2022 Mort Bay Consulting Pty Ltd and others.
+//
+// This program and the accompanying materials are made available under the
+// terms of the Eclipse Public License v. 2.0 which is available at
+// https://www.eclipse.org/legal/epl-2.0, or the Apache License, Version 2.0
+// which is available at https://www.apache.org/licenses/LICENSE-2.0.
+//
+// SPDX-License-Identifier: EPL-2.0 OR Apache-2.0
+// ========================================================================
+//
+
+package org.eclipse.jetty.security.openid;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.anEmptyMap;
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThan;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class OpenIdConfigurationTest
+{
+    private static final String CLIENT_ID = "testClient101";
+    private static final String CLIENT_SECRET = "secret37263";
+
+    private OpenIdProvider openIdProvider;
+    private OpenIdConfiguration configuration;
+
+    @BeforeEach
+    public void prepare() throws Exception
+    {
+        openIdProvider = new OpenIdProvider(CLIENT_ID, CLIENT_SECRET);
+        openIdProvider.start();
+    }
+
+    @AfterEach
+    public void dispose() throws Exception
+    {
+        if (configuration != null)
+            configuration.stop();
+        openIdProvider.stop();
+    }
+
+    @Test
+    public void testMetadataIsDiscoveredOnce() throws Exception
+    {
+        String provider = openIdProvider.getProvider();
+        configuration = new OpenIdConfiguration(provider, CLIENT_ID, CLIENT_SECRET);
+        configuration.start();
+
+        assertThat(configuration.getMetadata().get("token_endpoint"), is(provider + "/token"));
+        assertThat(configuration.getTokenEndpoint(), is(provider + "/token"));
+        assertThat(configuration.getAuthEndpoint(), is(provider + "/auth"));
+        assertThat(openIdProvider.getConfigRequests(), is(1));
+    }
+
+    @Test
+    public void testConfiguredEndpointsAreNotDiscovered() throws Exception
+    {
+        configuration = openIdProvider.getOpenIdConfiguration();
+        configuration.setMetadataRefreshInterval(100);
+        configuration.start();
+
+        Thread.sleep(500);
+        assertThat(configuration.getMetadata(), anEmptyMap());
+        assertThat(openIdProvider.getConfigRequests(), is(0));
+    }
+
+    @Test
+    public void testMetadataRefresh() throws Exception
+    {
+        String provider = openIdProvider.getProvider();
+        configuration = new OpenIdConfiguration(provider, CLIENT_ID, CLIENT_SECRET);
+        configuration.setMetadataRefreshInterval(100);
+        configuration.start();
+
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (openIdProvider.getConfigRequests() < 3 && System.nanoTime() < deadline)
+        {
+            Thread.sleep(10);
+        }
+        assertThat(openIdProvider.getConfigRequests(), greaterThanOrEqualTo(3));
+
+        // A failed refresh keeps the previous metadata.
+        openIdProvider.stop();
+        Thread.sleep(500);
+        assertThat(configuration.getTokenEndpoint(), is(provider + "/token"));
+        assertThat(configuration.getMetadata().get("issuer"), is(provider));
+    }
+
+    @Test
+    public void testSlowMetadataRefreshDoesNotBlockClientTimeouts() throws Exception
+    {
+        String provider = openIdProvider.getProvider();
+        configuration = new OpenIdConfiguration(provider, CLIENT_ID, CLIENT_SECRET);
+        configuration.setMetadataRefreshInterval(100);
+        configuration.start();
+
+        // The next refresh hangs on the OpenID provider.
+        openIdProvider.setConfigDelay(3000);
+        int requests = openIdProvider.getConfigRequests();
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (openIdProvider.getConfigRequests() == requests && System.nanoTime() < deadline)
+        {
+            Thread.sleep(10);
+        }
+        assertThat(openIdProvider.getConfigRequests(), is(requests + 1));
+
+        // The timeouts of other requests of the HttpClient still expire.
+        long start = System.nanoTime();
+        assertThrows(TimeoutException.class, () -> configuration.getHttpClient()
+            .newRequest(provider + "/.well-known/openid-configuration")
+            .timeout(200, TimeUnit.MILLISECONDS)
+            .send());
+        assertThat(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start), lessThan(2000L));
+        openIdProvider.setConfigDelay(0);
+    }
+}
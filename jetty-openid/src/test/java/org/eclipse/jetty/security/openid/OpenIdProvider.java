@@ -24,6 +24,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
 import javax.servlet.ServletException;
 import javax.servlet.http.HttpServlet;
 import javax.servlet.http.HttpServletRequest;
@@ -49,6 +50,8 @@ public class OpenIdProvider extends ContainerLifeCycle
     private static final String AUTH_PATH = "/auth";
     private static final String TOKEN_PATH = "/token";
     private final Map<String, User> issuedAuthCodes = new HashMap<>();
+    private final AtomicInteger configRequests = new AtomicInteger();
+    private volatile long configDelay;
 
     protected final String clientId;
     protected final String clientSecret;
@@ -127,6 +130,16 @@ public class OpenIdProvider extends ContainerLifeCycle
         this.port = port;
     }
 
+    public int getConfigRequests()
+    {
+        return configRequests.get();
+    }
+
+    public void setConfigDelay(long configDelay)
+    {
+        this.configDelay = configDelay;
+    }
+
     public void setUser(User user)
     {
         this.preAuthedUser = user;
@@ -295,6 +308,20 @@ public class OpenIdProvider extends ContainerLifeCycle
         @Override
         protected void doGet(HttpServletRequest req, HttpServletResponse resp) throws IOException
         {
+            configRequests.incrementAndGet();
+            long delay = configDelay;
+            if (delay > 0)
+            {
+                try
+                {
+                    // Simulates a slow OpenID provider.
+                    Thread.sleep(delay);
+                }
+                catch (InterruptedException x)
+                {
+                    throw new IOException(x);
+                }
+            }
             String discoveryDocument = "{" +
                 "\"issuer\": \"" + provider + "\"," +
                 "\"authorization_endpoint\": \"" + provider + AUTH_PATH + "\"," +
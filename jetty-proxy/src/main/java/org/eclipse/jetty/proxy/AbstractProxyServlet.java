@@ -16,6 +16,7 @@ package org.eclipse.jetty.proxy;
 import java.net.InetAddress;
 import java.net.URI;
 import java.net.UnknownHostException;
+import java.nio.file.Path;
 import java.util.Enumeration;
 import java.util.HashSet;
 import java.util.Iterator;
@@ -69,6 +70,11 @@ import org.slf4j.LoggerFactory;
  * <li>viaHost - the name to use in the Via header: Via: http/1.1 &lt;viaHost&gt;</li>
  * <li>whiteList - comma-separated list of allowed proxy hosts</li>
  * <li>blackList - comma-separated list of forbidden proxy hosts</li>
+ * <li>cache - whether upstream responses are cached, see {@link ProxyCache}</li>
+ * <li>cacheMaxMemorySize - the max size in bytes of the cached contents kept in memory</li>
+ * <li>cacheMaxEntrySize - the max size in bytes of a cached content</li>
+ * <li>cacheDirectory - the directory where cached contents evicted from memory are kept</li>
+ * <li>cacheMaxDiskSize - the max size in bytes of the cached contents kept on disk</li>
  * </ul>
  * <p>In addition, see {@link #createHttpClient()} for init parameters
  * used to configure the {@link HttpClient} instance.</p>
@@ -103,6 +109,7 @@ public abstract class AbstractProxyServlet extends HttpServlet
     private String _viaHost;
     private HttpClient _client;
     private long _timeout;
+    private ProxyCache _cache;
 
     @Override
     public void init() throws ServletException
@@ -133,6 +140,12 @@ public abstract class AbstractProxyServlet extends HttpServlet
             String blackList = config.getInitParameter("blackList");
             if (blackList != null)
                 getBlackListHosts().addAll(parseList(blackList));
+
+            if (Boolean.parseBoolean(config.getInitParameter("cache")))
+            {
+                _cache = createProxyCache();
+                getServletContext().setAttribute(config.getServletName() + ".ProxyCache", _cache);
+            }
         }
         catch (Exception e)
         {
@@ -143,6 +156,8 @@ public abstract class AbstractProxyServlet extends HttpServlet
     @Override
     public void destroy()
     {
+        if (_cache != null)
+            _cache.purge();
         try
         {
             _client.stop();
@@ -186,6 +201,49 @@ public abstract class AbstractProxyServlet extends HttpServlet
         this._timeout = timeout;
     }
 
+    /**
+     * @return the cache of upstream responses, or null if responses are not cached
+     */
+    public ProxyCache getProxyCache()
+    {
+        return _cache;
+    }
+
+    /**
+     * @param cache the cache of upstream responses, or null to not cache responses
+     */
+    public void setProxyCache(ProxyCache cache)
+    {
+        _cache = cache;
+    }
+
+    /**
+     * <p>Creates the {@link ProxyCache}, configured with the {@code cacheMaxMemorySize},
+     * {@code cacheMaxEntrySize}, {@code cacheDirectory} and {@code cacheMaxDiskSize}
+     * init parameters of this servlet.</p>
+     *
+     * @return a new {@link ProxyCache}
+     */
+    protected ProxyCache createProxyCache()
+    {
+        ServletConfig config = getServletConfig();
+        ProxyCache cache = new ProxyCache();
+        String value = config.getInitParameter("cacheMaxMemorySize");
+        if (value != null)
+            cache.setMaxMemorySize(Long.parseLong(value));
+        value = config.getInitParameter("cacheMaxEntrySize");
+        if (value != null)
+            cache.setMaxEntrySize(Integer.parseInt(value));
+        value = config.getInitParameter("cacheDirectory");
+        if (value != null)
+            cache.setDiskDirectory(Path.of(value));
+        value = config.getInitParameter("cacheMaxDiskSize");
+        if (value != null)
+            cache.setMaxDiskSize(Long.parseLong(value));
+        cache.setReplayBufferSize(getHttpClient().getResponseBufferSize());
+        return cache;
+    }
+
     public Set<String> getWhiteListHosts()
     {
         return _whiteList;
@@ -631,7 +689,12 @@ public abstract class AbstractProxyServlet extends HttpServlet
                 proxyRequest.getHeaders().toString().trim());
         }
 
-        proxyRequest.send(newProxyResponseListener(clientRequest, proxyResponse));
+        Response.CompleteListener listener = newProxyResponseListener(clientRequest, proxyResponse);
+        ProxyCache cache = getProxyCache();
+        if (cache != null && listener instanceof Response.Listener)
+            cache.send(getHttpClient(), proxyRequest, (Response.Listener)listener);
+        else
+            proxyRequest.send(listener);
     }
 
     protected abstract Response.CompleteListener newProxyResponseListener(HttpServletRequest clientRequest, HttpServletResponse proxyResponse);
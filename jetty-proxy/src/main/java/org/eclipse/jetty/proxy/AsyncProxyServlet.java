@@ -16,6 +16,7 @@ package org.eclipse.jetty.proxy;
 import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.nio.channels.WritePendingException;
+import java.util.List;
 import javax.servlet.ReadListener;
 import javax.servlet.ServletConfig;
 import javax.servlet.ServletException;
@@ -30,10 +31,18 @@ import org.eclipse.jetty.client.api.Response;
 import org.eclipse.jetty.client.util.AsyncRequestContent;
 import org.eclipse.jetty.util.Callback;
 import org.eclipse.jetty.util.IteratingCallback;
+import org.eclipse.jetty.util.StringUtil;
 
 /**
  * <p>Servlet 3.1 asynchronous proxy servlet.</p>
  * <p>Both the request processing and the I/O are asynchronous.</p>
+ * <p>In addition to the init parameters of {@link AbstractProxyServlet},
+ * the following init parameters may be used to configure the servlet:</p>
+ * <ul>
+ * <li>singleFlight - whether identical concurrent requests share one upstream exchange, see {@link SingleFlight}</li>
+ * <li>singleFlightHeaders - comma-separated list of request headers whose values are part of the coalescing key</li>
+ * <li>singleFlightMaxWaiters - the max number of requests that may join an upstream exchange</li>
+ * </ul>
  *
  * @see ProxyServlet
  * @see AsyncMiddleManServlet
@@ -43,6 +52,86 @@ public class AsyncProxyServlet extends ProxyServlet
 {
     private static final String WRITE_LISTENER_ATTRIBUTE = AsyncProxyServlet.class.getName() + ".writeListener";
 
+    private SingleFlight _singleFlight;
+
+    @Override
+    public void init() throws ServletException
+    {
+        super.init();
+        ServletConfig config = getServletConfig();
+        if (Boolean.parseBoolean(config.getInitParameter("singleFlight")))
+        {
+            _singleFlight = createSingleFlight();
+            getServletContext().setAttribute(config.getServletName() + ".SingleFlight", _singleFlight);
+        }
+    }
+
+    /**
+     * @return the coalescing of identical concurrent requests, or null if requests are not coalesced
+     */
+    public SingleFlight getSingleFlight()
+    {
+        return _singleFlight;
+    }
+
+    /**
+     * @param singleFlight the coalescing of identical concurrent requests, or null to not coalesce requests
+     */
+    public void setSingleFlight(SingleFlight singleFlight)
+    {
+        _singleFlight = singleFlight;
+    }
+
+    /**
+     * <p>Creates the {@link SingleFlight}, configured with the {@code singleFlightHeaders}
+     * and {@code singleFlightMaxWaiters} init parameters of this servlet.</p>
+     *
+     * @return a new {@link SingleFlight}
+     */
+    protected SingleFlight createSingleFlight()
+    {
+        ServletConfig config = getServletConfig();
+        SingleFlight singleFlight = new SingleFlight();
+        String value = config.getInitParameter("singleFlightHeaders");
+        if (value != null)
+            singleFlight.setKeyHeaders(List.of(StringUtil.csvSplit(value)));
+        value = config.getInitParameter("singleFlightMaxWaiters");
+        if (value != null)
+            singleFlight.setMaxWaiters(Integer.parseInt(value));
+        return singleFlight;
+    }
+
+    @Override
+    protected void sendProxyRequest(HttpServletRequest clientRequest, HttpServletResponse proxyResponse, Request proxyRequest)
+    {
+        // The cache already coalesces the requests for the same resource.
+        SingleFlight singleFlight = getSingleFlight();
+        if (singleFlight == null || getProxyCache() != null || hasContent(clientRequest))
+        {
+            super.sendProxyRequest(clientRequest, proxyResponse, proxyRequest);
+            return;
+        }
+
+        if (_log.isDebugEnabled())
+            _log.debug("{} proxying to upstream in single-flight:{}{}", getRequestId(clientRequest), System.lineSeparator(), proxyRequest);
+
+        Response.CompleteListener listener = newProxyResponseListener(clientRequest, proxyResponse);
+        if (listener instanceof Response.Listener)
+            singleFlight.send(getHttpClient(), proxyRequest, (Response.Listener)listener);
+        else
+            proxyRequest.send(listener);
+    }
+
+    @Override
+    protected void onClientRequestFailure(HttpServletRequest clientRequest, Request proxyRequest, HttpServletResponse proxyResponse, Throwable failure)
+    {
+        // A request sharing an upstream exchange is detached from it, rather than aborting it.
+        SingleFlight singleFlight = getSingleFlight();
+        if (singleFlight != null && singleFlight.abort(proxyRequest, failure))
+            return;
+        super.onClientRequestFailure(clientRequest, proxyRequest, proxyResponse, failure);
+    }
+
     @Override
     protected Request.Content proxyRequestContent(HttpServletRequest request, HttpServletResponse response, Request proxyRequest) throws IOException
     {
@@ -20,15 +20,62 @@ import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
 import javax.servlet.ServletException;
 import javax.servlet.UnavailableException;
 import javax.servlet.http.Cookie;
 import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
 
+import org.eclipse.jetty.client.api.Request;
 import org.eclipse.jetty.client.api.Response;
+import org.eclipse.jetty.http.HttpMethod;
+import org.eclipse.jetty.http.HttpStatus;
 import org.eclipse.jetty.util.URIUtil;
-
+import org.eclipse.jetty.util.annotation.ManagedAttribute;
+import org.eclipse.jetty.util.annotation.ManagedObject;
+import org.eclipse.jetty.util.annotation.ManagedOperation;
+import org.eclipse.jetty.util.thread.AutoLock;
+import org.eclipse.jetty.util.thread.Scheduler;
+
+/**
+ * <p>A reverse proxy servlet that balances requests among a set of {@link BalancerMember}s.</p>
+ * <p>In addition to the init parameters of {@link AbstractProxyServlet}, except
+ * {@code hostHeader}, {@code whiteList} and {@code blackList}, the following
+ * init parameters may be used to configure the servlet:</p>
+ * <ul>
+ * <li>balancerMember.&lt;name&gt;.proxyTo - the base URI of the balancer member with the given name</li>
+ * <li>balancerMember.&lt;name&gt;.weight - the weight of the balancer member with the given name, by default 1</li>
+ * <li>balancerPolicy - how members are selected: {@code roundRobin} (the default) selects the members
+ * in turn, proportionally to their weights; {@code leastRequests} selects the member with the fewest
+ * outstanding requests relative to its weight; {@code leastLatency} selects the member with the lowest
+ * exponentially weighted moving average of its response latency, multiplied by its outstanding requests
+ * and relative to its weight</li>
+ * <li>stickySessions - whether requests with a session are sent to the member that created the session</li>
+ * <li>proxyPassReverse - whether redirects from the members are rewritten to point to this servlet</li>
+ * <li>outlierConsecutiveFailures - the number of consecutive failures after which a member is ejected,
+ * by default 5, or 0 to never eject members; failures are exchange failures and 5xx responses</li>
+ * <li>outlierBaseEjectionTime - the time in milliseconds a member is ejected for the first time, by default
+ * 30000; the time doubles at each following ejection</li>
+ * <li>outlierMaxEjectionTime - the max time in milliseconds a member is ejected, by default 300000</li>
+ * <li>healthCheckPath - the path, relative to the members' base URI, requested to actively check the
+ * members' health; members that do not respond with a 2xx status are not selected; by default there
+ * are no active health checks</li>
+ * <li>healthCheckInterval - the interval in milliseconds between health checks, by default 10000</li>
+ * <li>healthCheckTimeout - the timeout in milliseconds of a health check, by default 5000</li>
+ * </ul>
+ * <p>When no member is available, because they are all ejected or unhealthy, requests are
+ * balanced among all the members anyway.</p>
+ * <p>Each {@link BalancerMember} is a managed object exported as a ServletContext attribute
+ * named after this servlet's name, so that it can be monitored via JMX like the
+ * {@link org.eclipse.jetty.client.HttpClient HttpClient}.</p>
+ */
 public class BalancerServlet extends ProxyServlet
 {
     private static final String BALANCER_MEMBER_PREFIX = "balancerMember.";
@@ -56,11 +103,23 @@ public class BalancerServlet extends ProxyServlet
 
     private static final String JSESSIONID = "jsessionid";
     private static final String JSESSIONID_URL_PREFIX = JSESSIONID + "=";
+    private static final String BALANCER_MEMBER_ATTRIBUTE = BalancerServlet.class.getName() + ".balancerMember";
+    private static final String BALANCER_REQUEST_ATTRIBUTE = BalancerServlet.class.getName() + ".balancerRequest";
 
     private final List<BalancerMember> _balancerMembers = new ArrayList<>();
     private final AtomicLong counter = new AtomicLong();
+    private final AutoLock _lock = new AutoLock();
+    private final List<Scheduler.Task> _healthChecks = new ArrayList<>();
     private boolean _stickySessions;
     private boolean _proxyPassReverse;
+    private Policy _policy = Policy.ROUND_ROBIN;
+    private int _outlierConsecutiveFailures = 5;
+    private long _outlierBaseEjectionTime = TimeUnit.SECONDS.toMillis(30);
+    private long _outlierMaxEjectionTime = TimeUnit.MINUTES.toMillis(5);
+    private String _healthCheckPath;
+    private long _healthCheckInterval = TimeUnit.SECONDS.toMillis(10);
+    private long _healthCheckTimeout = TimeUnit.SECONDS.toMillis(5);
+    private volatile boolean _destroyed;
 
     @Override
     public void init() throws ServletException
@@ -70,6 +129,29 @@ public class BalancerServlet extends ProxyServlet
         initStickySessions();
         initBalancers();
         initProxyPassReverse();
+        initPolicy();
+        initOutlierEjection();
+        initHealthChecks();
+    }
+
+    @Override
+    public void destroy()
+    {
+        _destroyed = true;
+        try (AutoLock l = _lock.lock())
+        {
+            _healthChecks.forEach(Scheduler.Task::cancel);
+            _healthChecks.clear();
+        }
+        super.destroy();
+    }
+
+    /**
+     * @return the balancer members
+     */
+    public List<BalancerMember> getBalancerMembers()
+    {
+        return Collections.unmodifiableList(_balancerMembers);
     }
 
     private void validateConfig() throws ServletException
@@ -97,9 +179,30 @@ public class BalancerServlet extends ProxyServlet
             String proxyTo = getServletConfig().getInitParameter(memberProxyToParam);
             if (proxyTo == null || proxyTo.trim().length() == 0)
                 throw new UnavailableException(memberProxyToParam + " parameter is empty.");
-            members.add(new BalancerMember(balancerName, proxyTo));
+            BalancerMember member = new BalancerMember(balancerName, proxyTo);
+            String memberWeightParam = BALANCER_MEMBER_PREFIX + balancerName + ".weight";
+            String weight = getServletConfig().getInitParameter(memberWeightParam);
+            if (weight != null)
+            {
+                try
+                {
+                    member.setWeight(Integer.parseInt(weight.trim()));
+                }
+                catch (IllegalArgumentException x)
+                {
+                    throw new UnavailableException(memberWeightParam + " parameter is invalid: " + weight);
+                }
+            }
+            members.add(member);
         }
         _balancerMembers.addAll(members);
+
+        // Put the members in the context to leverage ContextHandler.MANAGED_ATTRIBUTES
+        String servletName = getServletConfig().getServletName();
+        for (BalancerMember member : _balancerMembers)
+        {
+            getServletContext().setAttribute(servletName + ".BalancerMember." + member.getName(), member);
+        }
     }
 
     private void initProxyPassReverse()
@@ -107,6 +210,98 @@ public class BalancerServlet extends ProxyServlet
         _proxyPassReverse = Boolean.parseBoolean(getServletConfig().getInitParameter("proxyPassReverse"));
     }
 
+    private void initPolicy() throws ServletException
+    {
+        String policy = getServletConfig().getInitParameter("balancerPolicy");
+        if (policy != null)
+            _policy = Policy.from(policy);
+        if (_policy == null)
+            throw new UnavailableException("balancerPolicy parameter is invalid: " + policy);
+    }
+
+    private void initOutlierEjection() throws ServletException
+    {
+        _outlierConsecutiveFailures = (int)parseInitParameter("outlierConsecutiveFailures", _outlierConsecutiveFailures, 0, Integer.MAX_VALUE);
+        _outlierBaseEjectionTime = parseInitParameter("outlierBaseEjectionTime", _outlierBaseEjectionTime, 0, Long.MAX_VALUE);
+        _outlierMaxEjectionTime = parseInitParameter("outlierMaxEjectionTime", _outlierMaxEjectionTime, 0, Long.MAX_VALUE);
+    }
+
+    private void initHealthChecks() throws ServletException
+    {
+        _healthCheckPath = getServletConfig().getInitParameter("healthCheckPath");
+        _healthCheckInterval = parseInitParameter("healthCheckInterval", _healthCheckInterval, 1, Long.MAX_VALUE);
+        _healthCheckTimeout = parseInitParameter("healthCheckTimeout", _healthCheckTimeout, 0, Long.MAX_VALUE);
+        if (_healthCheckPath != null)
+        {
+            for (BalancerMember member : _balancerMembers)
+            {
+                healthCheck(member);
+            }
+        }
+    }
+
+    private long parseInitParameter(String name, long defaultValue, long min, long max) throws ServletException
+    {
+        String value = getServletConfig().getInitParameter(name);
+        if (value == null)
+            return defaultValue;
+        long result;
+        try
+        {
+            result = Long.parseLong(value.trim());
+        }
+        catch (NumberFormatException x)
+        {
+            throw new UnavailableException(name + " parameter is invalid: " + value);
+        }
+        if (result < min || result > max)
+            throw new UnavailableException(name + " parameter is out of range: " + value);
+        return result;
+    }
+
+    private void scheduleHealthCheck(BalancerMember member)
+    {
+        try (AutoLock l = _lock.lock())
+        {
+            if (_destroyed)
+                return;
+            Scheduler.Task[] task = new Scheduler.Task[1];
+            task[0] = getHttpClient().getScheduler().schedule(() ->
+            {
+                try (AutoLock ignored = _lock.lock())
+                {
+                    _healthChecks.remove(task[0]);
+                }
+                healthCheck(member);
+            }, _healthCheckInterval, TimeUnit.MILLISECONDS);
+            _healthChecks.add(task[0]);
+        }
+    }
+
+    /**
+     * <p>Actively checks the health of the given member, by requesting the
+     * {@code healthCheckPath} relative to the member's base URI.</p>
+     *
+     * @param member the member to check
+     */
+    protected void healthCheck(BalancerMember member)
+    {
+        if (_destroyed)
+            return;
+        String uri = URI.create(member.getProxyTo() + "/" + _healthCheckPath).normalize().toString();
+        getHttpClient().newRequest(uri)
+            .method(HttpMethod.GET)
+            .timeout(_healthCheckTimeout, TimeUnit.MILLISECONDS)
+            .send(result ->
+            {
+                boolean healthy = result.isSucceeded() && HttpStatus.isSuccess(result.getResponse().getStatus());
+                if (member.isHealthy() != healthy && _log.isDebugEnabled())
+                    _log.debug("Health check {} for {}", healthy ? "passed" : "failed", member, result.getFailure());
+                member.setHealthy(healthy);
+                scheduleHealthCheck(member);
+            });
+    }
+
     private Set<String> getBalancerNames() throws ServletException
     {
         Set<String> names = new HashSet<>();
@@ -130,6 +325,7 @@ public class BalancerServlet extends ProxyServlet
         BalancerMember balancerMember = selectBalancerMember(request);
         if (_log.isDebugEnabled())
             _log.debug("Selected {}", balancerMember);
+        request.setAttribute(BALANCER_MEMBER_ATTRIBUTE, balancerMember);
         String path = request.getRequestURI();
         String query = request.getQueryString();
         if (query != null)
@@ -139,18 +335,125 @@ public class BalancerServlet extends ProxyServlet
 
     private BalancerMember selectBalancerMember(HttpServletRequest request)
     {
+        long now = System.nanoTime();
         if (_stickySessions)
         {
             String name = getBalancerMemberNameFromSessionId(request);
             if (name != null)
             {
                 BalancerMember balancerMember = findBalancerMemberByName(name);
-                if (balancerMember != null)
+                if (balancerMember != null && balancerMember.isAvailable(now))
                     return balancerMember;
             }
         }
-        int index = (int)(counter.getAndIncrement() % _balancerMembers.size());
-        return _balancerMembers.get(index);
+
+        List<BalancerMember> members = new ArrayList<>(_balancerMembers.size());
+        for (BalancerMember balancerMember : _balancerMembers)
+        {
+            if (balancerMember.isAvailable(now))
+                members.add(balancerMember);
+        }
+        // Do not refuse requests when all the members are unavailable.
+        if (members.isEmpty())
+            members = _balancerMembers;
+
+        if (_policy == Policy.ROUND_ROBIN)
+            return selectRoundRobin(members);
+
+        // Start from a different member every time, so that ties are spread.
+        int size = members.size();
+        int start = (int)(counter.getAndIncrement() % size);
+        BalancerMember selected = null;
+        double minCost = Double.MAX_VALUE;
+        for (int i = 0; i < size; ++i)
+        {
+            BalancerMember balancerMember = members.get((start + i) % size);
+            double cost = _policy.cost(balancerMember);
+            if (cost < minCost)
+            {
+                minCost = cost;
+                selected = balancerMember;
+            }
+        }
+        return selected;
+    }
+
+    private BalancerMember selectRoundRobin(List<BalancerMember> members)
+    {
+        if (members.size() == 1)
+            return members.get(0);
+
+        // Smooth weighted round robin: with equal weights, members are selected in turn.
+        try (AutoLock l = _lock.lock())
+        {
+            int total = 0;
+            BalancerMember selected = null;
+            for (BalancerMember balancerMember : members)
+            {
+                int weight = balancerMember.getWeight();
+                total += weight;
+                balancerMember._currentWeight += weight;
+                if (selected == null || balancerMember._currentWeight > selected._currentWeight)
+                    selected = balancerMember;
+            }
+            selected._currentWeight -= total;
+            return selected;
+        }
+    }
+
+    @Override
+    protected void sendProxyRequest(HttpServletRequest clientRequest, HttpServletResponse proxyResponse, Request proxyRequest)
+    {
+        BalancerMember balancerMember = (BalancerMember)clientRequest.getAttribute(BALANCER_MEMBER_ATTRIBUTE);
+        if (balancerMember != null)
+        {
+            BalancerRequest balancerRequest = new BalancerRequest(balancerMember);
+            clientRequest.setAttribute(BALANCER_REQUEST_ATTRIBUTE, balancerRequest);
+            // The request ends when the client request completes, whatever the proxy request outcome.
+            clientRequest.getAsyncContext().addListener(balancerRequest);
+            balancerMember.onRequestBegin();
+        }
+        super.sendProxyRequest(clientRequest, proxyResponse, proxyRequest);
+    }
+
+    @Override
+    protected void onClientRequestFailure(HttpServletRequest clientRequest, Request proxyRequest, HttpServletResponse proxyResponse, Throwable failure)
+    {
+        // A failure of the client is not a failure of the balancer member.
+        BalancerRequest balancerRequest = (BalancerRequest)clientRequest.getAttribute(BALANCER_REQUEST_ATTRIBUTE);
+        if (balancerRequest != null)
+            balancerRequest.onResult(null);
+        super.onClientRequestFailure(clientRequest, proxyRequest, proxyResponse, failure);
+    }
+
+    @Override
+    protected void onServerResponseHeaders(HttpServletRequest clientRequest, HttpServletResponse proxyResponse, Response serverResponse)
+    {
+        BalancerRequest balancerRequest = (BalancerRequest)clientRequest.getAttribute(BALANCER_REQUEST_ATTRIBUTE);
+        if (balancerRequest != null)
+            balancerRequest.onResponseHeaders();
+        super.onServerResponseHeaders(clientRequest, proxyResponse, serverResponse);
+    }
+
+    @Override
+    protected void onProxyResponseSuccess(HttpServletRequest clientRequest, HttpServletResponse proxyResponse, Response serverResponse)
+    {
+        onResult(clientRequest, serverResponse.getStatus() < HttpStatus.INTERNAL_SERVER_ERROR_500);
+        super.onProxyResponseSuccess(clientRequest, proxyResponse, serverResponse);
+    }
+
+    @Override
+    protected void onProxyResponseFailure(HttpServletRequest clientRequest, HttpServletResponse proxyResponse, Response serverResponse, Throwable failure)
+    {
+        onResult(clientRequest, false);
+        super.onProxyResponseFailure(clientRequest, proxyResponse, serverResponse, failure);
+    }
+
+    private void onResult(HttpServletRequest clientRequest, boolean success)
+    {
+        BalancerRequest balancerRequest = (BalancerRequest)clientRequest.getAttribute(BALANCER_REQUEST_ATTRIBUTE);
+        if (balancerRequest != null)
+            balancerRequest.onResult(success);
     }
 
     private BalancerMember findBalancerMemberByName(String name)
@@ -254,11 +557,137 @@ public class BalancerServlet extends ProxyServlet
         return true;
     }
 
-    private static class BalancerMember
+    private enum Policy
     {
+        ROUND_ROBIN("roundRobin")
+        {
+            @Override
+            double cost(BalancerMember member)
+            {
+                return 0;
+            }
+        },
+        LEAST_REQUESTS("leastRequests")
+        {
+            @Override
+            double cost(BalancerMember member)
+            {
+                return (member.getOutstandingRequests() + 1D) / member.getWeight();
+            }
+        },
+        LEAST_LATENCY("leastLatency")
+        {
+            @Override
+            double cost(BalancerMember member)
+            {
+                return (member._latency.get() + 1D) * (member.getOutstandingRequests() + 1D) / member.getWeight();
+            }
+        };
+
+        private final String _name;
+
+        Policy(String name)
+        {
+            _name = name;
+        }
+
+        abstract double cost(BalancerMember member);
+
+        private static Policy from(String name)
+        {
+            for (Policy policy : values())
+            {
+                if (policy._name.equalsIgnoreCase(name.trim()))
+                    return policy;
+            }
+            return null;
+        }
+    }
+
+    /**
+     * <p>The state of a request proxied to a {@link BalancerMember}.</p>
+     * <p>The result is recorded at most once, when the proxy response completes,
+     * and the outstanding request is ended when the client request completes,
+     * which happens on every path, including client failures.</p>
+     */
+    private class BalancerRequest implements AsyncListener
+    {
+        private final AtomicBoolean _result = new AtomicBoolean();
+        private final BalancerMember _member;
+        private final long _startTime = System.nanoTime();
+
+        private BalancerRequest(BalancerMember member)
+        {
+            _member = member;
+        }
+
+        private void onResponseHeaders()
+        {
+            _member.onLatency(System.nanoTime() - _startTime);
+        }
+
+        private void onResult(Boolean success)
+        {
+            if (_result.compareAndSet(false, true) && success != null)
+                _member.onRequestResult(success, _outlierConsecutiveFailures, _outlierBaseEjectionTime, _outlierMaxEjectionTime);
+        }
+
+        @Override
+        public void onComplete(AsyncEvent event)
+        {
+            _member.onRequestEnd();
+        }
+
+        @Override
+        public void onTimeout(AsyncEvent event)
+        {
+        }
+
+        @Override
+        public void onError(AsyncEvent event)
+        {
+        }
+
+        @Override
+        public void onStartAsync(AsyncEvent event)
+        {
+        }
+    }
+
+    /**
+     * <p>A backend server to which {@link BalancerServlet} forwards requests.</p>
+     * <p>A member is available when it is healthy, as determined by the active
+     * health checks if they are configured, and when it is not ejected.
+     * A member is ejected after a number of consecutive failures, for a time
+     * that doubles at each ejection, up to a max; it is available again after that
+     * time, and the ejection time is reset once it has stayed available for the
+     * max ejection time.</p>
+     */
+    @ManagedObject("Balancer member")
+    public static class BalancerMember
+    {
+        /**
+         * The weight of a new latency sample in the moving average.
+         */
+        private static final double LATENCY_ALPHA = 0.2D;
+
+        private final AutoLock _lock = new AutoLock();
+        private final AtomicInteger _outstanding = new AtomicInteger();
+        private final AtomicLong _latency = new AtomicLong();
+        private final LongAdder _requests = new LongAdder();
+        private final LongAdder _failures = new LongAdder();
+        private final LongAdder _ejectionsTotal = new LongAdder();
         private final String _name;
         private final String _proxyTo;
         private final URI _backendURI;
+        private volatile int _weight = 1;
+        private volatile boolean _healthy = true;
+        private volatile boolean _ejected;
+        private volatile long _ejectedUntil;
+        private int _consecutiveFailures;
+        private int _ejections;
+        // Guarded by the BalancerServlet lock.
+        private int _currentWeight;
 
         public BalancerMember(String name, String proxyTo)
         {
@@ -267,11 +696,13 @@ public class BalancerServlet extends ProxyServlet
             _backendURI = URI.create(_proxyTo).normalize();
         }
 
+        @ManagedAttribute("The member name")
         public String getName()
         {
             return _name;
         }
 
+        @ManagedAttribute("The member base URI")
         public String getProxyTo()
         {
             return _proxyTo;
@@ -282,6 +713,135 @@ public class BalancerServlet extends ProxyServlet
             return _backendURI;
         }
 
+        @ManagedAttribute("The member weight")
+        public int getWeight()
+        {
+            return _weight;
+        }
+
+        public void setWeight(int weight)
+        {
+            if (weight <= 0)
+                throw new IllegalArgumentException("Invalid weight " + weight);
+            _weight = weight;
+        }
+
+        @ManagedAttribute("Whether the last active health check passed")
+        public boolean isHealthy()
+        {
+            return _healthy;
+        }
+
+        public void setHealthy(boolean healthy)
+        {
+            _healthy = healthy;
+        }
+
+        @ManagedAttribute("Whether the member is ejected because of consecutive failures")
+        public boolean isEjected()
+        {
+            return isEjected(System.nanoTime());
+        }
+
+        private boolean isEjected(long now)
+        {
+            return _ejected && now - _ejectedUntil < 0;
+        }
+
+        /**
+         * @param now the current time in nanoseconds
+         * @return whether the member can be selected
+         */
+        public boolean isAvailable(long now)
+        {
+            return isHealthy() && !isEjected(now);
+        }
+
+        @ManagedAttribute("The number of requests in progress")
+        public int getOutstandingRequests()
+        {
+            return _outstanding.get();
+        }
+
+        @ManagedAttribute("The number of requests forwarded")
+        public long getRequests()
+        {
+            return _requests.longValue();
+        }
+
+        @ManagedAttribute("The number of failed requests, including 5xx responses")
+        public long getFailures()
+        {
+            return _failures.longValue();
+        }
+
+        @ManagedAttribute("The number of times the member has been ejected")
+        public long getEjections()
+        {
+            return _ejectionsTotal.longValue();
+        }
+
+        @ManagedAttribute("The moving average of the response latency, in milliseconds")
+        public double getLatency()
+        {
+            return _latency.get() / (double)TimeUnit.MILLISECONDS.toNanos(1);
+        }
+
+        @ManagedOperation(value = "Resets the statistics", impact = "ACTION")
+        public void resetStatistics()
+        {
+            _requests.reset();
+            _failures.reset();
+            _ejectionsTotal.reset();
+        }
+
+        private void onRequestBegin()
+        {
+            _requests.increment();
+            _outstanding.incrementAndGet();
+        }
+
+        private void onLatency(long nanos)
+        {
+            _latency.getAndUpdate(latency -> latency == 0 ? nanos : latency + (long)(LATENCY_ALPHA * (nanos - latency)));
+        }
+
+        private void onRequestEnd()
+        {
+            _outstanding.decrementAndGet();
+        }
+
+        private void onRequestResult(boolean success, int maxConsecutiveFailures, long baseEjectionTime, long maxEjectionTime)
+        {
+            long now = System.nanoTime();
+            try (AutoLock l = _lock.lock())
+            {
+                if (success)
+                {
+                    _consecutiveFailures = 0;
+                    // Forget the previous ejections once the member has been available long enough.
+                    if (_ejected && now - _ejectedUntil - TimeUnit.MILLISECONDS.toNanos(maxEjectionTime) > 0)
+                    {
+                        _ejected = false;
+                        _ejections = 0;
+                    }
+                    return;
+                }
+
+                _failures.increment();
+                ++_consecutiveFailures;
+                if (maxConsecutiveFailures <= 0 || _consecutiveFailures < maxConsecutiveFailures || isEjected(now))
+                    return;
+
+                long ejectionTime = Math.min(maxEjectionTime, baseEjectionTime << Math.min(_ejections, 30));
+                _ejections++;
+                _ejectedUntil = now + TimeUnit.MILLISECONDS.toNanos(ejectionTime);
+                _ejected = true;
+                _consecutiveFailures = 0;
+            }
+            _ejectionsTotal.increment();
+        }
+
         @Override
         public String toString()
         {
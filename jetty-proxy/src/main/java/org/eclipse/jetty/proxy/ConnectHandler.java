@@ -25,6 +25,7 @@ import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.LongAdder;
 import javax.servlet.AsyncContext;
 import javax.servlet.ServletException;
 import javax.servlet.http.HttpServletRequest;
@@ -48,6 +49,10 @@ import org.eclipse.jetty.server.handler.HandlerWrapper;
 import org.eclipse.jetty.util.Callback;
 import org.eclipse.jetty.util.HostPort;
 import org.eclipse.jetty.util.Promise;
+import org.eclipse.jetty.util.annotation.ManagedAttribute;
+import org.eclipse.jetty.util.annotation.ManagedObject;
+import org.eclipse.jetty.util.annotation.ManagedOperation;
+import org.eclipse.jetty.util.statistic.CounterStatistic;
 import org.eclipse.jetty.util.thread.ScheduledExecutorScheduler;
 import org.eclipse.jetty.util.thread.Scheduler;
 import org.slf4j.Logger;
@@ -55,7 +60,11 @@ import org.slf4j.LoggerFactory;
 
 /**
  * <p>Implementation of a {@link Handler} that supports HTTP CONNECT.</p>
+ * <p>Each tunnel is made of a {@link DownstreamConnection} to the client and an
+ * {@link UpstreamConnection} to the server; statistics about the tunnels are
+ * exposed via JMX.</p>
  */
+@ManagedObject("HTTP CONNECT tunnel handler")
 public class ConnectHandler extends HandlerWrapper
 {
     protected static final Logger LOG = LoggerFactory.getLogger(ConnectHandler.class);
@@ -69,6 +78,9 @@ public class ConnectHandler extends HandlerWrapper
     private long connectTimeout = 15000;
     private long idleTimeout = 30000;
     private int bufferSize = 4096;
+    private final CounterStatistic tunnels = new CounterStatistic();
+    private final LongAdder bytesUpstream = new LongAdder();
+    private final LongAdder bytesDownstream = new LongAdder();
 
     public ConnectHandler()
     {
@@ -144,6 +156,7 @@ public class ConnectHandler extends HandlerWrapper
         this.idleTimeout = idleTimeout;
     }
 
+    @ManagedAttribute("The size of the buffers used to tunnel data")
     public int getBufferSize()
     {
         return bufferSize;
@@ -154,6 +167,44 @@ public class ConnectHandler extends HandlerWrapper
         this.bufferSize = bufferSize;
     }
 
+    @ManagedAttribute("The number of open tunnels")
+    public long getTunnels()
+    {
+        return tunnels.getCurrent();
+    }
+
+    @ManagedAttribute("The max number of open tunnels")
+    public long getTunnelsMax()
+    {
+        return tunnels.getMax();
+    }
+
+    @ManagedAttribute("The total number of opened tunnels")
+    public long getTunnelsTotal()
+    {
+        return tunnels.getTotal();
+    }
+
+    @ManagedAttribute("The number of bytes tunnelled from clients to servers")
+    public long getBytesUpstream()
+    {
+        return bytesUpstream.longValue();
+    }
+
+    @ManagedAttribute("The number of bytes tunnelled from servers to clients")
+    public long getBytesDownstream()
+    {
+        return bytesDownstream.longValue();
+    }
+
+    @ManagedOperation(value = "Resets the tunnel statistics", impact = "ACTION")
+    public void resetStatistics()
+    {
+        tunnels.reset(tunnels.getCurrent());
+        bytesUpstream.reset();
+        bytesDownstream.reset();
+    }
+
     @Override
     protected void doStart() throws Exception
     {
@@ -587,6 +638,7 @@ public class ConnectHandler extends HandlerWrapper
         @Override
         protected void write(EndPoint endPoint, ByteBuffer buffer, Callback callback)
         {
+            bytesDownstream.add(buffer.remaining());
             ConnectHandler.this.write(endPoint, buffer, callback, getContext());
         }
     }
@@ -610,6 +662,7 @@ public class ConnectHandler extends HandlerWrapper
         public void onOpen()
         {
             super.onOpen();
+            tunnels.increment();
 
             if (buffer == null)
             {
@@ -650,7 +703,15 @@ public class ConnectHandler extends HandlerWrapper
         @Override
         protected void write(EndPoint endPoint, ByteBuffer buffer, Callback callback)
         {
+            bytesUpstream.add(buffer.remaining());
             ConnectHandler.this.write(endPoint, buffer, callback, getContext());
         }
+
+        @Override
+        public void onClose(Throwable cause)
+        {
+            tunnels.decrement();
+            super.onClose(cause);
+        }
     }
 }
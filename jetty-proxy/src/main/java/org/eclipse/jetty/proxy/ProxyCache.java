@@ -0,0 +1,1471 @@
+//
+// ========================================================================
+// Copyright (c) 1995-2022 Mort Bay Consulting Pty Ltd and others.
+//
+// This program and the accompanying materials are made available under the
+// terms of the Eclipse Public License v. 2.0 which is available at
+// https://www.eclipse.org/legal/epl-2.0, or the Apache License, Version 2.0
+// which is available at https://www.apache.org/licenses/LICENSE-2.0.
+//
+// SPDX-License-Identifier: EPL-2.0 OR Apache-2.0
+// ========================================================================
+//
+
+package org.eclipse.jetty.proxy;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongConsumer;
+import java.util.stream.Collectors;
+
+import org.eclipse.jetty.client.HttpClient;
+import org.eclipse.jetty.client.HttpResponse;
+import org.eclipse.jetty.client.api.Request;
+import org.eclipse.jetty.client.api.Response;
+import org.eclipse.jetty.client.api.Result;
+import org.eclipse.jetty.http.HttpField;
+import org.eclipse.jetty.http.HttpFields;
+import org.eclipse.jetty.http.HttpHeader;
+import org.eclipse.jetty.http.HttpMethod;
+import org.eclipse.jetty.http.HttpStatus;
+import org.eclipse.jetty.http.HttpVersion;
+import org.eclipse.jetty.http.QuotedCSV;
+import org.eclipse.jetty.util.BufferUtil;
+import org.eclipse.jetty.util.ByteArrayOutputStream2;
+import org.eclipse.jetty.util.Callback;
+import org.eclipse.jetty.util.IteratingCallback;
+import org.eclipse.jetty.util.annotation.ManagedAttribute;
+import org.eclipse.jetty.util.annotation.ManagedObject;
+import org.eclipse.jetty.util.annotation.ManagedOperation;
+import org.eclipse.jetty.util.thread.AutoLock;
+import org.eclipse.jetty.util.thread.Scheduler;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * <p>A shared HTTP cache of the responses of the upstream servers,
+ * see {@link AbstractProxyServlet#setProxyCache(ProxyCache)}.</p>
+ * <p>The cache follows the rules of RFC 9111 for shared caches:</p>
+ * <ul>
+ * <li>only responses to {@code GET} requests are stored, and they are also used to serve {@code HEAD} requests;</li>
+ * <li>the {@code no-store}, {@code no-cache}, {@code private}, {@code public}, {@code max-age},
+ * {@code s-maxage}, {@code must-revalidate}, {@code proxy-revalidate} and {@code stale-while-revalidate}
+ * response directives and the {@code Expires} header are honored; without explicit expiration,
+ * the freshness is 10% of the time since {@code Last-Modified};</li>
+ * <li>stored responses are selected by the request headers nominated by {@code Vary};</li>
+ * <li>stale responses are revalidated with {@code If-None-Match} or {@code If-Modified-Since};</li>
+ * <li>the {@code no-store}, {@code no-cache}, {@code max-age} and {@code only-if-cached}
+ * request directives are honored;</li>
+ * <li>successful unsafe requests invalidate the responses stored for their URI.</li>
+ * </ul>
+ * <p>Stored responses are replayed through the proxy servlet response listener,
+ * so that the response header filtering and the content transformations of
+ * the proxy servlet also apply to them.</p>
+ * <p>Concurrent misses for the same URI are coalesced: only one request is forwarded
+ * to the server, and up to {@link #getMaxWaiters() a max number} of others wait for
+ * its response to be stored, at most for their request timeout; they fail if the
+ * forwarded request fails.</p>
+ * <p>Stored content is kept in memory up to {@link #getMaxMemorySize() a max size};
+ * when a {@link #getDiskDirectory() disk directory} is configured, the least recently
+ * used contents are moved to disk rather than being evicted, up to
+ * {@link #getMaxDiskSize() a max disk size}.
+ * The files of the disk tier are written and read by the {@link HttpClient#getExecutor() client executor}.</p>
+ * <p>Requests with {@code Authorization}, {@code Range} or conditional headers are
+ * forwarded without using the cache, and responses with {@code Set-Cookie} are not stored.</p>
+ */
+@ManagedObject("Proxy HTTP cache")
+public class ProxyCache
+{
+    private static final Logger LOG = LoggerFactory.getLogger(ProxyCache.class);
+    private static final String COALESCED_ATTRIBUTE = ProxyCache.class.getName() + ".coalesced";
+    private static final Set<Integer> CACHEABLE_BY_DEFAULT = Set.of(200, 203, 204, 300, 301, 308, 404, 405, 410, 414, 501);
+    private static final Set<String> NOT_STORED_HEADERS = Set.of(
+        "age",
+        "connection",
+        "keep-alive",
+        "proxy-connection",
+        "transfer-encoding",
+        "te",
+        "trailer",
+        "upgrade"
+    );
+
+    private final ConcurrentMap<String, List<Entry>> _entries = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, List<Waiter>> _pending = new ConcurrentHashMap<>();
+    private final AutoLock _lock = new AutoLock();
+    private final AtomicInteger _count = new AtomicInteger();
+    private final AtomicLong _memorySize = new AtomicLong();
+    private final AtomicLong _diskSize = new AtomicLong();
+    private final LongAdder _hits = new LongAdder();
+    private final LongAdder _staleHits = new LongAdder();
+    private final LongAdder _misses = new LongAdder();
+    private final LongAdder _revalidations = new LongAdder();
+    private final LongAdder _notModified = new LongAdder();
+    private final LongAdder _stores = new LongAdder();
+    private final LongAdder _evictions = new LongAdder();
+    private final LongAdder _coalesced = new LongAdder();
+    private int _maxEntrySize = 1024 * 1024;
+    private int _maxEntries = 4096;
+    private long _maxMemorySize = 32 * 1024 * 1024;
+    private Path _diskDirectory;
+    private long _maxDiskSize = 256 * 1024 * 1024;
+    private int _replayBufferSize = 16 * 1024;
+    private int _maxWaiters = 256;
+    private long _spillingSize;
+
+    /**
+     * @return the max size in bytes of the content of a stored response
+     */
+    @ManagedAttribute("The max size in bytes of a stored response content")
+    public int getMaxEntrySize()
+    {
+        return _maxEntrySize;
+    }
+
+    /**
+     * @param maxEntrySize the max size in bytes of the content of a stored response
+     */
+    public void setMaxEntrySize(int maxEntrySize)
+    {
+        _maxEntrySize = maxEntrySize;
+    }
+
+    /**
+     * @return the max number of stored responses
+     */
+    @ManagedAttribute("The max number of stored responses")
+    public int getMaxEntries()
+    {
+        return _maxEntries;
+    }
+
+    /**
+     * @param maxEntries the max number of stored responses
+     */
+    public void setMaxEntries(int maxEntries)
+    {
+        _maxEntries = maxEntries;
+        shrink(null);
+    }
+
+    /**
+     * @return the max size in bytes of the stored contents kept in memory
+     */
+    @ManagedAttribute("The max size in bytes of the stored contents kept in memory")
+    public long getMaxMemorySize()
+    {
+        return _maxMemorySize;
+    }
+
+    /**
+     * @param maxMemorySize the max size in bytes of the stored contents kept in memory
+     */
+    public void setMaxMemorySize(long maxMemorySize)
+    {
+        _maxMemorySize = maxMemorySize;
+        shrink(null);
+    }
+
+    /**
+     * @return the directory where the contents evicted from memory are stored, or null if there is no disk tier
+     */
+    @ManagedAttribute("The directory of the disk tier")
+    public Path getDiskDirectory()
+    {
+        return _diskDirectory;
+    }
+
+    /**
+     * <p>Sets the directory where the contents evicted from memory are stored.</p>
+     * <p>The files in this directory are not reused across restarts.</p>
+     *
+     * @param diskDirectory the directory of the disk tier, or null to have no disk tier
+     */
+    public void setDiskDirectory(Path diskDirectory)
+    {
+        _diskDirectory = diskDirectory;
+    }
+
+    /**
+     * @return the max size in bytes of the stored contents kept on disk
+     */
+    @ManagedAttribute("The max size in bytes of the stored contents kept on disk")
+    public long getMaxDiskSize()
+    {
+        return _maxDiskSize;
+    }
+
+    /**
+     * @param maxDiskSize the max size in bytes of the stored contents kept on disk
+     */
+    public void setMaxDiskSize(long maxDiskSize)
+    {
+        _maxDiskSize = maxDiskSize;
+        shrink(null);
+    }
+
+    /**
+     * @return the max number of requests waiting for a concurrent miss to the same URI
+     */
+    @ManagedAttribute("The max number of requests waiting for a concurrent miss to the same URI")
+    public int getMaxWaiters()
+    {
+        return _maxWaiters;
+    }
+
+    /**
+     * <p>Sets the max number of requests waiting for a concurrent miss to the same URI.</p>
+     * <p>Requests beyond this number are forwarded to the server.</p>
+     *
+     * @param maxWaiters the max number of requests waiting for a concurrent miss to the same URI
+     */
+    public void setMaxWaiters(int maxWaiters)
+    {
+        _maxWaiters = maxWaiters;
+    }
+
+    /**
+     * @return the size in bytes of the content chunks of the replayed stored responses
+     */
+    public int getReplayBufferSize()
+    {
+        return _replayBufferSize;
+    }
+
+    /**
+     * @param replayBufferSize the size in bytes of the content chunks of the replayed stored responses
+     */
+    public void setReplayBufferSize(int replayBufferSize)
+    {
+        _replayBufferSize = replayBufferSize;
+    }
+
+    @ManagedAttribute("The number of stored responses")
+    public int getEntries()
+    {
+        return _count.get();
+    }
+
+    @ManagedAttribute("The size in bytes of the stored contents kept in memory")
+    public long getMemorySize()
+    {
+        return _memorySize.get();
+    }
+
+    @ManagedAttribute("The size in bytes of the stored contents kept on disk")
+    public long getDiskSize()
+    {
+        return _diskSize.get();
+    }
+
+    @ManagedAttribute("The number of requests served with a fresh stored response")
+    public long getHits()
+    {
+        return _hits.longValue();
+    }
+
+    @ManagedAttribute("The number of requests served with a stale stored response while revalidating")
+    public long getStaleHits()
+    {
+        return _staleHits.longValue();
+    }
+
+    @ManagedAttribute("The number of requests without a usable stored response")
+    public long getMisses()
+    {
+        return _misses.longValue();
+    }
+
+    @ManagedAttribute("The number of conditional requests sent to revalidate stored responses")
+    public long getRevalidations()
+    {
+        return _revalidations.longValue();
+    }
+
+    @ManagedAttribute("The number of revalidations answered with 304 Not Modified")
+    public long getNotModified()
+    {
+        return _notModified.longValue();
+    }
+
+    @ManagedAttribute("The number of responses stored")
+    public long getStores()
+    {
+        return _stores.longValue();
+    }
+
+    @ManagedAttribute("The number of stored responses evicted")
+    public long getEvictions()
+    {
+        return _evictions.longValue();
+    }
+
+    @ManagedAttribute("The number of misses that waited for a concurrent request to the same URI")
+    public long getCoalesced()
+    {
+        return _coalesced.longValue();
+    }
+
+    @ManagedOperation(value = "Resets the statistics", impact = "ACTION")
+    public void resetStatistics()
+    {
+        _hits.reset();
+        _staleHits.reset();
+        _misses.reset();
+        _revalidations.reset();
+        _notModified.reset();
+        _stores.reset();
+        _evictions.reset();
+        _coalesced.reset();
+    }
+
+    @ManagedOperation(value = "Removes all the stored responses", impact = "ACTION")
+    public void purge()
+    {
+        for (String key : _entries.keySet())
+        {
+            invalidate(key);
+        }
+    }
+
+    /**
+     * <p>Removes the responses stored for the given URI.</p>
+     *
+     * @param uri the URI of the upstream server resource
+     */
+    @ManagedOperation(value = "Removes the responses stored for the given URI", impact = "ACTION")
+    public void invalidate(String uri)
+    {
+        List<Entry> entries = _entries.remove(uri);
+        if (entries != null)
+            entries.forEach(this::release);
+    }
+
+    /**
+     * @param proxyRequest the request to the upstream server
+     * @return the key of the responses stored for the given request
+     */
+    protected String getCacheKey(Request proxyRequest)
+    {
+        return proxyRequest.getURI().toString();
+    }
+
+    /**
+     * <p>Sends the given request to the upstream server, or serves it with a stored response.</p>
+     * <p>In both cases, the given listener is notified of the response events.</p>
+     *
+     * @param client the client used to revalidate stale responses in background
+     * @param proxyRequest the request to the upstream server
+     * @param listener the listener of the response events
+     */
+    public void send(HttpClient client, Request proxyRequest, Response.Listener listener)
+    {
+        String method = proxyRequest.getMethod();
+        boolean head = HttpMethod.HEAD.is(method);
+        if (!head && !HttpMethod.GET.is(method))
+        {
+            if (!HttpMethod.OPTIONS.is(method) && !HttpMethod.TRACE.is(method))
+            {
+                // Unsafe methods invalidate the stored responses.
+                String key = getCacheKey(proxyRequest);
+                proxyRequest.onResponseSuccess(response ->
+                {
+                    if (response.getStatus() < HttpStatus.BAD_REQUEST_400)
+                        invalidate(key);
+                });
+            }
+            proxyRequest.send(listener);
+            return;
+        }
+
+        HttpFields requestHeaders = proxyRequest.getHeaders();
+        if (isBypassed(requestHeaders))
+        {
+            proxyRequest.send(listener);
+            return;
+        }
+
+        Directives directives = Directives.from(requestHeaders, true);
+        if (directives.noStore)
+        {
+            proxyRequest.send(listener);
+            return;
+        }
+
+        String key = getCacheKey(proxyRequest);
+        Entry entry = select(key, requestHeaders);
+        if (entry != null)
+        {
+            long now = System.currentTimeMillis();
+            Metadata metadata = entry.metadata;
+            long age = metadata.getAge(now);
+            boolean revalidate = directives.noCache || (directives.maxAge >= 0 && age > directives.maxAge);
+            if (!revalidate && metadata.isFresh(age))
+            {
+                _hits.increment();
+                if (LOG.isDebugEnabled())
+                    LOG.debug("Hit {} for {}", entry, proxyRequest);
+                replay(client, entry, proxyRequest, listener, head);
+                return;
+            }
+
+            if (!revalidate && metadata.isStaleWhileRevalidate(age))
+            {
+                _staleHits.increment();
+                if (LOG.isDebugEnabled())
+                    LOG.debug("Stale hit {} for {}", entry, proxyRequest);
+                revalidateInBackground(client, key, entry, proxyRequest);
+                replay(client, entry, proxyRequest, listener, head);
+                return;
+            }
+
+            if (!directives.onlyIfCached && metadata.hasValidators())
+            {
+                _revalidations.increment();
+                if (LOG.isDebugEnabled())
+                    LOG.debug("Revalidating {} for {}", entry, proxyRequest);
+                // The conditional headers are only added to the request sent upstream.
+                Request request = newConditionalRequest(client, proxyRequest, metadata).method(proxyRequest.getMethod());
+                request.send(new CacheListener(client, key, entry, proxyRequest, listener, head, false));
+                return;
+            }
+        }
+
+        _misses.increment();
+
+        if (directives.onlyIfCached)
+        {
+            replay(client, new Entry(key, proxyRequest.getHeaders(), List.of(), Metadata.gatewayTimeout(), BufferUtil.EMPTY_BUFFER), proxyRequest, listener, head);
+            return;
+        }
+
+        if (head)
+        {
+            proxyRequest.send(listener);
+            return;
+        }
+
+        // Coalesce the concurrent misses for the same URI.
+        if (proxyRequest.getAttributes().get(COALESCED_ATTRIBUTE) == null)
+        {
+            proxyRequest.attribute(COALESCED_ATTRIBUTE, Boolean.TRUE);
+            Waiter waiter = new Waiter(client, key, proxyRequest, listener);
+            Boolean joined = join(waiter);
+            if (joined == Boolean.TRUE)
+            {
+                _coalesced.increment();
+                if (LOG.isDebugEnabled())
+                    LOG.debug("Coalesced miss for {}", proxyRequest);
+                waiter.schedule();
+                return;
+            }
+            if (joined == Boolean.FALSE)
+            {
+                proxyRequest.send(new CacheListener(client, key, null, proxyRequest, listener, false, true));
+                return;
+            }
+        }
+
+        proxyRequest.send(new CacheListener(client, key, null, proxyRequest, listener, false, false));
+    }
+
+    private boolean isBypassed(HttpFields requestHeaders)
+    {
+        return requestHeaders.contains(HttpHeader.AUTHORIZATION) ||
+            requestHeaders.contains(HttpHeader.RANGE) ||
+            requestHeaders.contains(HttpHeader.IF_MATCH) ||
+            requestHeaders.contains(HttpHeader.IF_NONE_MATCH) ||
+            requestHeaders.contains(HttpHeader.IF_MODIFIED_SINCE) ||
+            requestHeaders.contains(HttpHeader.IF_UNMODIFIED_SINCE) ||
+            requestHeaders.contains(HttpHeader.IF_RANGE);
+    }
+
+    /**
+     * @param waiter the request that may wait for a concurrent miss to the same URI
+     * @return true if the request waits, false if the request must be forwarded and
+     * its response must resume the waiters, null if there are too many waiters
+     */
+    private Boolean join(Waiter waiter)
+    {
+        AtomicReference<Boolean> joined = new AtomicReference<>(Boolean.FALSE);
+        _pending.compute(waiter.key, (k, waiters) ->
+        {
+            if (waiters == null)
+                return new ArrayList<>();
+            if (waiters.size() >= getMaxWaiters())
+            {
+                joined.set(null);
+                return waiters;
+            }
+            joined.set(Boolean.TRUE);
+            waiters.add(waiter);
+            return waiters;
+        });
+        return joined.get();
+    }
+
+    private void complete(String key, Throwable failure)
+    {
+        List<Waiter> waiters = _pending.remove(key);
+        if (waiters == null)
+            return;
+        for (Waiter waiter : waiters)
+        {
+            try
+            {
+                if (failure == null)
+                    waiter.resume();
+                else
+                    waiter.fail(failure);
+            }
+            catch (Throwable x)
+            {
+                LOG.warn("Failed to resume coalesced request for {}", key, x);
+            }
+        }
+    }
+
+    private Entry select(String key, HttpFields requestHeaders)
+    {
+        List<Entry> entries = _entries.get(key);
+        if (entries == null)
+            return null;
+        for (Entry entry : entries)
+        {
+            if (entry.matches(requestHeaders))
+            {
+                entry.lastAccessed = System.nanoTime();
+                return entry;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @param client the client that creates the request
+     * @param proxyRequest the request to copy
+     * @param metadata the metadata of the stored response to revalidate
+     * @return a copy of the given request, with the conditional headers to revalidate the stored response
+     */
+    private static Request newConditionalRequest(HttpClient client, Request proxyRequest, Metadata metadata)
+    {
+        String etag = metadata.headers.get(HttpHeader.ETAG);
+        String lastModified = metadata.headers.get(HttpHeader.LAST_MODIFIED);
+        Request request = client.newRequest(proxyRequest.getURI())
+            .method(HttpMethod.GET)
+            .version(proxyRequest.getVersion())
+            .followRedirects(proxyRequest.isFollowRedirects())
+            .idleTimeout(proxyRequest.getIdleTimeout(), TimeUnit.MILLISECONDS)
+            .timeout(proxyRequest.getTimeout(), TimeUnit.MILLISECONDS)
+            .headers(headers ->
+            {
+                headers.clear().add(proxyRequest.getHeaders());
+                if (etag != null)
+                    headers.put(HttpHeader.IF_NONE_MATCH, etag);
+                else if (lastModified != null)
+                    headers.put(HttpHeader.IF_MODIFIED_SINCE, lastModified);
+            });
+        proxyRequest.getAttributes().forEach(request::attribute);
+        return request;
+    }
+
+    private void revalidateInBackground(HttpClient client, String key, Entry entry, Request proxyRequest)
+    {
+        if (!entry.revalidating.compareAndSet(false, true))
+            return;
+        _revalidations.increment();
+        Request request = newConditionalRequest(client, proxyRequest, entry.metadata);
+        request.send(new CacheListener(client, key, entry, request, null, false, false));
+    }
+
+    private void replay(HttpClient client, Entry entry, Request proxyRequest, Response.Listener listener, boolean head)
+    {
+        ByteBuffer memory = head ? BufferUtil.EMPTY_BUFFER : entry.memory;
+        if (memory != null)
+        {
+            new Replay(entry.metadata, proxyRequest, listener, memory.asReadOnlyBuffer()).start();
+            return;
+        }
+
+        // Do not read the file of the disk tier from the network threads.
+        client.getExecutor().execute(() ->
+        {
+            ByteBuffer content;
+            try
+            {
+                content = entry.getContent();
+            }
+            catch (IOException x)
+            {
+                // The file of the disk tier is gone, forward the request.
+                if (LOG.isDebugEnabled())
+                    LOG.debug("Could not read {}", entry, x);
+                remove(entry);
+                proxyRequest.send(listener);
+                return;
+            }
+            new Replay(entry.metadata, proxyRequest, listener, content).start();
+        });
+    }
+
+    private static void notifyFailure(Request proxyRequest, Response.Listener listener, Throwable failure)
+    {
+        HttpResponse response = new HttpResponse(proxyRequest, List.of());
+        listener.onFailure(response, failure);
+        listener.onComplete(new Result(proxyRequest, failure, response, failure));
+    }
+
+    private boolean isStorable(Response response, Directives directives)
+    {
+        int status = response.getStatus();
+        HttpFields headers = response.getHeaders();
+        if (directives.noStore || directives.isPrivate)
+            return false;
+        if (headers.contains(HttpHeader.SET_COOKIE) || headers.contains(HttpHeader.SET_COOKIE2))
+            return false;
+        if (headers.getValuesList(HttpHeader.VARY).stream().anyMatch(value -> value.contains("*")))
+            return false;
+        boolean explicit = directives.sMaxAge >= 0 || directives.maxAge >= 0 || headers.contains(HttpHeader.EXPIRES);
+        if (!CACHEABLE_BY_DEFAULT.contains(status))
+        {
+            // Temporary redirects may be stored if explicitly allowed.
+            if (status != HttpStatus.FOUND_302 && status != HttpStatus.TEMPORARY_REDIRECT_307)
+                return false;
+            if (!explicit)
+                return false;
+        }
+        return explicit || directives.isPublic || headers.contains(HttpHeader.LAST_MODIFIED) || headers.contains(HttpHeader.ETAG);
+    }
+
+    private void store(Executor executor, String key, Request proxyRequest, Response response, Directives directives, long requestTime, ByteBuffer content)
+    {
+        List<String> vary = new QuotedCSV(response.getHeaders().getValuesList(HttpHeader.VARY).toArray(new String[0])).getValues().stream()
+            .map(name -> name.toLowerCase(Locale.ENGLISH))
+            .collect(Collectors.toList());
+        Metadata metadata = Metadata.from(response, directives, requestTime, System.currentTimeMillis());
+        Entry entry = new Entry(key, proxyRequest.getHeaders(), vary, metadata, content);
+
+        List<Entry> replaced = new ArrayList<>();
+        _entries.compute(key, (k, entries) ->
+        {
+            List<Entry> result = new ArrayList<>();
+            if (entries != null)
+            {
+                for (Entry existing : entries)
+                {
+                    if (existing.sameVariant(entry))
+                        replaced.add(existing);
+                    else
+                        result.add(existing);
+                }
+            }
+            result.add(entry);
+            return result;
+        });
+        _count.incrementAndGet();
+        _memorySize.addAndGet(entry.size);
+        replaced.forEach(this::release);
+        if (LOG.isDebugEnabled())
+            LOG.debug("Stored {} in {}", entry, this);
+        shrink(executor);
+        _stores.increment();
+    }
+
+    private void remove(Entry entry)
+    {
+        unlink(entry);
+        release(entry);
+    }
+
+    private void unlink(Entry entry)
+    {
+        _entries.computeIfPresent(entry.key, (k, entries) ->
+        {
+            List<Entry> result = new ArrayList<>(entries);
+            result.remove(entry);
+            return result.isEmpty() ? null : result;
+        });
+    }
+
+    private void release(Entry entry)
+    {
+        Path file = detach(entry);
+        if (file != null)
+            delete(file);
+    }
+
+    /**
+     * @param entry the entry to release
+     * @return the file of the disk tier to delete, or null
+     */
+    private Path detach(Entry entry)
+    {
+        if (!entry.released.compareAndSet(false, true))
+            return null;
+        try (AutoLock l = _lock.lock())
+        {
+            _count.decrementAndGet();
+            Path file = entry.file;
+            if (file == null)
+                _memorySize.addAndGet(-entry.size);
+            else
+                _diskSize.addAndGet(-entry.size);
+            return file;
+        }
+    }
+
+    private void delete(Path file)
+    {
+        try
+        {
+            Files.deleteIfExists(file);
+        }
+        catch (IOException x)
+        {
+            LOG.debug("Could not delete {}", file, x);
+        }
+    }
+
+    private void shrink(Executor executor)
+    {
+        if (_count.get() <= _maxEntries && _memorySize.get() <= _maxMemorySize && _diskSize.get() <= _maxDiskSize)
+            return;
+
+        // The files are written and deleted after releasing the lock.
+        List<Entry> spills = new ArrayList<>();
+        List<Path> files = new ArrayList<>();
+        try (AutoLock l = _lock.lock())
+        {
+            List<Entry> sorted = _entries.values().stream()
+                .flatMap(List::stream)
+                .sorted(Comparator.comparingLong(entry -> entry.lastAccessed))
+                .collect(Collectors.toList());
+
+            // Evict or move to disk the least recently used contents.
+            for (Entry entry : sorted)
+            {
+                if (_count.get() <= _maxEntries && _memorySize.get() - _spillingSize <= _maxMemorySize)
+                    break;
+                if (entry.spilling)
+                    continue;
+                if (_count.get() <= _maxEntries && entry.file == null && _diskDirectory != null)
+                {
+                    entry.spilling = true;
+                    _spillingSize += entry.size;
+                    spills.add(entry);
+                    continue;
+                }
+                if (entry.file == null || _count.get() > _maxEntries)
+                    evict(entry, files);
+            }
+
+            for (Entry entry : sorted)
+            {
+                if (_diskSize.get() <= _maxDiskSize)
+                    break;
+                if (entry.file != null)
+                    evict(entry, files);
+            }
+        }
+
+        files.forEach(this::delete);
+        for (Entry entry : spills)
+        {
+            if (executor == null)
+                spill(entry, null);
+            else
+                executor.execute(() -> spill(entry, executor));
+        }
+    }
+
+    private void evict(Entry entry, List<Path> files)
+    {
+        unlink(entry);
+        Path file = detach(entry);
+        if (file != null)
+            files.add(file);
+        _evictions.increment();
+    }
+
+    private void spill(Entry entry, Executor executor)
+    {
+        Path file = null;
+        Path directory = _diskDirectory;
+        ByteBuffer memory = entry.memory;
+        if (directory != null && memory != null && !entry.released.get())
+        {
+            try
+            {
+                Files.createDirectories(directory);
+                file = Files.createTempFile(directory, "proxy-cache-", ".bin");
+                Files.write(file, BufferUtil.toArray(memory));
+            }
+            catch (IOException x)
+            {
+                LOG.debug("Could not move {} to disk", entry, x);
+                if (file != null)
+                    delete(file);
+                file = null;
+            }
+        }
+
+        boolean released;
+        try (AutoLock l = _lock.lock())
+        {
+            entry.spilling = false;
+            _spillingSize -= entry.size;
+            released = entry.released.get();
+            if (file != null && !released)
+            {
+                entry.file = file;
+                entry.memory = null;
+                _memorySize.addAndGet(-entry.size);
+                _diskSize.addAndGet(entry.size);
+            }
+        }
+
+        if (released)
+        {
+            if (file != null)
+                delete(file);
+        }
+        else if (file == null)
+        {
+            // The content could not be moved to disk, evict it.
+            remove(entry);
+            _evictions.increment();
+        }
+        else
+        {
+            if (LOG.isDebugEnabled())
+                LOG.debug("Moved {} to disk", entry);
+            shrink(executor);
+        }
+    }
+
+    @Override
+    public String toString()
+    {
+        return String.format("%s@%x{entries=%d,memory=%d/%d,disk=%d/%d}", getClass().getSimpleName(), hashCode(),
+            getEntries(), getMemorySize(), getMaxMemorySize(), getDiskSize(), getMaxDiskSize());
+    }
+
+    /**
+     * The Cache-Control directives of a request or of a response.
+     */
+    private static class Directives
+    {
+        private boolean noStore;
+        private boolean noCache;
+        private boolean isPrivate;
+        private boolean isPublic;
+        private boolean mustRevalidate;
+        private boolean onlyIfCached;
+        private long maxAge = -1;
+        private long sMaxAge = -1;
+        private long staleWhileRevalidate = -1;
+
+        private static Directives from(HttpFields headers, boolean request)
+        {
+            Directives directives = new Directives();
+            List<String> values = headers.getValuesList(HttpHeader.CACHE_CONTROL);
+            if (values.isEmpty())
+            {
+                // Pragma: no-cache is only honored in requests without Cache-Control.
+                if (request && headers.contains(HttpHeader.PRAGMA, "no-cache"))
+                    directives.noCache = true;
+                return directives;
+            }
+            for (String directive : new QuotedCSV(values.toArray(new String[0])))
+            {
+                String name = directive;
+                String value = null;
+                int equals = directive.indexOf('=');
+                if (equals > 0)
+                {
+                    name = directive.substring(0, equals).trim();
+                    value = directive.substring(equals + 1).trim();
+                }
+                switch (name.toLowerCase(Locale.ENGLISH))
+                {
+                    case "no-store":
+                        directives.noStore = true;
+                        break;
+                    case "no-cache":
+                        directives.noCache = true;
+                        break;
+                    case "private":
+                        directives.isPrivate = true;
+                        break;
+                    case "public":
+                        directives.isPublic = true;
+                        break;
+                    case "must-revalidate":
+                    case "proxy-revalidate":
+                        directives.mustRevalidate = true;
+                        break;
+                    case "only-if-cached":
+                        directives.onlyIfCached = true;
+                        break;
+                    case "max-age":
+                        directives.maxAge = seconds(value);
+                        break;
+                    case "s-maxage":
+                        directives.sMaxAge = seconds(value);
+                        directives.mustRevalidate = true;
+                        break;
+                    case "stale-while-revalidate":
+                        directives.staleWhileRevalidate = seconds(value);
+                        break;
+                    default:
+                        break;
+                }
+            }
+            return directives;
+        }
+
+        private static long seconds(String value)
+        {
+            if (value == null)
+                return -1;
+            try
+            {
+                return Math.max(0, Long.parseLong(value));
+            }
+            catch (NumberFormatException x)
+            {
+                // Invalid values are treated as stale.
+                return 0;
+            }
+        }
+    }
+
+    /**
+     * The immutable metadata of a stored response, replaced when the response is revalidated.
+     */
+    private static class Metadata
+    {
+        private final int status;
+        private final String reason;
+        private final HttpVersion version;
+        private final HttpFields headers;
+        private final long requestTime;
+        private final long responseTime;
+        private final long date;
+        private final long ageValue;
+        private final long lifetime;
+        private final long staleWhileRevalidate;
+        private final boolean noCache;
+        private final boolean mustRevalidate;
+
+        private Metadata(int status, String reason, HttpVersion version, HttpFields headers, long requestTime, long responseTime, Directives directives)
+        {
+            this.status = status;
+            this.reason = reason;
+            this.version = version;
+            this.headers = headers;
+            this.requestTime = requestTime;
+            this.responseTime = responseTime;
+            long date = date(headers, HttpHeader.DATE.asString());
+            this.date = date < 0 ? responseTime : date;
+            long ageValue = 0;
+            try
+            {
+                ageValue = Math.max(0, headers.getLongField(HttpHeader.AGE));
+            }
+            catch (NumberFormatException ignored)
+            {
+                // An invalid Age header is ignored.
+            }
+            this.ageValue = ageValue;
+            this.lifetime = lifetime(status, headers, directives, this.date);
+            this.staleWhileRevalidate = Math.max(0, directives.staleWhileRevalidate);
+            this.noCache = directives.noCache;
+            this.mustRevalidate = directives.mustRevalidate;
+        }
+
+        private static Metadata from(Response response, Directives directives, long requestTime, long responseTime)
+        {
+            HttpFields.Mutable headers = HttpFields.build();
+            for (HttpField field : response.getHeaders())
+            {
+                if (!NOT_STORED_HEADERS.contains(field.getLowerCaseName()))
+                    headers.add(field);
+            }
+            return new Metadata(response.getStatus(), response.getReason(), response.getVersion(), headers.asImmutable(), requestTime, responseTime, directives);
+        }
+
+        private static Metadata gatewayTimeout()
+        {
+            long now = System.currentTimeMillis();
+            HttpFields headers = HttpFields.build().put(HttpHeader.CONTENT_LENGTH, "0").asImmutable();
+            return new Metadata(HttpStatus.GATEWAY_TIMEOUT_504, HttpStatus.getMessage(HttpStatus.GATEWAY_TIMEOUT_504), HttpVersion.HTTP_1_1, headers, now, now, new Directives());
+        }
+
+        /**
+         * @param response the 304 response
+         * @param requestTime the time of the conditional request
+         * @param responseTime the time of the 304 response
+         * @return the metadata updated with the headers of the 304 response, as described in RFC 9111, section 3.2
+         */
+        private Metadata update(Response response, long requestTime, long responseTime)
+        {
+            HttpFields notModified = response.getHeaders();
+            HttpFields.Mutable updated = HttpFields.build(headers);
+            for (HttpField field : notModified)
+            {
+                String name = field.getLowerCaseName();
+                if (NOT_STORED_HEADERS.contains(name) || field.getHeader() == HttpHeader.CONTENT_LENGTH)
+                    continue;
+                updated.remove(field.getName());
+            }
+            for (HttpField field : notModified)
+            {
+                String name = field.getLowerCaseName();
+                if (NOT_STORED_HEADERS.contains(name) || field.getHeader() == HttpHeader.CONTENT_LENGTH)
+                    continue;
+                updated.add(field);
+            }
+            HttpFields headers = updated.asImmutable();
+            return new Metadata(status, reason, version, headers, requestTime, responseTime, Directives.from(headers, false));
+        }
+
+        private static long date(HttpFields headers, String name)
+        {
+            try
+            {
+                return headers.getDateField(name);
+            }
+            catch (IllegalArgumentException x)
+            {
+                return -1;
+            }
+        }
+
+        private static long lifetime(int status, HttpFields headers, Directives directives, long date)
+        {
+            if (directives.sMaxAge >= 0)
+                return directives.sMaxAge;
+            if (directives.maxAge >= 0)
+                return directives.maxAge;
+            if (headers.contains(HttpHeader.EXPIRES))
+            {
+                // Invalid dates, such as "0", represent a time in the past.
+                long expires = date(headers, HttpHeader.EXPIRES.asString());
+                return expires < 0 ? 0 : Math.max(0, (expires - date) / 1000);
+            }
+            long lastModified = date(headers, HttpHeader.LAST_MODIFIED.asString());
+            if (lastModified >= 0 && CACHEABLE_BY_DEFAULT.contains(status))
+                return Math.max(0, (date - lastModified) / 10 / 1000);
+            return 0;
+        }
+
+        /**
+         * @param now the current time
+         * @return the current age in seconds, as described in RFC 9111, section 4.2.3
+         */
+        private long getAge(long now)
+        {
+            long apparentAge = Math.max(0, responseTime - date) / 1000;
+            long responseDelay = (responseTime - requestTime) / 1000;
+            long correctedInitialAge = Math.max(apparentAge, ageValue + responseDelay);
+            long residentTime = (now - responseTime) / 1000;
+            return correctedInitialAge + residentTime;
+        }
+
+        private boolean isFresh(long age)
+        {
+            return !noCache && age < lifetime;
+        }
+
+        private boolean isStaleWhileRevalidate(long age)
+        {
+            return !noCache && !mustRevalidate && age < lifetime + staleWhileRevalidate;
+        }
+
+        private boolean hasValidators()
+        {
+            return headers.contains(HttpHeader.ETAG) || headers.contains(HttpHeader.LAST_MODIFIED);
+        }
+    }
+
+    /**
+     * A stored response, that is a variant of the responses stored for a URI.
+     */
+    private static class Entry
+    {
+        private final AtomicBoolean revalidating = new AtomicBoolean();
+        private final AtomicBoolean released = new AtomicBoolean();
+        private final String key;
+        private final List<String> vary;
+        private final List<String> varyValues;
+        private final int size;
+        private volatile Metadata metadata;
+        private volatile ByteBuffer memory;
+        private volatile Path file;
+        private volatile long lastAccessed = System.nanoTime();
+        private boolean spilling;
+
+        private Entry(String key, HttpFields requestHeaders, List<String> vary, Metadata metadata, ByteBuffer content)
+        {
+            this.key = key;
+            this.vary = vary;
+            this.varyValues = vary.stream()
+                .map(name -> varyValue(requestHeaders, name))
+                .collect(Collectors.toList());
+            this.metadata = metadata;
+            this.memory = content;
+            this.size = content.remaining();
+        }
+
+        private static String varyValue(HttpFields headers, String name)
+        {
+            return headers.getValuesList(name).stream()
+                .map(String::trim)
+                .collect(Collectors.joining(","));
+        }
+
+        private boolean matches(HttpFields requestHeaders)
+        {
+            for (int i = 0; i < vary.size(); ++i)
+            {
+                if (!varyValues.get(i).equals(varyValue(requestHeaders, vary.get(i))))
+                    return false;
+            }
+            return true;
+        }
+
+        private boolean sameVariant(Entry that)
+        {
+            return vary.equals(that.vary) && varyValues.equals(that.varyValues);
+        }
+
+        private ByteBuffer getContent() throws IOException
+        {
+            ByteBuffer memory = this.memory;
+            if (memory != null)
+                return memory.asReadOnlyBuffer();
+            Path file = this.file;
+            if (file == null)
+                throw new IOException("Released " + this);
+            return ByteBuffer.wrap(Files.readAllBytes(file));
+        }
+
+        @Override
+        public String toString()
+        {
+            return String.format("%s@%x{%s,vary=%s,status=%d,size=%d,disk=%b}", getClass().getSimpleName(), hashCode(),
+                key, varyValues, metadata.status, size, file != null);
+        }
+    }
+
+    /**
+     * Listens to the response from the upstream server, forwards the response
+     * events to the proxy servlet listener, and stores the response if possible.
+     */
+    private class CacheListener implements Response.Listener
+    {
+        private final HttpClient client;
+        private final String key;
+        private final Entry stored;
+        private final Request proxyRequest;
+        private final Response.Listener delegate;
+        private final boolean head;
+        private final boolean leader;
+        private final boolean background;
+        private final long requestTime = System.currentTimeMillis();
+        private boolean notModified;
+        private Directives directives;
+        private ByteArrayOutputStream2 capture;
+
+        private CacheListener(HttpClient client, String key, Entry stored, Request proxyRequest, Response.Listener delegate, boolean head, boolean leader)
+        {
+            this.client = client;
+            this.key = key;
+            this.stored = stored;
+            this.proxyRequest = proxyRequest;
+            this.delegate = delegate == null ? new Response.Listener.Adapter() : delegate;
+            this.background = delegate == null;
+            this.head = head;
+            this.leader = leader;
+        }
+
+        @Override
+        public void onBegin(Response response)
+        {
+            if (stored != null && response.getStatus() == HttpStatus.NOT_MODIFIED_304)
+                notModified = true;
+            else
+                delegate.onBegin(response);
+        }
+
+        @Override
+        public boolean onHeader(Response response, HttpField field)
+        {
+            return notModified || delegate.onHeader(response, field);
+        }
+
+        @Override
+        public void onHeaders(Response response)
+        {
+            if (notModified)
+                return;
+            directives = Directives.from(response.getHeaders(), false);
+            if (!head && isStorable(response, directives))
+            {
+                long contentLength = response.getHeaders().getLongField(HttpHeader.CONTENT_LENGTH);
+                if (contentLength <= getMaxEntrySize())
+                    capture = new ByteArrayOutputStream2(contentLength > 0 ? (int)contentLength : 1024);
+            }
+            delegate.onHeaders(response);
+        }
+
+        @Override
+        public void onBeforeContent(Response response, LongConsumer demand)
+        {
+            if (notModified)
+                demand.accept(1);
+            else
+                delegate.onBeforeContent(response, demand);
+        }
+
+        @Override
+        public void onContent(Response response, LongConsumer demand, ByteBuffer content, Callback callback)
+        {
+            if (notModified)
+            {
+                callback.succeeded();
+                demand.accept(1);
+                return;
+            }
+            if (capture != null)
+            {
+                if (capture.size() + content.remaining() > getMaxEntrySize())
+                {
+                    capture = null;
+                }
+                else
+                {
+                    try
+                    {
+                        BufferUtil.writeTo(content.slice(), capture);
+                    }
+                    catch (IOException x)
+                    {
+                        capture = null;
+                    }
+                }
+            }
+            delegate.onContent(response, demand, content, callback);
+        }
+
+        @Override
+        public void onSuccess(Response response)
+        {
+            if (!notModified)
+                delegate.onSuccess(response);
+        }
+
+        @Override
+        public void onFailure(Response response, Throwable failure)
+        {
+            if (!notModified)
+                delegate.onFailure(response, failure);
+        }
+
+        @Override
+        public void onComplete(Result result)
+        {
+            Throwable failure = null;
+            try
+            {
+                if (notModified && result.isSucceeded())
+                {
+                    _notModified.increment();
+                    stored.metadata = stored.metadata.update(result.getResponse(), requestTime, System.currentTimeMillis());
+                    stored.revalidating.set(false);
+                    if (LOG.isDebugEnabled())
+                        LOG.debug("Revalidated {}", stored);
+                    if (!background)
+                        replay(client, stored, proxyRequest, delegate, head);
+                    return;
+                }
+
+                if (stored != null)
+                {
+                    stored.revalidating.set(false);
+                    // The stored response has been replaced by a new response, or
+                    // cannot be used anymore, as described in RFC 9111, section 4.3.3.
+                    if (result.isSucceeded() && result.getResponse().getStatus() < HttpStatus.INTERNAL_SERVER_ERROR_500)
+                        remove(stored);
+                }
+
+                if (result.isFailed())
+                    failure = result.getFailure();
+                else if (capture != null)
+                    store(client.getExecutor(), key, proxyRequest, result.getResponse(), directives, requestTime, ByteBuffer.wrap(capture.toByteArray()));
+
+                delegate.onComplete(result);
+            }
+            finally
+            {
+                if (leader)
+                    complete(key, failure);
+            }
+        }
+    }
+
+    /**
+     * A request that waits for a concurrent miss to the same URI, either
+     * resumed or failed by that miss, or failed when its timeout expires.
+     */
+    private class Waiter implements Runnable
+    {
+        private final AtomicBoolean done = new AtomicBoolean();
+        private final HttpClient client;
+        private final String key;
+        private final Request proxyRequest;
+        private final Response.Listener listener;
+        private volatile Scheduler.Task task;
+
+        private Waiter(HttpClient client, String key, Request proxyRequest, Response.Listener listener)
+        {
+            this.client = client;
+            this.key = key;
+            this.proxyRequest = proxyRequest;
+            this.listener = listener;
+        }
+
+        private void schedule()
+        {
+            long timeout = proxyRequest.getTimeout();
+            if (timeout <= 0)
+                return;
+            task = client.getScheduler().schedule(this, timeout, TimeUnit.MILLISECONDS);
+            // The waiter may have been resumed before its timeout was scheduled.
+            if (done.get())
+                cancel();
+        }
+
+        @Override
+        public void run()
+        {
+            _pending.computeIfPresent(key, (k, waiters) ->
+            {
+                waiters.remove(this);
+                return waiters;
+            });
+            fail(new TimeoutException("Total timeout " + proxyRequest.getTimeout() + " ms elapsed"));
+        }
+
+        private void resume()
+        {
+            if (!done.compareAndSet(false, true))
+                return;
+            cancel();
+            send(client, proxyRequest, listener);
+        }
+
+        private void fail(Throwable failure)
+        {
+            if (!done.compareAndSet(false, true))
+                return;
+            cancel();
+            if (LOG.isDebugEnabled())
+                LOG.debug("Failed coalesced miss for {}", proxyRequest, failure);
+            notifyFailure(proxyRequest, listener, failure);
+        }
+
+        private void cancel()
+        {
+            Scheduler.Task task = this.task;
+            if (task != null)
+                task.cancel();
+        }
+    }
+
+    /**
+     * Replays a stored response to the proxy servlet listener.
+     */
+    private class Replay extends IteratingCallback
+    {
+        private final Metadata metadata;
+        private final Request proxyRequest;
+        private final Response.Listener listener;
+        private final ByteBuffer content;
+        private HttpResponse response;
+
+        private Replay(Metadata metadata, Request proxyRequest, Response.Listener listener, ByteBuffer content)
+        {
+            this.metadata = metadata;
+            this.proxyRequest = proxyRequest;
+            this.listener = listener;
+            this.content = content;
+        }
+
+        private void start()
+        {
+            response = new HttpResponse(proxyRequest, List.of())
+                .version(metadata.version)
+                .status(metadata.status)
+                .reason(metadata.reason);
+            for (HttpField field : metadata.headers)
+            {
+                response.addHeader(field);
+            }
+            response.addHeader(new HttpField(HttpHeader.AGE, String.valueOf(metadata.getAge(System.currentTimeMillis()))));
+
+            listener.onBegin(response);
+            for (HttpField field : response.getHeaders())
+            {
+                listener.onHeader(response, field);
+            }
+            listener.onHeaders(response);
+            iterate();
+        }
+
+        @Override
+        protected Action process()
+        {
+            if (!content.hasRemaining())
+                return Action.SUCCEEDED;
+            ByteBuffer chunk = content.slice();
+            int length = Math.min(chunk.remaining(), Math.max(1, getReplayBufferSize()));
+            chunk.limit(length);
+            content.position(content.position() + length);
+            listener.onContent(response, chunk, this);
+            return Action.SCHEDULED;
+        }
+
+        @Override
+        protected void onCompleteSuccess()
+        {
+            listener.onSuccess(response);
+            listener.onComplete(new Result(proxyRequest, response));
+        }
+
+        @Override
+        protected void onCompleteFailure(Throwable failure)
+        {
+            listener.onFailure(response, failure);
+            listener.onComplete(new Result(proxyRequest, null, response, failure));
+        }
+    }
+}
@@ -17,6 +17,7 @@ import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
 
 import org.eclipse.jetty.io.AbstractConnection;
 import org.eclipse.jetty.io.ByteBufferPool;
@@ -26,6 +27,10 @@ import org.eclipse.jetty.util.Callback;
 import org.eclipse.jetty.util.IteratingCallback;
 import org.slf4j.Logger;
 
+/**
+ * <p>A connection that tunnels the bytes read from its {@link EndPoint}
+ * to the {@link EndPoint} of its {@link #getConnection() peer connection}.</p>
+ */
 public abstract class ProxyConnection extends AbstractConnection
 {
     protected static final Logger LOG = ConnectHandler.LOG;
@@ -33,6 +38,10 @@ public abstract class ProxyConnection extends AbstractConnection
     private final ByteBufferPool bufferPool;
     private final ConcurrentMap<String, Object> context;
     private ProxyConnection connection;
+    // Only updated by the thread that iterates the pipe.
+    private volatile long bytesIn;
+    private volatile long bytesOut;
+    private volatile long lastActivity = System.nanoTime();
 
     protected ProxyConnection(EndPoint endp, Executor executor, ByteBufferPool bufferPool, ConcurrentMap<String, Object> context)
     {
@@ -61,6 +70,32 @@ public abstract class ProxyConnection extends AbstractConnection
         this.connection = connection;
     }
 
+    /**
+     * @return the number of bytes read from this connection's endPoint
+     */
+    @Override
+    public long getBytesIn()
+    {
+        return bytesIn;
+    }
+
+    /**
+     * @return the number of bytes written to the peer connection's endPoint
+     */
+    @Override
+    public long getBytesOut()
+    {
+        return bytesOut;
+    }
+
+    /**
+     * @return the time, in milliseconds, since bytes have last been read or written
+     */
+    public long getIdleFor()
+    {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - lastActivity);
+    }
+
     @Override
     public void onFillable()
     {
@@ -80,11 +115,14 @@ public abstract class ProxyConnection extends AbstractConnection
     public String toConnectionString()
     {
         EndPoint endPoint = getEndPoint();
-        return String.format("%s@%x[l:%s<=>r:%s]",
+        return String.format("%s@%x[l:%s<=>r:%s,in=%d,out=%d,idle=%dms]",
             getClass().getSimpleName(),
             hashCode(),
             endPoint.getLocalSocketAddress(),
-            endPoint.getRemoteSocketAddress());
+            endPoint.getRemoteSocketAddress(),
+            getBytesIn(),
+            getBytesOut(),
+            getIdleFor());
     }
 
     private class ProxyIteratingCallback extends IteratingCallback
@@ -103,6 +141,8 @@ public abstract class ProxyConnection extends AbstractConnection
                     LOG.debug("{} filled {} bytes", ProxyConnection.this, filled);
                 if (filled > 0)
                 {
+                    bytesIn += filled;
+                    lastActivity = System.nanoTime();
                     write(connection.getEndPoint(), buffer, this);
                     return Action.SCHEDULED;
                 }
@@ -134,6 +174,8 @@ public abstract class ProxyConnection extends AbstractConnection
         {
             if (LOG.isDebugEnabled())
                 LOG.debug("{} wrote {} bytes", ProxyConnection.this, filled);
+            bytesOut += filled;
+            lastActivity = System.nanoTime();
             bufferPool.release(buffer);
             super.succeeded();
         }
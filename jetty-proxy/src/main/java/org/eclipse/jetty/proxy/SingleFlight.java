@@ -0,0 +1,678 @@
+//
+// ========================================================================
+// Copyright (c) 1995-2022 Mort Bay Consulting Pty Ltd and others.
+//
+// This program and the accompanying materials are made available under the
+// terms of the Eclipse Public License v. 2.0 which is available at
+// https://www.eclipse.org/legal/epl-2.0, or the Apache License, Version 2.0
+// which is available at https://www.apache.org/licenses/LICENSE-2.0.
+//
+// SPDX-License-Identifier: EPL-2.0 OR Apache-2.0
+// ========================================================================
+//
+
+package org.eclipse.jetty.proxy;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.eclipse.jetty.client.HttpClient;
+import org.eclipse.jetty.client.api.Request;
+import org.eclipse.jetty.client.api.Response;
+import org.eclipse.jetty.client.api.Result;
+import org.eclipse.jetty.http.HttpField;
+import org.eclipse.jetty.http.HttpFields;
+import org.eclipse.jetty.http.HttpHeader;
+import org.eclipse.jetty.http.HttpMethod;
+import org.eclipse.jetty.http.HttpVersion;
+import org.eclipse.jetty.util.Callback;
+import org.eclipse.jetty.util.annotation.ManagedAttribute;
+import org.eclipse.jetty.util.annotation.ManagedObject;
+import org.eclipse.jetty.util.annotation.ManagedOperation;
+import org.eclipse.jetty.util.thread.AutoLock;
+import org.eclipse.jetty.util.thread.Scheduler;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * <p>Coalesces identical concurrent proxy requests into a single upstream exchange.</p>
+ * <p>Two requests are identical when they have the same method, the same URI and the
+ * same values for the {@link #getKeyHeaders() key headers}, typically the headers
+ * that upstream servers list in their {@code Vary} response header.
+ * Only {@code GET} and {@code HEAD} requests without content are coalesced, and
+ * requests with {@code Authorization} or {@code Cookie} headers are coalesced only if
+ * those headers are key headers.</p>
+ * <p>The first request for a key is sent upstream; the identical requests that arrive
+ * before the upstream response begins join it, up to {@link #getMaxWaiters() a max number
+ * of waiters}, and receive the same response events.
+ * Each response content chunk is shared by all the waiters: the upstream buffer is
+ * retained until every waiter has written it, so that the upstream exchange proceeds
+ * at the pace of the slowest waiter, without copying the content.
+ * A waiter that fails, for example because its client went away or because its
+ * request timeout elapsed, is detached without affecting the other waiters;
+ * the upstream exchange is aborted only when all its waiters are detached.</p>
+ *
+ * @see AsyncProxyServlet#setSingleFlight(SingleFlight)
+ */
+@ManagedObject("Single-flight coalescing of identical proxy requests")
+public class SingleFlight
+{
+    private static final Logger LOG = LoggerFactory.getLogger(SingleFlight.class);
+    private static final String WAITER_ATTRIBUTE = SingleFlight.class.getName() + ".waiter";
+
+    private final ConcurrentMap<String, Flight> _flights = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, KeyStatistics> _keyStatistics = new ConcurrentHashMap<>();
+    private final List<String> _keyHeaders = new CopyOnWriteArrayList<>(List.of(
+        HttpHeader.ACCEPT.asString(),
+        HttpHeader.ACCEPT_ENCODING.asString(),
+        HttpHeader.ACCEPT_LANGUAGE.asString()
+    ));
+    private final LongAdder _exchanges = new LongAdder();
+    private final LongAdder _coalesced = new LongAdder();
+    private final LongAdder _rejected = new LongAdder();
+    private final LongAdder _detached = new LongAdder();
+    private int _maxWaiters = 64;
+    private int _maxKeyStatistics = 1024;
+
+    /**
+     * @return the names of the request headers whose values are part of the coalescing key
+     */
+    @ManagedAttribute("The request headers whose values are part of the coalescing key")
+    public List<String> getKeyHeaders()
+    {
+        return List.copyOf(_keyHeaders);
+    }
+
+    /**
+     * @param keyHeaders the names of the request headers whose values are part of the coalescing key
+     */
+    public void setKeyHeaders(List<String> keyHeaders)
+    {
+        _keyHeaders.clear();
+        _keyHeaders.addAll(keyHeaders);
+    }
+
+    /**
+     * @return the max number of requests that may join an upstream exchange
+     */
+    @ManagedAttribute("The max number of requests that may join an upstream exchange")
+    public int getMaxWaiters()
+    {
+        return _maxWaiters;
+    }
+
+    /**
+     * @param maxWaiters the max number of requests that may join an upstream exchange
+     */
+    public void setMaxWaiters(int maxWaiters)
+    {
+        _maxWaiters = maxWaiters;
+    }
+
+    /**
+     * @return the max number of keys for which statistics are recorded
+     */
+    @ManagedAttribute("The max number of keys for which statistics are recorded")
+    public int getMaxKeyStatistics()
+    {
+        return _maxKeyStatistics;
+    }
+
+    /**
+     * @param maxKeyStatistics the max number of keys for which statistics are recorded
+     */
+    public void setMaxKeyStatistics(int maxKeyStatistics)
+    {
+        _maxKeyStatistics = maxKeyStatistics;
+    }
+
+    @ManagedAttribute("The number of upstream exchanges in progress that may be joined")
+    public int getFlights()
+    {
+        return _flights.size();
+    }
+
+    @ManagedAttribute("The number of upstream exchanges that could be joined")
+    public long getExchanges()
+    {
+        return _exchanges.longValue();
+    }
+
+    @ManagedAttribute("The number of requests that joined an upstream exchange")
+    public long getCoalesced()
+    {
+        return _coalesced.longValue();
+    }
+
+    @ManagedAttribute("The number of requests sent upstream because an exchange had too many waiters")
+    public long getRejected()
+    {
+        return _rejected.longValue();
+    }
+
+    @ManagedAttribute("The number of waiters detached from their upstream exchange because of a failure")
+    public long getDetached()
+    {
+        return _detached.longValue();
+    }
+
+    /**
+     * @return the statistics of each key, in string form
+     */
+    @ManagedAttribute("The statistics of each key")
+    public Map<String, String> getKeyStatistics()
+    {
+        Map<String, String> result = new HashMap<>();
+        _keyStatistics.forEach((key, statistics) -> result.put(key, statistics.toString()));
+        return result;
+    }
+
+    /**
+     * @param key the coalescing key
+     * @return the statistics of the given key, or null if no statistics are recorded for the key
+     * @see #getKey(Request)
+     */
+    public KeyStatistics getKeyStatistics(String key)
+    {
+        return _keyStatistics.get(key);
+    }
+
+    @ManagedOperation(value = "Resets the statistics", impact = "ACTION")
+    public void resetStatistics()
+    {
+        _exchanges.reset();
+        _coalesced.reset();
+        _rejected.reset();
+        _detached.reset();
+        _keyStatistics.clear();
+    }
+
+    /**
+     * <p>Returns the key used to coalesce the given request with identical requests.</p>
+     *
+     * @param proxyRequest the request to send upstream
+     * @return the coalescing key, or null if the request must not be coalesced
+     */
+    protected String getKey(Request proxyRequest)
+    {
+        String method = proxyRequest.getMethod();
+        if (!HttpMethod.GET.is(method) && !HttpMethod.HEAD.is(method))
+            return null;
+        if (proxyRequest.getBody() != null)
+            return null;
+
+        HttpFields headers = proxyRequest.getHeaders();
+        if (headers.contains(HttpHeader.AUTHORIZATION) && !isKeyHeader(HttpHeader.AUTHORIZATION))
+            return null;
+        if (headers.contains(HttpHeader.COOKIE) && !isKeyHeader(HttpHeader.COOKIE))
+            return null;
+
+        StringBuilder key = new StringBuilder(method).append(' ').append(proxyRequest.getURI());
+        for (String name : _keyHeaders)
+        {
+            List<String> values = headers.getValuesList(name);
+            if (values.isEmpty())
+                continue;
+            key.append('\n').append(name.toLowerCase(Locale.ENGLISH)).append(": ").append(String.join(",", values));
+        }
+        return key.toString();
+    }
+
+    private boolean isKeyHeader(HttpHeader header)
+    {
+        for (String name : _keyHeaders)
+        {
+            if (header.is(name))
+                return true;
+        }
+        return false;
+    }
+
+    /**
+     * <p>Sends the given request upstream, or joins it to an identical request already in progress.</p>
+     * <p>The {@link Request#getTimeout() timeout} of a request that joins another is enforced
+     * by detaching it from the shared exchange when it elapses.</p>
+     *
+     * @param client the client whose scheduler enforces the timeout of the requests that join another
+     * @param proxyRequest the request to send upstream
+     * @param listener the listener notified of the response events
+     * @see #abort(Request, Throwable)
+     */
+    public void send(HttpClient client, Request proxyRequest, Response.Listener listener)
+    {
+        String key = getKey(proxyRequest);
+        if (key == null)
+        {
+            proxyRequest.send(listener);
+            return;
+        }
+
+        KeyStatistics statistics = newKeyStatistics(key);
+        while (true)
+        {
+            Flight flight = _flights.get(key);
+            if (flight == null)
+            {
+                flight = new Flight(key, statistics, proxyRequest, listener);
+                if (_flights.putIfAbsent(key, flight) == null)
+                {
+                    _exchanges.increment();
+                    if (statistics != null)
+                        statistics._exchanges.increment();
+                    if (LOG.isDebugEnabled())
+                        LOG.debug("Sending {} for {}", proxyRequest, flight);
+                    proxyRequest.send(flight);
+                    return;
+                }
+            }
+            else
+            {
+                Boolean joined = flight.join(client.getScheduler(), proxyRequest, listener);
+                // The upstream response has begun, retry with a new exchange.
+                if (joined == null)
+                    continue;
+
+                if (joined)
+                {
+                    _coalesced.increment();
+                    if (statistics != null)
+                        statistics._coalesced.increment();
+                    if (LOG.isDebugEnabled())
+                        LOG.debug("Joined {} to {}", proxyRequest, flight);
+                }
+                else
+                {
+                    _rejected.increment();
+                    if (statistics != null)
+                        statistics._rejected.increment();
+                    if (LOG.isDebugEnabled())
+                        LOG.debug("Too many waiters, sending {} independently of {}", proxyRequest, flight);
+                    proxyRequest.send(listener);
+                }
+                return;
+            }
+        }
+    }
+
+    /**
+     * <p>Detaches the given request from the upstream exchange that it shares with other requests.</p>
+     * <p>Aborting the request itself would abort the exchange of all the requests sharing it,
+     * or would do nothing for a request that joined another, since it is never sent.</p>
+     *
+     * @param proxyRequest the request passed to {@link #send(HttpClient, Request, Response.Listener)}
+     * @param failure the cause of the failure
+     * @return true if the request was detached and its listener notified of the failure,
+     * false if the request does not share an exchange, or if its response is already complete
+     */
+    public boolean abort(Request proxyRequest, Throwable failure)
+    {
+        Object waiter = proxyRequest.getAttributes().get(WAITER_ATTRIBUTE);
+        return waiter instanceof Waiter && ((Waiter)waiter).abort(failure);
+    }
+
+    private KeyStatistics newKeyStatistics(String key)
+    {
+        KeyStatistics statistics = _keyStatistics.get(key);
+        if (statistics == null && _keyStatistics.size() < getMaxKeyStatistics())
+            statistics = _keyStatistics.computeIfAbsent(key, k -> new KeyStatistics());
+        return statistics;
+    }
+
+    @Override
+    public String toString()
+    {
+        return String.format("%s@%x{flights=%d,exchanges=%d,coalesced=%d}", getClass().getSimpleName(), hashCode(), getFlights(), getExchanges(), getCoalesced());
+    }
+
+    /**
+     * <p>The statistics of the requests with the same coalescing key.</p>
+     */
+    public static class KeyStatistics
+    {
+        private final LongAdder _exchanges = new LongAdder();
+        private final LongAdder _coalesced = new LongAdder();
+        private final LongAdder _rejected = new LongAdder();
+        private final AtomicInteger _maxWaiters = new AtomicInteger();
+
+        /**
+         * @return the number of upstream exchanges that could be joined
+         */
+        public long getExchanges()
+        {
+            return _exchanges.longValue();
+        }
+
+        /**
+         * @return the number of requests that joined an upstream exchange
+         */
+        public long getCoalesced()
+        {
+            return _coalesced.longValue();
+        }
+
+        /**
+         * @return the number of requests sent upstream because an exchange had too many waiters
+         */
+        public long getRejected()
+        {
+            return _rejected.longValue();
+        }
+
+        /**
+         * @return the max number of requests that joined a single upstream exchange
+         */
+        public int getMaxWaiters()
+        {
+            return _maxWaiters.get();
+        }
+
+        @Override
+        public String toString()
+        {
+            return String.format("exchanges=%d,coalesced=%d,rejected=%d,maxWaiters=%d", getExchanges(), getCoalesced(), getRejected(), getMaxWaiters());
+        }
+    }
+
+    private class Flight extends Response.Listener.Adapter
+    {
+        private final AutoLock _lock = new AutoLock();
+        private final List<Waiter> _waiters = new ArrayList<>();
+        private final String _key;
+        private final KeyStatistics _statistics;
+        private final Request _request;
+        private boolean _started;
+
+        private Flight(String key, KeyStatistics statistics, Request request, Response.Listener listener)
+        {
+            _key = key;
+            _statistics = statistics;
+            _request = request;
+            _waiters.add(new Waiter(this, request, listener));
+        }
+
+        /**
+         * @return true if joined, false if there are too many waiters, null if the response has already begun
+         */
+        private Boolean join(Scheduler scheduler, Request request, Response.Listener listener)
+        {
+            Waiter waiter;
+            try (AutoLock l = _lock.lock())
+            {
+                if (_started)
+                    return null;
+                // The first waiter is the one that sent the request.
+                if (_waiters.size() > getMaxWaiters())
+                    return false;
+                waiter = new Waiter(this, request, listener);
+                _waiters.add(waiter);
+                if (_statistics != null)
+                    _statistics._maxWaiters.accumulateAndGet(_waiters.size() - 1, Math::max);
+            }
+            // The request is never sent, so its timeout must be enforced here.
+            long timeout = request.getTimeout();
+            if (timeout > 0)
+                waiter.schedule(scheduler, timeout);
+            return true;
+        }
+
+        private void start()
+        {
+            try (AutoLock l = _lock.lock())
+            {
+                if (_started)
+                    return;
+                _started = true;
+                // Remove while holding the lock, so that a request that cannot
+                // join anymore always finds this flight out of the map.
+                _flights.remove(_key, this);
+            }
+        }
+
+        private List<Waiter> waiters()
+        {
+            try (AutoLock l = _lock.lock())
+            {
+                return new ArrayList<>(_waiters);
+            }
+        }
+
+        private void detach(Waiter waiter, Throwable failure)
+        {
+            boolean abort;
+            try (AutoLock l = _lock.lock())
+            {
+                _waiters.remove(waiter);
+                abort = _waiters.isEmpty();
+                if (abort && !_started)
+                {
+                    // Do not let other requests join an aborted exchange.
+                    _started = true;
+                    _flights.remove(_key, this);
+                }
+            }
+            _detached.increment();
+            if (LOG.isDebugEnabled())
+                LOG.debug("Detached {} from {}", waiter, this, failure);
+            if (abort)
+                _request.abort(failure);
+        }
+
+        @Override
+        public void onBegin(Response response)
+        {
+            start();
+            for (Waiter waiter : waiters())
+            {
+                waiter._response = response;
+                waiter._listener.onBegin(waiter);
+            }
+        }
+
+        @Override
+        public boolean onHeader(Response response, HttpField field)
+        {
+            for (Waiter waiter : waiters())
+            {
+                waiter._listener.onHeader(waiter, field);
+            }
+            return true;
+        }
+
+        @Override
+        public void onHeaders(Response response)
+        {
+            for (Waiter waiter : waiters())
+            {
+                waiter._listener.onHeaders(waiter);
+            }
+        }
+
+        @Override
+        public void onContent(Response response, ByteBuffer content, Callback callback)
+        {
+            List<Waiter> waiters = waiters();
+            if (waiters.isEmpty())
+            {
+                callback.succeeded();
+                return;
+            }
+
+            // The content buffer is retained until all the waiters have written it.
+            AtomicInteger pending = new AtomicInteger(waiters.size());
+            Callback release = Callback.from(() ->
+            {
+                if (pending.decrementAndGet() == 0)
+                    callback.succeeded();
+            });
+            for (Waiter waiter : waiters)
+            {
+                try
+                {
+                    waiter._listener.onContent(waiter, content.slice(), Callback.from(release::succeeded, x -> release.succeeded()));
+                }
+                catch (Throwable x)
+                {
+                    release.succeeded();
+                    waiter.abort(x);
+                }
+            }
+        }
+
+        @Override
+        public void onSuccess(Response response)
+        {
+            for (Waiter waiter : waiters())
+            {
+                waiter._listener.onSuccess(waiter);
+            }
+        }
+
+        @Override
+        public void onFailure(Response response, Throwable failure)
+        {
+            for (Waiter waiter : waiters())
+            {
+                waiter._listener.onFailure(waiter, failure);
+            }
+        }
+
+        @Override
+        public void onComplete(Result result)
+        {
+            // The exchange may fail before the response begins.
+            start();
+            for (Waiter waiter : waiters())
+            {
+                if (waiter.complete())
+                    waiter._listener.onComplete(new Result(waiter._request, result.getRequestFailure(), waiter, result.getResponseFailure()));
+            }
+        }
+
+        @Override
+        public String toString()
+        {
+            int waiters;
+            boolean started;
+            try (AutoLock l = _lock.lock())
+            {
+                waiters = _waiters.size();
+                started = _started;
+            }
+            return String.format("%s@%x{key=%s,waiters=%d,started=%b}", getClass().getSimpleName(), hashCode(), _key.replace('\n', ' '), waiters, started);
+        }
+    }
+
+    /**
+     * <p>The view of the upstream response for one waiter.</p>
+     * <p>Aborting this response only detaches the waiter from its {@link Flight}.</p>
+     */
+    private static class Waiter implements Response
+    {
+        private final AtomicBoolean _complete = new AtomicBoolean();
+        private final Flight _flight;
+        private final Request _request;
+        private final Response.Listener _listener;
+        private volatile Response _response;
+        private volatile Scheduler.Task _timeout;
+
+        private Waiter(Flight flight, Request request, Response.Listener listener)
+        {
+            _flight = flight;
+            _request = request;
+            _listener = listener;
+            request.attribute(WAITER_ATTRIBUTE, this);
+        }
+
+        private void schedule(Scheduler scheduler, long timeout)
+        {
+            _timeout = scheduler.schedule(() -> abort(new TimeoutException("Total timeout " + timeout + " ms elapsed")), timeout, TimeUnit.MILLISECONDS);
+            // The response may have completed before the timeout was scheduled.
+            if (_complete.get())
+                cancel();
+        }
+
+        private boolean complete()
+        {
+            if (!_complete.compareAndSet(false, true))
+                return false;
+            cancel();
+            return true;
+        }
+
+        private void cancel()
+        {
+            Scheduler.Task timeout = _timeout;
+            if (timeout != null)
+                timeout.cancel();
+        }
+
+        @Override
+        public Request getRequest()
+        {
+            return _request;
+        }
+
+        @Override
+        public <T extends ResponseListener> List<T> getListeners(Class<T> listenerClass)
+        {
+            return listenerClass.isInstance(_listener) ? List.of(listenerClass.cast(_listener)) : List.of();
+        }
+
+        @Override
+        public HttpVersion getVersion()
+        {
+            Response response = _response;
+            return response == null ? null : response.getVersion();
+        }
+
+        @Override
+        public int getStatus()
+        {
+            Response response = _response;
+            return response == null ? 0 : response.getStatus();
+        }
+
+        @Override
+        public String getReason()
+        {
+            Response response = _response;
+            return response == null ? null : response.getReason();
+        }
+
+        @Override
+        public HttpFields getHeaders()
+        {
+            Response response = _response;
+            return response == null ? HttpFields.EMPTY : response.getHeaders();
+        }
+
+        @Override
+        public boolean abort(Throwable cause)
+        {
+            if (!complete())
+                return false;
+            _flight.detach(this, cause);
+            _listener.onFailure(this, cause);
+            _listener.onComplete(new Result(_request, cause, this, cause));
+            return true;
+        }
+
+        @Override
+        public String toString()
+        {
+            return String.format("%s@%x[%s]", getClass().getSimpleName(), hashCode(), _request);
+        }
+    }
+}
@@ -17,15 +17,21 @@ import java.io.BufferedReader;
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 import javax.servlet.ServletException;
+import javax.servlet.UnavailableException;
 import javax.servlet.http.HttpServlet;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
 import org.eclipse.jetty.client.HttpClient;
 import org.eclipse.jetty.client.api.ContentResponse;
+import org.eclipse.jetty.http.HttpStatus;
 import org.eclipse.jetty.rewrite.handler.RewriteHandler;
 import org.eclipse.jetty.rewrite.handler.VirtualHostRuleContainer;
 import org.eclipse.jetty.server.Server;
@@ -36,11 +42,18 @@ import org.eclipse.jetty.servlet.ServletHolder;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
 
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.greaterThan;
 import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 public class BalancerServletTest
 {
@@ -48,6 +61,7 @@ public class BalancerServletTest
     private static final String SERVLET_PATH = "/mapping";
 
     private boolean stickySessions;
+    private BalancerServlet balancerServlet;
     private Server server1;
     private Server server2;
     private Server balancer;
@@ -71,22 +85,37 @@ public class BalancerServletTest
 
     protected void startBalancer(Class<? extends HttpServlet> servletClass) throws Exception
     {
-        server1 = createServer(new ServletHolder(servletClass), "node1");
+        startBalancer(new ServletHolder(servletClass), new ServletHolder(servletClass), Map.of());
+    }
+
+    protected void startBalancer(ServletHolder servletHolder1, ServletHolder servletHolder2, Map<String, String> initParams) throws Exception
+    {
+        server1 = createServer(servletHolder1, "node1");
         server1.start();
 
-        server2 = createServer(new ServletHolder(servletClass), "node2");
+        server2 = createServer(servletHolder2, "node2");
         server2.start();
 
-        ServletHolder balancerServletHolder = new ServletHolder(BalancerServlet.class);
+        balancerServlet = new BalancerServlet();
+        ServletHolder balancerServletHolder = new ServletHolder(balancerServlet);
         balancerServletHolder.setInitParameter("stickySessions", String.valueOf(stickySessions));
         balancerServletHolder.setInitParameter("proxyPassReverse", "true");
         balancerServletHolder.setInitParameter("balancerMember." + "node1" + ".proxyTo", "http://localhost:" + getServerPort(server1));
         balancerServletHolder.setInitParameter("balancerMember." + "node2" + ".proxyTo", "http://localhost:" + getServerPort(server2));
+        initParams.forEach(balancerServletHolder::setInitParameter);
 
         balancer = createServer(balancerServletHolder, null);
         balancer.start();
     }
 
+    private BalancerServlet.BalancerMember getBalancerMember(String name)
+    {
+        return balancerServlet.getBalancerMembers().stream()
+            .filter(member -> member.getName().equals(name))
+            .findFirst()
+            .orElseThrow();
+    }
+
     private Server createServer(ServletHolder servletHolder, String nodeName)
     {
         Server server = new Server();
@@ -184,12 +213,196 @@ public class BalancerServletTest
         assertThat(response.getContentAsString(), containsString("pathInfo='/test/\n'"));
     }
 
+    @Test
+    public void testWeightedRoundRobin() throws Exception
+    {
+        AtomicInteger hits1 = new AtomicInteger();
+        AtomicInteger hits2 = new AtomicInteger();
+        startBalancer(new ServletHolder(new HitServlet(hits1, 0, HttpStatus.OK_200)), new ServletHolder(new HitServlet(hits2, 0, HttpStatus.OK_200)),
+            Map.of("balancerMember.node1.weight", "3"));
+
+        for (int i = 0; i < 8; i++)
+        {
+            assertEquals(HttpStatus.OK_200, getBalancedResponse("/weighted").getStatus());
+        }
+
+        assertEquals(6, hits1.get());
+        assertEquals(2, hits2.get());
+        assertEquals(6, getBalancerMember("node1").getRequests());
+        // Requests end when the client request completes, just after the response is sent.
+        awaitNoOutstandingRequests();
+    }
+
+    @Test
+    public void testLeastLatency() throws Exception
+    {
+        AtomicInteger hits1 = new AtomicInteger();
+        AtomicInteger hits2 = new AtomicInteger();
+        startBalancer(new ServletHolder(new HitServlet(hits1, 0, HttpStatus.OK_200)), new ServletHolder(new HitServlet(hits2, 200, HttpStatus.OK_200)),
+            Map.of("balancerPolicy", "leastLatency"));
+
+        for (int i = 0; i < 20; i++)
+        {
+            assertEquals(HttpStatus.OK_200, getBalancedResponse("/latency").getStatus());
+        }
+
+        // The slow member is selected only until its latency is known.
+        assertThat(hits2.get(), lessThanOrEqualTo(2));
+        assertThat(getBalancerMember("node2").getLatency(), greaterThan(getBalancerMember("node1").getLatency()));
+    }
+
+    @Test
+    public void testOutlierEjection() throws Exception
+    {
+        AtomicInteger hits1 = new AtomicInteger();
+        AtomicInteger hits2 = new AtomicInteger();
+        startBalancer(new ServletHolder(new HitServlet(hits1, 0, HttpStatus.OK_200)), new ServletHolder(new HitServlet(hits2, 0, HttpStatus.SERVICE_UNAVAILABLE_503)),
+            Map.of("outlierConsecutiveFailures", "2"));
+
+        for (int i = 0; i < 10; i++)
+        {
+            getBalancedResponse("/outlier");
+        }
+
+        assertEquals(2, hits2.get());
+        assertEquals(8, hits1.get());
+        BalancerServlet.BalancerMember member2 = getBalancerMember("node2");
+        assertTrue(member2.isEjected());
+        assertEquals(1, member2.getEjections());
+        assertEquals(2, member2.getFailures());
+        assertFalse(getBalancerMember("node1").isEjected());
+    }
+
+    @Test
+    public void testHealthChecks() throws Exception
+    {
+        AtomicInteger hits1 = new AtomicInteger();
+        AtomicInteger hits2 = new AtomicInteger();
+        startBalancer(new ServletHolder(new HitServlet(hits1, 0, HttpStatus.OK_200)), new ServletHolder(new HitServlet(hits2, 0, HttpStatus.INTERNAL_SERVER_ERROR_500)),
+            Map.of("healthCheckPath", CONTEXT_PATH + SERVLET_PATH + "/health", "healthCheckInterval", "100"));
+
+        BalancerServlet.BalancerMember member2 = getBalancerMember("node2");
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (member2.isHealthy() && System.nanoTime() < deadline)
+        {
+            Thread.sleep(10);
+        }
+        assertFalse(member2.isHealthy());
+        assertTrue(getBalancerMember("node1").isHealthy());
+        hits2.set(0);
+
+        for (int i = 0; i < 4; i++)
+        {
+            assertEquals(HttpStatus.OK_200, getBalancedResponse("/healthy").getStatus());
+        }
+        assertEquals(0, hits2.get());
+    }
+
+    @ParameterizedTest
+    @CsvSource({
+        "outlierConsecutiveFailures,five",
+        "outlierConsecutiveFailures,-1",
+        "outlierConsecutiveFailures,4294967296",
+        "outlierBaseEjectionTime,-1",
+        "outlierMaxEjectionTime,1s",
+        "healthCheckInterval,0",
+        "healthCheckTimeout,-5"
+    })
+    public void testInvalidInitParameterMakesBalancerUnavailable(String name, String value) throws Exception
+    {
+        startBalancer(new ServletHolder(new HitServlet(new AtomicInteger(), 0, HttpStatus.OK_200)), new ServletHolder(new HitServlet(new AtomicInteger(), 0, HttpStatus.OK_200)),
+            Map.of(name, value));
+
+        ServletHolder holder = balancer.getChildHandlerByClass(ServletContextHandler.class).getServletHandler().getServlets()[0];
+        UnavailableException failure = holder.getUnavailableException();
+        assertNotNull(failure);
+        assertThat(failure.getMessage(), containsString(name));
+    }
+
+    @Test
+    public void testClientFailureEndsRequest() throws Exception
+    {
+        HttpServlet readServlet = new HttpServlet()
+        {
+            @Override
+            protected void doPost(HttpServletRequest req, HttpServletResponse resp) throws IOException
+            {
+                req.getInputStream().readAllBytes();
+            }
+        };
+        startBalancer(new ServletHolder(readServlet), new ServletHolder(readServlet), Map.of());
+
+        // The client closes the connection before sending all the request content.
+        try (Socket socket = new Socket("localhost", getServerPort(balancer)))
+        {
+            OutputStream output = socket.getOutputStream();
+            String request = "POST " + CONTEXT_PATH + SERVLET_PATH + "/upload HTTP/1.1\r\n" +
+                "Host: localhost\r\n" +
+                "Content-Length: 1024\r\n" +
+                "\r\n" +
+                "0123456789";
+            output.write(request.getBytes(StandardCharsets.UTF_8));
+            output.flush();
+            Thread.sleep(500);
+        }
+
+        awaitNoOutstandingRequests();
+        assertEquals(1, getBalancerMember("node1").getRequests() + getBalancerMember("node2").getRequests());
+        // The client failure is not counted against the member.
+        assertEquals(0, getBalancerMember("node1").getFailures() + getBalancerMember("node2").getFailures());
+    }
+
+    private void awaitNoOutstandingRequests() throws InterruptedException
+    {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (getOutstandingRequests() > 0 && System.nanoTime() < deadline)
+        {
+            Thread.sleep(10);
+        }
+        assertEquals(0, getOutstandingRequests());
+    }
+
+    private int getOutstandingRequests()
+    {
+        return getBalancerMember("node1").getOutstandingRequests() + getBalancerMember("node2").getOutstandingRequests();
+    }
+
     private String readFirstLine(byte[] responseBytes) throws IOException
     {
         BufferedReader reader = new BufferedReader(new InputStreamReader(new ByteArrayInputStream(responseBytes)));
         return reader.readLine();
     }
 
+    private static class HitServlet extends HttpServlet
+    {
+        private final AtomicInteger hits;
+        private final long delay;
+        private final int status;
+
+        private HitServlet(AtomicInteger hits, long delay, int status)
+        {
+            this.hits = hits;
+            this.delay = delay;
+            this.status = status;
+        }
+
+        @Override
+        protected void doGet(HttpServletRequest req, HttpServletResponse resp) throws IOException
+        {
+            if (!req.getRequestURI().endsWith("/health"))
+                hits.incrementAndGet();
+            try
+            {
+                Thread.sleep(delay);
+            }
+            catch (InterruptedException x)
+            {
+                throw new IOException(x);
+            }
+            resp.setStatus(status);
+        }
+    }
+
     public static final class DumpServlet extends HttpServlet
     {
         @Override
@@ -0,0 +1,630 @@
+//
+// ========================================================================
+// Copyright (c) 1995-2022 Mort Bay Consulting Pty Ltd and others.
+//
+// This program and the accompanying materials are made available under the
+// terms of the Eclipse Public License v. 2.0 which is available at
+// https://www.eclipse.org/legal/epl-2.0, or the Apache License, Version 2.0
+// which is available at https://www.apache.org/licenses/LICENSE-2.0.
+//
+// SPDX-License-Identifier: EPL-2.0 OR Apache-2.0
+// ========================================================================
+//
+
+package org.eclipse.jetty.proxy;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.eclipse.jetty.client.HttpClient;
+import org.eclipse.jetty.client.HttpProxy;
+import org.eclipse.jetty.client.api.ContentResponse;
+import org.eclipse.jetty.client.util.BufferingResponseListener;
+import org.eclipse.jetty.http.HttpHeader;
+import org.eclipse.jetty.http.HttpMethod;
+import org.eclipse.jetty.http.HttpStatus;
+import org.eclipse.jetty.server.Request;
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.server.ServerConnector;
+import org.eclipse.jetty.servlet.ServletContextHandler;
+import org.eclipse.jetty.servlet.ServletHolder;
+import org.eclipse.jetty.toolchain.test.jupiter.WorkDir;
+import org.eclipse.jetty.toolchain.test.jupiter.WorkDirExtension;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.MethodSource;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.notNullValue;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@ExtendWith(WorkDirExtension.class)
+public class ProxyCacheTest
+{
+    public static Stream<Class<? extends AbstractProxyServlet>> impls()
+    {
+        return Stream.of(
+            ProxyServlet.class,
+            AsyncProxyServlet.class,
+            AsyncMiddleManServlet.class
+        );
+    }
+
+    public WorkDir workDir;
+    private HttpClient client;
+    private Server proxy;
+    private ServerConnector proxyConnector;
+    private AbstractProxyServlet proxyServlet;
+    private Server server;
+    private ServerConnector serverConnector;
+
+    private void startServer(HttpServlet servlet) throws Exception
+    {
+        server = new Server();
+        serverConnector = new ServerConnector(server);
+        server.addConnector(serverConnector);
+        ServletContextHandler context = new ServletContextHandler(server, "/", false, false);
+        context.addServlet(new ServletHolder(servlet), "/*");
+        server.start();
+    }
+
+    private void startProxy(Class<? extends AbstractProxyServlet> proxyServletClass, Map<String, String> initParams) throws Exception
+    {
+        proxy = new Server();
+        proxyConnector = new ServerConnector(proxy);
+        proxy.addConnector(proxyConnector);
+        ServletContextHandler context = new ServletContextHandler(proxy, "/", false, false);
+        proxyServlet = proxyServletClass.getConstructor().newInstance();
+        ServletHolder holder = new ServletHolder(proxyServlet);
+        initParams.put("cache", "true");
+        holder.setInitParameters(initParams);
+        context.addServlet(holder, "/*");
+        proxy.start();
+
+        client = new HttpClient();
+        client.getProxyConfiguration().getProxies().add(new HttpProxy("localhost", proxyConnector.getLocalPort()));
+        client.start();
+    }
+
+    @AfterEach
+    public void dispose() throws Exception
+    {
+        if (client != null)
+            client.stop();
+        if (proxy != null)
+            proxy.stop();
+        if (server != null)
+            server.stop();
+    }
+
+    private ContentResponse get(String path) throws Exception
+    {
+        return client.newRequest("localhost", serverConnector.getLocalPort())
+            .path(path)
+            .timeout(5, TimeUnit.SECONDS)
+            .send();
+    }
+
+    private void awaitStores(long stores) throws InterruptedException
+    {
+        // The response is stored when the upstream exchange completes,
+        // which may happen after the client has received the content.
+        ProxyCache cache = proxyServlet.getProxyCache();
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (cache.getStores() < stores && System.nanoTime() < deadline)
+        {
+            Thread.sleep(10);
+        }
+        assertEquals(stores, cache.getStores());
+    }
+
+    @ParameterizedTest
+    @MethodSource("impls")
+    public void testFreshResponseIsServedFromCache(Class<? extends AbstractProxyServlet> proxyServletClass) throws Exception
+    {
+        AtomicInteger requests = new AtomicInteger();
+        startServer(new HttpServlet()
+        {
+            @Override
+            protected void doGet(HttpServletRequest request, HttpServletResponse response) throws IOException
+            {
+                requests.incrementAndGet();
+                response.setHeader("Cache-Control", "max-age=60");
+                response.setContentType("text/plain");
+                response.getWriter().print("content " + request.getRequestURI());
+            }
+        });
+        startProxy(proxyServletClass, new HashMap<>());
+
+        for (int i = 0; i < 3; ++i)
+        {
+            ContentResponse response = get("/fresh");
+            assertEquals(HttpStatus.OK_200, response.getStatus());
+            assertEquals("content /fresh", response.getContentAsString());
+            if (i > 0)
+                assertThat(response.getHeaders().get(HttpHeader.AGE), notNullValue());
+            else
+                awaitStores(1);
+        }
+
+        // HEAD requests are served by the stored GET response.
+        ContentResponse head = client.newRequest("localhost", serverConnector.getLocalPort())
+            .method(HttpMethod.HEAD)
+            .path("/fresh")
+            .timeout(5, TimeUnit.SECONDS)
+            .send();
+        assertEquals(HttpStatus.OK_200, head.getStatus());
+
+        assertEquals(1, requests.get());
+        ProxyCache cache = proxyServlet.getProxyCache();
+        assertEquals(1, cache.getEntries());
+        assertEquals(3, cache.getHits());
+    }
+
+    @ParameterizedTest
+    @MethodSource("impls")
+    public void testNoStoreResponseIsNotCached(Class<? extends AbstractProxyServlet> proxyServletClass) throws Exception
+    {
+        AtomicInteger requests = new AtomicInteger();
+        startServer(new HttpServlet()
+        {
+            @Override
+            protected void doGet(HttpServletRequest request, HttpServletResponse response) throws IOException
+            {
+                requests.incrementAndGet();
+                response.setHeader("Cache-Control", "max-age=60, no-store");
+                response.getWriter().print("private");
+            }
+        });
+        startProxy(proxyServletClass, new HashMap<>());
+
+        for (int i = 0; i < 2; ++i)
+        {
+            ContentResponse response = get("/nostore");
+            assertEquals("private", response.getContentAsString());
+        }
+
+        assertEquals(2, requests.get());
+        assertEquals(0, proxyServlet.getProxyCache().getEntries());
+    }
+
+    @ParameterizedTest
+    @MethodSource("impls")
+    public void testStaleResponseIsRevalidated(Class<? extends AbstractProxyServlet> proxyServletClass) throws Exception
+    {
+        List<String> conditions = new ArrayList<>();
+        startServer(new HttpServlet()
+        {
+            @Override
+            protected void doGet(HttpServletRequest request, HttpServletResponse response) throws IOException
+            {
+                String ifNoneMatch = request.getHeader("If-None-Match");
+                conditions.add(String.valueOf(ifNoneMatch));
+                response.setHeader("Cache-Control", "max-age=0");
+                response.setHeader("ETag", "\"v1\"");
+                if ("\"v1\"".equals(ifNoneMatch))
+                    response.setStatus(HttpStatus.NOT_MODIFIED_304);
+                else
+                    response.getWriter().print("version 1");
+            }
+        });
+        startProxy(proxyServletClass, new HashMap<>());
+
+        for (int i = 0; i < 2; ++i)
+        {
+            ContentResponse response = get("/stale");
+            assertEquals(HttpStatus.OK_200, response.getStatus());
+            assertEquals("version 1", response.getContentAsString());
+            awaitStores(1);
+        }
+
+        assertEquals(List.of("null", "\"v1\""), conditions);
+        ProxyCache cache = proxyServlet.getProxyCache();
+        assertEquals(1, cache.getRevalidations());
+        assertEquals(1, cache.getNotModified());
+    }
+
+    @ParameterizedTest
+    @MethodSource("impls")
+    public void testStaleWhileRevalidate(Class<? extends AbstractProxyServlet> proxyServletClass) throws Exception
+    {
+        AtomicInteger requests = new AtomicInteger();
+        CountDownLatch revalidated = new CountDownLatch(1);
+        startServer(new HttpServlet()
+        {
+            @Override
+            protected void doGet(HttpServletRequest request, HttpServletResponse response) throws IOException
+            {
+                requests.incrementAndGet();
+                response.setHeader("Cache-Control", "max-age=0, stale-while-revalidate=60");
+                response.setHeader("ETag", "\"v1\"");
+                if (request.getHeader("If-None-Match") != null)
+                {
+                    response.setStatus(HttpStatus.NOT_MODIFIED_304);
+                    revalidated.countDown();
+                }
+                else
+                {
+                    response.getWriter().print("content");
+                }
+            }
+        });
+        startProxy(proxyServletClass, new HashMap<>());
+
+        assertEquals("content", get("/swr").getContentAsString());
+        awaitStores(1);
+        // Served stale, while revalidating in background.
+        assertEquals("content", get("/swr").getContentAsString());
+
+        assertTrue(revalidated.await(5, TimeUnit.SECONDS));
+        assertEquals(2, requests.get());
+        assertEquals(1, proxyServlet.getProxyCache().getStaleHits());
+    }
+
+    @ParameterizedTest
+    @MethodSource("impls")
+    public void testVary(Class<? extends AbstractProxyServlet> proxyServletClass) throws Exception
+    {
+        AtomicInteger requests = new AtomicInteger();
+        startServer(new HttpServlet()
+        {
+            @Override
+            protected void doGet(HttpServletRequest request, HttpServletResponse response) throws IOException
+            {
+                requests.incrementAndGet();
+                response.setHeader("Cache-Control", "max-age=60");
+                response.setHeader("Vary", "Accept-Language");
+                response.getWriter().print(request.getHeader("Accept-Language"));
+            }
+        });
+        startProxy(proxyServletClass, new HashMap<>());
+
+        for (String language : List.of("en", "it", "en", "it"))
+        {
+            ContentResponse response = client.newRequest("localhost", serverConnector.getLocalPort())
+                .path("/vary")
+                .headers(headers -> headers.put(HttpHeader.ACCEPT_LANGUAGE, language))
+                .timeout(5, TimeUnit.SECONDS)
+                .send();
+            assertEquals(language, response.getContentAsString());
+            awaitStores(Math.min(2, requests.get()));
+        }
+
+        assertEquals(2, requests.get());
+        assertEquals(2, proxyServlet.getProxyCache().getEntries());
+    }
+
+    @ParameterizedTest
+    @MethodSource("impls")
+    public void testUnsafeRequestInvalidates(Class<? extends AbstractProxyServlet> proxyServletClass) throws Exception
+    {
+        AtomicInteger requests = new AtomicInteger();
+        startServer(new HttpServlet()
+        {
+            @Override
+            protected void doGet(HttpServletRequest request, HttpServletResponse response) throws IOException
+            {
+                response.setHeader("Cache-Control", "max-age=60");
+                response.getWriter().print("version " + requests.incrementAndGet());
+            }
+
+            @Override
+            protected void doPost(HttpServletRequest request, HttpServletResponse response)
+            {
+            }
+        });
+        startProxy(proxyServletClass, new HashMap<>());
+
+        assertEquals("version 1", get("/resource").getContentAsString());
+        awaitStores(1);
+        assertEquals("version 1", get("/resource").getContentAsString());
+
+        ContentResponse post = client.newRequest("localhost", serverConnector.getLocalPort())
+            .method(HttpMethod.POST)
+            .path("/resource")
+            .timeout(5, TimeUnit.SECONDS)
+            .send();
+        assertEquals(HttpStatus.OK_200, post.getStatus());
+
+        assertEquals("version 2", get("/resource").getContentAsString());
+    }
+
+    @ParameterizedTest
+    @MethodSource("impls")
+    public void testDiskTier(Class<? extends AbstractProxyServlet> proxyServletClass) throws Exception
+    {
+        String content = "X".repeat(1024);
+        AtomicInteger requests = new AtomicInteger();
+        startServer(new HttpServlet()
+        {
+            @Override
+            protected void doGet(HttpServletRequest request, HttpServletResponse response) throws IOException
+            {
+                requests.incrementAndGet();
+                response.setHeader("Cache-Control", "max-age=60");
+                response.getWriter().print(content + request.getRequestURI());
+            }
+        });
+        Path directory = workDir.getEmptyPathDir();
+        Map<String, String> initParams = new HashMap<>();
+        initParams.put("cacheMaxMemorySize", "1536");
+        initParams.put("cacheDirectory", directory.toString());
+        startProxy(proxyServletClass, initParams);
+
+        assertEquals(content + "/a", get("/a").getContentAsString());
+        awaitStores(1);
+        assertEquals(content + "/b", get("/b").getContentAsString());
+        awaitStores(2);
+
+        // The content is moved to disk by the client executor.
+        ProxyCache cache = proxyServlet.getProxyCache();
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (cache.getDiskSize() == 0 && System.nanoTime() < deadline)
+        {
+            Thread.sleep(10);
+        }
+        assertEquals(2, cache.getEntries());
+        assertTrue(cache.getDiskSize() > 0);
+        try (Stream<Path> files = Files.list(directory))
+        {
+            assertEquals(1, files.count());
+        }
+
+        // The response moved to disk is still served from the cache.
+        assertEquals(content + "/a", get("/a").getContentAsString());
+        assertEquals(content + "/b", get("/b").getContentAsString());
+        assertEquals(2, requests.get());
+
+        cache.purge();
+        try (Stream<Path> files = Files.list(directory))
+        {
+            assertEquals(0, files.count());
+        }
+    }
+
+    @ParameterizedTest
+    @MethodSource("impls")
+    public void testConcurrentMissesAreCoalesced(Class<? extends AbstractProxyServlet> proxyServletClass) throws Exception
+    {
+        AtomicInteger requests = new AtomicInteger();
+        CountDownLatch arrived = new CountDownLatch(1);
+        CountDownLatch proceed = new CountDownLatch(1);
+        startServer(new HttpServlet()
+        {
+            @Override
+            protected void doGet(HttpServletRequest request, HttpServletResponse response) throws IOException
+            {
+                requests.incrementAndGet();
+                arrived.countDown();
+                try
+                {
+                    proceed.await(5, TimeUnit.SECONDS);
+                }
+                catch (InterruptedException x)
+                {
+                    throw new IOException(x);
+                }
+                response.setHeader("Cache-Control", "max-age=60");
+                response.getWriter().print("coalesced");
+            }
+        });
+        startProxy(proxyServletClass, new HashMap<>());
+
+        int count = 8;
+        List<CompletableFuture<String>> results = new ArrayList<>();
+        for (int i = 0; i < count; ++i)
+        {
+            CompletableFuture<String> result = new CompletableFuture<>();
+            results.add(result);
+            client.newRequest("localhost", serverConnector.getLocalPort())
+                .path("/herd")
+                .timeout(5, TimeUnit.SECONDS)
+                .send(new BufferingResponseListener()
+                {
+                    @Override
+                    public void onComplete(org.eclipse.jetty.client.api.Result r)
+                    {
+                        if (r.isSucceeded())
+                            result.complete(getContentAsString(StandardCharsets.UTF_8));
+                        else
+                            result.completeExceptionally(r.getFailure());
+                    }
+                });
+            if (i == 0)
+                assertTrue(arrived.await(5, TimeUnit.SECONDS));
+        }
+
+        // Wait for all the requests to reach the proxy.
+        ProxyCache cache = proxyServlet.getProxyCache();
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (cache.getCoalesced() < count - 1 && System.nanoTime() < deadline)
+        {
+            Thread.sleep(10);
+        }
+        proceed.countDown();
+
+        for (CompletableFuture<String> result : results)
+        {
+            assertEquals("coalesced", result.get(5, TimeUnit.SECONDS));
+        }
+        assertEquals(1, requests.get());
+        assertEquals(count - 1, cache.getCoalesced());
+    }
+
+    @ParameterizedTest
+    @MethodSource("impls")
+    public void testCoalescedMissesFailWhenLeaderFails(Class<? extends AbstractProxyServlet> proxyServletClass) throws Exception
+    {
+        AtomicInteger requests = new AtomicInteger();
+        CountDownLatch arrived = new CountDownLatch(1);
+        CountDownLatch proceed = new CountDownLatch(1);
+        startServer(new HttpServlet()
+        {
+            @Override
+            protected void doGet(HttpServletRequest request, HttpServletResponse response) throws IOException
+            {
+                requests.incrementAndGet();
+                arrived.countDown();
+                try
+                {
+                    proceed.await(5, TimeUnit.SECONDS);
+                }
+                catch (InterruptedException x)
+                {
+                    throw new IOException(x);
+                }
+                // Fail the forwarded request.
+                Request.getBaseRequest(request).getHttpChannel().getEndPoint().close();
+            }
+        });
+        startProxy(proxyServletClass, new HashMap<>());
+
+        CompletableFuture<Integer> leader = send("/fail");
+        assertTrue(arrived.await(5, TimeUnit.SECONDS));
+        List<CompletableFuture<Integer>> waiters = new ArrayList<>();
+        for (int i = 0; i < 3; ++i)
+        {
+            waiters.add(send("/fail"));
+        }
+        awaitCoalesced(3);
+        proceed.countDown();
+
+        assertEquals(HttpStatus.BAD_GATEWAY_502, leader.get(5, TimeUnit.SECONDS));
+        for (CompletableFuture<Integer> waiter : waiters)
+        {
+            assertEquals(HttpStatus.BAD_GATEWAY_502, waiter.get(5, TimeUnit.SECONDS));
+        }
+        assertEquals(1, requests.get());
+    }
+
+    @ParameterizedTest
+    @MethodSource("impls")
+    public void testMaxWaiters(Class<? extends AbstractProxyServlet> proxyServletClass) throws Exception
+    {
+        AtomicInteger requests = new AtomicInteger();
+        CountDownLatch arrived = new CountDownLatch(2);
+        CountDownLatch proceed = new CountDownLatch(1);
+        startServer(new HttpServlet()
+        {
+            @Override
+            protected void doGet(HttpServletRequest request, HttpServletResponse response) throws IOException
+            {
+                requests.incrementAndGet();
+                arrived.countDown();
+                try
+                {
+                    proceed.await(5, TimeUnit.SECONDS);
+                }
+                catch (InterruptedException x)
+                {
+                    throw new IOException(x);
+                }
+                response.setHeader("Cache-Control", "max-age=60");
+            }
+        });
+        startProxy(proxyServletClass, new HashMap<>());
+        ProxyCache cache = proxyServlet.getProxyCache();
+        cache.setMaxWaiters(1);
+
+        List<CompletableFuture<Integer>> results = new ArrayList<>();
+        results.add(send("/max"));
+        while (requests.get() == 0)
+        {
+            Thread.sleep(10);
+        }
+        results.add(send("/max"));
+        results.add(send("/max"));
+
+        // The request beyond the max number of waiters is forwarded.
+        assertTrue(arrived.await(5, TimeUnit.SECONDS));
+        proceed.countDown();
+
+        for (CompletableFuture<Integer> result : results)
+        {
+            assertEquals(HttpStatus.OK_200, result.get(5, TimeUnit.SECONDS));
+        }
+        assertEquals(2, requests.get());
+        assertEquals(1, cache.getCoalesced());
+    }
+
+    @ParameterizedTest
+    @MethodSource("impls")
+    public void testCoalescedMissTimesOut(Class<? extends AbstractProxyServlet> proxyServletClass) throws Exception
+    {
+        AtomicInteger requests = new AtomicInteger();
+        CountDownLatch arrived = new CountDownLatch(1);
+        CountDownLatch proceed = new CountDownLatch(1);
+        startServer(new HttpServlet()
+        {
+            @Override
+            protected void doGet(HttpServletRequest request, HttpServletResponse response) throws IOException
+            {
+                requests.incrementAndGet();
+                arrived.countDown();
+                try
+                {
+                    proceed.await(5, TimeUnit.SECONDS);
+                }
+                catch (InterruptedException x)
+                {
+                    throw new IOException(x);
+                }
+                response.setHeader("Cache-Control", "max-age=60");
+            }
+        });
+        // The leader request does not time out.
+        Map<String, String> initParams = new HashMap<>();
+        initParams.put("timeout", "0");
+        startProxy(proxyServletClass, initParams);
+
+        CompletableFuture<Integer> leader = send("/slow");
+        assertTrue(arrived.await(5, TimeUnit.SECONDS));
+        proxyServlet.setTimeout(500);
+        ProxyCache cache = proxyServlet.getProxyCache();
+
+        CompletableFuture<Integer> waiter = send("/slow");
+        assertEquals(HttpStatus.GATEWAY_TIMEOUT_504, waiter.get(5, TimeUnit.SECONDS));
+        assertEquals(1, cache.getCoalesced());
+
+        proceed.countDown();
+        assertEquals(HttpStatus.OK_200, leader.get(5, TimeUnit.SECONDS));
+        assertEquals(1, requests.get());
+    }
+
+    private CompletableFuture<Integer> send(String path)
+    {
+        CompletableFuture<Integer> result = new CompletableFuture<>();
+        client.newRequest("localhost", serverConnector.getLocalPort())
+            .path(path)
+            .timeout(5, TimeUnit.SECONDS)
+            .send(r -> result.complete(r.getResponse() == null ? -1 : r.getResponse().getStatus()));
+        return result;
+    }
+
+    private void awaitCoalesced(long coalesced) throws InterruptedException
+    {
+        ProxyCache cache = proxyServlet.getProxyCache();
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (cache.getCoalesced() < coalesced && System.nanoTime() < deadline)
+        {
+            Thread.sleep(10);
+        }
+        assertEquals(coalesced, cache.getCoalesced());
+    }
+}
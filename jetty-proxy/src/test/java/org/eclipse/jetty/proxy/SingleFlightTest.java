@@ -0,0 +1,371 @@
+//
+// ========================================================================
+// Copyright (c) 1995-2022 Mort Bay Consulting Pty Ltd and others.
+//
+// This program and the accompanying materials are made available under the
+// terms of the Eclipse Public License v. 2.0 which is available at
+// https://www.eclipse.org/legal/epl-2.0, or the Apache License, Version 2.0
+// which is available at https://www.apache.org/licenses/LICENSE-2.0.
+//
+// SPDX-License-Identifier: EPL-2.0 OR Apache-2.0
+// ========================================================================
+//
+
+package org.eclipse.jetty.proxy;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.LongSupplier;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.eclipse.jetty.client.HttpClient;
+import org.eclipse.jetty.client.HttpProxy;
+import org.eclipse.jetty.client.api.Request;
+import org.eclipse.jetty.client.api.Result;
+import org.eclipse.jetty.client.util.BufferingResponseListener;
+import org.eclipse.jetty.http.HttpFields;
+import org.eclipse.jetty.http.HttpHeader;
+import org.eclipse.jetty.http.HttpStatus;
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.server.ServerConnector;
+import org.eclipse.jetty.servlet.ServletContextHandler;
+import org.eclipse.jetty.servlet.ServletHolder;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class SingleFlightTest
+{
+    private HttpClient client;
+    private Server proxy;
+    private ServerConnector proxyConnector;
+    private AsyncProxyServlet proxyServlet;
+    private Server server;
+    private ServerConnector serverConnector;
+
+    private void startServer(HttpServlet servlet) throws Exception
+    {
+        server = new Server();
+        serverConnector = new ServerConnector(server);
+        server.addConnector(serverConnector);
+        ServletContextHandler context = new ServletContextHandler(server, "/", false, false);
+        context.addServlet(new ServletHolder(servlet), "/*");
+        server.start();
+    }
+
+    private void startProxy(Map<String, String> initParams) throws Exception
+    {
+        proxy = new Server();
+        proxyConnector = new ServerConnector(proxy);
+        proxy.addConnector(proxyConnector);
+        ServletContextHandler context = new ServletContextHandler(proxy, "/", false, false);
+        proxyServlet = new AsyncProxyServlet()
+        {
+            @Override
+            protected void sendProxyRequest(HttpServletRequest clientRequest, HttpServletResponse proxyResponse, Request proxyRequest)
+            {
+                String timeout = clientRequest.getHeader("X-Timeout");
+                if (timeout != null)
+                    proxyRequest.timeout(Long.parseLong(timeout), TimeUnit.MILLISECONDS);
+                super.sendProxyRequest(clientRequest, proxyResponse, proxyRequest);
+                // Simulates a failure to read the client request.
+                if (clientRequest.getHeader("X-Fail") != null)
+                    onClientRequestFailure(clientRequest, proxyRequest, proxyResponse, new IOException("explicitly_thrown_by_test"));
+            }
+        };
+        ServletHolder holder = new ServletHolder(proxyServlet);
+        initParams.put("singleFlight", "true");
+        holder.setInitParameters(initParams);
+        context.addServlet(holder, "/*");
+        proxy.start();
+
+        client = new HttpClient();
+        client.getProxyConfiguration().getProxies().add(new HttpProxy("localhost", proxyConnector.getLocalPort()));
+        client.start();
+    }
+
+    @AfterEach
+    public void dispose() throws Exception
+    {
+        if (client != null)
+            client.stop();
+        if (proxy != null)
+            proxy.stop();
+        if (server != null)
+            server.stop();
+    }
+
+    private HttpServlet newBlockingServlet(AtomicInteger requests, CountDownLatch proceed, byte[] content)
+    {
+        return new HttpServlet()
+        {
+            @Override
+            protected void doGet(HttpServletRequest request, HttpServletResponse response) throws IOException
+            {
+                requests.incrementAndGet();
+                try
+                {
+                    proceed.await(5, TimeUnit.SECONDS);
+                }
+                catch (InterruptedException x)
+                {
+                    throw new IOException(x);
+                }
+                response.setContentType("application/octet-stream");
+                String language = request.getHeader("Accept-Language");
+                if (language != null)
+                    response.setHeader("Content-Language", language);
+                ServletOutputStream output = response.getOutputStream();
+                // Write in chunks, so that the content is proxied in multiple buffers.
+                for (int offset = 0; offset < content.length; offset += 4096)
+                {
+                    output.write(content, offset, Math.min(4096, content.length - offset));
+                    output.flush();
+                }
+            }
+        };
+    }
+
+    private CompletableFuture<Result> send(String path, String language, List<byte[]> contents)
+    {
+        return sendWithHeaders(path, headers ->
+        {
+            if (language != null)
+                headers.put(HttpHeader.ACCEPT_LANGUAGE, language);
+        }, contents);
+    }
+
+    private CompletableFuture<Result> sendWithHeaders(String path, Consumer<HttpFields.Mutable> headers, List<byte[]> contents)
+    {
+        CompletableFuture<Result> result = new CompletableFuture<>();
+        client.newRequest("localhost", serverConnector.getLocalPort())
+            .path(path)
+            .headers(headers)
+            .timeout(5, TimeUnit.SECONDS)
+            .send(new BufferingResponseListener(1024 * 1024)
+            {
+                @Override
+                public void onComplete(Result r)
+                {
+                    contents.add(getContent());
+                    result.complete(r);
+                }
+            });
+        return result;
+    }
+
+    private static void await(LongSupplier value, long expected) throws InterruptedException
+    {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (value.getAsLong() < expected && System.nanoTime() < deadline)
+        {
+            Thread.sleep(10);
+        }
+        assertEquals(expected, value.getAsLong());
+    }
+
+    @Test
+    public void testIdenticalRequestsShareUpstreamExchange() throws Exception
+    {
+        byte[] content = new byte[256 * 1024];
+        Arrays.fill(content, (byte)'x');
+        AtomicInteger requests = new AtomicInteger();
+        CountDownLatch proceed = new CountDownLatch(1);
+        startServer(newBlockingServlet(requests, proceed, content));
+        startProxy(new HashMap<>());
+
+        int count = 10;
+        List<byte[]> contents = new CopyOnWriteArrayList<>();
+        List<CompletableFuture<Result>> results = new ArrayList<>();
+        for (int i = 0; i < count; ++i)
+        {
+            results.add(send("/herd", null, contents));
+        }
+
+        SingleFlight singleFlight = proxyServlet.getSingleFlight();
+        await(singleFlight::getCoalesced, count - 1);
+        proceed.countDown();
+
+        for (CompletableFuture<Result> result : results)
+        {
+            Result r = result.get(5, TimeUnit.SECONDS);
+            assertTrue(r.isSucceeded());
+            assertEquals(HttpStatus.OK_200, r.getResponse().getStatus());
+        }
+        assertEquals(count, contents.size());
+        for (byte[] bytes : contents)
+        {
+            assertArrayEquals(content, bytes);
+        }
+
+        assertEquals(1, requests.get());
+        assertEquals(1, singleFlight.getExchanges());
+        assertEquals(0, singleFlight.getFlights());
+        Map<String, String> keyStatistics = singleFlight.getKeyStatistics();
+        assertEquals(1, keyStatistics.size());
+        assertEquals("exchanges=1,coalesced=" + (count - 1) + ",rejected=0,maxWaiters=" + (count - 1), keyStatistics.values().iterator().next());
+    }
+
+    @Test
+    public void testJoinedRequestTimeout() throws Exception
+    {
+        byte[] content = "content".getBytes();
+        AtomicInteger requests = new AtomicInteger();
+        CountDownLatch proceed = new CountDownLatch(1);
+        startServer(newBlockingServlet(requests, proceed, content));
+        startProxy(new HashMap<>());
+
+        List<byte[]> contents = new CopyOnWriteArrayList<>();
+        CompletableFuture<Result> result1 = send("/timeout", null, contents);
+        SingleFlight singleFlight = proxyServlet.getSingleFlight();
+        await(singleFlight::getExchanges, 1);
+        CompletableFuture<Result> result2 = sendWithHeaders("/timeout", headers -> headers.put("X-Timeout", "500"), contents);
+        await(singleFlight::getCoalesced, 1);
+
+        // The joined request times out, while the upstream exchange continues.
+        Result r2 = result2.get(5, TimeUnit.SECONDS);
+        assertEquals(HttpStatus.GATEWAY_TIMEOUT_504, r2.getResponse().getStatus());
+        assertEquals(1, singleFlight.getDetached());
+
+        proceed.countDown();
+        Result r1 = result1.get(5, TimeUnit.SECONDS);
+        assertEquals(HttpStatus.OK_200, r1.getResponse().getStatus());
+        assertEquals(1, requests.get());
+    }
+
+    @Test
+    public void testJoinedRequestClientFailure() throws Exception
+    {
+        byte[] content = "content".getBytes();
+        AtomicInteger requests = new AtomicInteger();
+        CountDownLatch proceed = new CountDownLatch(1);
+        startServer(newBlockingServlet(requests, proceed, content));
+        startProxy(new HashMap<>());
+
+        List<byte[]> contents = new CopyOnWriteArrayList<>();
+        CompletableFuture<Result> result1 = send("/failure", null, contents);
+        SingleFlight singleFlight = proxyServlet.getSingleFlight();
+        await(singleFlight::getExchanges, 1);
+        CompletableFuture<Result> result2 = sendWithHeaders("/failure", headers -> headers.put("X-Fail", "true"), contents);
+
+        // The failed request is detached, and its response is an error.
+        Result r2 = result2.get(5, TimeUnit.SECONDS);
+        assertEquals(HttpStatus.BAD_GATEWAY_502, r2.getResponse().getStatus());
+        assertEquals(1, singleFlight.getCoalesced());
+        assertEquals(1, singleFlight.getDetached());
+
+        proceed.countDown();
+        Result r1 = result1.get(5, TimeUnit.SECONDS);
+        assertEquals(HttpStatus.OK_200, r1.getResponse().getStatus());
+        assertEquals(1, requests.get());
+    }
+
+    @Test
+    public void testKeyHeadersSeparateExchanges() throws Exception
+    {
+        byte[] content = "content".getBytes();
+        AtomicInteger requests = new AtomicInteger();
+        CountDownLatch proceed = new CountDownLatch(1);
+        startServer(newBlockingServlet(requests, proceed, content));
+        startProxy(new HashMap<>());
+
+        List<byte[]> contents = new CopyOnWriteArrayList<>();
+        List<CompletableFuture<Result>> results = new ArrayList<>();
+        for (String language : List.of("en", "it", "en", "it"))
+        {
+            results.add(send("/vary", language, contents));
+        }
+
+        SingleFlight singleFlight = proxyServlet.getSingleFlight();
+        await(singleFlight::getCoalesced, 2);
+        proceed.countDown();
+
+        for (CompletableFuture<Result> result : results)
+        {
+            Result r = result.get(5, TimeUnit.SECONDS);
+            assertTrue(r.isSucceeded());
+            String language = r.getRequest().getHeaders().get(HttpHeader.ACCEPT_LANGUAGE);
+            assertEquals(language, r.getResponse().getHeaders().get(HttpHeader.CONTENT_LANGUAGE));
+        }
+        assertEquals(2, requests.get());
+        assertEquals(2, singleFlight.getKeyStatistics().size());
+    }
+
+    @Test
+    public void testMaxWaiters() throws Exception
+    {
+        byte[] content = "content".getBytes();
+        AtomicInteger requests = new AtomicInteger();
+        CountDownLatch proceed = new CountDownLatch(1);
+        startServer(newBlockingServlet(requests, proceed, content));
+        Map<String, String> initParams = new HashMap<>();
+        initParams.put("singleFlightMaxWaiters", "2");
+        startProxy(initParams);
+
+        List<byte[]> contents = new CopyOnWriteArrayList<>();
+        List<CompletableFuture<Result>> results = new ArrayList<>();
+        for (int i = 0; i < 5; ++i)
+        {
+            results.add(send("/bounded", null, contents));
+        }
+
+        SingleFlight singleFlight = proxyServlet.getSingleFlight();
+        await(() -> singleFlight.getCoalesced() + singleFlight.getRejected(), 4);
+        proceed.countDown();
+
+        for (CompletableFuture<Result> result : results)
+        {
+            assertTrue(result.get(5, TimeUnit.SECONDS).isSucceeded());
+        }
+        assertEquals(2, singleFlight.getCoalesced());
+        assertEquals(2, singleFlight.getRejected());
+        assertEquals(3, requests.get());
+    }
+
+    @Test
+    public void testRequestsWithCookiesAreNotCoalesced() throws Exception
+    {
+        byte[] content = "content".getBytes();
+        AtomicInteger requests = new AtomicInteger();
+        CountDownLatch proceed = new CountDownLatch(1);
+        startServer(newBlockingServlet(requests, proceed, content));
+        startProxy(new HashMap<>());
+
+        List<CompletableFuture<Result>> results = new ArrayList<>();
+        for (int i = 0; i < 3; ++i)
+        {
+            CompletableFuture<Result> result = new CompletableFuture<>();
+            results.add(result);
+            client.newRequest("localhost", serverConnector.getLocalPort())
+                .path("/private")
+                .headers(headers -> headers.put(HttpHeader.COOKIE, "session=" + result.hashCode()))
+                .timeout(5, TimeUnit.SECONDS)
+                .send(result::complete);
+        }
+
+        await(requests::get, 3);
+        proceed.countDown();
+
+        for (CompletableFuture<Result> result : results)
+        {
+            assertTrue(result.get(5, TimeUnit.SECONDS).isSucceeded());
+        }
+        assertEquals(0, proxyServlet.getSingleFlight().getCoalesced());
+    }
+}
@@ -15,8 +15,10 @@ package org.eclipse.jetty.quic.client;
 
 import java.io.IOException;
 import java.io.PrintWriter;
+import java.nio.ByteBuffer;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
@@ -28,8 +30,10 @@ import org.eclipse.jetty.http.HttpVersion;
 import org.eclipse.jetty.http2.client.HTTP2Client;
 import org.eclipse.jetty.http2.client.http.ClientConnectionFactoryOverHTTP2;
 import org.eclipse.jetty.http2.server.HTTP2ServerConnectionFactory;
+import org.eclipse.jetty.io.ByteBufferPool;
 import org.eclipse.jetty.io.ClientConnectionFactory;
 import org.eclipse.jetty.io.ClientConnector;
+import org.eclipse.jetty.io.MappedByteBufferPool;
 import org.eclipse.jetty.quic.server.QuicServerConnector;
 import org.eclipse.jetty.server.HttpConfiguration;
 import org.eclipse.jetty.server.HttpConnectionFactory;
@@ -43,12 +47,15 @@ import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
 import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
 import static org.hamcrest.core.Is.is;
 
 public class End2EndClientTest
 {
     private Server server;
     private QuicServerConnector connector;
+    private CountingByteBufferPool serverBufferPool;
     private HttpClient client;
     private final String responseContent = "" +
         "<html>\n" +
@@ -69,7 +76,8 @@ public class End2EndClientTest
         HttpConfiguration httpConfiguration = new HttpConfiguration();
         HttpConnectionFactory http1 = new HttpConnectionFactory(httpConfiguration);
         HTTP2ServerConnectionFactory http2 = new HTTP2ServerConnectionFactory(httpConfiguration);
-        connector = new QuicServerConnector(server, sslContextFactory, http1, http2);
+        serverBufferPool = new CountingByteBufferPool(new MappedByteBufferPool());
+        connector = new QuicServerConnector(server, null, null, serverBufferPool, sslContextFactory, http1, http2);
         server.addConnector(connector);
 
         server.setHandler(new AbstractHandler()
@@ -124,6 +132,39 @@ public class End2EndClientTest
         assertThat(contentAsString, is(responseContent));
     }
 
+    @Test
+    public void testBatchedDatagramStatistics() throws Exception
+    {
+        for (int i = 0; i < 10; i++)
+        {
+            ContentResponse response = client.newRequest("https://localhost:" + connector.getLocalPort() + "/" + i)
+                .timeout(5, TimeUnit.SECONDS)
+                .send();
+            assertThat(response.getStatus(), is(200));
+        }
+
+        assertThat(connector.getReceivedPackets(), greaterThanOrEqualTo(connector.getReceiveBatches()));
+        assertThat(connector.getReceiveBatches(), greaterThan(0L));
+        assertThat(connector.getSentPackets(), greaterThanOrEqualTo(connector.getSendBatches()));
+        assertThat(connector.getSendBatches(), greaterThan(0L));
+    }
+
+    @Test
+    public void testReceiveBuffersReleasedOnClose() throws Exception
+    {
+        ContentResponse response = client.newRequest("https://localhost:" + connector.getLocalPort())
+            .timeout(5, TimeUnit.SECONDS)
+            .send();
+        assertThat(response.getStatus(), is(200));
+        assertThat(serverBufferPool.getLeasedBuffers(), greaterThan(0L));
+
+        LifeCycle.stop(client);
+        server.stop();
+
+        // Closing the connection returns the batch receive buffers to the pool.
+        assertThat(serverBufferPool.getLeasedBuffers(), is(0L));
+    }
+
     @Test
     public void testManyHTTP1() throws Exception
     {
@@ -165,4 +206,76 @@ public class End2EndClientTest
             .orTimeout(15, TimeUnit.SECONDS)
             .join();
     }
+
+    @Test
+    public void testManyClientsWithReusePortChannels() throws Exception
+    {
+        server.stop();
+        connector.setReusePortChannels(4);
+        server.start();
+
+        // Each client uses a different local port, so the
+        // kernel spreads the clients across the DatagramChannels.
+        for (int c = 0; c < 8; ++c)
+        {
+            QuicClientConnectorConfigurator configurator = new QuicClientConnectorConfigurator();
+            configurator.getQuicConfiguration().setVerifyPeerCertificates(false);
+            HttpClient httpClient = new HttpClient(new HttpClientTransportDynamic(new ClientConnector(configurator), HttpClientConnectionFactory.HTTP11));
+            httpClient.start();
+            try
+            {
+                for (int i = 0; i < 10; ++i)
+                {
+                    ContentResponse response = httpClient.newRequest("https://localhost:" + connector.getLocalPort() + "/" + c + "/" + i)
+                        .timeout(5, TimeUnit.SECONDS)
+                        .send();
+                    assertThat(response.getStatus(), is(200));
+                    assertThat(response.getContentAsString(), is(responseContent));
+                }
+            }
+            finally
+            {
+                LifeCycle.stop(httpClient);
+            }
+        }
+    }
+
+    private static class CountingByteBufferPool implements ByteBufferPool
+    {
+        private final AtomicLong leasedBuffers = new AtomicLong();
+        private final ByteBufferPool delegate;
+
+        private CountingByteBufferPool(ByteBufferPool delegate)
+        {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public ByteBuffer acquire(int size, boolean direct)
+        {
+            leasedBuffers.incrementAndGet();
+            return delegate.acquire(size, direct);
+        }
+
+        @Override
+        public void release(ByteBuffer buffer)
+        {
+            if (buffer != null)
+                leasedBuffers.decrementAndGet();
+            delegate.release(buffer);
+        }
+
+        @Override
+        public void remove(ByteBuffer buffer)
+        {
+            if (buffer != null)
+                leasedBuffers.decrementAndGet();
+            delegate.remove(buffer);
+        }
+
+        private long getLeasedBuffers()
+        {
+            return leasedBuffers.get();
+        }
+    }
 }
@@ -20,7 +20,9 @@ import java.util.ArrayDeque;
 import java.util.Collection;
 import java.util.EventListener;
 import java.util.List;
+import java.util.Queue;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.Executor;
@@ -50,6 +52,9 @@ import org.slf4j.LoggerFactory;
  * {@link QuicSession}, and the received bytes are then passed to the {@link QuicSession} for processing.</p>
  * <p>On the receive side, one QuicConnection <em>fans-out</em> to multiple {@link QuicSession}s.</p>
  * <p>On the send side, many {@link QuicSession}s <em>fan-in</em> to one QuicConnection.</p>
+ * <p>When multiple QuicConnections share the same network port, a packet for a {@link QuicSession}
+ * owned by another QuicConnection (see {@link #findOwner(QuicheConnectionId)}) is forwarded to the
+ * owner, that processes it as if it had received the packet from its own {@link DatagramChannelEndPoint}.</p>
  */
 public abstract class QuicConnection extends AbstractConnection
 {
@@ -57,13 +62,17 @@ public abstract class QuicConnection extends AbstractConnection
 
     private final List<QuicSession.Listener> listeners = new CopyOnWriteArrayList<>();
     private final ConcurrentMap<QuicheConnectionId, QuicSession> sessions = new ConcurrentHashMap<>();
+    private final Queue<Forwarded> forwarded = new ConcurrentLinkedQueue<>();
     private final AtomicBoolean closed = new AtomicBoolean();
     private final Scheduler scheduler;
     private final ByteBufferPool byteBufferPool;
     private final AdaptiveExecutionStrategy strategy;
     private final Flusher flusher = new Flusher();
     private final Callback fillableCallback = new FillableCallback();
+    private final ReceiveBatch receiveBatch = new ReceiveBatch();
     private int outputBufferSize = 2048;
+    private int inputBatchSize = 8;
+    private int outputBatchSize = 8;
     private boolean useInputDirectByteBuffers = true;
     private boolean useOutputDirectByteBuffers = true;
 
@@ -103,6 +112,46 @@ public abstract class QuicConnection extends AbstractConnection
         this.outputBufferSize = outputBufferSize;
     }
 
+    /**
+     * @return the max number of datagrams received with a single batch receive
+     */
+    public int getInputBatchSize()
+    {
+        return inputBatchSize;
+    }
+
+    /**
+     * <p>Sets the max number of datagrams received with a single batch receive.</p>
+     * <p>The received datagrams are stored in a ring of buffers allocated once and
+     * reused for the lifetime of this connection, each of {@link #getInputBufferSize()} bytes.</p>
+     *
+     * @param inputBatchSize the max number of datagrams received with a single batch receive
+     */
+    public void setInputBatchSize(int inputBatchSize)
+    {
+        if (inputBatchSize < 1)
+            throw new IllegalArgumentException("Invalid input batch size: " + inputBatchSize);
+        this.inputBatchSize = inputBatchSize;
+    }
+
+    /**
+     * @return the max number of datagrams that a {@link QuicSession} sends to its peer with a single write
+     */
+    public int getOutputBatchSize()
+    {
+        return outputBatchSize;
+    }
+
+    /**
+     * @param outputBatchSize the max number of datagrams that a {@link QuicSession} sends to its peer with a single write
+     */
+    public void setOutputBatchSize(int outputBatchSize)
+    {
+        if (outputBatchSize < 1)
+            throw new IllegalArgumentException("Invalid output batch size: " + outputBatchSize);
+        this.outputBatchSize = outputBatchSize;
+    }
+
     public boolean isUseInputDirectByteBuffers()
     {
         return useInputDirectByteBuffers;
@@ -155,6 +204,14 @@ public abstract class QuicConnection extends AbstractConnection
     public void onClose(Throwable cause)
     {
         LifeCycle.stop(strategy);
+        while (true)
+        {
+            Forwarded packet = forwarded.poll();
+            if (packet == null)
+                break;
+            byteBufferPool.release(packet.cipherBuffer);
+        }
+        receiveBatch.release();
         super.onClose(cause);
     }
 
@@ -210,6 +267,32 @@ public abstract class QuicConnection extends AbstractConnection
 
     protected abstract QuicSession createSession(SocketAddress remoteAddress, ByteBuffer cipherBuffer) throws IOException;
 
+    /**
+     * <p>Returns the QuicConnection that owns, or will own, the {@link QuicSession}
+     * with the given connection ID, when no such session exists in this QuicConnection.</p>
+     * <p>Packets for sessions owned by another QuicConnection are forwarded to it.</p>
+     *
+     * @param connectionId the connection ID of a received packet
+     * @return the QuicConnection that must process the packet, by default this QuicConnection
+     */
+    protected QuicConnection findOwner(QuicheConnectionId connectionId)
+    {
+        return this;
+    }
+
+    private void forward(QuicheConnectionId connectionId, SocketAddress remoteAddress, ByteBuffer cipherBuffer)
+    {
+        // The cipher buffer is reused by the receiving QuicConnection, so it must be copied.
+        ByteBuffer copy = byteBufferPool.acquire(cipherBuffer.remaining(), isUseInputDirectByteBuffers());
+        int pos = BufferUtil.flipToFill(copy);
+        copy.put(cipherBuffer);
+        BufferUtil.flipToFlush(copy, pos);
+        forwarded.offer(new Forwarded(connectionId, remoteAddress, copy));
+        if (LOG.isDebugEnabled())
+            LOG.debug("forwarded packet for connection ID {} to {}", connectionId, this);
+        strategy.dispatch();
+    }
+
     public void write(Callback callback, SocketAddress remoteAddress, ByteBuffer... buffers)
     {
         flusher.offer(callback, remoteAddress, buffers);
@@ -217,36 +300,45 @@ public abstract class QuicConnection extends AbstractConnection
 
     private Runnable receiveAndProcess()
     {
-        boolean interested = isFillInterested();
-        if (LOG.isDebugEnabled())
-            LOG.debug("receiveAndProcess() fillInterested={}", interested);
-        if (interested)
-            return null;
+        Runnable forwardedTask = processForwarded();
+        if (forwardedTask != null)
+            return forwardedTask;
 
-        ByteBuffer cipherBuffer = byteBufferPool.acquire(getInputBufferSize(), isUseInputDirectByteBuffers());
         try
         {
             while (true)
             {
-                BufferUtil.clear(cipherBuffer);
-                SocketAddress remoteAddress = getEndPoint().receive(cipherBuffer);
-                int fill = remoteAddress == DatagramChannelEndPoint.EOF ? -1 : cipherBuffer.remaining();
-                if (LOG.isDebugEnabled())
-                    LOG.debug("filled cipher buffer with {} byte(s)", fill);
-                // DatagramChannelEndPoint will only return -1 if input is shut down.
-                if (fill < 0)
+                // Process the datagrams received by the previous batch
+                // receive, which may have been interrupted by a task.
+                if (!receiveBatch.hasNext())
                 {
-                    byteBufferPool.release(cipherBuffer);
-                    getEndPoint().shutdownOutput();
-                    return null;
-                }
-                if (fill == 0)
-                {
-                    byteBufferPool.release(cipherBuffer);
-                    fillInterested();
-                    return null;
+                    boolean interested = isFillInterested();
+                    if (LOG.isDebugEnabled())
+                        LOG.debug("receiveAndProcess() fillInterested={}", interested);
+                    if (interested)
+                        return null;
+
+                    int received = receiveBatch.receive();
+                    if (LOG.isDebugEnabled())
+                        LOG.debug("received {} datagram(s)", received);
+                    // DatagramChannelEndPoint will only return -1 if input is shut down.
+                    if (received < 0)
+                    {
+                        receiveBatch.release();
+                        getEndPoint().shutdownOutput();
+                        return null;
+                    }
+                    if (received == 0)
+                    {
+                        fillInterested();
+                        return null;
+                    }
                 }
 
+                ByteBuffer cipherBuffer = receiveBatch.buffer();
+                SocketAddress remoteAddress = receiveBatch.remoteAddress();
+                receiveBatch.next();
+
                 if (LOG.isDebugEnabled())
                     LOG.debug("peer IP address: {}, ciphertext packet size: {}", remoteAddress, cipherBuffer.remaining());
 
@@ -263,55 +355,89 @@ public abstract class QuicConnection extends AbstractConnection
                 QuicSession session = sessions.get(quicheConnectionId);
                 if (session == null)
                 {
-                    if (LOG.isDebugEnabled())
-                        LOG.debug("packet is for unknown session, trying to create a new one");
-                    session = createSession(remoteAddress, cipherBuffer);
-                    if (session != null)
-                    {
-                        if (LOG.isDebugEnabled())
-                            LOG.debug("session created");
-                        session.setConnectionId(quicheConnectionId);
-                        session.setIdleTimeout(getEndPoint().getIdleTimeout());
-                        sessions.put(quicheConnectionId, session);
-                        listeners.forEach(session::addEventListener);
-                        LifeCycle.start(session);
-
-                        // Session creation may have generated a task.
-                        Runnable task = session.pollTask();
-                        if (LOG.isDebugEnabled())
-                            LOG.debug("processing creation task {} on {}", task, session);
-                        if (task != null)
-                        {
-                            byteBufferPool.release(cipherBuffer);
-                            return task;
-                        }
-                    }
-                    else
+                    QuicConnection owner = findOwner(quicheConnectionId);
+                    if (owner != this)
                     {
-                        if (LOG.isDebugEnabled())
-                            LOG.debug("session not created");
+                        owner.forward(quicheConnectionId, remoteAddress, cipherBuffer);
+                        continue;
                     }
-                    continue;
                 }
 
-                Runnable task = process(session, remoteAddress, cipherBuffer);
+                Runnable task = processPacket(session, quicheConnectionId, remoteAddress, cipherBuffer);
                 if (task != null)
-                {
-                    byteBufferPool.release(cipherBuffer);
                     return task;
-                }
             }
         }
         catch (Throwable x)
         {
             if (LOG.isDebugEnabled())
                 LOG.debug("receiveAndProcess() failure", x);
-            byteBufferPool.release(cipherBuffer);
+            receiveBatch.clear();
             onFailure(x);
             return null;
         }
     }
 
+    private Runnable processForwarded()
+    {
+        while (true)
+        {
+            Forwarded packet = forwarded.poll();
+            if (packet == null)
+                return null;
+            if (LOG.isDebugEnabled())
+                LOG.debug("processing forwarded packet for connection ID {} on {}", packet.connectionId, this);
+            try
+            {
+                QuicSession session = sessions.get(packet.connectionId);
+                Runnable task = processPacket(session, packet.connectionId, packet.remoteAddress, packet.cipherBuffer);
+                if (task != null)
+                    return task;
+            }
+            catch (Throwable x)
+            {
+                if (LOG.isDebugEnabled())
+                    LOG.debug("forwarded packet failure", x);
+                onFailure(x);
+                return null;
+            }
+            finally
+            {
+                byteBufferPool.release(packet.cipherBuffer);
+            }
+        }
+    }
+
+    private Runnable processPacket(QuicSession session, QuicheConnectionId quicheConnectionId, SocketAddress remoteAddress, ByteBuffer cipherBuffer) throws IOException
+    {
+        if (session != null)
+            return process(session, remoteAddress, cipherBuffer);
+
+        if (LOG.isDebugEnabled())
+            LOG.debug("packet is for unknown session, trying to create a new one");
+        session = createSession(remoteAddress, cipherBuffer);
+        if (session == null)
+        {
+            if (LOG.isDebugEnabled())
+                LOG.debug("session not created");
+            return null;
+        }
+
+        if (LOG.isDebugEnabled())
+            LOG.debug("session created");
+        session.setConnectionId(quicheConnectionId);
+        session.setIdleTimeout(getEndPoint().getIdleTimeout());
+        sessions.put(quicheConnectionId, session);
+        listeners.forEach(session::addEventListener);
+        LifeCycle.start(session);
+
+        // Session creation may have generated a task.
+        Runnable task = session.pollTask();
+        if (LOG.isDebugEnabled())
+            LOG.debug("processing creation task {} on {}", task, session);
+        return task;
+    }
+
     private Runnable process(QuicSession session, SocketAddress remoteAddress, ByteBuffer cipherBuffer)
     {
         try
@@ -327,7 +453,6 @@ public abstract class QuicConnection extends AbstractConnection
         {
             if (LOG.isDebugEnabled())
                 LOG.debug("process failure for {}", session, x);
-            byteBufferPool.release(cipherBuffer);
             session.onFailure(x);
             return null;
         }
@@ -417,6 +542,93 @@ public abstract class QuicConnection extends AbstractConnection
         }
     }
 
+    /**
+     * <p>A ring of buffers, allocated once and reused, where datagrams are received in batches.</p>
+     * <p>It is only accessed by the producer thread, which releases the buffers when the input is shut down;
+     * the buffers are otherwise released when the connection is closed, after the producer has been stopped.</p>
+     */
+    private class ReceiveBatch
+    {
+        private ByteBuffer[] buffers;
+        private SocketAddress[] remoteAddresses;
+        private int count;
+        private int index;
+
+        private int receive() throws IOException
+        {
+            if (buffers == null)
+            {
+                int size = getInputBatchSize();
+                buffers = new ByteBuffer[size];
+                remoteAddresses = new SocketAddress[size];
+                for (int i = 0; i < size; ++i)
+                {
+                    buffers[i] = byteBufferPool.acquire(getInputBufferSize(), isUseInputDirectByteBuffers());
+                }
+            }
+            index = 0;
+            count = getEndPoint().receive(buffers, remoteAddresses);
+            return count;
+        }
+
+        private boolean hasNext()
+        {
+            return index < count;
+        }
+
+        private ByteBuffer buffer()
+        {
+            return buffers[index];
+        }
+
+        private SocketAddress remoteAddress()
+        {
+            return remoteAddresses[index];
+        }
+
+        private void next()
+        {
+            // Do not retain the peer address.
+            remoteAddresses[index++] = null;
+        }
+
+        private void clear()
+        {
+            while (hasNext())
+            {
+                next();
+            }
+        }
+
+        private void release()
+        {
+            clear();
+            ByteBuffer[] buffers = this.buffers;
+            this.buffers = null;
+            if (buffers != null)
+            {
+                for (ByteBuffer buffer : buffers)
+                {
+                    byteBufferPool.release(buffer);
+                }
+            }
+        }
+    }
+
+    private static class Forwarded
+    {
+        private final QuicheConnectionId connectionId;
+        private final SocketAddress remoteAddress;
+        private final ByteBuffer cipherBuffer;
+
+        private Forwarded(QuicheConnectionId connectionId, SocketAddress remoteAddress, ByteBuffer cipherBuffer)
+        {
+            this.connectionId = connectionId;
+            this.remoteAddress = remoteAddress;
+            this.cipherBuffer = cipherBuffer;
+        }
+    }
+
     private class FillableCallback implements Callback
     {
         @Override
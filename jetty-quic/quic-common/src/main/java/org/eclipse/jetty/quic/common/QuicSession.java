@@ -17,6 +17,7 @@ import java.io.IOException;
 import java.net.SocketAddress;
 import java.nio.ByteBuffer;
 import java.nio.channels.ClosedChannelException;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.EventListener;
@@ -435,7 +436,7 @@ public abstract class QuicSession extends ContainerLifeCycle
     private class Flusher extends IteratingCallback
     {
         private final CyclicTimeout timeout;
-        private ByteBuffer cipherBuffer;
+        private final List<ByteBuffer> cipherBuffers = new ArrayList<>();
 
         public Flusher(Scheduler scheduler)
         {
@@ -465,11 +466,23 @@ public abstract class QuicSession extends ContainerLifeCycle
         @Override
         protected Action process() throws IOException
         {
-            cipherBuffer = byteBufferPool.acquire(connection.getOutputBufferSize(), connection.isUseOutputDirectByteBuffers());
-            int pos = BufferUtil.flipToFill(cipherBuffer);
-            int drained = quicheConnection.drainCipherBytes(cipherBuffer);
-            if (LOG.isDebugEnabled())
-                LOG.debug("drained {} byte(s) of cipher bytes from {}", drained, QuicSession.this);
+            // Drain multiple packets, so that they are sent to the peer with a single write.
+            int batchSize = connection.getOutputBatchSize();
+            while (cipherBuffers.size() < batchSize)
+            {
+                ByteBuffer cipherBuffer = byteBufferPool.acquire(connection.getOutputBufferSize(), connection.isUseOutputDirectByteBuffers());
+                int pos = BufferUtil.flipToFill(cipherBuffer);
+                int drained = quicheConnection.drainCipherBytes(cipherBuffer);
+                if (LOG.isDebugEnabled())
+                    LOG.debug("drained {} byte(s) of cipher bytes from {}", drained, QuicSession.this);
+                if (drained == 0)
+                {
+                    byteBufferPool.release(cipherBuffer);
+                    break;
+                }
+                BufferUtil.flipToFlush(cipherBuffer, pos);
+                cipherBuffers.add(cipherBuffer);
+            }
             long nextTimeoutInMs = quicheConnection.nextTimeout();
             if (LOG.isDebugEnabled())
                 LOG.debug("next quiche timeout: {} ms on {}", nextTimeoutInMs, QuicSession.this);
@@ -477,20 +490,17 @@ public abstract class QuicSession extends ContainerLifeCycle
                 timeout.cancel();
             else
                 timeout.schedule(nextTimeoutInMs, TimeUnit.MILLISECONDS);
-            if (drained == 0)
+            if (cipherBuffers.isEmpty())
             {
                 boolean connectionClosed = quicheConnection.isConnectionClosed();
                 Action action = connectionClosed ? Action.SUCCEEDED : Action.IDLE;
                 if (LOG.isDebugEnabled())
                     LOG.debug("connection draining={} closed={}, action={} on {}", quicheConnection.isDraining(), connectionClosed, action, QuicSession.this);
-                if (action == Action.IDLE)
-                    byteBufferPool.release(cipherBuffer);
                 return action;
             }
-            BufferUtil.flipToFlush(cipherBuffer, pos);
             if (LOG.isDebugEnabled())
-                LOG.debug("writing cipher bytes for {} on {}", remoteAddress, QuicSession.this);
-            connection.write(this, remoteAddress, cipherBuffer);
+                LOG.debug("writing {} cipher packet(s) for {} on {}", cipherBuffers.size(), remoteAddress, QuicSession.this);
+            connection.write(this, remoteAddress, cipherBuffers.toArray(ByteBuffer[]::new));
             return Action.SCHEDULED;
         }
 
@@ -499,10 +509,16 @@ public abstract class QuicSession extends ContainerLifeCycle
         {
             if (LOG.isDebugEnabled())
                 LOG.debug("written cipher bytes on {}", QuicSession.this);
-            byteBufferPool.release(cipherBuffer);
+            releaseCipherBuffers();
             super.succeeded();
         }
 
+        private void releaseCipherBuffers()
+        {
+            cipherBuffers.forEach(byteBufferPool::release);
+            cipherBuffers.clear();
+        }
+
         @Override
         public InvocationType getInvocationType()
         {
@@ -514,7 +530,7 @@ public abstract class QuicSession extends ContainerLifeCycle
         {
             if (LOG.isDebugEnabled())
                 LOG.debug("connection closed {}", QuicSession.this);
-            byteBufferPool.release(cipherBuffer);
+            releaseCipherBuffers();
             finishOutwardClose(new ClosedChannelException());
         }
 
@@ -523,7 +539,7 @@ public abstract class QuicSession extends ContainerLifeCycle
         {
             if (LOG.isDebugEnabled())
                 LOG.debug("failed to write cipher bytes, closing session on {}", QuicSession.this, failure);
-            byteBufferPool.release(cipherBuffer);
+            releaseCipherBuffers();
             finishOutwardClose(failure);
         }
     }
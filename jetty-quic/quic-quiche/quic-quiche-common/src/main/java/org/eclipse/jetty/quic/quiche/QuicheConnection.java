@@ -66,7 +66,22 @@ public abstract class QuicheConnection
      */
     public static boolean negotiate(TokenMinter tokenMinter, ByteBuffer packetRead, ByteBuffer packetToSend) throws IOException
     {
-        return QUICHE_BINDING.negotiate(tokenMinter, packetRead, packetToSend);
+        return negotiate(tokenMinter, packetRead, packetToSend, null);
+    }
+
+    /**
+     * Fully consumes the {@code packetRead} buffer.
+     * <p>The connection ID that the server chooses during a stateless retry, and that the peer
+     * uses afterwards for the connection, starts with the given prefix; the other bytes are random.</p>
+     * @param connectionIdPrefix the bytes the server connection ID starts with, or null
+     * @return true if a negotiation packet was written to the {@code packetToSend} buffer, false if negotiation failed
+     * and the {@code packetRead} buffer can be dropped.
+     */
+    public static boolean negotiate(TokenMinter tokenMinter, ByteBuffer packetRead, ByteBuffer packetToSend, byte[] connectionIdPrefix) throws IOException
+    {
+        if (connectionIdPrefix != null && connectionIdPrefix.length > Quiche.QUICHE_MAX_CONN_ID_LEN)
+            throw new IllegalArgumentException("Connection ID prefix is too large: " + connectionIdPrefix.length + " > " + Quiche.QUICHE_MAX_CONN_ID_LEN);
+        return QUICHE_BINDING.negotiate(tokenMinter, packetRead, packetToSend, connectionIdPrefix);
     }
 
     /**
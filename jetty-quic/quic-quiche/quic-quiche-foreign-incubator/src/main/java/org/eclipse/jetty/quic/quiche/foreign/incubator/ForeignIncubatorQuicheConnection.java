@@ -231,6 +231,11 @@ public class ForeignIncubatorQuicheConnection extends QuicheConnection
     }
 
     public static boolean negotiate(TokenMinter tokenMinter, ByteBuffer packetRead, ByteBuffer packetToSend) throws IOException
+    {
+        return negotiate(tokenMinter, packetRead, packetToSend, null);
+    }
+
+    public static boolean negotiate(TokenMinter tokenMinter, ByteBuffer packetRead, ByteBuffer packetToSend, byte[] connectionIdPrefix) throws IOException
     {
         try (ResourceScope scope = ResourceScope.newConfinedScope())
         {
@@ -319,6 +324,8 @@ public class ForeignIncubatorQuicheConnection extends QuicheConnection
 
                 byte[] newCid = new byte[QUICHE_MAX_CONN_ID_LEN];
                 SECURE_RANDOM.nextBytes(newCid);
+                if (connectionIdPrefix != null)
+                    System.arraycopy(connectionIdPrefix, 0, newCid, 0, connectionIdPrefix.length);
                 MemorySegment newCidSegment = MemorySegment.allocateNative(newCid.length, scope);
                 newCidSegment.asByteBuffer().put(newCid);
 
@@ -226,6 +226,11 @@ public class JnaQuicheConnection extends QuicheConnection
      * and the {@code packetRead} buffer can be dropped.
      */
     public static boolean negotiate(TokenMinter tokenMinter, ByteBuffer packetRead, ByteBuffer packetToSend) throws IOException
+    {
+        return negotiate(tokenMinter, packetRead, packetToSend, null);
+    }
+
+    public static boolean negotiate(TokenMinter tokenMinter, ByteBuffer packetRead, ByteBuffer packetToSend, byte[] connectionIdPrefix) throws IOException
     {
         uint8_t_pointer type = new uint8_t_pointer();
         uint32_t_pointer version = new uint32_t_pointer();
@@ -276,6 +281,8 @@ public class JnaQuicheConnection extends QuicheConnection
 
             byte[] newCid = new byte[QUICHE_MAX_CONN_ID_LEN];
             SECURE_RANDOM.nextBytes(newCid);
+            if (connectionIdPrefix != null)
+                System.arraycopy(connectionIdPrefix, 0, newCid, 0, connectionIdPrefix.length);
 
             ssize_t generated = LibQuiche.INSTANCE.quiche_retry(scid, scid_len.getPointee(),
                 dcid, dcid_len.getPointee(),
@@ -16,6 +16,7 @@ package org.eclipse.jetty.quic.server;
 import java.io.File;
 import java.io.IOException;
 import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
 import java.nio.channels.DatagramChannel;
 import java.nio.channels.SelectableChannel;
 import java.nio.channels.SelectionKey;
@@ -25,6 +26,10 @@ import java.util.List;
 import java.util.Set;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.Executor;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.ToLongFunction;
 
 import org.eclipse.jetty.io.ByteBufferPool;
 import org.eclipse.jetty.io.Connection;
@@ -36,12 +41,16 @@ import org.eclipse.jetty.quic.common.QuicConfiguration;
 import org.eclipse.jetty.quic.common.QuicSession;
 import org.eclipse.jetty.quic.common.QuicSessionContainer;
 import org.eclipse.jetty.quic.common.QuicStreamEndPoint;
+import org.eclipse.jetty.quic.quiche.Quiche;
 import org.eclipse.jetty.quic.quiche.QuicheConfig;
+import org.eclipse.jetty.quic.quiche.QuicheConnectionId;
 import org.eclipse.jetty.quic.quiche.SSLKeyPair;
 import org.eclipse.jetty.server.AbstractNetworkConnector;
 import org.eclipse.jetty.server.ConnectionFactory;
 import org.eclipse.jetty.server.Server;
 import org.eclipse.jetty.util.IO;
+import org.eclipse.jetty.util.annotation.ManagedAttribute;
+import org.eclipse.jetty.util.annotation.ManagedObject;
 import org.eclipse.jetty.util.ssl.SslContextFactory;
 import org.eclipse.jetty.util.thread.Scheduler;
 
@@ -51,21 +60,36 @@ import org.eclipse.jetty.util.thread.Scheduler;
  * The protocol is negotiated during the connection establishment by {@link QuicSession}, and for each QUIC stream
  * managed by a {@link QuicSession} a {@link ConnectionFactory} is used to create a {@link Connection} for the
  * correspondent {@link QuicStreamEndPoint}.</p>
+ * <p>By default, all the QUIC traffic is received by a single {@link DatagramChannel}.
+ * With {@link #setReusePortChannels(int)}, this connector binds multiple {@link DatagramChannel}s
+ * to the same port using {@code SO_REUSEPORT}, each with its own selector and {@link ServerQuicConnection},
+ * so that the kernel spreads the QUIC traffic across them.
+ * The connection IDs chosen by this connector encode the index of the {@link DatagramChannel} that
+ * owns the QUIC connection, so that packets that the kernel delivers to another {@link DatagramChannel}
+ * (for example after a client address change) are forwarded to the owner.</p>
  *
  * @see QuicConfiguration
  */
+@ManagedObject("QUIC connector using NIO DatagramChannels")
 public class QuicServerConnector extends AbstractNetworkConnector
 {
     private final QuicConfiguration quicConfiguration = new QuicConfiguration();
     private final QuicSessionContainer container = new QuicSessionContainer();
-    private final ServerDatagramSelectorManager selectorManager;
     private final SslContextFactory.Server sslContextFactory;
+    private final LongAdder forwarded = new LongAdder();
+    // Tags the routable connection IDs generated by this connector.
+    private final int connectionIdSalt = ThreadLocalRandom.current().nextInt(0x1_0000);
+    private ServerDatagramSelectorManager selectorManager;
     private File privateKeyFile;
     private File certificateChainFile;
-    private volatile DatagramChannel datagramChannel;
+    private volatile DatagramChannel[] datagramChannels;
+    private volatile AtomicReferenceArray<ServerQuicConnection> connections;
     private volatile int localPort = -1;
+    private int reusePortChannels = 1;
     private int inputBufferSize = 2048;
     private int outputBufferSize = 2048;
+    private int inputBatchSize = 8;
+    private int outputBatchSize = 8;
     private boolean useInputDirectByteBuffers = true;
     private boolean useOutputDirectByteBuffers = true;
 
@@ -97,6 +121,51 @@ public class QuicServerConnector extends AbstractNetworkConnector
         return quicConfiguration;
     }
 
+    /**
+     * @return the number of {@link DatagramChannel}s bound to the same port
+     */
+    @ManagedAttribute("The number of DatagramChannels bound to the same port with SO_REUSEPORT")
+    public int getReusePortChannels()
+    {
+        return reusePortChannels;
+    }
+
+    /**
+     * <p>Sets the number of {@link DatagramChannel}s bound to the same port with {@code SO_REUSEPORT},
+     * each served by its own selector.</p>
+     * <p>If {@code SO_REUSEPORT} is not supported by the platform, only one {@link DatagramChannel} is bound.</p>
+     *
+     * @param reusePortChannels the number of {@link DatagramChannel}s bound to the same port, between 1 and 256
+     */
+    public void setReusePortChannels(int reusePortChannels)
+    {
+        if (isStarted())
+            throw new IllegalStateException(getState());
+        if (reusePortChannels < 1 || reusePortChannels > 256)
+            throw new IllegalArgumentException("Invalid number of channels: " + reusePortChannels);
+        if (this.reusePortChannels == reusePortChannels)
+            return;
+        this.reusePortChannels = reusePortChannels;
+        removeBean(selectorManager);
+        selectorManager = new ServerDatagramSelectorManager(getExecutor(), getScheduler(), reusePortChannels);
+        addBean(selectorManager);
+    }
+
+    /**
+     * @return the number of packets received by a {@link DatagramChannel} and forwarded to
+     * the {@link ServerQuicConnection} that owns the QUIC connection
+     */
+    @ManagedAttribute("The number of packets forwarded to the DatagramChannel owning the QUIC connection")
+    public long getForwardedPackets()
+    {
+        return forwarded.sum();
+    }
+
+    void onForwarded()
+    {
+        forwarded.increment();
+    }
+
     @Override
     public int getLocalPort()
     {
@@ -123,6 +192,69 @@ public class QuicServerConnector extends AbstractNetworkConnector
         this.outputBufferSize = outputBufferSize;
     }
 
+    /**
+     * @return the max number of datagrams received with a single batch receive
+     * @see ServerQuicConnection#getInputBatchSize()
+     */
+    @ManagedAttribute("The max number of datagrams received with a single batch receive")
+    public int getInputBatchSize()
+    {
+        return inputBatchSize;
+    }
+
+    public void setInputBatchSize(int inputBatchSize)
+    {
+        this.inputBatchSize = inputBatchSize;
+    }
+
+    /**
+     * @return the max number of datagrams sent to a peer with a single write
+     * @see ServerQuicConnection#getOutputBatchSize()
+     */
+    @ManagedAttribute("The max number of datagrams sent to a peer with a single write")
+    public int getOutputBatchSize()
+    {
+        return outputBatchSize;
+    }
+
+    public void setOutputBatchSize(int outputBatchSize)
+    {
+        this.outputBatchSize = outputBatchSize;
+    }
+
+    @ManagedAttribute("The number of datagrams received")
+    public long getReceivedPackets()
+    {
+        return sumEndPoints(DatagramChannelEndPoint::getReceivedPackets);
+    }
+
+    @ManagedAttribute("The number of batch receives that received at least one datagram")
+    public long getReceiveBatches()
+    {
+        return sumEndPoints(DatagramChannelEndPoint::getReceiveBatches);
+    }
+
+    @ManagedAttribute("The number of datagrams sent")
+    public long getSentPackets()
+    {
+        return sumEndPoints(DatagramChannelEndPoint::getSentPackets);
+    }
+
+    @ManagedAttribute("The number of batch sends that sent at least one datagram")
+    public long getSendBatches()
+    {
+        return sumEndPoints(DatagramChannelEndPoint::getSendBatches);
+    }
+
+    private long sumEndPoints(ToLongFunction<DatagramChannelEndPoint> statistic)
+    {
+        return getConnectedEndPoints().stream()
+            .filter(DatagramChannelEndPoint.class::isInstance)
+            .map(DatagramChannelEndPoint.class::cast)
+            .mapToLong(statistic)
+            .sum();
+    }
+
     public boolean isUseInputDirectByteBuffers()
     {
         return useInputDirectByteBuffers;
@@ -146,8 +278,8 @@ public class QuicServerConnector extends AbstractNetworkConnector
     @Override
     public boolean isOpen()
     {
-        DatagramChannel channel = datagramChannel;
-        return channel != null && channel.isOpen();
+        DatagramChannel[] channels = datagramChannels;
+        return channels != null && channels[0].isOpen();
     }
 
     @Override
@@ -156,7 +288,11 @@ public class QuicServerConnector extends AbstractNetworkConnector
         for (EventListener l : getBeans(SelectorManager.SelectorManagerListener.class))
             selectorManager.addEventListener(l);
         super.doStart();
-        selectorManager.accept(datagramChannel);
+        DatagramChannel[] channels = datagramChannels;
+        for (int i = 0; i < channels.length; ++i)
+        {
+            selectorManager.accept(channels[i], i);
+        }
 
         Set<String> aliases = sslContextFactory.getAliases();
         if (aliases.isEmpty())
@@ -181,23 +317,76 @@ public class QuicServerConnector extends AbstractNetworkConnector
     @Override
     public void open() throws IOException
     {
-        if (datagramChannel == null)
+        if (datagramChannels == null)
+        {
+            int count = getReusePortChannels();
+            if (count > 1 && !isReusePortSupported())
+            {
+                LOG.warn("SO_REUSEPORT not supported, binding only one DatagramChannel for {}", this);
+                count = 1;
+            }
+
+            DatagramChannel[] channels = new DatagramChannel[count];
+            try
+            {
+                if (count == 1)
+                    channels[0] = openDatagramChannel();
+                else
+                    channels[0] = openDatagramChannel(getPort(), true);
+                channels[0].configureBlocking(false);
+                localPort = channels[0].socket().getLocalPort();
+                if (localPort <= 0)
+                    throw new IOException("DatagramChannel not bound");
+                // The other channels must bind to the actual port, in case the configured port is 0.
+                for (int i = 1; i < count; ++i)
+                {
+                    channels[i] = openDatagramChannel(localPort, true);
+                    channels[i].configureBlocking(false);
+                }
+            }
+            catch (Throwable x)
+            {
+                for (DatagramChannel channel : channels)
+                {
+                    IO.close(channel);
+                }
+                throw x;
+            }
+
+            for (DatagramChannel channel : channels)
+            {
+                addBean(channel);
+            }
+            connections = new AtomicReferenceArray<>(count);
+            datagramChannels = channels;
+        }
+    }
+
+    private static boolean isReusePortSupported()
+    {
+        try (DatagramChannel channel = DatagramChannel.open())
+        {
+            return channel.supportedOptions().contains(StandardSocketOptions.SO_REUSEPORT);
+        }
+        catch (IOException x)
         {
-            datagramChannel = openDatagramChannel();
-            datagramChannel.configureBlocking(false);
-            localPort = datagramChannel.socket().getLocalPort();
-            if (localPort <= 0)
-                throw new IOException("DatagramChannel not bound");
-            addBean(datagramChannel);
+            return false;
         }
     }
 
     protected DatagramChannel openDatagramChannel() throws IOException
     {
-        InetSocketAddress bindAddress = getHost() == null ? new InetSocketAddress(getPort()) : new InetSocketAddress(getHost(), getPort());
+        return openDatagramChannel(getPort(), false);
+    }
+
+    private DatagramChannel openDatagramChannel(int port, boolean reusePort) throws IOException
+    {
+        InetSocketAddress bindAddress = getHost() == null ? new InetSocketAddress(port) : new InetSocketAddress(getHost(), port);
         DatagramChannel datagramChannel = DatagramChannel.open();
         try
         {
+            if (reusePort)
+                datagramChannel.setOption(StandardSocketOptions.SO_REUSEPORT, true);
             datagramChannel.bind(bindAddress);
             return datagramChannel;
         }
@@ -208,6 +397,43 @@ public class QuicServerConnector extends AbstractNetworkConnector
         }
     }
 
+    /**
+     * <p>Returns the prefix of the connection IDs of the QUIC connections owned by the
+     * {@link DatagramChannel} with the given index: the index followed by a 16-bit tag,
+     * so that connection IDs chosen by clients are unlikely to be routed.</p>
+     *
+     * @param index the index of the {@link DatagramChannel}
+     * @return the connection ID prefix, or null if there is only one {@link DatagramChannel}
+     */
+    byte[] newConnectionIdPrefix(int index)
+    {
+        if (datagramChannels.length == 1)
+            return null;
+        int tag = connectionIdSalt ^ index;
+        return new byte[]{(byte)index, (byte)(tag >>> 8), (byte)tag};
+    }
+
+    /**
+     * @param connectionId the connection ID of a received packet
+     * @return the {@link ServerQuicConnection} that owns the QUIC connection with
+     * the given connection ID, or null if the connection ID is not routable
+     */
+    ServerQuicConnection findConnection(QuicheConnectionId connectionId)
+    {
+        AtomicReferenceArray<ServerQuicConnection> connections = this.connections;
+        if (connections == null || connections.length() == 1)
+            return null;
+        if (connectionId.length() != Quiche.QUICHE_MAX_CONN_ID_LEN)
+            return null;
+        int index = connectionId.get(0) & 0xFF;
+        if (index >= connections.length())
+            return null;
+        int tag = connectionIdSalt ^ index;
+        if (connectionId.get(1) != (byte)(tag >>> 8) || connectionId.get(2) != (byte)tag)
+            return null;
+        return connections.get(index);
+    }
+
     QuicheConfig newQuicheConfig()
     {
         QuicheConfig quicheConfig = new QuicheConfig();
@@ -246,8 +472,16 @@ public class QuicServerConnector extends AbstractNetworkConnector
         // We want the DatagramChannel to be stopped by the SelectorManager.
         super.doStop();
 
-        removeBean(datagramChannel);
-        datagramChannel = null;
+        DatagramChannel[] channels = datagramChannels;
+        if (channels != null)
+        {
+            for (DatagramChannel channel : channels)
+            {
+                removeBean(channel);
+            }
+        }
+        datagramChannels = null;
+        connections = null;
         localPort = -2;
 
         for (EventListener l : getBeans(EventListener.class))
@@ -277,7 +511,8 @@ public class QuicServerConnector extends AbstractNetworkConnector
     @Override
     public Object getTransport()
     {
-        return datagramChannel;
+        DatagramChannel[] channels = datagramChannels;
+        return channels == null ? null : channels[0];
     }
 
     @Override
@@ -304,10 +539,14 @@ public class QuicServerConnector extends AbstractNetworkConnector
         @Override
         public Connection newConnection(SelectableChannel channel, EndPoint endpoint, Object attachment)
         {
-            ServerQuicConnection connection = new ServerQuicConnection(QuicServerConnector.this, endpoint);
+            int index = attachment == null ? 0 : (Integer)attachment;
+            ServerQuicConnection connection = new ServerQuicConnection(QuicServerConnector.this, endpoint, newConnectionIdPrefix(index));
+            connections.set(index, connection);
             connection.addEventListener(container);
             connection.setInputBufferSize(getInputBufferSize());
             connection.setOutputBufferSize(getOutputBufferSize());
+            connection.setInputBatchSize(getInputBatchSize());
+            connection.setOutputBatchSize(getOutputBatchSize());
             connection.setUseInputDirectByteBuffers(isUseInputDirectByteBuffers());
             connection.setUseOutputDirectByteBuffers(isUseOutputDirectByteBuffers());
             return connection;
@@ -25,6 +25,7 @@ import org.eclipse.jetty.io.EndPoint;
 import org.eclipse.jetty.quic.common.QuicConnection;
 import org.eclipse.jetty.quic.common.QuicSession;
 import org.eclipse.jetty.quic.quiche.QuicheConnection;
+import org.eclipse.jetty.quic.quiche.QuicheConnectionId;
 import org.eclipse.jetty.quic.server.internal.SimpleTokenMinter;
 import org.eclipse.jetty.quic.server.internal.SimpleTokenValidator;
 import org.eclipse.jetty.util.BufferUtil;
@@ -42,12 +43,25 @@ public class ServerQuicConnection extends QuicConnection
 
     private final QuicServerConnector connector;
     private final SessionTimeouts sessionTimeouts;
+    private final byte[] connectionIdPrefix;
 
     protected ServerQuicConnection(QuicServerConnector connector, EndPoint endPoint)
+    {
+        this(connector, endPoint, null);
+    }
+
+    /**
+     * @param connector the connector this connection belongs to
+     * @param endPoint the endPoint of this connection
+     * @param connectionIdPrefix the bytes the connection IDs of the sessions
+     * owned by this connection start with, or null
+     */
+    protected ServerQuicConnection(QuicServerConnector connector, EndPoint endPoint, byte[] connectionIdPrefix)
     {
         super(connector.getExecutor(), connector.getScheduler(), connector.getByteBufferPool(), endPoint);
         this.connector = connector;
         this.sessionTimeouts = new SessionTimeouts(connector.getScheduler());
+        this.connectionIdPrefix = connectionIdPrefix;
     }
 
     @Override
@@ -68,7 +82,7 @@ public class ServerQuicConnection extends QuicConnection
             ByteBuffer negotiationBuffer = byteBufferPool.acquire(getOutputBufferSize(), true);
             int pos = BufferUtil.flipToFill(negotiationBuffer);
             // TODO make the token minter configurable
-            if (!QuicheConnection.negotiate(new SimpleTokenMinter((InetSocketAddress)remoteAddress), cipherBuffer, negotiationBuffer))
+            if (!QuicheConnection.negotiate(new SimpleTokenMinter((InetSocketAddress)remoteAddress), cipherBuffer, negotiationBuffer, connectionIdPrefix))
             {
                 if (LOG.isDebugEnabled())
                     LOG.debug("QUIC connection negotiation failed, dropping packet");
@@ -91,6 +105,17 @@ public class ServerQuicConnection extends QuicConnection
         }
     }
 
+    @Override
+    protected QuicConnection findOwner(QuicheConnectionId connectionId)
+    {
+        QuicConnection owner = connector.findConnection(connectionId);
+        if (owner == null)
+            return this;
+        if (owner != this)
+            connector.onForwarded();
+        return owner;
+    }
+
     public void schedule(ServerQuicSession session)
     {
         sessionTimeouts.schedule(session);
@@ -99,8 +124,8 @@ public class ServerQuicConnection extends QuicConnection
     @Override
     public boolean onIdleExpired()
     {
-        // The current server architecture only has one listening
-        // DatagramChannelEndPoint, so we ignore idle timeouts.
+        // The listening DatagramChannelEndPoints are
+        // shared by all sessions, so we ignore idle timeouts.
         return false;
     }
 
@@ -108,8 +133,8 @@ public class ServerQuicConnection extends QuicConnection
     public void outwardClose(QuicSession session, Throwable failure)
     {
         super.outwardClose(session, failure);
-        // Do nothing else, as the current architecture only has one
-        // listening DatagramChannelEndPoint, so it must not be closed.
+        // Do nothing else, as the listening DatagramChannelEndPoint
+        // is shared by all sessions, so it must not be closed.
     }
 
     private class SessionTimeouts extends CyclicTimeouts<ServerQuicSession>
@@ -0,0 +1,106 @@
+//
+// ========================================================================
+// Copyright (c) 1995-2022 Mort Bay Consulting Pty Ltd and others.
+//
+// This program and the accompanying materials are made available under the
+// terms of the Eclipse Public License v. 2.0 which is available at
+// https://www.eclipse.org/legal/epl-2.0, or the Apache License, Version 2.0
+// which is available at https://www.apache.org/licenses/LICENSE-2.0.
+//
+// SPDX-License-Identifier: EPL-2.0 OR Apache-2.0
+// ========================================================================
+//
+
+package org.eclipse.jetty.quic.server;
+
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.nio.channels.DatagramChannel;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.jetty.quic.quiche.Quiche;
+import org.eclipse.jetty.server.HttpConnectionFactory;
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.util.component.LifeCycle;
+import org.eclipse.jetty.util.ssl.SslContextFactory;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.instanceOf;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.notNullValue;
+import static org.hamcrest.Matchers.nullValue;
+
+public class QuicServerConnectorReusePortTest
+{
+    private Server server;
+    private QuicServerConnector connector;
+
+    private void start(int channels) throws Exception
+    {
+        SslContextFactory.Server sslContextFactory = new SslContextFactory.Server();
+        sslContextFactory.setKeyStorePath("src/test/resources/keystore.p12");
+        sslContextFactory.setKeyStorePassword("storepwd");
+
+        server = new Server();
+        connector = new QuicServerConnector(server, sslContextFactory, new HttpConnectionFactory());
+        connector.setReusePortChannels(channels);
+        server.addConnector(connector);
+        server.start();
+    }
+
+    @AfterEach
+    public void dispose()
+    {
+        LifeCycle.stop(server);
+    }
+
+    @Test
+    public void testPacketsForOtherChannelAreForwarded() throws Exception
+    {
+        int channels = 4;
+        start(channels);
+        assertThat(connector.getTransport(), instanceOf(DatagramChannel.class));
+
+        // Build a short header packet whose destination connection
+        // ID is owned by the last DatagramChannel of the connector.
+        byte[] prefix = connector.newConnectionIdPrefix(channels - 1);
+        assertThat(prefix, notNullValue());
+        byte[] packet = new byte[64];
+        packet[0] = 0x40;
+        System.arraycopy(prefix, 0, packet, 1, prefix.length);
+        for (int i = 1 + prefix.length; i < 1 + Quiche.QUICHE_MAX_CONN_ID_LEN; ++i)
+        {
+            packet[i] = (byte)i;
+        }
+
+        // Send from many different sockets, so that the kernel hashes
+        // at least one of them to a DatagramChannel that is not the owner.
+        int sockets = 32;
+        for (int i = 0; i < sockets; ++i)
+        {
+            try (DatagramSocket socket = new DatagramSocket())
+            {
+                socket.send(new DatagramPacket(packet, packet.length, InetAddress.getLoopbackAddress(), connector.getLocalPort()));
+            }
+        }
+
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (connector.getForwardedPackets() == 0 && System.nanoTime() < deadline)
+        {
+            Thread.sleep(10);
+        }
+        assertThat(connector.getForwardedPackets(), greaterThan(0L));
+    }
+
+    @Test
+    public void testSingleChannelDoesNotRoute() throws Exception
+    {
+        start(1);
+        assertThat(connector.newConnectionIdPrefix(0), nullValue());
+        assertThat(connector.getForwardedPackets(), is(0L));
+    }
+}
@@ -32,3 +32,6 @@ etc/rewrite-rules.xml
 
 ## Request attribute key under with the original path is stored
 # jetty.rewrite.originalPathAttribute=requestedPath
+
+## Whether to compile the rules into an index, so that only the rules that may match are evaluated
+# jetty.rewrite.compiled=false
@@ -0,0 +1,192 @@
+//
+// ========================================================================
+// Copyright (c) 1995-2022 Mort Bay Consulting Pty Ltd and others.
+//
+// This program and the accompanying materials are made available under the
+// terms of the Eclipse Public License v. 2.0 which is available at
+// https://www.eclipse.org/legal/epl-2.0, or the Apache License, Version 2.0
+// which is available at https://www.apache.org/licenses/LICENSE-2.0.
+//
+// SPDX-License-Identifier: EPL-2.0 OR Apache-2.0
+// ========================================================================
+//
+
+package org.eclipse.jetty.rewrite.handler;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * <p>An immutable hash index of string mappings, backed by primitive arrays.</p>
+ * <p>The keys and values of all the mappings are stored in a single {@code char[]},
+ * and an open addressing hash table of {@code int}s points to the mappings,
+ * so that large indexes have a compact footprint and lookups do not allocate
+ * unless a mapping is found.</p>
+ */
+class MapIndex
+{
+    private final char[] _chars;
+    // The start of the key and of the value of each mapping, followed by the end of the last value.
+    private final int[] _offsets;
+    private final int[] _hashes;
+    // The index of the mapping plus one, or zero for an empty slot.
+    private final int[] _table;
+    private final int _size;
+
+    private MapIndex(char[] chars, int[] offsets, int[] hashes, int size)
+    {
+        _chars = chars;
+        _offsets = offsets;
+        _hashes = hashes;
+        int capacity = Integer.highestOneBit(Math.max(2, size * 2 - 1)) << 1;
+        _table = new int[capacity];
+        int distinct = 0;
+        for (int i = 0; i < size; ++i)
+        {
+            int slot = find(_hashes[i], i);
+            // Later mappings override earlier mappings with the same key.
+            if (_table[slot] == 0)
+                ++distinct;
+            _table[slot] = i + 1;
+        }
+        _size = distinct;
+    }
+
+    /**
+     * @return the number of mappings
+     */
+    int size()
+    {
+        return _size;
+    }
+
+    /**
+     * @param key the key to look up
+     * @return the value mapped to the given key, or null if there is no such mapping
+     */
+    String get(String key)
+    {
+        int hash = key.hashCode();
+        int mask = _table.length - 1;
+        for (int slot = spread(hash) & mask; ; slot = (slot + 1) & mask)
+        {
+            int entry = _table[slot] - 1;
+            if (entry < 0)
+                return null;
+            if (_hashes[entry] == hash && keyEquals(entry, key))
+            {
+                int start = _offsets[2 * entry + 1];
+                return new String(_chars, start, _offsets[2 * entry + 2] - start);
+            }
+        }
+    }
+
+    private int find(int hash, int entry)
+    {
+        int mask = _table.length - 1;
+        int keyStart = _offsets[2 * entry];
+        int keyLength = _offsets[2 * entry + 1] - keyStart;
+        for (int slot = spread(hash) & mask; ; slot = (slot + 1) & mask)
+        {
+            int other = _table[slot] - 1;
+            if (other < 0)
+                return slot;
+            int otherStart = _offsets[2 * other];
+            if (_hashes[other] == hash && _offsets[2 * other + 1] - otherStart == keyLength &&
+                Arrays.equals(_chars, keyStart, keyStart + keyLength, _chars, otherStart, otherStart + keyLength))
+                return slot;
+        }
+    }
+
+    private boolean keyEquals(int entry, String key)
+    {
+        int start = _offsets[2 * entry];
+        if (_offsets[2 * entry + 1] - start != key.length())
+            return false;
+        for (int i = 0; i < key.length(); ++i)
+        {
+            if (_chars[start + i] != key.charAt(i))
+                return false;
+        }
+        return true;
+    }
+
+    private static int spread(int hash)
+    {
+        return hash ^ (hash >>> 16);
+    }
+
+    /**
+     * <p>Parses mappings, one per line, in the form {@code <key> <value>},
+     * where key and value are separated by whitespace.</p>
+     * <p>Blank lines and lines starting with {@code #} are ignored.</p>
+     *
+     * @param reader the reader of the mappings
+     * @return a new index of the mappings
+     * @throws IOException if the mappings cannot be read or a line is not a valid mapping
+     */
+    static MapIndex parse(BufferedReader reader) throws IOException
+    {
+        Builder builder = new Builder();
+        int lineNumber = 0;
+        String line;
+        while ((line = reader.readLine()) != null)
+        {
+            ++lineNumber;
+            line = line.trim();
+            if (line.isEmpty() || line.charAt(0) == '#')
+                continue;
+            int keyEnd = 0;
+            while (keyEnd < line.length() && !Character.isWhitespace(line.charAt(keyEnd)))
+            {
+                ++keyEnd;
+            }
+            String value = line.substring(keyEnd).trim();
+            if (value.isEmpty() || value.chars().anyMatch(Character::isWhitespace))
+                throw new IOException("Invalid mapping at line " + lineNumber + ": " + line);
+            builder.put(line.substring(0, keyEnd), value);
+        }
+        return builder.build();
+    }
+
+    static class Builder
+    {
+        private char[] _chars = new char[1024];
+        private int _length;
+        private int[] _offsets = new int[64];
+        private int[] _hashes = new int[32];
+        private int _size;
+
+        Builder put(String key, String value)
+        {
+            if (_size == _hashes.length)
+            {
+                _hashes = Arrays.copyOf(_hashes, _size * 2);
+                _offsets = Arrays.copyOf(_offsets, _size * 4);
+            }
+            _hashes[_size] = key.hashCode();
+            _offsets[2 * _size] = _length;
+            append(key);
+            _offsets[2 * _size + 1] = _length;
+            append(value);
+            ++_size;
+            return this;
+        }
+
+        private void append(String string)
+        {
+            if (_length + string.length() > _chars.length)
+                _chars = Arrays.copyOf(_chars, Math.max(_chars.length * 2, _length + string.length()));
+            string.getChars(0, string.length(), _chars, _length);
+            _length += string.length();
+        }
+
+        MapIndex build()
+        {
+            int[] offsets = Arrays.copyOf(_offsets, 2 * _size + 1);
+            offsets[2 * _size] = _length;
+            return new MapIndex(Arrays.copyOf(_chars, _length), offsets, Arrays.copyOf(_hashes, _size), _size);
+        }
+    }
+}
@@ -0,0 +1,218 @@
+//
+// ========================================================================
+// Copyright (c) 1995-2022 Mort Bay Consulting Pty Ltd and others.
+//
+// This program and the accompanying materials are made available under the
+// terms of the Eclipse Public License v. 2.0 which is available at
+// https://www.eclipse.org/legal/epl-2.0, or the Apache License, Version 2.0
+// which is available at https://www.apache.org/licenses/LICENSE-2.0.
+//
+// SPDX-License-Identifier: EPL-2.0 OR Apache-2.0
+// ========================================================================
+//
+
+package org.eclipse.jetty.rewrite.handler;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Set;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.eclipse.jetty.util.Scanner;
+import org.eclipse.jetty.util.component.AbstractLifeCycle;
+import org.eclipse.jetty.util.component.LifeCycle;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * <p>Abstract rule that looks up the exact target in a map loaded from a file.</p>
+ * <p>The file contains one mapping per line, in the form {@code <target> <value>},
+ * where target and value are separated by whitespace; blank lines and lines
+ * starting with {@code #} are ignored.
+ * The mappings are loaded in a compact hash index, so that the lookup cost does not
+ * depend on the number of mappings, which may be hundreds of thousands.</p>
+ * <p>The file is loaded when the {@link #getLifeCycle() lifecycle} of the rule is started,
+ * which {@link RewriteHandler} does for its rules, and the start fails if the file cannot be
+ * loaded. Until the mappings are loaded, the rule does not match any target.
+ * When the {@link #setScanInterval(int) scan interval} is positive, the file is scanned
+ * for changes and reloaded in the background; requests use the previous mappings until
+ * the new ones are loaded.</p>
+ */
+public abstract class MapRule extends Rule
+{
+    private static final Logger LOG = LoggerFactory.getLogger(MapRule.class);
+
+    private final MapLifeCycle _lifeCycle = new MapLifeCycle();
+    private Path _file;
+    private int _scanInterval;
+    private volatile MapIndex _index;
+
+    protected MapRule()
+    {
+    }
+
+    protected MapRule(String file)
+    {
+        setFile(file);
+    }
+
+    /**
+     * @return the file of the mappings
+     */
+    public String getFile()
+    {
+        return _file == null ? null : _file.toString();
+    }
+
+    /**
+     * @param file the file of the mappings
+     */
+    public void setFile(String file)
+    {
+        if (_lifeCycle.isRunning())
+            throw new IllegalStateException(_lifeCycle.getState());
+        _file = file == null ? null : Path.of(file);
+        _index = null;
+    }
+
+    /**
+     * @return the interval in seconds between scans of the file for changes, or 0 to not scan
+     */
+    public int getScanInterval()
+    {
+        return _scanInterval;
+    }
+
+    /**
+     * @param scanInterval the interval in seconds between scans of the file for changes, or 0 to not scan
+     */
+    public void setScanInterval(int scanInterval)
+    {
+        if (_lifeCycle.isRunning())
+            throw new IllegalStateException(_lifeCycle.getState());
+        _scanInterval = scanInterval;
+    }
+
+    /**
+     * @return the lifecycle that loads the mappings when started, and scans the file for changes while running
+     */
+    public LifeCycle getLifeCycle()
+    {
+        return _lifeCycle;
+    }
+
+    /**
+     * @return the number of mappings, or -1 if the mappings are not loaded
+     */
+    public int getSize()
+    {
+        MapIndex index = _index;
+        return index == null ? -1 : index.size();
+    }
+
+    /**
+     * <p>Loads the mappings from the file, replacing the current mappings
+     * only if the whole file is loaded successfully.</p>
+     *
+     * @throws IOException if the file cannot be read or contains invalid mappings
+     */
+    public void load() throws IOException
+    {
+        Path file = _file;
+        if (file == null)
+            throw new IllegalStateException("No file");
+        MapIndex index;
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8))
+        {
+            index = MapIndex.parse(reader);
+        }
+        _index = index;
+        if (LOG.isDebugEnabled())
+            LOG.debug("Loaded {} mappings from {} for {}", index.size(), file, this);
+    }
+
+    @Override
+    public String matchAndApply(String target, HttpServletRequest request, HttpServletResponse response) throws IOException
+    {
+        MapIndex index = _index;
+        if (index == null)
+            return null;
+        String value = index.get(target);
+        if (value == null)
+            return null;
+        return apply(target, value, request, response);
+    }
+
+    /**
+     * Apply the rule to the request
+     *
+     * @param target the target that was found in the map
+     * @param value the value mapped to the target
+     * @param request request object
+     * @param response response object
+     * @return The target (possible updated)
+     * @throws IOException exceptions dealing with operating on request or response objects
+     */
+    protected abstract String apply(String target, String value, HttpServletRequest request, HttpServletResponse response) throws IOException;
+
+    private void filesChanged(Set<String> filenames)
+    {
+        try
+        {
+            load();
+        }
+        catch (Throwable x)
+        {
+            LOG.warn("Unable to reload mappings from {}, keeping previous mappings", _file, x);
+        }
+    }
+
+    private class MapLifeCycle extends AbstractLifeCycle
+    {
+        private Scanner _scanner;
+
+        @Override
+        protected void doStart() throws Exception
+        {
+            load();
+            if (_scanInterval > 0)
+            {
+                Scanner scanner = new Scanner();
+                scanner.setScanInterval(_scanInterval);
+                scanner.setReportExistingFilesOnStartup(false);
+                scanner.addFile(_file);
+                scanner.addListener((Scanner.BulkListener)MapRule.this::filesChanged);
+                scanner.start();
+                _scanner = scanner;
+            }
+        }
+
+        @Override
+        protected void doStop() throws Exception
+        {
+            Scanner scanner = _scanner;
+            _scanner = null;
+            if (scanner != null)
+                scanner.stop();
+        }
+
+        @Override
+        public String toString()
+        {
+            return String.format("%s@%x{%s,%s}", getClass().getSimpleName(), hashCode(), getState(), MapRule.this);
+        }
+    }
+
+    /**
+     * Returns the file and the number of mappings.
+     */
+    @Override
+    public String toString()
+    {
+        return super.toString() + "[" + _file + ",size=" + getSize() + "]";
+    }
+}
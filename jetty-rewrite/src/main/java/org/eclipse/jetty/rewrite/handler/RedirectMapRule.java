@@ -0,0 +1,86 @@
+//
+// ========================================================================
+// Copyright (c) 1995-2022 Mort Bay Consulting Pty Ltd and others.
+//
+// This program and the accompanying materials are made available under the
+// terms of the Eclipse Public License v. 2.0 which is available at
+// https://www.eclipse.org/legal/epl-2.0, or the Apache License, Version 2.0
+// which is available at https://www.apache.org/licenses/LICENSE-2.0.
+//
+// SPDX-License-Identifier: EPL-2.0 OR Apache-2.0
+// ========================================================================
+//
+
+package org.eclipse.jetty.rewrite.handler;
+
+import java.io.IOException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.eclipse.jetty.http.HttpStatus;
+import org.eclipse.jetty.util.annotation.Name;
+
+/**
+ * Issues a (3xx) Redirect response to the location mapped to the target in a file.
+ * <p>
+ * This rule is meant to replace large numbers of {@link RedirectPatternRule}s with exact patterns,
+ * for example redirects from legacy URIs, see {@link MapRule} for the format of the file.
+ * <p>
+ * Defaults to <a href="http://tools.ietf.org/html/rfc7231#section-6.4.3">{@code 302 Found}</a>
+ */
+public class RedirectMapRule extends MapRule
+{
+    private int _statusCode = HttpStatus.FOUND_302;
+
+    public RedirectMapRule()
+    {
+        this(null);
+    }
+
+    public RedirectMapRule(@Name("file") String file)
+    {
+        super(file);
+        setHandling(true);
+        setTerminating(true);
+    }
+
+    /**
+     * @return the redirect status code
+     */
+    public int getStatusCode()
+    {
+        return _statusCode;
+    }
+
+    /**
+     * Sets the redirect status code.
+     *
+     * @param statusCode the 3xx redirect status code
+     */
+    public void setStatusCode(int statusCode)
+    {
+        if (statusCode >= 300 && statusCode <= 399)
+            _statusCode = statusCode;
+        else
+            throw new IllegalArgumentException("Invalid redirect status code " + statusCode + " (must be a value between 300 and 399)");
+    }
+
+    @Override
+    protected String apply(String target, String location, HttpServletRequest request, HttpServletResponse response) throws IOException
+    {
+        response.setHeader("Location", RedirectUtil.toRedirectURL(request, response.encodeRedirectURL(location)));
+        response.setStatus(_statusCode);
+        response.getOutputStream().flush(); // no output / content
+        response.getOutputStream().close();
+        return target;
+    }
+
+    /**
+     * Returns the redirect status code.
+     */
+    @Override
+    public String toString()
+    {
+        return super.toString() + "[" + _statusCode + "]";
+    }
+}
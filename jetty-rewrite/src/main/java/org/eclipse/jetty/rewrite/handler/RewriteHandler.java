@@ -14,8 +14,10 @@
 package org.eclipse.jetty.rewrite.handler;
 
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.EnumSet;
+import java.util.List;
 import javax.servlet.DispatcherType;
 import javax.servlet.ServletException;
 import javax.servlet.http.HttpServletRequest;
@@ -23,6 +25,7 @@ import javax.servlet.http.HttpServletResponse;
 
 import org.eclipse.jetty.server.Request;
 import org.eclipse.jetty.server.handler.HandlerWrapper;
+import org.eclipse.jetty.util.component.LifeCycle;
 
 /**
  * <p> Rewrite handler is responsible for managing the rules. Its capabilities
@@ -162,6 +165,7 @@ import org.eclipse.jetty.server.handler.HandlerWrapper;
  */
 public class RewriteHandler extends HandlerWrapper
 {
+    private final List<LifeCycle> _lifeCycles = new ArrayList<>();
     private RuleContainer _rules;
     private EnumSet<DispatcherType> _dispatchTypes = EnumSet.of(DispatcherType.REQUEST, DispatcherType.ASYNC);
 
@@ -189,6 +193,7 @@ public class RewriteHandler extends HandlerWrapper
     public void setRules(Rule[] rules)
     {
         _rules.setRules(rules);
+        updateLifeCycleRules();
     }
 
     /**
@@ -200,6 +205,7 @@ public class RewriteHandler extends HandlerWrapper
     {
         updateBean(_rules, rules);
         _rules = rules;
+        updateLifeCycleRules();
     }
 
     public RuleContainer getRuleContainer()
@@ -215,6 +221,25 @@ public class RewriteHandler extends HandlerWrapper
     public void addRule(Rule rule)
     {
         _rules.addRule(rule);
+        updateLifeCycleRules();
+    }
+
+    /**
+     * @return whether the rules are compiled into an index
+     * @see RuleContainer#isCompiled()
+     */
+    public boolean isCompiled()
+    {
+        return _rules.isCompiled();
+    }
+
+    /**
+     * @param compiled whether the rules are compiled into an index
+     * @see RuleContainer#setCompiled(boolean)
+     */
+    public void setCompiled(boolean compiled)
+    {
+        _rules.setCompiled(compiled);
     }
 
     /**
@@ -286,6 +311,70 @@ public class RewriteHandler extends HandlerWrapper
         _dispatchTypes = EnumSet.copyOf(Arrays.asList(types));
     }
 
+    @Override
+    protected void doStart() throws Exception
+    {
+        // Rules with a lifecycle, such as MapRules, are started and stopped with this handler.
+        List<LifeCycle> lifeCycles = new ArrayList<>();
+        collectLifeCycleRules(_rules.getRules(), lifeCycles);
+        for (LifeCycle lifeCycle : lifeCycles)
+        {
+            if (addBean(lifeCycle, true))
+                _lifeCycles.add(lifeCycle);
+        }
+        super.doStart();
+    }
+
+    /**
+     * <p>Starts the lifecycles of the rules added while this handler is started,
+     * and stops the lifecycles of the rules that have been removed.</p>
+     */
+    private void updateLifeCycleRules()
+    {
+        if (!isStarted())
+            return;
+        List<LifeCycle> lifeCycles = new ArrayList<>();
+        collectLifeCycleRules(_rules.getRules(), lifeCycles);
+        for (LifeCycle lifeCycle : new ArrayList<>(_lifeCycles))
+        {
+            if (!lifeCycles.contains(lifeCycle))
+            {
+                _lifeCycles.remove(lifeCycle);
+                removeBean(lifeCycle);
+            }
+        }
+        for (LifeCycle lifeCycle : lifeCycles)
+        {
+            if (!_lifeCycles.contains(lifeCycle) && addBean(lifeCycle, true))
+            {
+                _lifeCycles.add(lifeCycle);
+                LifeCycle.start(lifeCycle);
+            }
+        }
+    }
+
+    private void collectLifeCycleRules(Rule[] rules, List<LifeCycle> lifeCycles)
+    {
+        if (rules == null)
+            return;
+        for (Rule rule : rules)
+        {
+            LifeCycle lifeCycle = rule instanceof MapRule ? ((MapRule)rule).getLifeCycle() : rule instanceof LifeCycle ? (LifeCycle)rule : null;
+            if (lifeCycle != null)
+                lifeCycles.add(lifeCycle);
+            if (rule instanceof RuleContainer)
+                collectLifeCycleRules(((RuleContainer)rule).getRules(), lifeCycles);
+        }
+    }
+
+    @Override
+    protected void doStop() throws Exception
+    {
+        super.doStop();
+        _lifeCycles.forEach(this::removeBean);
+        _lifeCycles.clear();
+    }
+
     @Override
     public void handle(String target, Request baseRequest, HttpServletRequest request, HttpServletResponse response) throws IOException, ServletException
     {
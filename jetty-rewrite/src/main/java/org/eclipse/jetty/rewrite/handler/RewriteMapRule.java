@@ -0,0 +1,48 @@
+//
+// ========================================================================
+// Copyright (c) 1995-2022 Mort Bay Consulting Pty Ltd and others.
+//
+// This program and the accompanying materials are made available under the
+// terms of the Eclipse Public License v. 2.0 which is available at
+// https://www.eclipse.org/legal/epl-2.0, or the Apache License, Version 2.0
+// which is available at https://www.apache.org/licenses/LICENSE-2.0.
+//
+// SPDX-License-Identifier: EPL-2.0 OR Apache-2.0
+// ========================================================================
+//
+
+package org.eclipse.jetty.rewrite.handler;
+
+import java.io.IOException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.eclipse.jetty.util.annotation.Name;
+
+/**
+ * Rewrite the target to the path mapped to the target in a file.
+ * <p>
+ * This rule is meant to replace large numbers of {@link RewritePatternRule}s with exact patterns,
+ * see {@link MapRule} for the format of the file.
+ * The mapped values are paths, without query string.
+ */
+public class RewriteMapRule extends MapRule
+{
+    public RewriteMapRule()
+    {
+        this(null);
+    }
+
+    public RewriteMapRule(@Name("file") String file)
+    {
+        super(file);
+        setHandling(false);
+        setTerminating(false);
+    }
+
+    @Override
+    protected String apply(String target, String path, HttpServletRequest request, HttpServletResponse response) throws IOException
+    {
+        return path;
+    }
+}
@@ -14,6 +14,8 @@
 package org.eclipse.jetty.rewrite.handler;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
@@ -21,7 +23,10 @@ import org.eclipse.jetty.http.HttpURI;
 import org.eclipse.jetty.server.Request;
 import org.eclipse.jetty.util.ArrayUtil;
 import org.eclipse.jetty.util.URIUtil;
+import org.eclipse.jetty.util.annotation.ManagedAttribute;
+import org.eclipse.jetty.util.annotation.ManagedObject;
 import org.eclipse.jetty.util.component.Dumpable;
+import org.eclipse.jetty.util.component.DumpableCollection;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -29,6 +34,7 @@ import org.slf4j.LoggerFactory;
  * Base container to group rules. Can be extended so that the contained rules
  * will only be applied under certain conditions
  */
+@ManagedObject("Rule container")
 public class RuleContainer extends Rule implements Dumpable
 {
     public static final String ORIGINAL_QUERYSTRING_ATTRIBUTE_SUFFIX = ".QUERYSTRING";
@@ -40,6 +46,8 @@ public class RuleContainer extends Rule implements Dumpable
     protected String _originalQueryStringAttribute;
     protected boolean _rewriteRequestURI = true;
     protected boolean _rewritePathInfo = true;
+    private boolean _compiled;
+    private volatile RuleIndex _ruleIndex;
 
     /**
      * Returns the list of rules.
@@ -59,6 +67,7 @@ public class RuleContainer extends Rule implements Dumpable
     public void setRules(Rule[] rules)
     {
         _rules = rules;
+        _ruleIndex = new RuleIndex(rules, _compiled, _ruleIndex);
     }
 
     /**
@@ -68,7 +77,90 @@ public class RuleContainer extends Rule implements Dumpable
      */
     public void addRule(Rule rule)
     {
-        _rules = ArrayUtil.addToArray(_rules, rule, Rule.class);
+        Rule[] rules = ArrayUtil.addToArray(_rules, rule, Rule.class);
+        _rules = rules;
+        _ruleIndex = new RuleIndex(rules, _compiled, _ruleIndex);
+    }
+
+    /**
+     * @return whether the rules are compiled into an index
+     */
+    @ManagedAttribute("Whether the rules are compiled into an index")
+    public boolean isCompiled()
+    {
+        return _compiled;
+    }
+
+    /**
+     * <p>Sets whether the rules are compiled into an index.</p>
+     * <p>Without an index, every rule is evaluated against the target of every request,
+     * so the cost of applying the rules grows with the number of rules.
+     * The index buckets the {@link PatternRule}s and {@link RegexRule}s by the literal
+     * prefix (or suffix) of their pattern, so that only the rules that can possibly
+     * match a target are evaluated; other rules are always evaluated.
+     * Rules are still applied in order, and the candidate rules are recomputed
+     * every time a rule changes the target.</p>
+     * <p>The index is rebuilt when the rules are modified via {@link #setRules(Rule[])}
+     * or {@link #addRule(Rule)}; the pattern of a rule must not be modified after the
+     * rule has been added.</p>
+     *
+     * @param compiled whether the rules are compiled into an index
+     */
+    public void setCompiled(boolean compiled)
+    {
+        _compiled = compiled;
+        _ruleIndex = new RuleIndex(_rules, compiled, _ruleIndex);
+    }
+
+    /**
+     * @return the number of times each rule has been applied, in rule order
+     */
+    @ManagedAttribute("The number of times each rule has been applied")
+    public List<String> getRuleHits()
+    {
+        RuleIndex ruleIndex = getRuleIndex();
+        List<String> hits = new ArrayList<>();
+        if (ruleIndex.getRules() != null)
+        {
+            for (int i = 0; i < ruleIndex.getRules().length; ++i)
+            {
+                hits.add(ruleIndex.getRules()[i] + " hits=" + ruleIndex.getHits(i));
+            }
+        }
+        return hits;
+    }
+
+    /**
+     * @param rule the rule
+     * @return the number of times the given rule has been applied since it was added to this container,
+     * or -1 if the rule is not in this container
+     */
+    public long getRuleHits(Rule rule)
+    {
+        RuleIndex ruleIndex = getRuleIndex();
+        Rule[] rules = ruleIndex.getRules();
+        if (rules != null)
+        {
+            for (int i = 0; i < rules.length; ++i)
+            {
+                if (rules[i] == rule)
+                    return ruleIndex.getHits(i);
+            }
+        }
+        return -1;
+    }
+
+    private RuleIndex getRuleIndex()
+    {
+        RuleIndex ruleIndex = _ruleIndex;
+        Rule[] rules = _rules;
+        // The protected rules array may have been assigned directly.
+        if (ruleIndex == null || ruleIndex.getRules() != rules)
+        {
+            ruleIndex = new RuleIndex(rules, _compiled, ruleIndex);
+            _ruleIndex = ruleIndex;
+        }
+        return ruleIndex;
     }
 
     /**
@@ -150,70 +242,114 @@ public class RuleContainer extends Rule implements Dumpable
      */
     protected String apply(String target, HttpServletRequest request, HttpServletResponse response) throws IOException
     {
+        RuleIndex ruleIndex = getRuleIndex();
+        Rule[] rules = ruleIndex.getRules();
+        if (rules == null)
+            return target;
+
         boolean originalSet = _originalPathAttribute == null;
 
-        if (_rules == null)
+        if (!ruleIndex.isIndexed())
+        {
+            for (int i = 0; i < rules.length; ++i)
+            {
+                Rule rule = rules[i];
+                String applied = rule.matchAndApply(target, request, response);
+                if (applied != null)
+                {
+                    ruleIndex.hit(i);
+                    originalSet = applied(rule, target, applied, originalSet, request);
+                    target = applied;
+                    if (rule.isTerminating())
+                    {
+                        LOG.debug("terminating {}", rule);
+                        break;
+                    }
+                }
+            }
             return target;
+        }
 
-        for (Rule rule : _rules)
+        // The candidate rules are the merge, in rule order, of the rules that may apply by prefix and by suffix.
+        int[] prefixed = ruleIndex.prefixCandidates(target);
+        int[] suffixed = ruleIndex.suffixCandidates(target);
+        int p = 0;
+        int s = 0;
+        while (p < prefixed.length || s < suffixed.length)
         {
+            int i = s == suffixed.length || (p < prefixed.length && prefixed[p] < suffixed[s]) ? prefixed[p++] : suffixed[s++];
+            Rule rule = rules[i];
             String applied = rule.matchAndApply(target, request, response);
             if (applied != null)
             {
-                LOG.debug("applied {}", rule);
-                LOG.debug("rewrote {} to {}", target, applied);
-                if (!originalSet)
+                ruleIndex.hit(i);
+                originalSet = applied(rule, target, applied, originalSet, request);
+                if (rule.isTerminating())
                 {
-                    originalSet = true;
-                    request.setAttribute(_originalPathAttribute, target);
-
-                    String query = request.getQueryString();
-                    if (query != null)
-                        request.setAttribute(_originalQueryStringAttribute, query);
+                    LOG.debug("terminating {}", rule);
+                    target = applied;
+                    break;
                 }
-
-                // Ugly hack, we should just pass baseRequest into the API from RewriteHandler itself.
-                Request baseRequest = Request.getBaseRequest(request);
-
-                if (_rewriteRequestURI)
+                if (!applied.equals(target))
                 {
-                    String encoded = URIUtil.encodePath(applied);
-                    if (rule instanceof Rule.ApplyURI)
-                        ((Rule.ApplyURI)rule).applyURI(baseRequest, baseRequest.getRequestURI(), encoded);
-                    else
-                    {
-                        HttpURI baseUri = baseRequest.getHttpURI();
-                        baseRequest.setHttpURI(HttpURI.build(baseUri, encoded)
-                            .param(baseUri.getParam())
-                            .query(baseUri.getQuery()));
-                    }
+                    // The following rules are evaluated against the new target.
+                    target = applied;
+                    prefixed = ruleIndex.prefixCandidates(target);
+                    suffixed = ruleIndex.suffixCandidates(target);
+                    p = RuleIndex.after(prefixed, i);
+                    s = RuleIndex.after(suffixed, i);
                 }
+            }
+        }
 
-                if (_rewritePathInfo)
-                    baseRequest.setContext(baseRequest.getContext(), applied);
+        return target;
+    }
 
-                target = applied;
+    private boolean applied(Rule rule, String target, String applied, boolean originalSet, HttpServletRequest request) throws IOException
+    {
+        LOG.debug("applied {}", rule);
+        LOG.debug("rewrote {} to {}", target, applied);
+        if (!originalSet)
+        {
+            originalSet = true;
+            request.setAttribute(_originalPathAttribute, target);
 
-                if (rule.isHandling())
-                {
-                    LOG.debug("handling {}", rule);
-                    baseRequest.setHandled(true);
-                }
+            String query = request.getQueryString();
+            if (query != null)
+                request.setAttribute(_originalQueryStringAttribute, query);
+        }
 
-                if (rule.isTerminating())
-                {
-                    LOG.debug("terminating {}", rule);
-                    break;
-                }
+        // Ugly hack, we should just pass baseRequest into the API from RewriteHandler itself.
+        Request baseRequest = Request.getBaseRequest(request);
+
+        if (_rewriteRequestURI)
+        {
+            String encoded = URIUtil.encodePath(applied);
+            if (rule instanceof Rule.ApplyURI)
+                ((Rule.ApplyURI)rule).applyURI(baseRequest, baseRequest.getRequestURI(), encoded);
+            else
+            {
+                HttpURI baseUri = baseRequest.getHttpURI();
+                baseRequest.setHttpURI(HttpURI.build(baseUri, encoded)
+                    .param(baseUri.getParam())
+                    .query(baseUri.getQuery()));
             }
         }
 
-        return target;
+        if (_rewritePathInfo)
+            baseRequest.setContext(baseRequest.getContext(), applied);
+
+        if (rule.isHandling())
+        {
+            LOG.debug("handling {}", rule);
+            baseRequest.setHandled(true);
+        }
+        return originalSet;
     }
 
     @Override
     public void dump(Appendable out, String indent) throws IOException
     {
-        Dumpable.dumpObjects(out, indent, this, _rules);
+        Dumpable.dumpObjects(out, indent, this, _rules, new DumpableCollection("hits", getRuleHits()));
     }
 }
@@ -0,0 +1,231 @@
+//
+// ========================================================================
+// Copyright (c) 1995-2022 Mort Bay Consulting Pty Ltd and others.
+//
+// This program and the accompanying materials are made available under the
+// terms of the Eclipse Public License v. 2.0 which is available at
+// https://www.eclipse.org/legal/epl-2.0, or the Apache License, Version 2.0
+// which is available at https://www.apache.org/licenses/LICENSE-2.0.
+//
+// SPDX-License-Identifier: EPL-2.0 OR Apache-2.0
+// ========================================================================
+//
+
+package org.eclipse.jetty.rewrite.handler;
+
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.eclipse.jetty.util.LiteralPrefixTree;
+
+/**
+ * <p>A snapshot of the rules of a {@link RuleContainer}, with their hit counters
+ * and, optionally, an index of the rules by the literal text their target must contain.</p>
+ * <p>The index is built from {@link PatternRule}s and {@link RegexRule}s that do not override
+ * {@code matchAndApply(...)}: their pattern is a necessary condition for the rule to apply,
+ * so a rule whose literal prefix (or suffix, for {@code *.ext} patterns) is not found
+ * in the target can be skipped without being evaluated.
+ * All other rules are always evaluated.</p>
+ * <p>Every node of the prefix and suffix trees holds the sorted indexes of its own rules and of
+ * the rules of its ancestors, so that the candidate rules of a target are the merge, in rule order,
+ * of the rules of the deepest prefix node and of the deepest suffix node that the target reaches.</p>
+ */
+class RuleIndex
+{
+    private static final int[] NO_RULES = new int[0];
+
+    private final Rule[] _rules;
+    private final LongAdder[] _hits;
+    private final boolean _indexed;
+    private final LiteralPrefixTree<int[]> _prefixes = new LiteralPrefixTree<>();
+    private final LiteralPrefixTree<int[]> _suffixes = new LiteralPrefixTree<>();
+
+    /**
+     * @param rules the rules
+     * @param indexed whether the rules are indexed
+     * @param previous the previous snapshot, whose hit counters are kept for the rules that are still present, or null
+     */
+    RuleIndex(Rule[] rules, boolean indexed, RuleIndex previous)
+    {
+        _rules = rules;
+        _hits = new LongAdder[rules == null ? 0 : rules.length];
+        Map<Rule, LongAdder> previousHits = new IdentityHashMap<>();
+        if (previous != null)
+        {
+            for (int i = 0; i < previous._hits.length; ++i)
+            {
+                previousHits.putIfAbsent(previous._rules[i], previous._hits[i]);
+            }
+        }
+        for (int i = 0; i < _hits.length; ++i)
+        {
+            LongAdder hits = previousHits.remove(rules[i]);
+            _hits[i] = hits == null ? new LongAdder() : hits;
+        }
+        _indexed = indexed;
+
+        if (indexed)
+        {
+            int[] unindexed = NO_RULES;
+            for (int i = 0; i < _hits.length; ++i)
+            {
+                Rule rule = rules[i];
+                if (rule instanceof PatternRule && isMatchInherited(rule, PatternRule.class) && ((PatternRule)rule).getPattern() != null)
+                {
+                    String pattern = ((PatternRule)rule).getPattern();
+                    if (pattern.startsWith("*"))
+                        append(_suffixes.add(new StringBuilder(pattern.substring(1)).reverse()), i);
+                    else if (pattern.length() > 1 && pattern.charAt(0) == '/')
+                        append(_prefixes.add(pattern.endsWith("/*") ? pattern.substring(0, pattern.length() - 2) : pattern), i);
+                    else
+                        unindexed = append(unindexed, i);
+                }
+                else if (rule instanceof RegexRule && isMatchInherited(rule, RegexRule.class) && ((RegexRule)rule)._regex != null)
+                {
+                    append(_prefixes.add(LiteralPrefixTree.literalPrefix(((RegexRule)rule)._regex)), i);
+                }
+                else
+                {
+                    unindexed = append(unindexed, i);
+                }
+            }
+            // The rules that are not indexed are candidates for every target.
+            accumulate(_prefixes.getRoot(), unindexed);
+            accumulate(_suffixes.getRoot(), NO_RULES);
+        }
+    }
+
+    Rule[] getRules()
+    {
+        return _rules;
+    }
+
+    boolean isIndexed()
+    {
+        return _indexed;
+    }
+
+    void hit(int index)
+    {
+        _hits[index].increment();
+    }
+
+    long getHits(int index)
+    {
+        return _hits[index].longValue();
+    }
+
+    /**
+     * <p>Only available if this index {@link #isIndexed() is indexed}.</p>
+     *
+     * @param target the target to match
+     * @return the indexes, in rule order, of the rules indexed by a prefix of the given target, and of the rules that are not indexed
+     */
+    int[] prefixCandidates(String target)
+    {
+        LiteralPrefixTree.Node<int[]> node = _prefixes.getRoot();
+        int[] candidates = node.getValue();
+        for (int i = 0; i < target.length(); ++i)
+        {
+            node = node.getChild(target.charAt(i));
+            if (node == null)
+                break;
+            candidates = node.getValue();
+        }
+        return candidates;
+    }
+
+    /**
+     * <p>Only available if this index {@link #isIndexed() is indexed}.</p>
+     *
+     * @param target the target to match
+     * @return the indexes, in rule order, of the rules indexed by a suffix of the given target
+     */
+    int[] suffixCandidates(String target)
+    {
+        LiteralPrefixTree.Node<int[]> node = _suffixes.getRoot();
+        int[] candidates = node.getValue();
+        for (int i = target.length(); i-- > 0; )
+        {
+            node = node.getChild(target.charAt(i));
+            if (node == null)
+                break;
+            candidates = node.getValue();
+        }
+        return candidates;
+    }
+
+    /**
+     * @param candidates the sorted indexes of rules
+     * @param index the index of a rule
+     * @return the position in the given candidates of the first rule after the given rule
+     */
+    static int after(int[] candidates, int index)
+    {
+        int position = Arrays.binarySearch(candidates, index);
+        return position < 0 ? -position - 1 : position + 1;
+    }
+
+    private static boolean isMatchInherited(Rule rule, Class<? extends Rule> type)
+    {
+        try
+        {
+            return rule.getClass().getMethod("matchAndApply", String.class, HttpServletRequest.class, HttpServletResponse.class).getDeclaringClass() == type;
+        }
+        catch (NoSuchMethodException x)
+        {
+            return false;
+        }
+    }
+
+    private static void append(LiteralPrefixTree.Node<int[]> node, int index)
+    {
+        node.setValue(append(node.getValue() == null ? NO_RULES : node.getValue(), index));
+    }
+
+    private static int[] append(int[] indexes, int index)
+    {
+        // Rules are added in order, so the indexes stay sorted.
+        int[] result = Arrays.copyOf(indexes, indexes.length + 1);
+        result[indexes.length] = index;
+        return result;
+    }
+
+    /**
+     * Replaces the rules of the given node and of its descendants with their own rules
+     * merged with the rules of their ancestors.
+     */
+    private static void accumulate(LiteralPrefixTree.Node<int[]> node, int[] inherited)
+    {
+        int[] own = node.getValue();
+        int[] merged = own == null ? inherited : merge(inherited, own);
+        node.setValue(merged);
+        node.forEachChild(child -> accumulate(child, merged));
+    }
+
+    private static int[] merge(int[] a, int[] b)
+    {
+        // Each rule is in exactly one node, so there are no duplicates.
+        int[] result = new int[a.length + b.length];
+        int i = 0;
+        int j = 0;
+        int k = 0;
+        while (i < a.length && j < b.length)
+        {
+            result[k++] = a[i] < b[j] ? a[i++] : b[j++];
+        }
+        while (i < a.length)
+        {
+            result[k++] = a[i++];
+        }
+        while (j < b.length)
+        {
+            result[k++] = b[j++];
+        }
+        return result;
+    }
+}
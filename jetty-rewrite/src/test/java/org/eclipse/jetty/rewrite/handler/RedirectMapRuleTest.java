@@ -0,0 +1,166 @@
+//
+// ========================================================================
+// Copyright (c) 1995-2022 Mort Bay Consulting Pty Ltd and others.
+//
+// This program and the accompanying materials are made available under the
+// terms of the Eclipse Public License v. 2.0 which is available at
+// https://www.eclipse.org/legal/epl-2.0, or the Apache License, Version 2.0
+// which is available at https://www.apache.org/licenses/LICENSE-2.0.
+//
+// SPDX-License-Identifier: EPL-2.0 OR Apache-2.0
+// ========================================================================
+//
+
+package org.eclipse.jetty.rewrite.handler;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.jetty.http.HttpHeader;
+import org.eclipse.jetty.http.HttpStatus;
+import org.eclipse.jetty.toolchain.test.jupiter.WorkDir;
+import org.eclipse.jetty.toolchain.test.jupiter.WorkDirExtension;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+@ExtendWith(WorkDirExtension.class)
+public class RedirectMapRuleTest extends AbstractRuleTestCase
+{
+    public WorkDir workDir;
+    private Path file;
+
+    @BeforeEach
+    public void init() throws Exception
+    {
+        file = workDir.getEmptyPathDir().resolve("redirects.txt");
+        start(false);
+    }
+
+    @Test
+    public void testRedirect() throws IOException
+    {
+        Files.write(file, List.of(
+            "# legacy pages",
+            "/old/a.html   http://example.com/a",
+            "",
+            "/old/b.html\t/b",
+            "/old/b.html /b2"
+        ), StandardCharsets.UTF_8);
+
+        RedirectMapRule rule = new RedirectMapRule(file.toString());
+        rule.setStatusCode(HttpStatus.MOVED_PERMANENTLY_301);
+
+        // The rule does not match until the mappings are loaded.
+        assertThat(rule.matchAndApply("/old/a.html", _request, _response), nullValue());
+        rule.load();
+
+        assertThat(rule.matchAndApply("/old/c.html", _request, _response), nullValue());
+        assertThat(rule.getSize(), is(2));
+
+        assertThat(rule.matchAndApply("/old/a.html", _request, _response), is("/old/a.html"));
+        assertThat(_response.getStatus(), is(HttpStatus.MOVED_PERMANENTLY_301));
+        assertThat(_response.getHeader(HttpHeader.LOCATION.asString()), is("http://example.com/a"));
+
+        reset();
+        // Later mappings override earlier ones.
+        rule.matchAndApply("/old/b.html", _request, _response);
+        assertThat(_response.getHeader(HttpHeader.LOCATION.asString()), is("http://0.0.0.0/b2"));
+    }
+
+    @Test
+    public void testManyMappings() throws IOException
+    {
+        int count = 200_000;
+        List<String> lines = new ArrayList<>(count);
+        for (int i = 0; i < count; ++i)
+        {
+            lines.add("/product/" + i + ".html /p/" + i);
+        }
+        Files.write(file, lines, StandardCharsets.UTF_8);
+
+        RewriteMapRule rule = new RewriteMapRule(file.toString());
+        rule.load();
+        assertThat(rule.getSize(), is(count));
+        for (int i = 0; i < count; i += 997)
+        {
+            assertThat(rule.matchAndApply("/product/" + i + ".html", _request, _response), is("/p/" + i));
+        }
+        assertThat(rule.matchAndApply("/product/" + count + ".html", _request, _response), nullValue());
+        assertThat(rule.matchAndApply("/product/1", _request, _response), nullValue());
+    }
+
+    @Test
+    public void testInvalidMapping() throws IOException
+    {
+        Files.write(file, List.of("/a /b", "/c"), StandardCharsets.UTF_8);
+
+        RedirectMapRule rule = new RedirectMapRule(file.toString());
+        IOException x = assertThrows(IOException.class, rule::load);
+        assertThat(x.getMessage(), containsString("line 2"));
+        assertThat(rule.getSize(), is(-1));
+    }
+
+    @Test
+    public void testInvalidMappingFailsStart() throws IOException
+    {
+        Files.write(file, List.of("/a /b", "/c"), StandardCharsets.UTF_8);
+
+        RedirectMapRule rule = new RedirectMapRule(file.toString());
+        assertThrows(IOException.class, () -> rule.getLifeCycle().start());
+        assertThat(rule.getLifeCycle().isFailed(), is(true));
+
+        // The file is not loaded again by requests.
+        Files.write(file, List.of("/a /b"), StandardCharsets.UTF_8);
+        assertThat(rule.matchAndApply("/a", _request, _response), nullValue());
+        assertThat(rule.getSize(), is(-1));
+    }
+
+    @Test
+    public void testReload() throws Exception
+    {
+        Files.write(file, List.of("/a /one"), StandardCharsets.UTF_8);
+
+        RewriteMapRule rule = new RewriteMapRule(file.toString());
+        rule.setScanInterval(1);
+        rule.getLifeCycle().start();
+        try
+        {
+            assertThat(rule.matchAndApply("/a", _request, _response), is("/one"));
+
+            Files.write(file, List.of("/a /two", "/b /three"), StandardCharsets.UTF_8);
+            awaitMapping(rule, "/b", "/three");
+            assertThat(rule.matchAndApply("/a", _request, _response), is("/two"));
+
+            // Invalid files do not replace the current mappings.
+            Files.write(file, List.of("/a /four", "/invalid"), StandardCharsets.UTF_8);
+            Thread.sleep(3500);
+            assertThat(rule.matchAndApply("/a", _request, _response), is("/two"));
+        }
+        finally
+        {
+            rule.getLifeCycle().stop();
+        }
+    }
+
+    private void awaitMapping(MapRule rule, String target, String expected) throws Exception
+    {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (!expected.equals(rule.matchAndApply(target, _request, _response)) && System.nanoTime() < deadline)
+        {
+            Thread.sleep(100);
+        }
+        assertThat(rule.matchAndApply(target, _request, _response), is(expected));
+    }
+}
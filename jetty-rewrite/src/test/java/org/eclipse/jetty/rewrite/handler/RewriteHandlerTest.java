@@ -14,6 +14,7 @@
 package org.eclipse.jetty.rewrite.handler;
 
 import java.io.IOException;
+import java.util.List;
 import javax.servlet.ServletException;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
@@ -23,7 +24,11 @@ import org.eclipse.jetty.server.Request;
 import org.eclipse.jetty.server.handler.AbstractHandler;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
 
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsString;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
@@ -71,9 +76,11 @@ public class RewriteHandlerTest extends AbstractRuleTestCase
         start(false);
     }
 
-    @Test
-    public void test() throws Exception
+    @ParameterizedTest
+    @ValueSource(booleans = {false, true})
+    public void test(boolean compiled) throws Exception
     {
+        _handler.setCompiled(compiled);
         _response.setStatus(200);
         _request.setHandled(false);
         _handler.setOriginalPathAttribute("/before");
@@ -159,9 +166,11 @@ public class RewriteHandlerTest extends AbstractRuleTestCase
         assertTrue(_request.isHandled());
     }
 
-    @Test
-    public void testEncodedPattern() throws Exception
+    @ParameterizedTest
+    @ValueSource(booleans = {false, true})
+    public void testEncodedPattern(boolean compiled) throws Exception
     {
+        _handler.setCompiled(compiled);
         _response.setStatus(200);
         _request.setHandled(false);
         _handler.setOriginalPathAttribute("/before");
@@ -176,9 +185,11 @@ public class RewriteHandlerTest extends AbstractRuleTestCase
         assertEquals("/ccc/x y", _request.getAttribute("info"));
     }
 
-    @Test
-    public void testEncodedRegex() throws Exception
+    @ParameterizedTest
+    @ValueSource(booleans = {false, true})
+    public void testEncodedRegex(boolean compiled) throws Exception
     {
+        _handler.setCompiled(compiled);
         _response.setStatus(200);
         _request.setHandled(false);
         _handler.setOriginalPathAttribute("/before");
@@ -192,4 +203,74 @@ public class RewriteHandlerTest extends AbstractRuleTestCase
         assertEquals("/x%20y/zzz", _request.getAttribute("URI"));
         assertEquals("/xxx/x y", _request.getAttribute("info"));
     }
+
+    @ParameterizedTest
+    @ValueSource(booleans = {false, true})
+    public void testRuleHits(boolean compiled) throws Exception
+    {
+        _handler.setCompiled(compiled);
+        _handler.setRewriteRequestURI(true);
+        _handler.setRewritePathInfo(true);
+
+        for (int i = 0; i < 3; ++i)
+        {
+            _request.setHandled(false);
+            _request.setHttpURI(HttpURI.build(_request.getHttpURI(), "/ccc/bar"));
+            _request.setContext(_request.getContext(), "/ccc/bar");
+            _handler.handle("/ccc/bar", _request, _request, _response);
+            assertEquals("/ddd/bar", _request.getAttribute("target"));
+        }
+
+        _request.setHandled(false);
+        _request.setHttpURI(HttpURI.build(_request.getHttpURI(), "/aaa/bar"));
+        _request.setContext(_request.getContext(), "/aaa/bar");
+        _handler.handle("/aaa/bar", _request, _request, _response);
+        assertEquals("/ddd/bar", _request.getAttribute("target"));
+
+        RuleContainer rules = _handler.getRuleContainer();
+        assertEquals(1, rules.getRuleHits(_rule1));
+        assertEquals(1, rules.getRuleHits(_rule2));
+        assertEquals(4, rules.getRuleHits(_rule3));
+        assertEquals(0, rules.getRuleHits(_rule4));
+        assertEquals(-1, rules.getRuleHits(new RewritePatternRule("/*", "/")));
+        assertThat(rules.dump(), containsString(_rule3 + " hits=4"));
+
+        // Modifying the rules keeps the hits of the rules that are still present.
+        RewritePatternRule rule5 = new RewritePatternRule("/eee/*", "/fff");
+        rules.addRule(rule5);
+        assertEquals(4, rules.getRuleHits(_rule3));
+        assertEquals(0, rules.getRuleHits(rule5));
+        rules.setRules(new Rule[]{_rule3, rule5});
+        assertEquals(4, rules.getRuleHits(_rule3));
+        assertEquals(-1, rules.getRuleHits(_rule1));
+    }
+
+    @Test
+    public void testCompiledAppliesRulesLikeLinear() throws Exception
+    {
+        RuleContainer linear = new RuleContainer();
+        RuleContainer compiled = new RuleContainer();
+        compiled.setCompiled(true);
+        for (RuleContainer rules : List.of(linear, compiled))
+        {
+            rules.setRewriteRequestURI(false);
+            rules.setRewritePathInfo(false);
+            rules.addRule(new RewritePatternRule("/old/*", "/new"));
+            rules.addRule(new RewriteRegexRule("/new/(\\d+)", "/item/$1"));
+            rules.addRule(new RewritePatternRule("*.do", "/action"));
+            rules.addRule(new RewriteRegexRule("^/item/1.*", "/first"));
+            rules.addRule(new RewriteRegexRule(".*/legacy/(.*)", "/old/$1"));
+            rules.addRule(new RewritePatternRule("/", "/any"));
+            rules.addRule(new RewritePatternRule("/any", "/all"));
+            rules.addRule(new TerminatingPatternRule("/all"));
+            rules.addRule(new RewritePatternRule("/all", "/never"));
+        }
+
+        for (String target : List.of("/old/12", "/old/x", "/new/3", "/a/b.do", "/x/legacy/10", "/item/100", "/", "/other"))
+        {
+            assertEquals(linear.matchAndApply(target, _request, _response), compiled.matchAndApply(target, _request, _response), target);
+        }
+        assertEquals(linear.getRuleHits(), compiled.getRuleHits());
+        assertEquals("/all", compiled.matchAndApply("/old/1", _request, _response));
+    }
 }
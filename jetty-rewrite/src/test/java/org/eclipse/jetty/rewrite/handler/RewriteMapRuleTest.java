@@ -0,0 +1,127 @@
+//
+// ========================================================================
+// Copyright (c) 1995-2022 Mort Bay Consulting Pty Ltd and others.
+//
+// This program and the accompanying materials are made available under the
+// terms of the Eclipse Public License v. 2.0 which is available at
+// https://www.eclipse.org/legal/epl-2.0, or the Apache License, Version 2.0
+// which is available at https://www.apache.org/licenses/LICENSE-2.0.
+//
+// SPDX-License-Identifier: EPL-2.0 OR Apache-2.0
+// ========================================================================
+//
+
+package org.eclipse.jetty.rewrite.handler;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.eclipse.jetty.http.HttpURI;
+import org.eclipse.jetty.server.Request;
+import org.eclipse.jetty.server.handler.AbstractHandler;
+import org.eclipse.jetty.toolchain.test.jupiter.WorkDir;
+import org.eclipse.jetty.toolchain.test.jupiter.WorkDirExtension;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+@ExtendWith(WorkDirExtension.class)
+public class RewriteMapRuleTest extends AbstractRuleTestCase
+{
+    public WorkDir workDir;
+
+    @Test
+    public void testRewriteHandlerStartsRule() throws Exception
+    {
+        Path file = workDir.getEmptyPathDir().resolve("rewrites.txt");
+        Files.write(file, List.of("/old/path /new/path"), StandardCharsets.UTF_8);
+
+        RewriteMapRule rule = new RewriteMapRule(file.toString());
+        RuleContainer nested = new RuleContainer();
+        nested.addRule(rule);
+
+        RewriteHandler handler = new RewriteHandler();
+        handler.setServer(_server);
+        handler.addRule(nested);
+        handler.setHandler(new AbstractHandler()
+        {
+            @Override
+            public void handle(String target, Request baseRequest, HttpServletRequest request, HttpServletResponse response) throws IOException
+            {
+                request.setAttribute("target", target);
+                request.setAttribute("URI", request.getRequestURI());
+            }
+        });
+        handler.start();
+        start(false);
+
+        assertThat(rule.getLifeCycle().isStarted(), is(true));
+        assertThat(rule.getSize(), is(1));
+
+        _request.setHttpURI(HttpURI.build(_request.getHttpURI(), "/old/path"));
+        _request.setContext(_request.getContext(), "/old/path");
+        handler.handle("/old/path", _request, _request, _response);
+        assertThat(_request.getAttribute("target"), is("/new/path"));
+        assertThat(_request.getAttribute("URI"), is("/new/path"));
+
+        handler.stop();
+        assertThat(rule.getLifeCycle().isStopped(), is(true));
+    }
+
+    @Test
+    public void testRuleAddedToStartedRewriteHandlerIsStarted() throws Exception
+    {
+        Path dir = workDir.getEmptyPathDir();
+        Path file1 = dir.resolve("rewrites1.txt");
+        Files.write(file1, List.of("/old/path /new/path"), StandardCharsets.UTF_8);
+        Path file2 = dir.resolve("rewrites2.txt");
+        Files.write(file2, List.of("/a /b", "/c /d"), StandardCharsets.UTF_8);
+
+        start(false);
+
+        RewriteHandler handler = new RewriteHandler();
+        handler.setServer(_server);
+        handler.start();
+
+        RewriteMapRule rule1 = new RewriteMapRule(file1.toString());
+        handler.addRule(rule1);
+        assertThat(rule1.getLifeCycle().isStarted(), is(true));
+        assertThat(rule1.getSize(), is(1));
+
+        // Replacing the rules starts the new rules and stops the removed ones.
+        RewriteMapRule rule2 = new RewriteMapRule(file2.toString());
+        handler.setRules(new Rule[]{rule2});
+        assertThat(rule1.getLifeCycle().isStopped(), is(true));
+        assertThat(rule2.getLifeCycle().isStarted(), is(true));
+        assertThat(rule2.getSize(), is(2));
+
+        handler.stop();
+        assertThat(rule2.getLifeCycle().isStopped(), is(true));
+    }
+
+    @Test
+    public void testRewriteHandlerFailsStartWhenRuleFailsToLoad() throws Exception
+    {
+        Path file = workDir.getEmptyPathDir().resolve("rewrites.txt");
+        Files.write(file, List.of("/old/path"), StandardCharsets.UTF_8);
+
+        start(false);
+
+        RewriteMapRule rule = new RewriteMapRule(file.toString());
+        RewriteHandler handler = new RewriteHandler();
+        handler.setServer(_server);
+        handler.addRule(rule);
+
+        assertThrows(IOException.class, handler::start);
+        assertThat(rule.getLifeCycle().isFailed(), is(true));
+        handler.stop();
+    }
+}
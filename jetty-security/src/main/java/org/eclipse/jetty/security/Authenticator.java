@@ -14,6 +14,7 @@
 package org.eclipse.jetty.security;
 
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
 import javax.servlet.ServletContext;
 import javax.servlet.ServletRequest;
 import javax.servlet.ServletResponse;
@@ -75,6 +76,39 @@ public interface Authenticator
      */
     Authentication validateRequest(ServletRequest request, ServletResponse response, boolean mandatory) throws ServerAuthException;
 
+    /**
+     * <p>Validate a request asynchronously.</p>
+     * <p>Authenticators that can validate requests without blocking the calling thread,
+     * for example because they call an identity provider asynchronously, may override
+     * this method; if the returned future is not completed when this method returns,
+     * the request is suspended until it completes.</p>
+     * <p>If a response is sent while the request is suspended, for example a challenge,
+     * the future must be completed with an {@link org.eclipse.jetty.server.Authentication.ResponseSent},
+     * so that the request is completed rather than resumed.</p>
+     * <p>If the request is not authenticated within the authentication timeout of the
+     * {@link SecurityHandler}, the returned future is completed with a
+     * {@link java.util.concurrent.TimeoutException}; the authenticator must not use
+     * the request or the response once the returned future is completed.</p>
+     * <p>The default implementation calls {@link #validateRequest(ServletRequest, ServletResponse, boolean)}.</p>
+     *
+     * @param request The request
+     * @param response The response
+     * @param mandatory True if authentication is mandatory.
+     * @return A future completed with the Authentication, as returned by {@link #validateRequest(ServletRequest, ServletResponse, boolean)},
+     * or completed with a {@link ServerAuthException} if unable to validate request
+     */
+    default CompletableFuture<Authentication> validateRequestAsync(ServletRequest request, ServletResponse response, boolean mandatory)
+    {
+        try
+        {
+            return CompletableFuture.completedFuture(validateRequest(request, response, mandatory));
+        }
+        catch (Throwable x)
+        {
+            return CompletableFuture.failedFuture(x);
+        }
+    }
+
     /**
      * is response secure
      *
@@ -0,0 +1,393 @@
+//
+// ========================================================================
+// Copyright (c) 1995-2022 Mort Bay Consulting Pty Ltd and others.
+//
+// This program and the accompanying materials are made available under the
+// terms of the Eclipse Public License v. 2.0 which is available at
+// https://www.eclipse.org/legal/epl-2.0, or the Apache License, Version 2.0
+// which is available at https://www.apache.org/licenses/LICENSE-2.0.
+//
+// SPDX-License-Identifier: EPL-2.0 OR Apache-2.0
+// ========================================================================
+//
+
+package org.eclipse.jetty.security;
+
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import javax.servlet.ServletRequest;
+
+import org.eclipse.jetty.server.UserIdentity;
+import org.eclipse.jetty.util.annotation.ManagedAttribute;
+import org.eclipse.jetty.util.annotation.ManagedObject;
+import org.eclipse.jetty.util.annotation.ManagedOperation;
+import org.eclipse.jetty.util.component.ContainerLifeCycle;
+import org.eclipse.jetty.util.security.Credential;
+import org.eclipse.jetty.util.security.Password;
+import org.eclipse.jetty.util.thread.AutoLock;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * <p>A {@link LoginService} that caches the successful logins of another {@link LoginService}.</p>
+ * <p>Authenticators such as BASIC authenticate every request, so the wrapped
+ * {@link LoginService} (for example a {@link JDBCLoginService}, a {@link HashLoginService}
+ * or a JAAS login service) is asked to load and verify the same user over and over again.
+ * This {@link LoginService} remembers, for each user, the {@link UserIdentity} of the last
+ * successful login, together with a salted digest of the password that was used, so that
+ * the password is never stored.</p>
+ * <p>A login is served from the cache if the user has a cached entry that has not expired
+ * and the digest of the password matches; otherwise it is delegated to the wrapped
+ * {@link LoginService}. Failed logins are never cached. Only passwords given as a
+ * {@link String}, a {@code char[]} or a {@link Password} are cached; other credentials,
+ * such as those of DIGEST authentication, are always delegated.</p>
+ * <p>Entries expire after {@link #getTimeToLive() a time to live}, and the cache holds at
+ * most {@link #getMaxCacheSize() a maximum number} of users, evicting the least recently
+ * used entries when it is full. Entries can be invalidated
+ * explicitly via {@link #invalidate(String)} and {@link #invalidateAll()}, they are
+ * invalidated by {@link #logout(UserIdentity)}, and they are invalidated by the updates of a
+ * {@link PropertyUserStore}, either because this {@link LoginService} is
+ * {@link PropertyUserStore#registerUserListener(PropertyUserStore.UserListener) registered}
+ * on it, or because it is the store of the wrapped {@link HashLoginService}.</p>
+ */
+@ManagedObject("A caching LoginService")
+public class CachingLoginService extends ContainerLifeCycle implements LoginService, PropertyUserStore.UserListener
+{
+    private static final Logger LOG = LoggerFactory.getLogger(CachingLoginService.class);
+
+    private final Map<String, CachedLogin> _cache = new ConcurrentHashMap<>();
+    private final LongAdder _hits = new LongAdder();
+    private final LongAdder _misses = new LongAdder();
+    private final LongAdder _evictions = new LongAdder();
+    private final byte[] _salt = new byte[16];
+    private final AutoLock _evictionLock = new AutoLock();
+    private final LoginService _loginService;
+    private UserStore _listenedUserStore;
+    private long _timeToLive = TimeUnit.MINUTES.toMillis(1);
+    private int _maxCacheSize = 4096;
+
+    /**
+     * @param loginService the {@link LoginService} to cache the logins of
+     */
+    public CachingLoginService(LoginService loginService)
+    {
+        _loginService = Objects.requireNonNull(loginService);
+        addBean(_loginService);
+        new SecureRandom().nextBytes(_salt);
+    }
+
+    /**
+     * @return the {@link LoginService} whose logins are cached
+     */
+    public LoginService getLoginService()
+    {
+        return _loginService;
+    }
+
+    /**
+     * @return the time in milliseconds that a successful login is cached for
+     */
+    @ManagedAttribute("The time in milliseconds that a successful login is cached for")
+    public long getTimeToLive()
+    {
+        return _timeToLive;
+    }
+
+    /**
+     * @param timeToLive the time in milliseconds that a successful login is cached for,
+     * or a non-positive value to disable caching
+     */
+    public void setTimeToLive(long timeToLive)
+    {
+        _timeToLive = timeToLive;
+    }
+
+    /**
+     * @return the maximum number of users whose login is cached
+     */
+    @ManagedAttribute("The maximum number of users whose login is cached")
+    public int getMaxCacheSize()
+    {
+        return _maxCacheSize;
+    }
+
+    /**
+     * @param maxCacheSize the maximum number of users whose login is cached
+     */
+    public void setMaxCacheSize(int maxCacheSize)
+    {
+        _maxCacheSize = maxCacheSize;
+    }
+
+    @ManagedAttribute("The number of cached logins")
+    public int getCacheSize()
+    {
+        return _cache.size();
+    }
+
+    @ManagedAttribute("The number of logins served from the cache")
+    public long getCacheHits()
+    {
+        return _hits.sum();
+    }
+
+    @ManagedAttribute("The number of logins delegated to the wrapped LoginService")
+    public long getCacheMisses()
+    {
+        return _misses.sum();
+    }
+
+    @ManagedAttribute("The number of cached logins evicted before they expired")
+    public long getCacheEvictions()
+    {
+        return _evictions.sum();
+    }
+
+    @ManagedOperation(value = "Resets the cache statistics", impact = "ACTION")
+    public void resetStatistics()
+    {
+        _hits.reset();
+        _misses.reset();
+        _evictions.reset();
+    }
+
+    /**
+     * Invalidates the cached login of the given user.
+     *
+     * @param username the user name
+     */
+    @ManagedOperation(value = "Invalidates the cached login of a user", impact = "ACTION")
+    public void invalidate(String username)
+    {
+        if (username != null)
+            _cache.remove(username);
+    }
+
+    /**
+     * Invalidates all the cached logins.
+     */
+    @ManagedOperation(value = "Invalidates all the cached logins", impact = "ACTION")
+    public void invalidateAll()
+    {
+        _cache.clear();
+    }
+
+    @Override
+    protected void doStart() throws Exception
+    {
+        super.doStart();
+        // The user store of a HashLoginService may only be known once it is started.
+        if (_loginService instanceof HashLoginService)
+        {
+            UserStore userStore = ((HashLoginService)_loginService).getUserStore();
+            if (userStore instanceof PropertyUserStore && userStore != _listenedUserStore)
+            {
+                ((PropertyUserStore)userStore).registerUserListener(this);
+                _listenedUserStore = userStore;
+            }
+        }
+    }
+
+    @Override
+    protected void doStop() throws Exception
+    {
+        invalidateAll();
+        super.doStop();
+    }
+
+    @Override
+    public String getName()
+    {
+        return _loginService.getName();
+    }
+
+    @Override
+    public UserIdentity login(String username, Object credentials, ServletRequest request)
+    {
+        if (username == null)
+            return null;
+
+        byte[] digest = _timeToLive > 0 ? digest(username, credentials) : null;
+        if (digest == null)
+        {
+            _misses.increment();
+            return _loginService.login(username, credentials, request);
+        }
+
+        long now = System.nanoTime();
+        CachedLogin cached = _cache.get(username);
+        if (cached != null)
+        {
+            if (cached.isExpired(now))
+                _cache.remove(username, cached);
+            else if (MessageDigest.isEqual(digest, cached._digest))
+            {
+                cached._lastAccessNanoTime = now;
+                _hits.increment();
+                return cached._userIdentity;
+            }
+        }
+
+        _misses.increment();
+        UserIdentity userIdentity = _loginService.login(username, credentials, request);
+        if (userIdentity != null)
+        {
+            _cache.put(username, new CachedLogin(digest, userIdentity, now, now + TimeUnit.MILLISECONDS.toNanos(_timeToLive)));
+            if (_cache.size() > _maxCacheSize)
+                evict(now);
+        }
+        return userIdentity;
+    }
+
+    /**
+     * <p>Evicts the expired entries and, if the cache is still too large, the least recently used entries.</p>
+     *
+     * @param now the current nano time
+     */
+    private void evict(long now)
+    {
+        try (AutoLock l = _evictionLock.lock())
+        {
+            _cache.values().removeIf(cached -> cached.isExpired(now));
+            while (_cache.size() > _maxCacheSize)
+            {
+                Map.Entry<String, CachedLogin> leastRecentlyUsed = null;
+                for (Map.Entry<String, CachedLogin> entry : _cache.entrySet())
+                {
+                    if (leastRecentlyUsed == null || entry.getValue()._lastAccessNanoTime - leastRecentlyUsed.getValue()._lastAccessNanoTime < 0)
+                        leastRecentlyUsed = entry;
+                }
+                if (leastRecentlyUsed == null)
+                    break;
+                if (_cache.remove(leastRecentlyUsed.getKey(), leastRecentlyUsed.getValue()))
+                    _evictions.increment();
+            }
+        }
+    }
+
+    @Override
+    public boolean validate(UserIdentity user)
+    {
+        // An identity that is still cached is as valid as a new login would be.
+        CachedLogin cached = _cache.get(user.getUserPrincipal().getName());
+        if (cached != null && cached._userIdentity == user && !cached.isExpired(System.nanoTime()))
+            return true;
+        return _loginService.validate(user);
+    }
+
+    @Override
+    public IdentityService getIdentityService()
+    {
+        return _loginService.getIdentityService();
+    }
+
+    @Override
+    public void setIdentityService(IdentityService service)
+    {
+        _loginService.setIdentityService(service);
+    }
+
+    @Override
+    public void logout(UserIdentity user)
+    {
+        invalidate(user.getUserPrincipal().getName());
+        _loginService.logout(user);
+    }
+
+    @Override
+    public void update(String username, Credential credential, String[] roleArray)
+    {
+        invalidate(username);
+    }
+
+    @Override
+    public void remove(String username)
+    {
+        invalidate(username);
+    }
+
+    /**
+     * @param username the user name
+     * @param credentials the credentials
+     * @return the salted digest of the given password, or null if the credentials are not a password
+     * whose equality implies the same login result, such as the credentials of DIGEST authentication
+     */
+    private byte[] digest(String username, Object credentials)
+    {
+        byte[] password;
+        if (credentials instanceof String)
+            password = ((String)credentials).getBytes(StandardCharsets.UTF_8);
+        else if (credentials instanceof char[])
+            password = toBytes((char[])credentials);
+        else if (credentials instanceof Password)
+            password = credentials.toString().getBytes(StandardCharsets.UTF_8);
+        else
+            return null;
+
+        try
+        {
+            MessageDigest messageDigest = MessageDigest.getInstance("SHA-256");
+            messageDigest.update(_salt);
+            messageDigest.update(username.getBytes(StandardCharsets.UTF_8));
+            messageDigest.update((byte)0);
+            messageDigest.update(password);
+            return messageDigest.digest();
+        }
+        catch (NoSuchAlgorithmException x)
+        {
+            if (LOG.isDebugEnabled())
+                LOG.debug("Cannot digest credentials", x);
+            return null;
+        }
+        finally
+        {
+            Arrays.fill(password, (byte)0);
+        }
+    }
+
+    private static byte[] toBytes(char[] chars)
+    {
+        ByteBuffer buffer = StandardCharsets.UTF_8.encode(CharBuffer.wrap(chars));
+        byte[] bytes = new byte[buffer.remaining()];
+        buffer.get(bytes);
+        Arrays.fill(buffer.array(), (byte)0);
+        return bytes;
+    }
+
+    @Override
+    public String toString()
+    {
+        return String.format("%s@%x[%s,size=%d,hits=%d,misses=%d]", getClass().getSimpleName(), hashCode(), _loginService, getCacheSize(), getCacheHits(), getCacheMisses());
+    }
+
+    private static class CachedLogin
+    {
+        private final byte[] _digest;
+        private final UserIdentity _userIdentity;
+        private final long _expireNanoTime;
+        private volatile long _lastAccessNanoTime;
+
+        private CachedLogin(byte[] digest, UserIdentity userIdentity, long now, long expireNanoTime)
+        {
+            _digest = digest;
+            _userIdentity = userIdentity;
+            _lastAccessNanoTime = now;
+            _expireNanoTime = expireNanoTime;
+        }
+
+        private boolean isExpired(long now)
+        {
+            return now - _expireNanoTime >= 0;
+        }
+    }
+}
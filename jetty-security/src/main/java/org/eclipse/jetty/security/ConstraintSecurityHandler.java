@@ -26,6 +26,7 @@ import java.util.Map.Entry;
 import java.util.Set;
 import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.atomic.AtomicLong;
 import javax.servlet.HttpConstraintElement;
 import javax.servlet.HttpMethodConstraintElement;
 import javax.servlet.ServletSecurityElement;
@@ -34,7 +35,6 @@ import javax.servlet.annotation.ServletSecurity.TransportGuarantee;
 
 import org.eclipse.jetty.http.HttpStatus;
 import org.eclipse.jetty.http.pathmap.MappedResource;
-import org.eclipse.jetty.http.pathmap.MatchedResource;
 import org.eclipse.jetty.http.pathmap.PathMappings;
 import org.eclipse.jetty.http.pathmap.PathSpec;
 import org.eclipse.jetty.server.HttpConfiguration;
@@ -60,12 +60,14 @@ public class ConstraintSecurityHandler extends SecurityHandler implements Constr
 {
     private static final Logger LOG = LoggerFactory.getLogger(SecurityHandler.class); //use same as SecurityHandler
 
-    private static final String OMISSION_SUFFIX = ".omission";
-    private static final String ALL_METHODS = "*";
+    static final String OMISSION_SUFFIX = ".omission";
+    static final String ALL_METHODS = "*";
     private final List<ConstraintMapping> _constraintMappings = new CopyOnWriteArrayList<>();
     private final List<ConstraintMapping> _durableConstraintMappings = new CopyOnWriteArrayList<>();
     private final Set<String> _roles = new CopyOnWriteArraySet<>();
     private final PathMappings<Map<String, RoleInfo>> _constraintRoles = new PathMappings<>();
+    private final AtomicLong _constraintsVersion = new AtomicLong();
+    private volatile VersionedRoleInfoTable _roleInfoTable;
     private boolean _denyUncoveredMethods = false;
 
     public static Constraint createConstraint()
@@ -336,6 +338,7 @@ public class ConstraintSecurityHandler extends SecurityHandler implements Constr
         if (isStarted())
         {
             _constraintMappings.stream().forEach(m -> processConstraintMapping(m));
+            invalidateRoleInfoTable();
         }
     }
 
@@ -373,7 +376,10 @@ public class ConstraintSecurityHandler extends SecurityHandler implements Constr
         }
 
         if (isStarted())
+        {
             processConstraintMapping(mapping);
+            invalidateRoleInfoTable();
+        }
     }
 
     @Override
@@ -392,6 +398,7 @@ public class ConstraintSecurityHandler extends SecurityHandler implements Constr
                         info.addRole(role);
                 }
             }
+            invalidateRoleInfoTable();
         }
     }
 
@@ -400,6 +407,7 @@ public class ConstraintSecurityHandler extends SecurityHandler implements Constr
     {
         _constraintRoles.reset();
         _constraintMappings.forEach(this::processConstraintMapping);
+        invalidateRoleInfoTable();
 
         //Servlet Spec 3.1 pg 147 sec 13.8.4.2 log paths for which there are uncovered http methods
         checkPathsWithUncoveredHttpMethods();
@@ -412,6 +420,7 @@ public class ConstraintSecurityHandler extends SecurityHandler implements Constr
     {
         super.doStop();
         _constraintRoles.reset();
+        invalidateRoleInfoTable();
         _constraintMappings.clear();
         _constraintMappings.addAll(_durableConstraintMappings);
     }
@@ -563,6 +572,37 @@ public class ConstraintSecurityHandler extends SecurityHandler implements Constr
 
     /**
      * Find constraints that apply to the given path.
+     * The constraints of the standard and of the explicitly constrained HTTP methods are looked up in
+     * a precomputed table, while the constraints of other methods are combined for every request.
+     *
+     * @see org.eclipse.jetty.security.SecurityHandler#prepareConstraintInfo(java.lang.String, org.eclipse.jetty.server.Request)
+     */
+    @Override
+    protected RoleInfo prepareConstraintInfo(String pathInContext, Request request)
+    {
+        // The version is read before the table is built, so that a table built
+        // while the constraints are being changed is rebuilt by the next request.
+        long version = _constraintsVersion.get();
+        VersionedRoleInfoTable roleInfoTable = _roleInfoTable;
+        if (roleInfoTable == null || roleInfoTable._version != version)
+        {
+            roleInfoTable = new VersionedRoleInfoTable(version, new RoleInfoTable(_constraintRoles, this::resolveRoleInfo));
+            _roleInfoTable = roleInfoTable;
+        }
+        return roleInfoTable._table.getRoleInfo(pathInContext, request.getMethod());
+    }
+
+    /**
+     * Discards the table of constraints built by {@link #prepareConstraintInfo(String, Request)}.
+     * Must be called after the constraints or the roles have been changed.
+     */
+    private void invalidateRoleInfoTable()
+    {
+        _constraintsVersion.incrementAndGet();
+    }
+
+    /**
+     * Combines the constraints that apply to the given method.
      * In order to do this, we consult 3 different types of information stored in the mappings for each path - each mapping
      * represents a merged set of user data constraints, roles etc -:
      * <ol>
@@ -571,20 +611,12 @@ public class ConstraintSecurityHandler extends SecurityHandler implements Constr
      * <li>Mappings with keys of the form "&lt;method&gt;.&lt;method&gt;.&lt;method&gt;.omission" that indicates it will match every method name EXCEPT those given</li>
      * </ol>
      *
-     * @see org.eclipse.jetty.security.SecurityHandler#prepareConstraintInfo(java.lang.String, org.eclipse.jetty.server.Request)
+     * @param mappings the constraints of a path spec, by method
+     * @param httpMethod the HTTP method
+     * @return the combined constraints
      */
-    @Override
-    protected RoleInfo prepareConstraintInfo(String pathInContext, Request request)
+    private RoleInfo resolveRoleInfo(Map<String, RoleInfo> mappings, String httpMethod)
     {
-        MatchedResource<Map<String, RoleInfo>> resource = _constraintRoles.getMatched(pathInContext);
-        if (resource == null)
-            return null;
-
-        Map<String, RoleInfo> mappings = resource.getResource();
-        if (mappings == null)
-            return null;
-
-        String httpMethod = request.getMethod();
         RoleInfo roleInfo = mappings.get(httpMethod);
         if (roleInfo == null)
         {
@@ -733,6 +765,7 @@ public class ConstraintSecurityHandler extends SecurityHandler implements Constr
     public void setDenyUncoveredHttpMethods(boolean deny)
     {
         _denyUncoveredMethods = deny;
+        invalidateRoleInfoTable();
     }
 
     @Override
@@ -869,4 +902,16 @@ public class ConstraintSecurityHandler extends SecurityHandler implements Constr
 
         return (context == null && server == null) || (context != null && !context.isRunning()) || (context == null && server != null && !server.isRunning());
     }
+
+    private static class VersionedRoleInfoTable
+    {
+        private final long _version;
+        private final RoleInfoTable _table;
+
+        private VersionedRoleInfoTable(long version, RoleInfoTable table)
+        {
+            _version = version;
+            _table = table;
+        }
+    }
 }
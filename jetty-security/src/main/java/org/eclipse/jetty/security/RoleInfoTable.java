@@ -0,0 +1,257 @@
+//
+// ========================================================================
+// Copyright (c) 1995-2022 Mort Bay Consulting Pty Ltd and others.
+//
+// This program and the accompanying materials are made available under the
+// terms of the Eclipse Public License v. 2.0 which is available at
+// https://www.eclipse.org/legal/epl-2.0, or the Apache License, Version 2.0
+// which is available at https://www.apache.org/licenses/LICENSE-2.0.
+//
+// SPDX-License-Identifier: EPL-2.0 OR Apache-2.0
+// ========================================================================
+//
+
+package org.eclipse.jetty.security;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.BiFunction;
+
+import org.eclipse.jetty.http.HttpMethod;
+import org.eclipse.jetty.http.pathmap.MappedResource;
+import org.eclipse.jetty.http.pathmap.MatchedResource;
+import org.eclipse.jetty.http.pathmap.PathMappings;
+import org.eclipse.jetty.http.pathmap.PathSpec;
+import org.eclipse.jetty.http.pathmap.ServletPathSpec;
+
+/**
+ * <p>An immutable table of the {@link RoleInfo}s of a {@link ConstraintSecurityHandler},
+ * by path spec and by HTTP method.</p>
+ * <p>The {@link RoleInfo}s of the standard HTTP methods, and of the methods that are
+ * explicitly constrained, are combined when the table is built, so that looking up
+ * the constraints of a request does not need to combine them again.</p>
+ * <p>When all the path specs are {@link ServletPathSpec}s, paths are matched with
+ * hash lookups of the path regions that servlet path specs can match, which does
+ * not allocate; otherwise paths are matched by a {@link PathMappings}.</p>
+ */
+class RoleInfoTable
+{
+    private final RegionMap _exact = new RegionMap();
+    private final RegionMap _prefix = new RegionMap();
+    private final RegionMap _suffix = new RegionMap();
+    private final PathMappings<MethodRoleInfos> _pathMappings;
+    private MethodRoleInfos _root;
+    private MethodRoleInfos _default;
+
+    /**
+     * @param constraintRoles the constraints by path spec and by method
+     * @param resolver the function that combines the constraints of a path spec for a method
+     */
+    RoleInfoTable(PathMappings<Map<String, RoleInfo>> constraintRoles, BiFunction<Map<String, RoleInfo>, String, RoleInfo> resolver)
+    {
+        boolean servletPathSpecs = true;
+        PathMappings<MethodRoleInfos> pathMappings = new PathMappings<>();
+        for (MappedResource<Map<String, RoleInfo>> resource : constraintRoles)
+        {
+            Map<String, RoleInfo> mappings = resource.getResource();
+            if (mappings == null)
+                continue;
+            PathSpec pathSpec = resource.getPathSpec();
+            MethodRoleInfos roleInfos = new MethodRoleInfos(mappings, resolver);
+            pathMappings.put(pathSpec, roleInfos);
+            if (!(pathSpec instanceof ServletPathSpec))
+            {
+                servletPathSpecs = false;
+                continue;
+            }
+            String declaration = pathSpec.getDeclaration();
+            switch (pathSpec.getGroup())
+            {
+                case ROOT:
+                    _root = roleInfos;
+                    break;
+                case EXACT:
+                    _exact.put(declaration, roleInfos);
+                    break;
+                case PREFIX_GLOB:
+                    _prefix.put(declaration.substring(0, declaration.length() - 2), roleInfos);
+                    break;
+                case SUFFIX_GLOB:
+                    _suffix.put(declaration.substring(2), roleInfos);
+                    break;
+                case DEFAULT:
+                    _default = roleInfos;
+                    break;
+                default:
+                    servletPathSpecs = false;
+                    break;
+            }
+        }
+        _pathMappings = servletPathSpecs ? null : pathMappings;
+    }
+
+    /**
+     * @param path the path in context
+     * @param method the HTTP method
+     * @return the constraints that apply to the given path and method, or null if there are none
+     */
+    RoleInfo getRoleInfo(String path, String method)
+    {
+        MethodRoleInfos roleInfos = match(path);
+        return roleInfos == null ? null : roleInfos.getRoleInfo(method);
+    }
+
+    private MethodRoleInfos match(String path)
+    {
+        if (_pathMappings != null)
+        {
+            MatchedResource<MethodRoleInfos> resource = _pathMappings.getMatched(path);
+            return resource == null ? null : resource.getResource();
+        }
+
+        // Same precedence as PathMappings for ServletPathSpecs.
+        if (_root != null && "/".equals(path))
+            return _root;
+
+        int length = path.length();
+        MethodRoleInfos roleInfos = _exact.get(path, 0, length);
+        if (roleInfos != null)
+            return roleInfos;
+
+        // A prefix spec "/foo/*" matches "/foo" and "/foo/...", so try the longest prefix first.
+        if (!_prefix.isEmpty())
+        {
+            roleInfos = _prefix.get(path, 0, length);
+            if (roleInfos != null)
+                return roleInfos;
+            for (int i = path.lastIndexOf('/'); i >= 0; i = path.lastIndexOf('/', i - 1))
+            {
+                roleInfos = _prefix.get(path, 0, i);
+                if (roleInfos != null)
+                    return roleInfos;
+            }
+        }
+
+        // A suffix spec "*.ext" matches any path ending with ".ext", so try the longest suffix first.
+        if (!_suffix.isEmpty())
+        {
+            for (int i = path.indexOf('.'); i >= 0; i = path.indexOf('.', i + 1))
+            {
+                roleInfos = _suffix.get(path, i + 1, length);
+                if (roleInfos != null)
+                    return roleInfos;
+            }
+        }
+
+        return _default;
+    }
+
+    /**
+     * The precomputed constraints of a path spec.
+     */
+    private static class MethodRoleInfos
+    {
+        private final Map<String, RoleInfo> _mappings;
+        private final Map<String, RoleInfo> _methods = new HashMap<>();
+        private final BiFunction<Map<String, RoleInfo>, String, RoleInfo> _resolver;
+
+        private MethodRoleInfos(Map<String, RoleInfo> mappings, BiFunction<Map<String, RoleInfo>, String, RoleInfo> resolver)
+        {
+            _mappings = new HashMap<>(mappings);
+            _resolver = resolver;
+            for (HttpMethod method : HttpMethod.values())
+            {
+                _methods.put(method.asString(), resolver.apply(_mappings, method.asString()));
+            }
+            for (String method : _mappings.keySet())
+            {
+                if (method != null && !ConstraintSecurityHandler.ALL_METHODS.equals(method) && !method.endsWith(ConstraintSecurityHandler.OMISSION_SUFFIX))
+                    _methods.put(method, resolver.apply(_mappings, method));
+            }
+        }
+
+        private RoleInfo getRoleInfo(String method)
+        {
+            RoleInfo roleInfo = _methods.get(method);
+            // Other methods are combined on every request, so that the table does not grow.
+            if (roleInfo == null && !_methods.containsKey(method))
+                roleInfo = _resolver.apply(_mappings, method);
+            return roleInfo;
+        }
+    }
+
+    /**
+     * An open addressing hash map, that looks up regions of a string without allocating.
+     */
+    private static class RegionMap
+    {
+        private String[] _keys = new String[8];
+        private MethodRoleInfos[] _values = new MethodRoleInfos[8];
+        private int _size;
+
+        private boolean isEmpty()
+        {
+            return _size == 0;
+        }
+
+        private void put(String key, MethodRoleInfos value)
+        {
+            if (2 * (_size + 1) > _keys.length)
+            {
+                String[] keys = _keys;
+                MethodRoleInfos[] values = _values;
+                _keys = new String[keys.length * 2];
+                _values = new MethodRoleInfos[keys.length * 2];
+                _size = 0;
+                for (int i = 0; i < keys.length; ++i)
+                {
+                    if (keys[i] != null)
+                        put(keys[i], values[i]);
+                }
+            }
+            int mask = _keys.length - 1;
+            for (int slot = spread(key.hashCode()) & mask; ; slot = (slot + 1) & mask)
+            {
+                if (_keys[slot] == null)
+                {
+                    _keys[slot] = key;
+                    _values[slot] = value;
+                    ++_size;
+                    return;
+                }
+                if (_keys[slot].equals(key))
+                {
+                    _values[slot] = value;
+                    return;
+                }
+            }
+        }
+
+        private MethodRoleInfos get(String string, int start, int end)
+        {
+            if (_size == 0)
+                return null;
+            // Same hash as String.hashCode(), computed on the region.
+            int hash = 0;
+            for (int i = start; i < end; ++i)
+            {
+                hash = 31 * hash + string.charAt(i);
+            }
+            int length = end - start;
+            int mask = _keys.length - 1;
+            for (int slot = spread(hash) & mask; ; slot = (slot + 1) & mask)
+            {
+                String key = _keys[slot];
+                if (key == null)
+                    return null;
+                if (key.length() == length && string.regionMatches(start, key, 0, length))
+                    return _values[slot];
+            }
+        }
+
+        private static int spread(int hash)
+        {
+            return hash ^ (hash >>> 16);
+        }
+    }
+}
@@ -23,6 +23,16 @@ import java.util.List;
 import java.util.Map;
 import java.util.ServiceLoader;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import javax.servlet.AsyncContext;
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
+import javax.servlet.DispatcherType;
 import javax.servlet.ServletException;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
@@ -38,6 +48,8 @@ import org.eclipse.jetty.server.handler.ContextHandler.Context;
 import org.eclipse.jetty.server.handler.HandlerWrapper;
 import org.eclipse.jetty.util.TypeUtil;
 import org.eclipse.jetty.util.component.DumpableCollection;
+import org.eclipse.jetty.util.thread.AutoLock;
+import org.eclipse.jetty.util.thread.Scheduler;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -59,6 +71,7 @@ public abstract class SecurityHandler extends HandlerWrapper implements Authenti
 {
     private static final Logger LOG = LoggerFactory.getLogger(SecurityHandler.class);
     private static final List<Authenticator.Factory> __knownAuthenticatorFactories = new ArrayList<>();
+    private static final String PENDING_AUTHENTICATION_ATTRIBUTE = SecurityHandler.class.getName() + ".pendingAuthentication";
 
     private boolean _checkWelcomeFiles = false;
     private Authenticator _authenticator;
@@ -69,6 +82,8 @@ public abstract class SecurityHandler extends HandlerWrapper implements Authenti
     private LoginService _loginService;
     private IdentityService _identityService;
     private boolean _renewSession = true;
+    private Executor _authenticationExecutor;
+    private long _authenticationTimeout = TimeUnit.SECONDS.toMillis(30);
 
     static
     {
@@ -449,6 +464,55 @@ public abstract class SecurityHandler extends HandlerWrapper implements Authenti
         _renewSession = renew;
     }
 
+    /**
+     * @return the executor that requests are authenticated by, or null if requests are authenticated by the thread handling them
+     * @see #setAuthenticationExecutor(Executor)
+     */
+    public Executor getAuthenticationExecutor()
+    {
+        return _authenticationExecutor;
+    }
+
+    /**
+     * <p>Set the executor that requests are authenticated by.</p>
+     * <p>If set, {@link Authenticator#validateRequest(javax.servlet.ServletRequest, javax.servlet.ServletResponse, boolean)} is
+     * called by the given executor while the request is suspended, so that slow {@link LoginService}s
+     * and identity providers do not block the threads of the server; requests are rejected with
+     * a 503 status if the executor rejects them, or if they are not authenticated within the
+     * {@link #getAuthenticationTimeout() authentication timeout}.
+     * When the timeout expires, the thread validating the request is interrupted, and the
+     * response is only sent once that thread has returned, so that the request and the response
+     * are never used by two threads at once.
+     * The executor should be bounded, and separate from the thread pool of the server.</p>
+     * <p>If not set, requests are authenticated by {@link Authenticator#validateRequestAsync(javax.servlet.ServletRequest, javax.servlet.ServletResponse, boolean)},
+     * which only suspends the request if the {@link Authenticator} is asynchronous.</p>
+     *
+     * @param executor the executor that requests are authenticated by, or null
+     */
+    public void setAuthenticationExecutor(Executor executor)
+    {
+        if (isRunning())
+            throw new IllegalStateException("running");
+        updateBean(_authenticationExecutor, executor);
+        _authenticationExecutor = executor;
+    }
+
+    /**
+     * @return the time in milliseconds that a suspended request waits to be authenticated
+     */
+    public long getAuthenticationTimeout()
+    {
+        return _authenticationTimeout;
+    }
+
+    /**
+     * @param authenticationTimeout the time in milliseconds that a suspended request waits to be authenticated
+     */
+    public void setAuthenticationTimeout(long authenticationTimeout)
+    {
+        _authenticationTimeout = authenticationTimeout;
+    }
+
     /*
      * @see org.eclipse.jetty.server.Handler#handle(java.lang.String,
      *      javax.servlet.http.HttpServletRequest,
@@ -505,7 +569,50 @@ public abstract class SecurityHandler extends HandlerWrapper implements Authenti
             {
                 Authentication authentication = baseRequest.getAuthentication();
                 if (authentication == null || authentication == Authentication.NOT_CHECKED)
-                    authentication = authenticator == null ? Authentication.UNAUTHENTICATED : authenticator.validateRequest(request, response, isAuthMandatory);
+                {
+                    if (authenticator == null)
+                    {
+                        authentication = Authentication.UNAUTHENTICATED;
+                    }
+                    else
+                    {
+                        CompletableFuture<Authentication> result;
+                        PendingAuthentication pending = takePendingAuthentication(baseRequest);
+                        if (pending != null)
+                        {
+                            result = pending._result;
+                        }
+                        else
+                        {
+                            Executor executor = _authenticationExecutor;
+                            if (executor != null)
+                            {
+                                new PendingAuthentication(baseRequest).validate(executor, authenticator, request, response, isAuthMandatory);
+                                return;
+                            }
+                            result = authenticator.validateRequestAsync(request, response, isAuthMandatory);
+                            if (!result.isDone())
+                            {
+                                new PendingAuthentication(baseRequest, result).suspend();
+                                return;
+                            }
+                        }
+                        try
+                        {
+                            authentication = getAuthentication(result);
+                        }
+                        catch (TimeoutException | RejectedExecutionException x)
+                        {
+                            if (LOG.isDebugEnabled())
+                                LOG.debug("Authentication unavailable for {}", baseRequest, x);
+                            // The authenticator may have sent a response before the timeout expired.
+                            if (!response.isCommitted())
+                                response.sendError(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+                            baseRequest.setHandled(true);
+                            return;
+                        }
+                    }
+                }
 
                 if (authentication instanceof Authentication.Wrapped)
                 {
@@ -596,6 +703,46 @@ public abstract class SecurityHandler extends HandlerWrapper implements Authenti
             handler.handle(pathInContext, baseRequest, request, response);
     }
 
+    /**
+     * @param baseRequest the request
+     * @return the pending authentication of a request resumed after being suspended, or null
+     */
+    private PendingAuthentication takePendingAuthentication(Request baseRequest)
+    {
+        Object attribute = baseRequest.getAttribute(PENDING_AUTHENTICATION_ATTRIBUTE);
+        if (!(attribute instanceof PendingAuthentication))
+            return null;
+        PendingAuthentication pending = (PendingAuthentication)attribute;
+        if (!pending.isResumed())
+            return null;
+        baseRequest.removeAttribute(PENDING_AUTHENTICATION_ATTRIBUTE);
+        // The request is resumed by an ASYNC dispatch, but it is handled with the dispatcher type
+        // it had when it was suspended, so that the handlers and filters after this one apply to it.
+        baseRequest.setDispatcherType(pending._dispatcherType);
+        return pending;
+    }
+
+    private static Authentication getAuthentication(CompletableFuture<Authentication> pending) throws ServerAuthException, TimeoutException
+    {
+        try
+        {
+            return pending.join();
+        }
+        catch (CompletionException x)
+        {
+            Throwable cause = x.getCause();
+            if (cause instanceof ServerAuthException)
+                throw (ServerAuthException)cause;
+            if (cause instanceof TimeoutException)
+                throw (TimeoutException)cause;
+            if (cause instanceof RuntimeException)
+                throw (RuntimeException)cause;
+            if (cause instanceof Error)
+                throw (Error)cause;
+            throw new ServerAuthException(cause);
+        }
+    }
+
     public static SecurityHandler getCurrentSecurityHandler()
     {
         Context context = ContextHandler.getCurrentContext();
@@ -692,4 +839,194 @@ public abstract class SecurityHandler extends HandlerWrapper implements Authenti
             return getName();
         }
     };
+
+    /**
+     * <p>The state of a request that is suspended while it is authenticated.</p>
+     * <p>The request is put in asynchronous mode before the validation starts, and it is
+     * resumed, or completed, only once the validation has finished using the request and
+     * the response, even if the {@link #getAuthenticationTimeout() authentication timeout}
+     * expires in the meantime; the container async timeout is therefore disabled, and the
+     * authentication timeout is scheduled by this class.</p>
+     */
+    private class PendingAuthentication implements AsyncListener
+    {
+        private final AutoLock _lock = new AutoLock();
+        private final Request _baseRequest;
+        private final DispatcherType _dispatcherType;
+        private final CompletableFuture<Authentication> _result;
+        private AsyncContext _asyncContext;
+        private Scheduler.Task _timeout;
+        private Thread _validator;
+        private boolean _expired;
+        private boolean _resumed;
+
+        private PendingAuthentication(Request baseRequest)
+        {
+            this(baseRequest, new CompletableFuture<>());
+        }
+
+        private PendingAuthentication(Request baseRequest, CompletableFuture<Authentication> result)
+        {
+            _baseRequest = baseRequest;
+            _dispatcherType = baseRequest.getDispatcherType();
+            _result = result;
+        }
+
+        /**
+         * <p>Suspends the request until the result completes.</p>
+         */
+        private void suspend()
+        {
+            startAsync();
+            _result.whenComplete((authentication, failure) -> resume());
+        }
+
+        /**
+         * <p>Suspends the request and validates it with the given executor.</p>
+         */
+        private void validate(Executor executor, Authenticator authenticator, HttpServletRequest request, HttpServletResponse response, boolean mandatory)
+        {
+            startAsync();
+            ContextHandler.Context context = _baseRequest.getContext();
+            ContextHandler contextHandler = context == null ? null : context.getContextHandler();
+            Runnable validate = () -> validate(authenticator, request, response, mandatory);
+            try
+            {
+                // Run in the scope of the context, for the context classloader used by JAAS and the like.
+                executor.execute(contextHandler == null ? validate : () -> contextHandler.handle(_baseRequest, validate));
+            }
+            catch (RejectedExecutionException x)
+            {
+                _result.completeExceptionally(x);
+                resume();
+            }
+        }
+
+        private void startAsync()
+        {
+            _asyncContext = _baseRequest.startAsync();
+            _asyncContext.setTimeout(0);
+            _asyncContext.addListener(this);
+            _baseRequest.setAttribute(PENDING_AUTHENTICATION_ATTRIBUTE, this);
+            long timeout = getAuthenticationTimeout();
+            if (timeout > 0)
+                _timeout = _baseRequest.getHttpChannel().getScheduler().schedule(this::expire, timeout, TimeUnit.MILLISECONDS);
+            if (LOG.isDebugEnabled())
+                LOG.debug("Suspended {} for authentication", _baseRequest);
+        }
+
+        private void validate(Authenticator authenticator, HttpServletRequest request, HttpServletResponse response, boolean mandatory)
+        {
+            try (AutoLock l = _lock.lock())
+            {
+                // The request expired while this task was queued, and has already been resumed.
+                if (_expired)
+                    return;
+                _validator = Thread.currentThread();
+            }
+
+            try
+            {
+                _result.complete(authenticator.validateRequest(request, response, mandatory));
+            }
+            catch (Throwable x)
+            {
+                _result.completeExceptionally(x);
+            }
+            finally
+            {
+                try (AutoLock l = _lock.lock())
+                {
+                    _validator = null;
+                    // Do not leak the interrupt of expire() to the next task of the executor.
+                    Thread.interrupted();
+                }
+            }
+            resume();
+        }
+
+        private void expire()
+        {
+            // Completed before the interrupt, so that the failure caused by the interrupt is ignored.
+            _result.completeExceptionally(new TimeoutException("Authentication timeout"));
+            boolean validating;
+            try (AutoLock l = _lock.lock())
+            {
+                _expired = true;
+                validating = _validator != null;
+                if (validating)
+                    _validator.interrupt();
+            }
+            if (LOG.isDebugEnabled())
+                LOG.debug("Authentication timeout for {}, validating={}", _baseRequest, validating);
+            // A request being validated is resumed when the validation finishes.
+            if (!validating)
+                resume();
+        }
+
+        private boolean isResumed()
+        {
+            try (AutoLock l = _lock.lock())
+            {
+                return _resumed;
+            }
+        }
+
+        private void resume()
+        {
+            try (AutoLock l = _lock.lock())
+            {
+                if (_resumed)
+                    return;
+                _resumed = true;
+            }
+            if (_timeout != null)
+                _timeout.cancel();
+            try
+            {
+                if (!_result.isCompletedExceptionally() && _result.join() instanceof Authentication.ResponseSent)
+                    _asyncContext.complete();
+                else
+                    _asyncContext.dispatch();
+            }
+            catch (IllegalStateException x)
+            {
+                // The request has already been completed, for example by an error.
+                if (LOG.isDebugEnabled())
+                    LOG.debug("Could not resume {}", _baseRequest, x);
+            }
+        }
+
+        @Override
+        public void onError(AsyncEvent event)
+        {
+            // The container completes the request, so it must not be resumed.
+            try (AutoLock l = _lock.lock())
+            {
+                _expired = true;
+                _resumed = true;
+                if (_validator != null)
+                    _validator.interrupt();
+            }
+            if (_timeout != null)
+                _timeout.cancel();
+            Throwable failure = event.getThrowable();
+            _result.completeExceptionally(failure == null ? new IllegalStateException("Async error") : failure);
+        }
+
+        @Override
+        public void onComplete(AsyncEvent event)
+        {
+        }
+
+        @Override
+        public void onTimeout(AsyncEvent event)
+        {
+        }
+
+        @Override
+        public void onStartAsync(AsyncEvent event)
+        {
+        }
+    }
 }
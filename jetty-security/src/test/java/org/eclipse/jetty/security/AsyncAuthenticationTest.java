@@ -0,0 +1,296 @@
+//
+// ========================================================================
+// Copyright (c) 1995-2022 Mort Bay Consulting Pty Ltd and others.
+//
+// This program and the accompanying materials are made available under the
+// terms of the Eclipse Public License v. 2.0 which is available at
+// https://www.eclipse.org/legal/epl-2.0, or the Apache License, Version 2.0
+// which is available at https://www.apache.org/licenses/LICENSE-2.0.
+//
+// SPDX-License-Identifier: EPL-2.0 OR Apache-2.0
+// ========================================================================
+//
+
+package org.eclipse.jetty.security;
+
+import java.io.IOException;
+import java.util.Base64;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import javax.servlet.DispatcherType;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.eclipse.jetty.http.HttpHeader;
+import org.eclipse.jetty.http.HttpStatus;
+import org.eclipse.jetty.http.HttpTester;
+import org.eclipse.jetty.security.authentication.BasicAuthenticator;
+import org.eclipse.jetty.server.Authentication;
+import org.eclipse.jetty.server.LocalConnector;
+import org.eclipse.jetty.server.Request;
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.server.UserIdentity;
+import org.eclipse.jetty.server.handler.AbstractHandler;
+import org.eclipse.jetty.server.handler.ContextHandler;
+import org.eclipse.jetty.util.security.Constraint;
+import org.eclipse.jetty.util.security.Password;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static java.nio.charset.StandardCharsets.ISO_8859_1;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThan;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.startsWith;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class AsyncAuthenticationTest
+{
+    private static final String REALM = "TestRealm";
+
+    private final AtomicReference<String> loginThread = new AtomicReference<>();
+    private final AtomicReference<DispatcherType> dispatcherType = new AtomicReference<>();
+    private CountDownLatch loginLatch;
+    private Server server;
+    private LocalConnector connector;
+    private ConstraintSecurityHandler security;
+    private ExecutorService executor;
+
+    @BeforeEach
+    public void prepare()
+    {
+        server = new Server();
+        connector = new LocalConnector(server);
+        server.addConnector(connector);
+
+        loginLatch = new CountDownLatch(0);
+        TestLoginService loginService = new TestLoginService(REALM)
+        {
+            @Override
+            protected UserPrincipal loadUserInfo(String username)
+            {
+                loginThread.set(Thread.currentThread().getName());
+                try
+                {
+                    // Simulates a slow identity provider.
+                    loginLatch.await(5, TimeUnit.SECONDS);
+                }
+                catch (InterruptedException x)
+                {
+                    throw new RuntimeException(x);
+                }
+                return super.loadUserInfo(username);
+            }
+        };
+        loginService.putUser("user", new Password("password"), new String[]{"user"});
+
+        ContextHandler context = new ContextHandler("/ctx");
+        server.setHandler(context);
+        security = new ConstraintSecurityHandler();
+        context.setHandler(security);
+        security.setLoginService(loginService);
+        security.setAuthenticator(new BasicAuthenticator());
+
+        Constraint constraint = new Constraint();
+        constraint.setAuthenticate(true);
+        constraint.setRoles(new String[]{Constraint.ANY_AUTH});
+        ConstraintMapping mapping = new ConstraintMapping();
+        mapping.setPathSpec("/*");
+        mapping.setConstraint(constraint);
+        security.addConstraintMapping(mapping);
+
+        security.setHandler(new AbstractHandler()
+        {
+            @Override
+            public void handle(String target, Request baseRequest, HttpServletRequest request, HttpServletResponse response) throws IOException
+            {
+                baseRequest.setHandled(true);
+                dispatcherType.set(request.getDispatcherType());
+                response.getWriter().print("user=" + request.getRemoteUser());
+            }
+        });
+
+        executor = Executors.newSingleThreadExecutor(runnable -> new Thread(runnable, "authenticator"));
+    }
+
+    @AfterEach
+    public void dispose() throws Exception
+    {
+        server.stop();
+        executor.shutdownNow();
+    }
+
+    private HttpTester.Response get(String credentials) throws Exception
+    {
+        String request = "GET /ctx/resource HTTP/1.1\r\n" +
+            "Host: localhost\r\n" +
+            (credentials == null ? "" : "Authorization: Basic " + Base64.getEncoder().encodeToString(credentials.getBytes(ISO_8859_1)) + "\r\n") +
+            "Connection: close\r\n" +
+            "\r\n";
+        return HttpTester.parseResponse(connector.getResponse(request, 10, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testAuthenticationExecutor() throws Exception
+    {
+        security.setAuthenticationExecutor(executor);
+        server.start();
+
+        HttpTester.Response response = get("user:password");
+        assertThat(response.getStatus(), is(HttpStatus.OK_200));
+        assertThat(response.getContent(), is("user=user"));
+        assertThat(loginThread.get(), is("authenticator"));
+        // The request is resumed as the original request.
+        assertThat(dispatcherType.get(), is(DispatcherType.REQUEST));
+    }
+
+    @Test
+    public void testAuthenticationExecutorChallenge() throws Exception
+    {
+        security.setAuthenticationExecutor(executor);
+        server.start();
+
+        HttpTester.Response response = get("user:wrong");
+        assertThat(response.getStatus(), is(HttpStatus.UNAUTHORIZED_401));
+        assertThat(response.get(HttpHeader.WWW_AUTHENTICATE), startsWith("basic realm=\"" + REALM + "\""));
+        assertThat(loginThread.get(), is("authenticator"));
+    }
+
+    @Test
+    public void testAuthenticationTimeout() throws Exception
+    {
+        loginLatch = new CountDownLatch(1);
+        security.setAuthenticationExecutor(executor);
+        security.setAuthenticationTimeout(500);
+        server.start();
+
+        HttpTester.Response response = get("user:password");
+        assertThat(response.getStatus(), is(HttpStatus.SERVICE_UNAVAILABLE_503));
+        loginLatch.countDown();
+    }
+
+    @Test
+    public void testAuthenticationTimeoutWaitsForValidation() throws Exception
+    {
+        AtomicBoolean interrupted = new AtomicBoolean();
+        AtomicBoolean validated = new AtomicBoolean();
+        security.setAuthenticator(new BasicAuthenticator()
+        {
+            @Override
+            public Authentication validateRequest(ServletRequest req, ServletResponse res, boolean mandatory) throws ServerAuthException
+            {
+                // An authenticator that ignores interrupts, and uses the response after the timeout expired.
+                long end = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(1000);
+                while (System.nanoTime() < end)
+                {
+                    try
+                    {
+                        Thread.sleep(10);
+                    }
+                    catch (InterruptedException x)
+                    {
+                        interrupted.set(true);
+                    }
+                }
+                try
+                {
+                    ((HttpServletResponse)res).sendError(HttpStatus.UNAUTHORIZED_401);
+                }
+                catch (IOException x)
+                {
+                    throw new ServerAuthException(x);
+                }
+                validated.set(true);
+                return Authentication.SEND_FAILURE;
+            }
+        });
+        security.setAuthenticationExecutor(executor);
+        security.setAuthenticationTimeout(200);
+        server.start();
+
+        // The response is not completed while the validation is in progress,
+        // so the response is the one sent by the authenticator.
+        HttpTester.Response response = get("user:password");
+        assertThat(response.getStatus(), is(HttpStatus.UNAUTHORIZED_401));
+        assertTrue(interrupted.get());
+        assertTrue(validated.get());
+    }
+
+    @Test
+    public void testAuthenticationTimeoutInterruptsValidation() throws Exception
+    {
+        loginLatch = new CountDownLatch(1);
+        security.setAuthenticationExecutor(executor);
+        security.setAuthenticationTimeout(200);
+        server.start();
+
+        // The slow login is interrupted, and the request rejected.
+        long start = System.nanoTime();
+        HttpTester.Response response = get("user:password");
+        assertThat(response.getStatus(), is(HttpStatus.SERVICE_UNAVAILABLE_503));
+        assertThat(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start), lessThan(5000L));
+
+        // The interrupt does not leak to the next task of the executor.
+        assertFalse(executor.submit(() -> Thread.currentThread().isInterrupted()).get(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testAuthenticationRejected() throws Exception
+    {
+        security.setAuthenticationExecutor(runnable ->
+        {
+            throw new RejectedExecutionException();
+        });
+        server.start();
+
+        HttpTester.Response response = get("user:password");
+        assertThat(response.getStatus(), is(HttpStatus.SERVICE_UNAVAILABLE_503));
+    }
+
+    @Test
+    public void testAsyncAuthenticator() throws Exception
+    {
+        security.setAuthenticator(new BasicAuthenticator()
+        {
+            @Override
+            public CompletableFuture<Authentication> validateRequestAsync(ServletRequest request, ServletResponse response, boolean mandatory)
+            {
+                // The credentials are checked without blocking the thread handling the request.
+                return CompletableFuture.supplyAsync(() ->
+                {
+                    UserIdentity user = login("user", "password", request);
+                    return new UserAuthentication(getAuthMethod(), user);
+                }, executor);
+            }
+        });
+        server.start();
+
+        HttpTester.Response response = get(null);
+        assertThat(response.getStatus(), is(HttpStatus.OK_200));
+        assertThat(response.getContent(), is("user=user"));
+        assertThat(loginThread.get(), is("authenticator"));
+    }
+
+    @Test
+    public void testSynchronousByDefault() throws Exception
+    {
+        server.start();
+
+        HttpTester.Response response = get("user:password");
+        assertThat(response.getStatus(), is(HttpStatus.OK_200));
+        assertThat(loginThread.get(), not(containsString("authenticator")));
+        assertThat(dispatcherType.get(), is(DispatcherType.REQUEST));
+    }
+}
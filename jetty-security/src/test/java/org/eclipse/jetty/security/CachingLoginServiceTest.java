@@ -0,0 +1,230 @@
+//
+// ========================================================================
+// Copyright (c) 1995-2022 Mort Bay Consulting Pty Ltd and others.
+//
+// This program and the accompanying materials are made available under the
+// terms of the Eclipse Public License v. 2.0 which is available at
+// https://www.eclipse.org/legal/epl-2.0, or the Apache License, Version 2.0
+// which is available at https://www.apache.org/licenses/LICENSE-2.0.
+//
+// SPDX-License-Identifier: EPL-2.0 OR Apache-2.0
+// ========================================================================
+//
+
+package org.eclipse.jetty.security;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.eclipse.jetty.server.UserIdentity;
+import org.eclipse.jetty.util.security.Credential;
+import org.eclipse.jetty.util.security.Password;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.notNullValue;
+import static org.hamcrest.Matchers.nullValue;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class CachingLoginServiceTest
+{
+    private final AtomicInteger loads = new AtomicInteger();
+    private UserStore userStore;
+    private CachingLoginService loginService;
+
+    @BeforeEach
+    public void prepare() throws Exception
+    {
+        userStore = new UserStore();
+        userStore.addUser("user", new Password("password"), new String[]{"user"});
+        userStore.addUser("admin", new Password("secret"), new String[]{"admin"});
+        userStore.addUser("guest", new Password("guest"), new String[]{"guest"});
+        HashLoginService hashLoginService = new HashLoginService("realm")
+        {
+            @Override
+            protected UserPrincipal loadUserInfo(String userName)
+            {
+                loads.incrementAndGet();
+                return super.loadUserInfo(userName);
+            }
+        };
+        hashLoginService.setUserStore(userStore);
+        loginService = new CachingLoginService(hashLoginService);
+    }
+
+    @AfterEach
+    public void dispose() throws Exception
+    {
+        loginService.stop();
+    }
+
+    @Test
+    public void testSuccessfulLoginIsCached() throws Exception
+    {
+        loginService.start();
+
+        UserIdentity identity = loginService.login("user", "password", null);
+        assertThat(identity, notNullValue());
+        assertThat(loginService.login("user", "password", null), sameInstance(identity));
+        assertThat(loginService.login("user", "password".toCharArray(), null), sameInstance(identity));
+        assertThat(loads.get(), is(1));
+        assertThat(loginService.getCacheHits(), is(2L));
+        assertThat(loginService.getCacheMisses(), is(1L));
+        assertThat(loginService.getCacheSize(), is(1));
+        assertTrue(loginService.validate(identity));
+    }
+
+    @Test
+    public void testWrongPasswordIsNotServedFromCache() throws Exception
+    {
+        loginService.start();
+
+        UserIdentity identity = loginService.login("user", "password", null);
+        assertThat(identity, notNullValue());
+        assertThat(loginService.login("user", "wrong", null), nullValue());
+        assertThat(loginService.login("user", "wrong", null), nullValue());
+        assertThat(loads.get(), is(3));
+
+        // The failed logins did not invalidate the successful one.
+        assertThat(loginService.login("user", "password", null), sameInstance(identity));
+        assertThat(loads.get(), is(3));
+    }
+
+    @Test
+    public void testExpiry() throws Exception
+    {
+        loginService.setTimeToLive(100);
+        loginService.start();
+
+        UserIdentity identity = loginService.login("user", "password", null);
+        Thread.sleep(200);
+        UserIdentity renewed = loginService.login("user", "password", null);
+        assertThat(renewed, notNullValue());
+        assertThat(renewed, not(sameInstance(identity)));
+        assertThat(loads.get(), is(2));
+    }
+
+    @Test
+    public void testNoCaching() throws Exception
+    {
+        loginService.setTimeToLive(0);
+        loginService.start();
+
+        assertThat(loginService.login("user", "password", null), notNullValue());
+        assertThat(loginService.login("user", "password", null), notNullValue());
+        assertThat(loads.get(), is(2));
+        assertThat(loginService.getCacheSize(), is(0));
+    }
+
+    @Test
+    public void testInvalidation() throws Exception
+    {
+        loginService.start();
+
+        UserIdentity identity = loginService.login("user", "password", null);
+        loginService.invalidate("user");
+        assertThat(loginService.login("user", "password", null), not(sameInstance(identity)));
+        assertThat(loads.get(), is(2));
+
+        // A user store update invalidates the user, so the old password no longer works.
+        userStore.addUser("user", new Password("changed"), new String[]{"user"});
+        loginService.update("user", new Password("changed"), new String[]{"user"});
+        assertThat(loginService.login("user", "password", null), nullValue());
+        assertThat(loginService.login("user", "changed", null), notNullValue());
+
+        identity = loginService.login("user", "changed", null);
+        loginService.logout(identity);
+        assertThat(loginService.getCacheSize(), is(0));
+    }
+
+    @Test
+    public void testMaxCacheSize() throws Exception
+    {
+        loginService.setMaxCacheSize(1);
+        loginService.start();
+
+        assertThat(loginService.login("user", "password", null), notNullValue());
+        assertThat(loginService.login("admin", "secret", null), notNullValue());
+        assertThat(loginService.getCacheSize(), is(1));
+        assertThat(loginService.getCacheEvictions(), is(1L));
+    }
+
+    @Test
+    public void testLeastRecentlyUsedIsEvicted() throws Exception
+    {
+        loginService.setMaxCacheSize(2);
+        loginService.start();
+
+        UserIdentity user = loginService.login("user", "password", null);
+        UserIdentity admin = loginService.login("admin", "secret", null);
+        // Use the older entry, so that the entry of admin is the least recently used.
+        assertThat(loginService.login("user", "password", null), sameInstance(user));
+
+        assertThat(loginService.login("guest", "guest", null), notNullValue());
+        assertThat(loginService.getCacheSize(), is(2));
+        assertThat(loginService.getCacheEvictions(), is(1L));
+        assertThat(loads.get(), is(3));
+
+        assertThat(loginService.login("user", "password", null), sameInstance(user));
+        assertThat(loads.get(), is(3));
+        assertThat(loginService.login("admin", "secret", null), not(sameInstance(admin)));
+        assertThat(loads.get(), is(4));
+    }
+
+    @Test
+    public void testNonPasswordCredentialsAreNotCached() throws Exception
+    {
+        loginService.start();
+
+        Object credentials = new Object()
+        {
+            @Override
+            public String toString()
+            {
+                return "password";
+            }
+        };
+        // Credentials that are not passwords are delegated, and not cached.
+        loginService.login("user", credentials, null);
+        loginService.login("user", credentials, null);
+        assertThat(loads.get(), is(2));
+        assertThat(loginService.getCacheSize(), is(0));
+
+        Credential credential = Credential.getCredential("password");
+        assertThat(loginService.login("user", credential, null), notNullValue());
+        assertThat(loginService.login("user", credential, null), notNullValue());
+        assertThat(loads.get(), is(3));
+    }
+
+    @Test
+    public void testCredentialsOtherThanPasswordAreNotCached() throws Exception
+    {
+        loginService.start();
+
+        // Like the credentials of DIGEST authentication, the string
+        // representation of the credentials does not identify the login.
+        AtomicInteger checks = new AtomicInteger();
+        Credential credential = new Credential()
+        {
+            @Override
+            public boolean check(Object credentials)
+            {
+                return checks.incrementAndGet() == 1 && "password".equals(credentials.toString());
+            }
+
+            @Override
+            public String toString()
+            {
+                return "digest";
+            }
+        };
+        assertThat(loginService.login("user", credential, null), notNullValue());
+        assertThat(loginService.login("user", credential, null), nullValue());
+        assertThat(checks.get(), is(2));
+        assertThat(loginService.getCacheSize(), is(0));
+    }
+}
@@ -25,6 +25,8 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.function.Consumer;
 import java.util.logging.Logger;
 import java.util.regex.Matcher;
@@ -42,6 +44,7 @@ import javax.servlet.http.HttpServletResponse;
 import org.eclipse.jetty.http.HttpHeader;
 import org.eclipse.jetty.http.HttpStatus;
 import org.eclipse.jetty.http.HttpTester;
+import org.eclipse.jetty.http.pathmap.PathSpec;
 import org.eclipse.jetty.security.authentication.BasicAuthenticator;
 import org.eclipse.jetty.security.authentication.DigestAuthenticator;
 import org.eclipse.jetty.security.authentication.FormAuthenticator;
@@ -518,6 +521,93 @@ public class ConstraintTest
         assertEquals(0, uncoveredPaths.size());
     }
 
+    @Test
+    public void testConstraintsChangedAfterStart() throws Exception
+    {
+        _security.setAuthenticator(new BasicAuthenticator());
+        _server.start();
+
+        String response;
+        // Methods without an explicit constraint are combined from the omissions.
+        response = _connector.getResponse("DELETE /ctx/admin/info HTTP/1.0\r\n\r\n");
+        assertThat(response, startsWith("HTTP/1.1 403 Forbidden"));
+        response = _connector.getResponse("CUSTOM /ctx/admin/info HTTP/1.0\r\n\r\n");
+        assertThat(response, startsWith("HTTP/1.1 403 Forbidden"));
+        response = _connector.getResponse("GET /ctx/admin/info HTTP/1.0\r\n\r\n");
+        assertThat(response, startsWith("HTTP/1.1 401 Unauthorized"));
+
+        response = _connector.getResponse("GET /ctx/late/info HTTP/1.0\r\n\r\n");
+        assertThat(response, startsWith("HTTP/1.1 200 OK"));
+
+        Constraint constraint = new Constraint();
+        constraint.setAuthenticate(true);
+        constraint.setName("late");
+        constraint.setRoles(new String[]{"late"});
+        ConstraintMapping mapping = new ConstraintMapping();
+        mapping.setPathSpec("/late/*");
+        mapping.setMethod("GET");
+        mapping.setConstraint(constraint);
+        _security.addConstraintMapping(mapping);
+
+        response = _connector.getResponse("GET /ctx/late/info HTTP/1.0\r\n\r\n");
+        assertThat(response, startsWith("HTTP/1.1 401 Unauthorized"));
+        response = _connector.getResponse("PUT /ctx/late/info HTTP/1.0\r\n\r\n");
+        assertThat(response, startsWith("HTTP/1.1 200 OK"));
+
+        _security.setDenyUncoveredHttpMethods(true);
+        response = _connector.getResponse("PUT /ctx/late/info HTTP/1.0\r\n\r\n");
+        assertThat(response, startsWith("HTTP/1.1 403 Forbidden"));
+        response = _connector.getResponse("CUSTOM /ctx/late/info HTTP/1.0\r\n\r\n");
+        assertThat(response, startsWith("HTTP/1.1 403 Forbidden"));
+    }
+
+    @Test
+    public void testConstraintsChangedWhileHandlingRequest() throws Exception
+    {
+        AtomicBoolean concurrent = new AtomicBoolean();
+        AtomicReference<String> concurrentResponse = new AtomicReference<>();
+        ConstraintSecurityHandler security = new ConstraintSecurityHandler()
+        {
+            @Override
+            protected PathSpec asPathSpec(ConstraintMapping mapping)
+            {
+                // A request handled while the constraint is being added.
+                if (concurrent.compareAndSet(true, false))
+                {
+                    try
+                    {
+                        concurrentResponse.set(_connector.getResponse("GET /ctx/late/info HTTP/1.0\r\n\r\n"));
+                    }
+                    catch (Exception x)
+                    {
+                        throw new RuntimeException(x);
+                    }
+                }
+                return super.asPathSpec(mapping);
+            }
+        };
+        _server.getChildHandlerByClass(SessionHandler.class).setHandler(security);
+        security.setHandler(new RequestHandler());
+        security.setConstraintMappings(getConstraintMappings(), getKnownRoles());
+        security.setAuthenticator(new BasicAuthenticator());
+        _server.start();
+
+        Constraint constraint = new Constraint();
+        constraint.setAuthenticate(true);
+        constraint.setName("late");
+        constraint.setRoles(new String[]{"late"});
+        ConstraintMapping mapping = new ConstraintMapping();
+        mapping.setPathSpec("/late/*");
+        mapping.setConstraint(constraint);
+        concurrent.set(true);
+        security.addConstraintMapping(mapping);
+        assertThat(concurrentResponse.get(), startsWith("HTTP/1.1 200 OK"));
+
+        // The constraints cached by the concurrent request are not used once the constraint is added.
+        String response = _connector.getResponse("GET /ctx/late/info HTTP/1.0\r\n\r\n");
+        assertThat(response, startsWith("HTTP/1.1 401 Unauthorized"));
+    }
+
     public static Stream<Arguments> basicScenarios()
     {
         List<Arguments> scenarios = new ArrayList<>();
@@ -0,0 +1,97 @@
+//
+// ========================================================================
+// Copyright (c) 1995-2022 Mort Bay Consulting Pty Ltd and others.
+//
+// This program and the accompanying materials are made available under the
+// terms of the Eclipse Public License v. 2.0 which is available at
+// https://www.eclipse.org/legal/epl-2.0, or the Apache License, Version 2.0
+// which is available at https://www.apache.org/licenses/LICENSE-2.0.
+//
+// SPDX-License-Identifier: EPL-2.0 OR Apache-2.0
+// ========================================================================
+//
+
+package org.eclipse.jetty.security;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.stream.Stream;
+
+import org.eclipse.jetty.http.pathmap.MatchedResource;
+import org.eclipse.jetty.http.pathmap.PathMappings;
+import org.eclipse.jetty.http.pathmap.PathSpec;
+import org.eclipse.jetty.http.pathmap.RegexPathSpec;
+import org.eclipse.jetty.http.pathmap.ServletPathSpec;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.nullValue;
+import static org.hamcrest.Matchers.sameInstance;
+
+public class RoleInfoTableTest
+{
+    private static final String[] SPECS = {"", "/", "/exact", "/exact/path", "/a/*", "/a/b/*", "/x.do/*", "*.jsp", "*.tar.gz", "*.gz"};
+    private static final String[] PATHS = {
+        "/", "/exact", "/exact/", "/exact/path", "/exact/path.jsp", "/a", "/a/", "/ab", "/a/b", "/a/b/c", "/a/bc",
+        "/x.jsp", "/x.jsp/y", "/x.tar.gz", "/x.y.gz", "/.gz", "/x.do", "/x.do/y", "/other", "/a.b/c.jsp"
+    };
+
+    public static Stream<Arguments> pathSpecs()
+    {
+        return Stream.of(
+            Arguments.of(SPECS.length),
+            Arguments.of(4),
+            Arguments.of(1),
+            Arguments.of(0)
+        );
+    }
+
+    @ParameterizedTest
+    @MethodSource("pathSpecs")
+    public void testServletPathSpecsMatchLikePathMappings(int count)
+    {
+        PathMappings<Map<String, RoleInfo>> constraintRoles = new PathMappings<>();
+        for (int i = 0; i < count; ++i)
+        {
+            // Add the most specific specs last, so that the insertion order does not help.
+            newMapping(constraintRoles, new ServletPathSpec(SPECS[SPECS.length - 1 - i]));
+        }
+        assertMatchesLikePathMappings(constraintRoles);
+    }
+
+    @ParameterizedTest
+    @MethodSource("pathSpecs")
+    public void testMixedPathSpecsMatchLikePathMappings(int count)
+    {
+        PathMappings<Map<String, RoleInfo>> constraintRoles = new PathMappings<>();
+        for (int i = 0; i < count; ++i)
+        {
+            newMapping(constraintRoles, new ServletPathSpec(SPECS[i]));
+        }
+        newMapping(constraintRoles, new RegexPathSpec("^/a/.*\\.jsp$"));
+        assertMatchesLikePathMappings(constraintRoles);
+    }
+
+    private static void newMapping(PathMappings<Map<String, RoleInfo>> constraintRoles, PathSpec pathSpec)
+    {
+        Map<String, RoleInfo> mappings = new HashMap<>();
+        mappings.put(ConstraintSecurityHandler.ALL_METHODS, new RoleInfo());
+        constraintRoles.put(pathSpec, mappings);
+    }
+
+    private static void assertMatchesLikePathMappings(PathMappings<Map<String, RoleInfo>> constraintRoles)
+    {
+        RoleInfoTable table = new RoleInfoTable(constraintRoles, (mappings, method) -> mappings.get(ConstraintSecurityHandler.ALL_METHODS));
+        for (String path : PATHS)
+        {
+            MatchedResource<Map<String, RoleInfo>> matched = constraintRoles.getMatched(path);
+            RoleInfo roleInfo = table.getRoleInfo(path, "GET");
+            if (matched == null)
+                assertThat(path, roleInfo, nullValue());
+            else
+                assertThat(path, roleInfo, sameInstance(matched.getResource().get(ConstraintSecurityHandler.ALL_METHODS)));
+        }
+    }
+}
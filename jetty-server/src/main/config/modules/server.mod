@@ -39,6 +39,15 @@ etc/jetty.xml
 ## Max response content write length that is buffered (in bytes)
 # jetty.httpConfig.outputAggregationSize=8192
 
+## Max size of pipelined responses aggregated in a single write (in bytes, 0 to disable)
+# jetty.httpConfig.pipelinedResponseAggregationSize=0
+
+## Max number of pipelined responses aggregated in a single write
+# jetty.httpConfig.maxPipelinedResponseAggregation=16
+
+## Max time an aggregated pipelined response is held before being written (in ms)
+# jetty.httpConfig.maxPipelinedResponseAggregationDelay=10
+
 ## Max request headers size (in bytes)
 # jetty.httpConfig.requestHeaderSize=8192
 
@@ -0,0 +1,644 @@
+//
+// ========================================================================
+// Copyright (c) 1995-2022 Mort Bay Consulting Pty Ltd and others.
+//
+// This program and the accompanying materials are made available under the
+// terms of the Eclipse Public License v. 2.0 which is available at
+// https://www.eclipse.org/legal/epl-2.0, or the Apache License, Version 2.0
+// which is available at https://www.apache.org/licenses/LICENSE-2.0.
+//
+// SPDX-License-Identifier: EPL-2.0 OR Apache-2.0
+// ========================================================================
+//
+
+package org.eclipse.jetty.server;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicBoolean;
+import javax.servlet.MultipartConfigElement;
+import javax.servlet.ReadListener;
+import javax.servlet.http.Part;
+
+import org.eclipse.jetty.util.BufferUtil;
+import org.eclipse.jetty.util.ByteArrayOutputStream2;
+import org.eclipse.jetty.util.IO;
+import org.eclipse.jetty.util.MultiMap;
+import org.eclipse.jetty.util.QuotedStringTokenizer;
+import org.eclipse.jetty.util.StringUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * <p>An asynchronous, streaming parser for {@code multipart/form-data} request content.</p>
+ * <p>Unlike {@link MultiPartFormInputStream}, which blocks a thread reading the whole request
+ * content the first time the parts are requested, this parser is a {@link ReadListener}
+ * that parses the request content chunks as they arrive, obtained via
+ * {@link HttpInput#readContent()} without copying, and notifies a {@link Listener}
+ * of each part and of its content as soon as they are parsed.</p>
+ * <p>The request must be in asynchronous mode before calling {@link #start()}:</p>
+ * <pre>{@code
+ * AsyncContext asyncContext = request.startAsync();
+ * AsyncMultiPartFormParser.PartStore store = new AsyncMultiPartFormParser.PartStore(config, tmpDir);
+ * new AsyncMultiPartFormParser(baseRequest, store).start();
+ * store.getParts().whenComplete((parts, failure) -> ...);
+ * }</pre>
+ *
+ * @see PartStore
+ */
+public class AsyncMultiPartFormParser implements ReadListener
+{
+    private static final Logger LOG = LoggerFactory.getLogger(AsyncMultiPartFormParser.class);
+
+    private final AtomicBoolean _complete = new AtomicBoolean();
+    private final HttpInput _input;
+    private final Listener _listener;
+    private final MultiPartParser _parser;
+    private long _maxRequestSize = -1;
+    private long _bytes;
+    private Throwable _failure;
+
+    /**
+     * @param request the request with the {@code multipart/form-data} content
+     * @param listener the listener notified of the parts
+     */
+    public AsyncMultiPartFormParser(Request request, Listener listener)
+    {
+        this(request.getHttpInput(), request.getContentType(), listener);
+    }
+
+    /**
+     * @param input the request input
+     * @param contentType the request content type, carrying the multipart boundary
+     * @param listener the listener notified of the parts
+     */
+    public AsyncMultiPartFormParser(HttpInput input, String contentType, Listener listener)
+    {
+        if (contentType == null || !contentType.startsWith("multipart/form-data"))
+            throw new IllegalArgumentException("content type is not multipart/form-data");
+        _input = input;
+        _listener = listener;
+        _parser = new MultiPartParser(new Handler(), boundary(contentType));
+    }
+
+    private static String boundary(String contentType)
+    {
+        int bstart = contentType.indexOf("boundary=");
+        if (bstart < 0)
+            return "";
+        int bend = contentType.indexOf(";", bstart);
+        bend = (bend < 0 ? contentType.length() : bend);
+        return QuotedStringTokenizer.unquote(MultiPartFormInputStream.value(contentType.substring(bstart, bend)).trim());
+    }
+
+    /**
+     * @return the max number of bytes of the whole request content, or -1 for no limit
+     */
+    public long getMaxRequestSize()
+    {
+        return _maxRequestSize;
+    }
+
+    /**
+     * @param maxRequestSize the max number of bytes of the whole request content, or -1 for no limit
+     */
+    public void setMaxRequestSize(long maxRequestSize)
+    {
+        _maxRequestSize = maxRequestSize;
+    }
+
+    /**
+     * <p>Starts parsing by registering this parser as the request input {@link ReadListener}.</p>
+     *
+     * @throws IllegalStateException if the request is not in asynchronous mode
+     */
+    public void start()
+    {
+        _input.setReadListener(this);
+    }
+
+    @Override
+    public void onDataAvailable() throws IOException
+    {
+        while (_input.isReady())
+        {
+            HttpInput.Content content = _input.readContent();
+            // At EOF onAllDataRead() will be called.
+            if (content.isSpecial())
+                return;
+
+            try
+            {
+                parse(content.getByteBuffer());
+            }
+            finally
+            {
+                content.succeeded();
+            }
+
+            // Stop reading on failure, the rest of
+            // the content is consumed when the request completes.
+            if (_failure != null)
+            {
+                fail(_failure);
+                return;
+            }
+        }
+    }
+
+    private void parse(ByteBuffer buffer)
+    {
+        _bytes += buffer.remaining();
+        if (_maxRequestSize > 0 && _bytes > _maxRequestSize)
+        {
+            _failure = new IllegalStateException("Request exceeds maxRequestSize (" + _maxRequestSize + ")");
+            return;
+        }
+
+        // Anything after the end of the multipart content is ignored.
+        while (_failure == null && buffer.hasRemaining() && !_parser.isState(MultiPartParser.State.END))
+        {
+            _parser.parse(buffer, false);
+        }
+    }
+
+    @Override
+    public void onAllDataRead()
+    {
+        if (_failure == null)
+            _parser.parse(BufferUtil.EMPTY_BUFFER, true);
+
+        if (_failure != null)
+        {
+            fail(_failure);
+        }
+        else if (_parser.getState() != MultiPartParser.State.END)
+        {
+            if (_parser.getState() == MultiPartParser.State.PREAMBLE)
+                fail(new IOException("Missing initial multi part boundary"));
+            else
+                fail(new IOException("Incomplete Multipart"));
+        }
+        else if (_complete.compareAndSet(false, true))
+        {
+            if (LOG.isDebugEnabled())
+                LOG.debug("Parsing complete {}", this);
+            _listener.onComplete();
+        }
+    }
+
+    @Override
+    public void onError(Throwable failure)
+    {
+        fail(failure);
+    }
+
+    private void fail(Throwable failure)
+    {
+        if (_complete.compareAndSet(false, true))
+        {
+            if (LOG.isDebugEnabled())
+                LOG.debug("Parsing failed {}", this, failure);
+            _listener.onFailure(failure);
+        }
+    }
+
+    @Override
+    public String toString()
+    {
+        return String.format("%s@%x{bytes=%d,%s}", getClass().getSimpleName(), hashCode(), _bytes, _parser);
+    }
+
+    private class Handler implements MultiPartParser.Handler
+    {
+        private MultiMap<String> _headers = new MultiMap<>();
+        private String _contentDisposition;
+        private String _contentType;
+        private PartHeaders _part;
+
+        @Override
+        public void startPart()
+        {
+            _part = null;
+            _contentDisposition = null;
+            _contentType = null;
+            _headers = new MultiMap<>();
+        }
+
+        @Override
+        public void parsedField(String key, String value)
+        {
+            _headers.put(StringUtil.asciiToLowerCase(key), value);
+            if (key.equalsIgnoreCase("content-disposition"))
+                _contentDisposition = value;
+            else if (key.equalsIgnoreCase("content-type"))
+                _contentType = value;
+        }
+
+        @Override
+        public boolean headerComplete()
+        {
+            try
+            {
+                if (_contentDisposition == null)
+                    throw new IOException("Missing content-disposition");
+
+                boolean formData = false;
+                String name = null;
+                String filename = null;
+                QuotedStringTokenizer tok = new QuotedStringTokenizer(_contentDisposition, ";", false, true);
+                while (tok.hasMoreTokens())
+                {
+                    String t = tok.nextToken().trim();
+                    String tl = StringUtil.asciiToLowerCase(t);
+                    if (tl.startsWith("form-data"))
+                        formData = true;
+                    else if (tl.startsWith("name="))
+                        name = MultiPartFormInputStream.value(t);
+                    else if (tl.startsWith("filename="))
+                        filename = MultiPartFormInputStream.filenameValue(t);
+                }
+
+                if (!formData)
+                    throw new IOException("Part not form-data");
+                if (name == null)
+                    throw new IOException("No name in part");
+
+                _part = new PartHeaders(name, filename, _contentType, _headers);
+                _listener.onPartBegin(_part);
+                return false;
+            }
+            catch (Throwable x)
+            {
+                _failure = x;
+                return true;
+            }
+        }
+
+        @Override
+        public boolean content(ByteBuffer buffer, boolean last)
+        {
+            if (_part == null)
+                return false;
+
+            try
+            {
+                _listener.onPartContent(_part, buffer, last);
+                return false;
+            }
+            catch (Throwable x)
+            {
+                _failure = x;
+                return true;
+            }
+        }
+
+        @Override
+        public boolean messageComplete()
+        {
+            return true;
+        }
+    }
+
+    /**
+     * <p>A listener for the events emitted by {@link AsyncMultiPartFormParser}.</p>
+     * <p>Listener methods are invoked serially, from the threads that notify
+     * the request {@link ReadListener}.</p>
+     */
+    public interface Listener
+    {
+        /**
+         * <p>Callback method invoked when the headers of a part have been parsed.</p>
+         *
+         * @param part the part headers
+         * @throws IOException if the part cannot be processed, failing the parsing
+         */
+        default void onPartBegin(PartHeaders part) throws IOException
+        {
+        }
+
+        /**
+         * <p>Callback method invoked when a chunk of a part content has been parsed.</p>
+         * <p>The buffer is only valid during the invocation of this method, as it
+         * may be a view of a network buffer that is reused after this method returns,
+         * and its content must be consumed or copied before returning.</p>
+         *
+         * @param part the part headers
+         * @param content the chunk of the part content
+         * @param last whether this is the last chunk of the part content
+         * @throws IOException if the content cannot be processed, failing the parsing
+         */
+        default void onPartContent(PartHeaders part, ByteBuffer content, boolean last) throws IOException
+        {
+        }
+
+        /**
+         * <p>Callback method invoked when the whole multipart content has been parsed.</p>
+         */
+        default void onComplete()
+        {
+        }
+
+        /**
+         * <p>Callback method invoked when the parsing failed, either because the
+         * multipart content is invalid, or because reading the request content failed,
+         * or because one of the other listener methods threw.</p>
+         *
+         * @param failure the failure
+         */
+        default void onFailure(Throwable failure)
+        {
+        }
+    }
+
+    /**
+     * <p>The name, file name and headers of a part.</p>
+     */
+    public static class PartHeaders
+    {
+        private final String _name;
+        private final String _fileName;
+        private final String _contentType;
+        private final MultiMap<String> _headers;
+
+        private PartHeaders(String name, String fileName, String contentType, MultiMap<String> headers)
+        {
+            _name = name;
+            _fileName = fileName;
+            _contentType = contentType;
+            _headers = headers;
+        }
+
+        public String getName()
+        {
+            return _name;
+        }
+
+        /**
+         * @return the file name from the content-disposition, or null
+         */
+        public String getFileName()
+        {
+            return _fileName;
+        }
+
+        public String getContentType()
+        {
+            return _contentType;
+        }
+
+        public String getHeader(String name)
+        {
+            if (name == null)
+                return null;
+            return _headers.getValue(StringUtil.asciiToLowerCase(name), 0);
+        }
+
+        public Collection<String> getHeaderNames()
+        {
+            return _headers.keySet();
+        }
+
+        public Collection<String> getHeaders(String name)
+        {
+            Collection<String> headers = _headers.getValues(StringUtil.asciiToLowerCase(name));
+            return headers == null ? Collections.emptyList() : headers;
+        }
+
+        @Override
+        public String toString()
+        {
+            return String.format("%s@%x{n=%s,fn=%s,ct=%s}", getClass().getSimpleName(), hashCode(), _name, _fileName, _contentType);
+        }
+    }
+
+    /**
+     * <p>A {@link Listener} that stores the parts, honoring the limits of a {@link MultipartConfigElement}.</p>
+     * <p>The content of a part is kept in memory until it exceeds the
+     * {@link MultipartConfigElement#getFileSizeThreshold() file size threshold};
+     * then it is spilled to a temporary file, where the parsed chunks are written
+     * with a {@link FileChannel} directly from the request buffers, so that large
+     * uploads are neither copied nor retained in memory.</p>
+     */
+    public static class PartStore implements Listener
+    {
+        private final CompletableFuture<List<Part>> _result = new CompletableFuture<>();
+        private final List<StoredPart> _parts = new ArrayList<>();
+        private final MultipartConfigElement _config;
+        private final Path _tmpDir;
+        private StoredPart _part;
+
+        /**
+         * @param config the multipart configuration
+         * @param tmpDir the directory where to create the files for the parts
+         * larger than the file size threshold, used when the configuration location
+         * is not set, or to resolve it when it is relative
+         */
+        public PartStore(MultipartConfigElement config, Path tmpDir)
+        {
+            _config = config;
+            if (StringUtil.isBlank(config.getLocation()))
+            {
+                _tmpDir = tmpDir;
+            }
+            else
+            {
+                Path location = Path.of(config.getLocation());
+                _tmpDir = location.isAbsolute() ? location : tmpDir.resolve(location);
+            }
+        }
+
+        /**
+         * @return a future completed with the parts when the parsing is complete
+         */
+        public CompletableFuture<List<Part>> getParts()
+        {
+            return _result;
+        }
+
+        @Override
+        public void onPartBegin(PartHeaders part)
+        {
+            _part = new StoredPart(part);
+            _parts.add(_part);
+        }
+
+        @Override
+        public void onPartContent(PartHeaders part, ByteBuffer content, boolean last) throws IOException
+        {
+            _part.write(content);
+            if (last)
+                _part.close();
+        }
+
+        @Override
+        public void onComplete()
+        {
+            _result.complete(Collections.unmodifiableList(new ArrayList<>(_parts)));
+        }
+
+        @Override
+        public void onFailure(Throwable failure)
+        {
+            for (StoredPart part : _parts)
+            {
+                part.close();
+                try
+                {
+                    part.delete();
+                }
+                catch (IOException x)
+                {
+                    if (LOG.isDebugEnabled())
+                        LOG.debug("Could not delete {}", part, x);
+                }
+            }
+            _result.completeExceptionally(failure);
+        }
+
+        private class StoredPart implements Part
+        {
+            private final PartHeaders _headers;
+            private ByteArrayOutputStream2 _bytes = new ByteArrayOutputStream2();
+            private FileChannel _channel;
+            private Path _path;
+            private long _size;
+
+            private StoredPart(PartHeaders headers)
+            {
+                _headers = headers;
+            }
+
+            private void write(ByteBuffer content) throws IOException
+            {
+                int length = content.remaining();
+                if (_config.getMaxFileSize() > 0 && _size + length > _config.getMaxFileSize())
+                    throw new IllegalStateException("Multipart Mime part " + getName() + " exceeds max filesize");
+
+                if (_path == null && _config.getFileSizeThreshold() > 0 && _size + length > _config.getFileSizeThreshold())
+                {
+                    if (!Files.exists(_tmpDir))
+                        Files.createDirectories(_tmpDir);
+                    _path = Files.createTempFile(_tmpDir, "MultiPart", "");
+                    _channel = FileChannel.open(_path, StandardOpenOption.WRITE);
+                    writeFully(ByteBuffer.wrap(_bytes.getBuf(), 0, _bytes.getCount()));
+                    _bytes = null;
+                }
+
+                if (_channel != null)
+                    writeFully(content.slice());
+                else
+                    BufferUtil.writeTo(content.slice(), _bytes);
+                _size += length;
+            }
+
+            private void writeFully(ByteBuffer buffer) throws IOException
+            {
+                while (buffer.hasRemaining())
+                {
+                    _channel.write(buffer);
+                }
+            }
+
+            private void close()
+            {
+                IO.close(_channel);
+                _channel = null;
+            }
+
+            @Override
+            public InputStream getInputStream() throws IOException
+            {
+                if (_path != null)
+                    return Files.newInputStream(_path);
+                return new ByteArrayInputStream(_bytes.getBuf(), 0, _bytes.getCount());
+            }
+
+            @Override
+            public String getContentType()
+            {
+                return _headers.getContentType();
+            }
+
+            @Override
+            public String getName()
+            {
+                return _headers.getName();
+            }
+
+            @Override
+            public String getSubmittedFileName()
+            {
+                return _headers.getFileName();
+            }
+
+            @Override
+            public long getSize()
+            {
+                return _size;
+            }
+
+            @Override
+            public void write(String fileName) throws IOException
+            {
+                Path path = Path.of(fileName);
+                if (!path.isAbsolute())
+                    path = _tmpDir.resolve(path);
+
+                if (_path == null)
+                {
+                    Files.write(path, _bytes.toByteArray());
+                    _bytes = null;
+                }
+                else
+                {
+                    Files.move(_path, path, StandardCopyOption.REPLACE_EXISTING);
+                }
+                _path = path;
+            }
+
+            @Override
+            public void delete() throws IOException
+            {
+                if (_path != null)
+                    Files.deleteIfExists(_path);
+            }
+
+            @Override
+            public String getHeader(String name)
+            {
+                return _headers.getHeader(name);
+            }
+
+            @Override
+            public Collection<String> getHeaders(String name)
+            {
+                return _headers.getHeaders(name);
+            }
+
+            @Override
+            public Collection<String> getHeaderNames()
+            {
+                return _headers.getHeaderNames();
+            }
+
+            @Override
+            public String toString()
+            {
+                return String.format("Part{n=%s,fn=%s,ct=%s,s=%d,file=%s}", getName(), getSubmittedFileName(), getContentType(), _size, _path);
+            }
+        }
+    }
+}
@@ -17,6 +17,7 @@ import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.nio.channels.WritePendingException;
 import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.LongAdder;
 
 import org.eclipse.jetty.http.BadMessageException;
@@ -40,6 +41,8 @@ import org.eclipse.jetty.io.WriteFlusher;
 import org.eclipse.jetty.util.BufferUtil;
 import org.eclipse.jetty.util.Callback;
 import org.eclipse.jetty.util.IteratingCallback;
+import org.eclipse.jetty.util.thread.AutoLock;
+import org.eclipse.jetty.util.thread.Scheduler;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -63,11 +66,15 @@ public class HttpConnection extends AbstractConnection implements Runnable, Http
     private final HttpChannelOverHttp _channel;
     private final HttpParser _parser;
     private volatile RetainableByteBuffer _retainableByteBuffer;
+    private volatile boolean _requestBufferTaken;
     private final AsyncReadCallback _asyncReadCallback = new AsyncReadCallback();
     private final SendCallback _sendCallback = new SendCallback();
+    private final ResponseAggregate _responseAggregate = new ResponseAggregate();
     private final boolean _recordHttpComplianceViolations;
     private final LongAdder bytesIn = new LongAdder();
     private final LongAdder bytesOut = new LongAdder();
+    private final LongAdder pipelinedRequests = new LongAdder();
+    private final LongAdder aggregatedResponses = new LongAdder();
     private boolean _useInputDirectByteBuffers;
     private boolean _useOutputDirectByteBuffers;
 
@@ -177,6 +184,24 @@ public class HttpConnection extends AbstractConnection implements Runnable, Http
         return getHttpChannel().getRequests();
     }
 
+    /**
+     * @return the number of requests that were already buffered when the previous request completed
+     */
+    public long getPipelinedRequests()
+    {
+        return pipelinedRequests.sum();
+    }
+
+    /**
+     * @return the number of responses of pipelined requests that have been aggregated
+     * and written together with the following responses
+     * @see HttpConfiguration#setPipelinedResponseAggregationSize(int)
+     */
+    public long getAggregatedResponses()
+    {
+        return aggregatedResponses.sum();
+    }
+
     public boolean isUseInputDirectByteBuffers()
     {
         return _useInputDirectByteBuffers;
@@ -231,17 +256,26 @@ public class HttpConnection extends AbstractConnection implements Runnable, Http
         {
             if (LOG.isDebugEnabled())
                 LOG.debug("releaseRequestBuffer {}", this);
-            if (_retainableByteBuffer.release())
+            // Content taken by the application is released by the application.
+            if (_retainableByteBuffer.release() || _requestBufferTaken)
+            {
                 _retainableByteBuffer = null;
+                _requestBufferTaken = false;
+            }
             else
+            {
                 throw new IllegalStateException("unreleased buffer " + _retainableByteBuffer);
+            }
         }
     }
 
     private ByteBuffer getRequestBuffer()
     {
         if (_retainableByteBuffer == null)
+        {
             _retainableByteBuffer = _retainableByteBufferPool.acquire(getInputBufferSize(), isUseInputDirectByteBuffers());
+            _requestBufferTaken = false;
+        }
         return _retainableByteBuffer.getBuffer();
     }
 
@@ -261,6 +295,9 @@ public class HttpConnection extends AbstractConnection implements Runnable, Http
         {
             while (getEndPoint().isOpen())
             {
+                // A new request already buffered has been pipelined.
+                boolean pipelined = _parser.isStart() && !isRequestBufferEmpty();
+
                 // Fill the request buffer (if needed).
                 int filled = fillRequestBuffer();
                 if (filled < 0 && getEndPoint().isOutputShutdown())
@@ -274,25 +311,37 @@ public class HttpConnection extends AbstractConnection implements Runnable, Http
                 // If there was a connection upgrade, the other
                 // connection took over, nothing more to do here.
                 if (getEndPoint().getConnection() != this)
+                {
+                    _responseAggregate.flush(false);
                     break;
+                }
 
                 // Handle channel event
                 if (handle)
                 {
+                    if (pipelined)
+                        pipelinedRequests.increment();
+
                     boolean suspended = !_channel.handle();
 
                     // We should break iteration if we have suspended or upgraded the connection.
                     if (suspended || getEndPoint().getConnection() != this)
+                    {
+                        // Do not hold the aggregated responses while the request is suspended.
+                        _responseAggregate.flush(false);
                         break;
+                    }
                 }
                 else if (filled == 0)
                 {
+                    // No more pipelined requests, write the aggregated responses.
+                    _responseAggregate.flush(false);
                     fillInterested();
                     break;
                 }
                 else if (filled < 0)
                 {
-                    if (_channel.getState().isIdle())
+                    if (_channel.getState().isIdle() && !_responseAggregate.flush(true))
                         getEndPoint().shutdownOutput();
                     break;
                 }
@@ -353,7 +402,13 @@ public class HttpConnection extends AbstractConnection implements Runnable, Http
     private int fillRequestBuffer()
     {
         if (_retainableByteBuffer != null && _retainableByteBuffer.isRetained())
-            throw new IllegalStateException("fill with unconsumed content on " + this);
+        {
+            // The request buffer is still referenced by content taken by the
+            // application, so fill a new buffer once this one is consumed.
+            if (!_requestBufferTaken)
+                throw new IllegalStateException("fill with unconsumed content on " + this);
+            releaseRequestBuffer();
+        }
 
         if (isRequestBufferEmpty())
         {
@@ -407,6 +462,14 @@ public class HttpConnection extends AbstractConnection implements Runnable, Http
         return handle;
     }
 
+    private boolean isRequestComplete()
+    {
+        if (_parser.isState(HttpParser.State.END))
+            return true;
+        // The parser may not have moved past the end of the request content yet.
+        return _parser.inContentState() && !_parser.isChunking() && _parser.getContentRead() >= _parser.getContentLength();
+    }
+
     private boolean upgrade()
     {
         Connection connection = (Connection)_channel.getRequest().getAttribute(UPGRADE_CONNECTION_ATTRIBUTE);
@@ -551,6 +614,7 @@ public class HttpConnection extends AbstractConnection implements Runnable, Http
             _sendCallback.close();
         else
             _sendCallback.failed(cause);
+        _responseAggregate.discard();
         super.onClose(cause);
     }
 
@@ -642,16 +706,45 @@ public class HttpConnection extends AbstractConnection implements Runnable, Http
 
     private class Content extends HttpInput.Content
     {
+        private final RetainableByteBuffer _buffer;
+
         public Content(ByteBuffer content)
         {
             super(content);
-            _retainableByteBuffer.retain();
+            _buffer = _retainableByteBuffer;
+            _buffer.retain();
+        }
+
+        @Override
+        public HttpInput.Content take()
+        {
+            // Hand out a view of the request buffer, that stays
+            // valid until the application releases the content.
+            ByteBuffer slice = _content.slice();
+            _content.position(_content.limit());
+            _buffer.retain();
+            if (_buffer == _retainableByteBuffer)
+                _requestBufferTaken = true;
+            return new HttpInput.Content(slice)
+            {
+                @Override
+                public void succeeded()
+                {
+                    _buffer.release();
+                }
+
+                @Override
+                public void failed(Throwable x)
+                {
+                    succeeded();
+                }
+            };
         }
 
         @Override
         public void succeeded()
         {
-            _retainableByteBuffer.release();
+            _buffer.release();
         }
 
         @Override
@@ -697,6 +790,7 @@ public class HttpConnection extends AbstractConnection implements Runnable, Http
         private ByteBuffer _header;
         private ByteBuffer _chunk;
         private boolean _shutdownOut;
+        private boolean _aggregated;
 
         private SendCallback()
         {
@@ -720,6 +814,7 @@ public class HttpConnection extends AbstractConnection implements Runnable, Http
                 _callback = callback;
                 _header = null;
                 _shutdownOut = false;
+                _aggregated = false;
 
                 if (getConnector().isShutdown())
                     _generator.setPersistent(false);
@@ -809,28 +904,36 @@ public class HttpConnection extends AbstractConnection implements Runnable, Http
                             bytes += _content.remaining();
                         }
                         HttpConnection.this.bytesOut.add(bytes);
+
+                        if (isAggregatable(bytes) && _responseAggregate.aggregate(_header, _chunk, _content, bytes, !_aggregated))
+                        {
+                            _aggregated = true;
+                            succeeded();
+                            return Action.SCHEDULED;
+                        }
+
                         switch (gatherWrite)
                         {
                             case 7:
-                                getEndPoint().write(this, _header, _chunk, _content);
+                                _responseAggregate.write(this, _header, _chunk, _content);
                                 break;
                             case 6:
-                                getEndPoint().write(this, _header, _chunk);
+                                _responseAggregate.write(this, _header, _chunk);
                                 break;
                             case 5:
-                                getEndPoint().write(this, _header, _content);
+                                _responseAggregate.write(this, _header, _content);
                                 break;
                             case 4:
-                                getEndPoint().write(this, _header);
+                                _responseAggregate.write(this, _header);
                                 break;
                             case 3:
-                                getEndPoint().write(this, _chunk, _content);
+                                _responseAggregate.write(this, _chunk, _content);
                                 break;
                             case 2:
-                                getEndPoint().write(this, _chunk);
+                                _responseAggregate.write(this, _chunk);
                                 break;
                             case 1:
-                                getEndPoint().write(this, _content);
+                                _responseAggregate.write(this, _content);
                                 break;
                             default:
                                 succeeded();
@@ -865,6 +968,22 @@ public class HttpConnection extends AbstractConnection implements Runnable, Http
             }
         }
 
+        /**
+         * @param bytes the number of bytes to flush
+         * @return whether the bytes to flush complete a response that can be aggregated,
+         * because the next pipelined request is already buffered and will be handled by this thread
+         */
+        private boolean isAggregatable(long bytes)
+        {
+            if (_config.getPipelinedResponseAggregationSize() <= 0 || bytes == 0)
+                return false;
+            if (!_lastContent || !_generator.isPersistent())
+                return false;
+            if (getCurrentConnection() != HttpConnection.this || !isRequestComplete() || isRequestBufferEmpty())
+                return false;
+            return _channel.getRequest().getAttribute(UPGRADE_CONNECTION_ATTRIBUTE) == null;
+        }
+
         private Callback release()
         {
             Callback complete = _callback;
@@ -914,4 +1033,207 @@ public class HttpConnection extends AbstractConnection implements Runnable, Http
             return String.format("%s[i=%s,cb=%s]", super.toString(), _info, _callback);
         }
     }
+
+    /**
+     * <p>The responses of pipelined requests that are aggregated rather than written,
+     * to be written together with a single gathered write.</p>
+     * <p>The aggregated responses are written either with the next response written by the
+     * {@link SendCallback}, or alone by {@link #flush(boolean)}, which may be called by the
+     * thread that handles the requests or by a scheduler thread once the max delay expires.
+     * All the writes are serialized: a response write that is issued while the aggregate is
+     * written alone is deferred until that write completes.</p>
+     */
+    private class ResponseAggregate
+    {
+        private final AutoLock _lock = new AutoLock();
+        private ByteBuffer _buffer;
+        private int _responses;
+        private Scheduler.Task _flushTask;
+        private boolean _flushing;
+        private boolean _shutdownOut;
+        private Runnable _deferred;
+
+        /**
+         * @param header the response header to aggregate, or null
+         * @param chunk the response chunk to aggregate, or null
+         * @param content the response content to aggregate, or null
+         * @param bytes the number of bytes to aggregate
+         * @param newResponse whether the bytes are the first of a response to be aggregated
+         * @return whether the bytes have been aggregated
+         */
+        private boolean aggregate(ByteBuffer header, ByteBuffer chunk, ByteBuffer content, long bytes, boolean newResponse)
+        {
+            int maxSize = _config.getPipelinedResponseAggregationSize();
+            try (AutoLock l = _lock.lock())
+            {
+                if (_flushing)
+                    return false;
+                if (newResponse && _responses >= _config.getMaxPipelinedResponseAggregation())
+                    return false;
+                int aggregated = _buffer == null ? 0 : _buffer.remaining();
+                if (aggregated + bytes > maxSize)
+                    return false;
+
+                if (_buffer == null)
+                {
+                    _buffer = _bufferPool.acquire(maxSize, isUseOutputDirectByteBuffers());
+                    long delay = _config.getMaxPipelinedResponseAggregationDelay();
+                    if (delay > 0)
+                        _flushTask = getConnector().getScheduler().schedule(this::expired, delay, TimeUnit.MILLISECONDS);
+                }
+                if (BufferUtil.hasContent(header))
+                    BufferUtil.append(_buffer, header);
+                if (BufferUtil.hasContent(chunk))
+                    BufferUtil.append(_buffer, chunk);
+                if (BufferUtil.hasContent(content))
+                    BufferUtil.append(_buffer, content);
+                if (newResponse)
+                {
+                    ++_responses;
+                    aggregatedResponses.increment();
+                }
+                if (LOG.isDebugEnabled())
+                    LOG.debug("aggregated {} bytes, {} responses in {} for {}", bytes, _responses, BufferUtil.toSummaryString(_buffer), HttpConnection.this);
+                return true;
+            }
+        }
+
+        /**
+         * <p>Writes the given buffers, preceded by the aggregated responses if any.</p>
+         *
+         * @param callback the callback to complete when the buffers are written
+         * @param buffers the buffers to write
+         */
+        private void write(Callback callback, ByteBuffer... buffers)
+        {
+            ByteBuffer aggregate;
+            try (AutoLock l = _lock.lock())
+            {
+                if (_flushing)
+                {
+                    // Write after the aggregated responses.
+                    _deferred = () -> write(callback, buffers);
+                    return;
+                }
+                aggregate = take();
+            }
+
+            if (aggregate == null)
+            {
+                getEndPoint().write(callback, buffers);
+                return;
+            }
+
+            ByteBuffer[] gathered = new ByteBuffer[buffers.length + 1];
+            gathered[0] = aggregate;
+            System.arraycopy(buffers, 0, gathered, 1, buffers.length);
+            getEndPoint().write(new Callback.Nested(callback)
+            {
+                @Override
+                public void succeeded()
+                {
+                    _bufferPool.release(aggregate);
+                    super.succeeded();
+                }
+
+                @Override
+                public void failed(Throwable x)
+                {
+                    _bufferPool.release(aggregate);
+                    super.failed(x);
+                }
+            }, gathered);
+        }
+
+        private void expired()
+        {
+            // Do not write, nor run a deferred write, from the scheduler thread.
+            try
+            {
+                getExecutor().execute(() -> flush(false));
+            }
+            catch (RejectedExecutionException x)
+            {
+                LOG.trace("IGNORED", x);
+            }
+        }
+
+        /**
+         * <p>Writes the aggregated responses, if any.</p>
+         *
+         * @param shutdownOut whether to shutdown the output after the write
+         * @return whether the aggregated responses are being written
+         */
+        private boolean flush(boolean shutdownOut)
+        {
+            ByteBuffer aggregate;
+            try (AutoLock l = _lock.lock())
+            {
+                if (_flushing)
+                {
+                    _shutdownOut |= shutdownOut;
+                    return true;
+                }
+                aggregate = take();
+                if (aggregate == null)
+                    return false;
+                _flushing = true;
+                _shutdownOut = shutdownOut;
+            }
+
+            if (LOG.isDebugEnabled())
+                LOG.debug("flushing aggregated responses {} for {}", BufferUtil.toSummaryString(aggregate), HttpConnection.this);
+            getEndPoint().write(Callback.from(() -> flushed(aggregate, null), x -> flushed(aggregate, x)), aggregate);
+            return true;
+        }
+
+        private void flushed(ByteBuffer aggregate, Throwable failure)
+        {
+            _bufferPool.release(aggregate);
+            boolean shutdownOut;
+            Runnable deferred;
+            try (AutoLock l = _lock.lock())
+            {
+                _flushing = false;
+                shutdownOut = _shutdownOut;
+                _shutdownOut = false;
+                deferred = _deferred;
+                _deferred = null;
+            }
+            if (failure != null)
+            {
+                if (LOG.isDebugEnabled())
+                    LOG.debug("failed to write aggregated responses for {}", HttpConnection.this, failure);
+                // The aggregated responses are lost, the connection cannot be used anymore.
+                getEndPoint().close(failure);
+            }
+            else if (shutdownOut)
+            {
+                getEndPoint().shutdownOutput();
+            }
+            if (deferred != null)
+                deferred.run();
+        }
+
+        private ByteBuffer take()
+        {
+            if (_flushTask != null)
+                _flushTask.cancel();
+            _flushTask = null;
+            _responses = 0;
+            ByteBuffer aggregate = _buffer;
+            _buffer = null;
+            return aggregate;
+        }
+
+        private void discard()
+        {
+            try (AutoLock l = _lock.lock())
+            {
+                ByteBuffer aggregate = take();
+                if (aggregate != null)
+                    _bufferPool.release(aggregate);
+            }
+        }
+    }
 }
@@ -277,6 +277,66 @@ public class HttpInput extends ServletInputStream implements Runnable
         return read(buffer, null, -1, -1);
     }
 
+    /**
+     * <p>Reads the next chunk of request content, without copying it when possible.</p>
+     * <p>The bytes of the returned content belong to the caller, that must complete the
+     * content by calling {@link Content#succeeded()} once the bytes have been consumed,
+     * for example once they have been written to a file or to another connection.
+     * Until then, the buffer of the content is not reused.</p>
+     * <p>Like {@link #read(byte[], int, int)}, this method blocks until content is
+     * available in blocking mode, while it may only be called after {@link #isReady()}
+     * returned {@code true} when a {@link ReadListener} is set.</p>
+     * <p>When the end of the content is reached, a special EOF content is returned.</p>
+     *
+     * @return the next content, or a special EOF content
+     * @throws IOException if the content could not be read
+     * @see Content#take()
+     */
+    public Content readContent() throws IOException
+    {
+        try (AutoLock lock = _contentProducer.lock())
+        {
+            // Calculate minimum request rate for DoS protection
+            _contentProducer.checkMinDataRate();
+
+            Content content = _contentProducer.nextContent();
+            if (content == null)
+                throw new IllegalStateException("read on unready input");
+            if (!content.isSpecial())
+            {
+                Content taken = content.take();
+                _contentConsumed.add(taken.remaining());
+                if (LOG.isDebugEnabled())
+                    LOG.debug("read content {} {}", taken, this);
+                _contentProducer.reclaim(content);
+                return taken;
+            }
+
+            Throwable error = content.getError();
+            if (LOG.isDebugEnabled())
+                LOG.debug("read content error={} {}", error, this);
+            if (error != null)
+            {
+                if (error instanceof IOException)
+                    throw (IOException)error;
+                throw new IOException(error);
+            }
+
+            if (content.isEof())
+            {
+                if (LOG.isDebugEnabled())
+                    LOG.debug("read content at EOF, setting consumed EOF to true {}", this);
+                _consumedEof = true;
+                // If EOF do we need to wake for allDataRead callback?
+                if (onContentProducible())
+                    scheduleReadListenerNotification();
+                return content;
+            }
+
+            throw new AssertionError("no data, no error and not EOF");
+        }
+    }
+
     private int read(ByteBuffer buffer, byte[] b, int off, int len) throws IOException
     {
         try (AutoLock lock = _contentProducer.lock())
@@ -598,6 +658,22 @@ public class HttpInput extends ServletInputStream implements Runnable
             return length;
         }
 
+        /**
+         * <p>Takes the remaining bytes of this content, leaving this content empty.</p>
+         * <p>The returned content is independent of this content, and must be completed
+         * by calling {@link #succeeded()} when its bytes have been consumed.
+         * This implementation copies the bytes, while subclasses that wrap
+         * pooled buffers may return a view of the bytes without copying them.</p>
+         * @return a content with the remaining bytes of this content.
+         * @throws IllegalStateException if the content is special
+         */
+        public Content take()
+        {
+            Content taken = new Content(BufferUtil.copy(_content));
+            _content.position(_content.limit());
+            return taken;
+        }
+
         /**
          * Skip some bytes from the buffer. Has no effect on a special content.
          * @param length How many bytes to skip.
@@ -701,6 +777,12 @@ public class HttpInput extends ServletInputStream implements Runnable
             return _eof;
         }
 
+        @Override
+        public Content take()
+        {
+            return _delegate.take();
+        }
+
         @Override
         public void succeeded()
         {
@@ -742,6 +824,12 @@ public class HttpInput extends ServletInputStream implements Runnable
             throw new IllegalStateException(this + " has no buffer");
         }
 
+        @Override
+        public final Content take()
+        {
+            throw new IllegalStateException(this + " has no buffer");
+        }
+
         @Override
         public final int skip(int length)
         {
@@ -853,14 +853,14 @@ public class MultiPartFormInputStream
         return false;
     }
 
-    private static String value(String nameEqualsValue)
+    static String value(String nameEqualsValue)
     {
         int idx = nameEqualsValue.indexOf('=');
         String value = nameEqualsValue.substring(idx + 1).trim();
         return QuotedStringTokenizer.unquoteOnly(value);
     }
 
-    private static String filenameValue(String nameEqualsValue)
+    static String filenameValue(String nameEqualsValue)
     {
         int idx = nameEqualsValue.indexOf('=');
         String value = nameEqualsValue.substring(idx + 1).trim();
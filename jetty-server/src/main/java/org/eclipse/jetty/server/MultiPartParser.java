@@ -255,7 +255,7 @@ public class MultiPartParser
 
         if (_partialBoundary > 0)
         {
-            int partial = _delimiterSearch.startsWith(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining(), _partialBoundary);
+            int partial = _delimiterSearch.startsWith(buffer, _partialBoundary);
             if (partial > 0)
             {
                 if (partial == _delimiterSearch.getLength())
@@ -274,15 +274,15 @@ public class MultiPartParser
             _partialBoundary = 0;
         }
 
-        int delimiter = _delimiterSearch.match(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining());
+        int delimiter = _delimiterSearch.match(buffer);
         if (delimiter >= 0)
         {
-            buffer.position(delimiter - buffer.arrayOffset() + _delimiterSearch.getLength());
+            buffer.position(buffer.position() + delimiter + _delimiterSearch.getLength());
             setState(State.DELIMITER);
             return;
         }
 
-        _partialBoundary = _delimiterSearch.endsWith(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining());
+        _partialBoundary = _delimiterSearch.endsWith(buffer);
         BufferUtil.clear(buffer);
     }
 
@@ -563,7 +563,7 @@ public class MultiPartParser
         // Starts With
         if (_partialBoundary > 0)
         {
-            int partial = _delimiterSearch.startsWith(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining(), _partialBoundary);
+            int partial = _delimiterSearch.startsWith(buffer, _partialBoundary);
             if (partial > 0)
             {
                 if (partial == _delimiterSearch.getLength())
@@ -603,13 +603,13 @@ public class MultiPartParser
         }
 
         // Contains
-        int delimiter = _delimiterSearch.match(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining());
+        int delimiter = _delimiterSearch.match(buffer);
         if (delimiter >= 0)
         {
             ByteBuffer content = buffer.slice();
-            content.limit(delimiter - buffer.arrayOffset() - buffer.position());
+            content.limit(delimiter);
 
-            buffer.position(delimiter - buffer.arrayOffset() + _delimiterSearch.getLength());
+            buffer.position(buffer.position() + delimiter + _delimiterSearch.getLength());
             setState(State.DELIMITER);
 
             if (LOG.isDebugEnabled())
@@ -619,7 +619,7 @@ public class MultiPartParser
         }
 
         // Ends With
-        _partialBoundary = _delimiterSearch.endsWith(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining());
+        _partialBoundary = _delimiterSearch.endsWith(buffer);
         if (_partialBoundary > 0)
         {
             ByteBuffer content = buffer.slice();
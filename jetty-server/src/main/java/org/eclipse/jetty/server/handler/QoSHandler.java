@@ -0,0 +1,634 @@
+//
+// ========================================================================
+// Copyright (c) 1995-2022 Mort Bay Consulting Pty Ltd and others.
+//
+// This program and the accompanying materials are made available under the
+// terms of the Eclipse Public License v. 2.0 which is available at
+// https://www.eclipse.org/legal/epl-2.0, or the Apache License, Version 2.0
+// which is available at https://www.apache.org/licenses/LICENSE-2.0.
+//
+// SPDX-License-Identifier: EPL-2.0 OR Apache-2.0
+// ========================================================================
+//
+
+package org.eclipse.jetty.server.handler;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import javax.servlet.AsyncContext;
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.eclipse.jetty.server.Request;
+import org.eclipse.jetty.util.annotation.ManagedAttribute;
+import org.eclipse.jetty.util.annotation.ManagedObject;
+import org.eclipse.jetty.util.annotation.ManagedOperation;
+import org.eclipse.jetty.util.annotation.Name;
+import org.eclipse.jetty.util.statistic.SampleStatistic;
+import org.eclipse.jetty.util.thread.AutoLock;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * <p>A quality of service {@link Handler} that limits the number of requests
+ * that are handled concurrently, and that schedules the excess requests by class.</p>
+ * <p>Requests are classified by {@link #getQoSClass(Request)}, by default from the value
+ * of the {@link #getClassHeader() class header}; requests without a known class
+ * belong to the {@link #DEFAULT_CLASS default class}.
+ * Each class has a weight, a maximum number of queued requests and a maximum wait time,
+ * see {@link #addQoSClass(String, int, int, long)}.</p>
+ * <p>Requests in excess of {@link #getMaxRequests()} are asynchronously suspended in the
+ * queue of their class. When a request completes, the next request is chosen among the
+ * queues by weighted fair queueing, so that each class with queued requests is resumed
+ * in proportion to its weight, whatever the number of requests of the other classes.
+ * Requests that are suspended by the wrapped handlers hold their permit until they complete.</p>
+ * <p>Requests are rejected with a 503 status, without being handled, when the queue of
+ * their class is full, or when they have waited longer than the maximum wait time of their
+ * class, so that overload of a class is shed cheaply.</p>
+ * <p>This is a handler alternative to the {@code QoSFilter}, that applies before the
+ * servlet layer.</p>
+ */
+@ManagedObject("Quality of service handler")
+public class QoSHandler extends HandlerWrapper
+{
+    public static final String DEFAULT_CLASS = "default";
+
+    private static final Logger LOG = LoggerFactory.getLogger(QoSHandler.class);
+    private static final String PERMIT = "o.e.j.s.h.QoSH.PERMIT";
+    private static final String WAITER = "o.e.j.s.h.QoSH.WAITER";
+    private static final long STRIDE = 1L << 20;
+
+    private final AutoLock _lock = new AutoLock();
+    private final Map<String, QoSClass> _classes = new LinkedHashMap<>();
+    private int _maxRequests = 10;
+    private int _activeRequests;
+    private long _pass;
+    private String _classHeader;
+
+    public QoSHandler()
+    {
+        addQoSClass(DEFAULT_CLASS, 1, Integer.MAX_VALUE, TimeUnit.SECONDS.toMillis(30));
+    }
+
+    /**
+     * @return the maximum number of requests that are handled concurrently
+     */
+    @ManagedAttribute("The maximum number of requests handled concurrently")
+    public int getMaxRequests()
+    {
+        return _maxRequests;
+    }
+
+    /**
+     * @param maxRequests the maximum number of requests that are handled concurrently
+     */
+    public void setMaxRequests(int maxRequests)
+    {
+        if (maxRequests <= 0)
+            throw new IllegalArgumentException("Invalid max requests " + maxRequests);
+        if (isRunning())
+            throw new IllegalStateException("Running");
+        _maxRequests = maxRequests;
+    }
+
+    /**
+     * @return the name of the request header whose value is the class of the request, or null
+     */
+    @ManagedAttribute("The request header whose value is the class of the request")
+    public String getClassHeader()
+    {
+        return _classHeader;
+    }
+
+    /**
+     * @param classHeader the name of the request header whose value is the class of the request, or null
+     */
+    public void setClassHeader(String classHeader)
+    {
+        _classHeader = classHeader;
+    }
+
+    /**
+     * <p>Adds, or replaces, a class of requests.</p>
+     *
+     * @param name the name of the class
+     * @param weight the share of the resumed requests that go to this class, relative to the weights of the other classes
+     * @param maxQueued the maximum number of requests of this class that can wait, after which requests are rejected
+     * @param maxWaitMs the maximum time in milliseconds that requests of this class can wait, after which they are rejected,
+     * or 0 to wait forever
+     */
+    public void addQoSClass(@Name("name") String name, @Name("weight") int weight, @Name("maxQueued") int maxQueued, @Name("maxWaitMs") long maxWaitMs)
+    {
+        if (weight <= 0)
+            throw new IllegalArgumentException("Invalid weight " + weight);
+        if (isRunning())
+            throw new IllegalStateException("Running");
+        try (AutoLock l = _lock.lock())
+        {
+            _classes.put(name, new QoSClass(name, weight, maxQueued, maxWaitMs));
+        }
+    }
+
+    @ManagedAttribute("The number of requests being handled")
+    public int getActiveRequests()
+    {
+        try (AutoLock l = _lock.lock())
+        {
+            return _activeRequests;
+        }
+    }
+
+    @ManagedAttribute("The number of requests waiting to be handled")
+    public int getQueuedRequests()
+    {
+        try (AutoLock l = _lock.lock())
+        {
+            return _classes.values().stream().mapToInt(c -> c._queued).sum();
+        }
+    }
+
+    /**
+     * @return the statistics of each class, by class name
+     */
+    @ManagedAttribute("The statistics of each class")
+    public Map<String, String> getQoSClassStatistics()
+    {
+        Map<String, String> result = new LinkedHashMap<>();
+        try (AutoLock l = _lock.lock())
+        {
+            for (QoSClass qosClass : _classes.values())
+            {
+                result.put(qosClass._name, qosClass.toStatistics());
+            }
+        }
+        return result;
+    }
+
+    @ManagedOperation(value = "Resets the statistics", impact = "ACTION")
+    public void resetStatistics()
+    {
+        try (AutoLock l = _lock.lock())
+        {
+            for (QoSClass qosClass : _classes.values())
+            {
+                qosClass.reset();
+            }
+        }
+    }
+
+    /**
+     * <p>Returns the class of the given request.</p>
+     * <p>The default implementation returns the value of the {@link #getClassHeader() class header}.</p>
+     *
+     * @param baseRequest the request
+     * @return the name of the class of the request, or null for the {@link #DEFAULT_CLASS default class}
+     */
+    protected String getQoSClass(Request baseRequest)
+    {
+        String classHeader = _classHeader;
+        return classHeader == null ? null : baseRequest.getHeader(classHeader);
+    }
+
+    @Override
+    public void handle(String target, Request baseRequest, HttpServletRequest request, HttpServletResponse response) throws IOException, ServletException
+    {
+        // Is the request dispatched again while it holds a permit?
+        Object permit = baseRequest.getAttribute(PERMIT);
+        if (permit instanceof Permit)
+        {
+            handleWithPermit((Permit)permit, target, baseRequest, request, response);
+            return;
+        }
+
+        // Has the request been resumed after waiting?
+        Object waiter = baseRequest.getAttribute(WAITER);
+        if (waiter instanceof Waiter)
+        {
+            baseRequest.removeAttribute(WAITER);
+            if (((Waiter)waiter).isPermitted())
+                handleWithPermit(new Permit(baseRequest), target, baseRequest, request, response);
+            else
+                reject(baseRequest, response);
+            return;
+        }
+
+        boolean admitted = false;
+        QoSClass qosClass;
+        try (AutoLock l = _lock.lock())
+        {
+            qosClass = _classes.get(getQoSClass(baseRequest));
+            if (qosClass == null)
+                qosClass = _classes.get(DEFAULT_CLASS);
+            if (_activeRequests < _maxRequests)
+            {
+                ++_activeRequests;
+                admitted = true;
+            }
+            else if (qosClass._queued >= qosClass._maxQueued)
+            {
+                ++qosClass._rejected;
+                qosClass = null;
+            }
+            else
+            {
+                // Reserve the slot in the queue, so that concurrent requests cannot overflow it.
+                ++qosClass._queued;
+            }
+        }
+
+        if (admitted)
+        {
+            handleWithPermit(new Permit(baseRequest), target, baseRequest, request, response);
+        }
+        else if (qosClass == null)
+        {
+            if (LOG.isDebugEnabled())
+                LOG.debug("Queue full, rejecting {}", baseRequest);
+            reject(baseRequest, response);
+        }
+        else
+        {
+            suspend(baseRequest, qosClass);
+        }
+    }
+
+    private void handleWithPermit(Permit permit, String target, Request baseRequest, HttpServletRequest request, HttpServletResponse response) throws IOException, ServletException
+    {
+        baseRequest.setAttribute(PERMIT, permit);
+        try
+        {
+            super.handle(target, baseRequest, request, response);
+        }
+        finally
+        {
+            // The permit of an asynchronous request is released when the request completes.
+            if (baseRequest.isAsyncStarted())
+                permit.releaseOnComplete(baseRequest.getAsyncContext());
+            else
+                permit.release();
+        }
+    }
+
+    /**
+     * <p>Suspends the request in the queue of its class, where a slot has been reserved for it.</p>
+     */
+    private void suspend(Request baseRequest, QoSClass qosClass)
+    {
+        AsyncContext asyncContext;
+        try
+        {
+            asyncContext = baseRequest.startAsync();
+        }
+        catch (Throwable x)
+        {
+            try (AutoLock l = _lock.lock())
+            {
+                --qosClass._queued;
+                ++qosClass._rejected;
+            }
+            throw x;
+        }
+        asyncContext.setTimeout(qosClass._maxWaitMs);
+        Waiter waiter = new Waiter(baseRequest, asyncContext, qosClass);
+        asyncContext.addListener(waiter);
+        baseRequest.setAttribute(WAITER, waiter);
+
+        boolean resume = false;
+        try (AutoLock l = _lock.lock())
+        {
+            // A permit may have been released while the request was suspending.
+            if (_activeRequests < _maxRequests)
+            {
+                --qosClass._queued;
+                ++_activeRequests;
+                waiter._state = WaiterState.PERMITTED;
+                resume = true;
+            }
+            else
+            {
+                if (qosClass._queue.isEmpty())
+                    // A class that was idle does not get credit for the time it was idle.
+                    qosClass._pass = Math.max(qosClass._pass, _pass);
+                qosClass._queue.add(waiter);
+            }
+        }
+
+        if (LOG.isDebugEnabled())
+            LOG.debug("{} {}", resume ? "Resuming" : "Suspended", baseRequest);
+        if (resume)
+            asyncContext.dispatch();
+    }
+
+    /**
+     * <p>Releases a permit, passing it to the next waiting request, if any.</p>
+     */
+    private void release()
+    {
+        while (true)
+        {
+            List<Waiter> rejected = null;
+            Waiter next = null;
+            long now = System.nanoTime();
+            try (AutoLock l = _lock.lock())
+            {
+                while (next == null)
+                {
+                    // Weighted fair queueing, by stride scheduling: the class with
+                    // queued requests that has been served least, relative to its weight.
+                    QoSClass selected = null;
+                    for (QoSClass qosClass : _classes.values())
+                    {
+                        if (!qosClass._queue.isEmpty() && (selected == null || qosClass._pass < selected._pass))
+                            selected = qosClass;
+                    }
+                    if (selected == null)
+                    {
+                        --_activeRequests;
+                        break;
+                    }
+
+                    Waiter waiter = selected._queue.poll();
+                    if (waiter._state != WaiterState.QUEUED)
+                        // Already rejected by its timeout.
+                        continue;
+                    --selected._queued;
+
+                    long waited = now - waiter._queuedNanoTime;
+                    if (selected._maxWaitMs > 0 && TimeUnit.NANOSECONDS.toMillis(waited) >= selected._maxWaitMs)
+                    {
+                        // Shed requests that have already waited too long, rather than handling them late.
+                        waiter._state = WaiterState.REJECTED;
+                        ++selected._rejected;
+                        if (rejected == null)
+                            rejected = new ArrayList<>();
+                        rejected.add(waiter);
+                        continue;
+                    }
+
+                    waiter._state = WaiterState.PERMITTED;
+                    _pass = selected._pass;
+                    selected._pass += selected._stride;
+                    selected._waitTimes.record(waited);
+                    ++selected._resumed;
+                    next = waiter;
+                }
+            }
+
+            if (rejected != null)
+            {
+                // If the dispatch fails, the request is expiring, and its timeout dispatches it.
+                for (Waiter waiter : rejected)
+                {
+                    waiter.dispatch();
+                }
+            }
+
+            // If the dispatch fails, the request is expiring,
+            // and the permit is passed to the next waiting request.
+            if (next == null || next.dispatch() || !next.revoke())
+                return;
+        }
+    }
+
+    private void reject(Request baseRequest, HttpServletResponse response) throws IOException
+    {
+        baseRequest.setHandled(true);
+        response.sendError(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+    }
+
+    @Override
+    public String toString()
+    {
+        try (AutoLock l = _lock.lock())
+        {
+            return String.format("%s@%x[active=%d/%d,classes=%s]", getClass().getSimpleName(), hashCode(), _activeRequests, _maxRequests, _classes.keySet());
+        }
+    }
+
+    private static class QoSClass
+    {
+        private final Queue<Waiter> _queue = new ArrayDeque<>();
+        private final SampleStatistic _waitTimes = new SampleStatistic();
+        private final String _name;
+        private final int _weight;
+        private final long _stride;
+        private final int _maxQueued;
+        private final long _maxWaitMs;
+        private long _pass;
+        private int _queued;
+        private long _resumed;
+        private long _rejected;
+
+        private QoSClass(String name, int weight, int maxQueued, long maxWaitMs)
+        {
+            _name = name;
+            _weight = weight;
+            _stride = STRIDE / weight;
+            _maxQueued = maxQueued;
+            _maxWaitMs = maxWaitMs;
+        }
+
+        private void reset()
+        {
+            _waitTimes.reset();
+            _resumed = 0;
+            _rejected = 0;
+        }
+
+        private String toStatistics()
+        {
+            return String.format("weight=%d,queued=%d,resumed=%d,rejected=%d,meanWaitMs=%d,maxWaitMs=%d",
+                _weight, _queued, _resumed, _rejected,
+                TimeUnit.NANOSECONDS.toMillis((long)_waitTimes.getMean()),
+                TimeUnit.NANOSECONDS.toMillis(_waitTimes.getMax()));
+        }
+    }
+
+    private enum WaiterState
+    {
+        QUEUED, PERMITTED, REJECTED
+    }
+
+    /**
+     * <p>A permit held by a request, released when the request completes.</p>
+     */
+    private class Permit implements AsyncListener
+    {
+        private final AtomicBoolean _released = new AtomicBoolean();
+        private final Request _baseRequest;
+        private boolean _listening;
+
+        private Permit(Request baseRequest)
+        {
+            _baseRequest = baseRequest;
+        }
+
+        private void releaseOnComplete(AsyncContext asyncContext)
+        {
+            if (_listening)
+                return;
+            _listening = true;
+            asyncContext.addListener(this);
+        }
+
+        private void release()
+        {
+            if (_released.compareAndSet(false, true))
+            {
+                _baseRequest.removeAttribute(PERMIT);
+                QoSHandler.this.release();
+            }
+        }
+
+        @Override
+        public void onComplete(AsyncEvent event)
+        {
+            release();
+        }
+
+        @Override
+        public void onTimeout(AsyncEvent event)
+        {
+        }
+
+        @Override
+        public void onError(AsyncEvent event)
+        {
+        }
+
+        @Override
+        public void onStartAsync(AsyncEvent event)
+        {
+            // Keep listening if the request is suspended again.
+            event.getAsyncContext().addListener(this);
+        }
+    }
+
+    private class Waiter implements AsyncListener
+    {
+        private final long _queuedNanoTime = System.nanoTime();
+        private final Request _baseRequest;
+        private final AsyncContext _asyncContext;
+        private final QoSClass _qosClass;
+        private WaiterState _state = WaiterState.QUEUED;
+
+        private Waiter(Request baseRequest, AsyncContext asyncContext, QoSClass qosClass)
+        {
+            _baseRequest = baseRequest;
+            _asyncContext = asyncContext;
+            _qosClass = qosClass;
+        }
+
+        private boolean isPermitted()
+        {
+            try (AutoLock l = _lock.lock())
+            {
+                return _state == WaiterState.PERMITTED;
+            }
+        }
+
+        /**
+         * @return whether the request has been dispatched, or false if it is expiring
+         */
+        private boolean dispatch()
+        {
+            try
+            {
+                _asyncContext.dispatch();
+                return true;
+            }
+            catch (IllegalStateException x)
+            {
+                if (LOG.isDebugEnabled())
+                    LOG.debug("Could not dispatch {}", _baseRequest, x);
+                return false;
+            }
+        }
+
+        /**
+         * <p>Takes back the permit given to this request.</p>
+         *
+         * @return whether the permit has been taken back by this call
+         */
+        private boolean revoke()
+        {
+            try (AutoLock l = _lock.lock())
+            {
+                if (_state != WaiterState.PERMITTED)
+                    return false;
+                _state = WaiterState.REJECTED;
+                --_qosClass._resumed;
+                ++_qosClass._rejected;
+                return true;
+            }
+        }
+
+        @Override
+        public void onTimeout(AsyncEvent event)
+        {
+            boolean release = false;
+            try (AutoLock l = _lock.lock())
+            {
+                switch (_state)
+                {
+                    case QUEUED:
+                        // Left in the queue, to be skipped when polled.
+                        _state = WaiterState.REJECTED;
+                        --_qosClass._queued;
+                        ++_qosClass._rejected;
+                        break;
+                    case PERMITTED:
+                        // The permit was given while the request was expiring, so that
+                        // it could not be dispatched: the permit is passed on.
+                        _state = WaiterState.REJECTED;
+                        --_qosClass._resumed;
+                        ++_qosClass._rejected;
+                        release = true;
+                        break;
+                    default:
+                        break;
+                }
+            }
+            if (LOG.isDebugEnabled())
+                LOG.debug("Wait timeout, rejecting {}", _baseRequest);
+            if (release)
+                release();
+            // Only the timeout thread can dispatch an expiring request.
+            dispatch();
+        }
+
+        @Override
+        public void onError(AsyncEvent event)
+        {
+            try (AutoLock l = _lock.lock())
+            {
+                if (_state == WaiterState.QUEUED)
+                {
+                    _state = WaiterState.REJECTED;
+                    --_qosClass._queued;
+                    ++_qosClass._rejected;
+                }
+            }
+        }
+
+        @Override
+        public void onComplete(AsyncEvent event)
+        {
+        }
+
+        @Override
+        public void onStartAsync(AsyncEvent event)
+        {
+        }
+    }
+}
@@ -0,0 +1,312 @@
+//
+// ========================================================================
+// Copyright (c) 1995-2022 Mort Bay Consulting Pty Ltd and others.
+//
+// This program and the accompanying materials are made available under the
+// terms of the Eclipse Public License v. 2.0 which is available at
+// https://www.eclipse.org/legal/epl-2.0, or the Apache License, Version 2.0
+// which is available at https://www.apache.org/licenses/LICENSE-2.0.
+//
+// SPDX-License-Identifier: EPL-2.0 OR Apache-2.0
+// ========================================================================
+//
+
+package org.eclipse.jetty.server.handler.gzip;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.Deflater;
+
+import org.eclipse.jetty.server.LowResourceMonitor;
+import org.eclipse.jetty.server.Request;
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.util.annotation.ManagedAttribute;
+import org.eclipse.jetty.util.annotation.ManagedObject;
+import org.eclipse.jetty.util.annotation.ManagedOperation;
+import org.eclipse.jetty.util.thread.QueuedThreadPool;
+import org.eclipse.jetty.util.thread.ThreadPool;
+
+/**
+ * <p>A policy that chooses, for each response, the {@link Deflater} compression level,
+ * or whether to compress at all.</p>
+ * <p>The compression level is chosen from the server load: when the load is below
+ * {@link #getLowLoad() the low load}, the {@link #getMaxCompressionLevel() max level}
+ * is used; when the load is above {@link #getHighLoad() the high load}, the
+ * {@link #getMinCompressionLevel() min level} is used; in between, the level is
+ * interpolated linearly. The load is the utilization rate of the server
+ * {@link QueuedThreadPool}, or {@code 1.0} when a {@link LowResourceMonitor}
+ * reports that the server is low on resources.
+ * Responses larger than {@link #getLargeContentLength() the large content length}
+ * are compressed at most at the middle level, since the higher levels cost
+ * proportionally more CPU for little gain on large contents.</p>
+ * <p>The compression ratio (compressed size / uncompressed size) is recorded for each
+ * MIME type; once {@link #getMinSamples() enough responses} of a MIME type have been
+ * compressed, if its ratio is above {@link #getMaxCompressionRatio() the max ratio},
+ * responses of that MIME type are not compressed anymore, apart from one in
+ * {@link #getSamplePeriod() every sample period} that keeps the ratio up to date.</p>
+ *
+ * @see GzipHandler#setCompressionPolicy(GzipCompressionPolicy)
+ */
+@ManagedObject("Adaptive gzip compression policy")
+public class GzipCompressionPolicy
+{
+    /**
+     * The value returned by {@link #getCompressionLevel(Request, String, long)}
+     * when the response must not be compressed.
+     */
+    public static final int SKIP_COMPRESSION = -2;
+
+    private final ConcurrentMap<String, CompressionRatio> _ratios = new ConcurrentHashMap<>();
+    private final LongAdder _skipped = new LongAdder();
+    private int _minCompressionLevel = Deflater.BEST_SPEED;
+    private int _maxCompressionLevel = Deflater.BEST_COMPRESSION;
+    private double _lowLoad = 0.25D;
+    private double _highLoad = 0.75D;
+    private long _largeContentLength = 1024 * 1024;
+    private double _maxCompressionRatio = 0.9D;
+    private int _minSamples = 16;
+    private int _samplePeriod = 64;
+    private int _maxMimeTypes = 256;
+
+    @ManagedAttribute("The compression level used at high load")
+    public int getMinCompressionLevel()
+    {
+        return _minCompressionLevel;
+    }
+
+    public void setMinCompressionLevel(int minCompressionLevel)
+    {
+        _minCompressionLevel = minCompressionLevel;
+    }
+
+    @ManagedAttribute("The compression level used at low load")
+    public int getMaxCompressionLevel()
+    {
+        return _maxCompressionLevel;
+    }
+
+    public void setMaxCompressionLevel(int maxCompressionLevel)
+    {
+        _maxCompressionLevel = maxCompressionLevel;
+    }
+
+    @ManagedAttribute("The load below which the max compression level is used")
+    public double getLowLoad()
+    {
+        return _lowLoad;
+    }
+
+    public void setLowLoad(double lowLoad)
+    {
+        _lowLoad = lowLoad;
+    }
+
+    @ManagedAttribute("The load above which the min compression level is used")
+    public double getHighLoad()
+    {
+        return _highLoad;
+    }
+
+    public void setHighLoad(double highLoad)
+    {
+        _highLoad = highLoad;
+    }
+
+    @ManagedAttribute("The content length above which at most the middle compression level is used")
+    public long getLargeContentLength()
+    {
+        return _largeContentLength;
+    }
+
+    public void setLargeContentLength(long largeContentLength)
+    {
+        _largeContentLength = largeContentLength;
+    }
+
+    @ManagedAttribute("The compression ratio above which a MIME type is not compressed")
+    public double getMaxCompressionRatio()
+    {
+        return _maxCompressionRatio;
+    }
+
+    public void setMaxCompressionRatio(double maxCompressionRatio)
+    {
+        _maxCompressionRatio = maxCompressionRatio;
+    }
+
+    @ManagedAttribute("The number of compressed responses of a MIME type before its compression ratio is evaluated")
+    public int getMinSamples()
+    {
+        return _minSamples;
+    }
+
+    public void setMinSamples(int minSamples)
+    {
+        _minSamples = minSamples;
+    }
+
+    @ManagedAttribute("One response in this many is compressed for MIME types with a poor compression ratio")
+    public int getSamplePeriod()
+    {
+        return _samplePeriod;
+    }
+
+    public void setSamplePeriod(int samplePeriod)
+    {
+        _samplePeriod = samplePeriod;
+    }
+
+    @ManagedAttribute("The max number of MIME types for which the compression ratio is recorded")
+    public int getMaxMimeTypes()
+    {
+        return _maxMimeTypes;
+    }
+
+    public void setMaxMimeTypes(int maxMimeTypes)
+    {
+        _maxMimeTypes = maxMimeTypes;
+    }
+
+    @ManagedAttribute("The number of responses not compressed because of a poor compression ratio")
+    public long getSkipped()
+    {
+        return _skipped.longValue();
+    }
+
+    /**
+     * @param mimeType the MIME type
+     * @return the recorded compression ratio for the given MIME type, or -1 if not known
+     */
+    public double getCompressionRatio(String mimeType)
+    {
+        CompressionRatio ratio = _ratios.get(mimeType);
+        return ratio == null ? -1 : ratio.getRatio();
+    }
+
+    @ManagedOperation(value = "Forgets the recorded compression ratios", impact = "ACTION")
+    public void reset()
+    {
+        _ratios.clear();
+        _skipped.reset();
+    }
+
+    /**
+     * @param request the request
+     * @param mimeType the response MIME type, without parameters, or null if not known
+     * @param contentLength the response content length, or -1 if not known
+     * @return the compression level to use, or {@link #SKIP_COMPRESSION} to not compress the response
+     */
+    public int getCompressionLevel(Request request, String mimeType, long contentLength)
+    {
+        if (mimeType != null)
+        {
+            CompressionRatio ratio = _ratios.get(mimeType);
+            if (ratio != null && ratio.isPoor() && !ratio.sample())
+            {
+                _skipped.increment();
+                return SKIP_COMPRESSION;
+            }
+        }
+
+        int min = getMinCompressionLevel();
+        int max = getMaxCompressionLevel();
+        double load = getLoad(request);
+        int level;
+        if (load <= getLowLoad())
+            level = max;
+        else if (load >= getHighLoad())
+            level = min;
+        else
+            level = max - (int)Math.round((max - min) * (load - getLowLoad()) / (getHighLoad() - getLowLoad()));
+
+        if (contentLength > getLargeContentLength())
+            level = Math.min(level, (min + max) / 2);
+
+        return level;
+    }
+
+    /**
+     * <p>Returns the current server load, between {@code 0.0} and {@code 1.0}.</p>
+     *
+     * @param request the request
+     * @return the current server load
+     */
+    protected double getLoad(Request request)
+    {
+        Server server = request.getHttpChannel().getServer();
+        LowResourceMonitor monitor = server.getBean(LowResourceMonitor.class);
+        if (monitor != null && monitor.isLowOnResources())
+            return 1.0D;
+        ThreadPool threadPool = server.getThreadPool();
+        if (threadPool instanceof QueuedThreadPool)
+            return ((QueuedThreadPool)threadPool).getUtilizationRate();
+        return 0.0D;
+    }
+
+    /**
+     * <p>Records the compression ratio of a compressed response.</p>
+     *
+     * @param mimeType the response MIME type, without parameters, or null if not known
+     * @param bytesIn the number of uncompressed bytes
+     * @param bytesOut the number of compressed bytes
+     */
+    public void onCompressed(String mimeType, long bytesIn, long bytesOut)
+    {
+        if (mimeType == null || bytesIn <= 0)
+            return;
+        CompressionRatio ratio = _ratios.get(mimeType);
+        if (ratio == null)
+        {
+            if (_ratios.size() >= getMaxMimeTypes())
+                return;
+            ratio = _ratios.computeIfAbsent(mimeType, k -> new CompressionRatio());
+        }
+        ratio.update(bytesIn, bytesOut);
+    }
+
+    @Override
+    public String toString()
+    {
+        return String.format("%s@%x{level=[%d..%d],load=[%.2f..%.2f],ratios=%s}", getClass().getSimpleName(), hashCode(),
+            getMinCompressionLevel(), getMaxCompressionLevel(), getLowLoad(), getHighLoad(), _ratios);
+    }
+
+    private class CompressionRatio
+    {
+        private final LongAdder _samples = new LongAdder();
+        private final LongAdder _bytesIn = new LongAdder();
+        private final LongAdder _bytesOut = new LongAdder();
+        private final AtomicLong _skips = new AtomicLong();
+
+        private void update(long bytesIn, long bytesOut)
+        {
+            _samples.increment();
+            _bytesIn.add(bytesIn);
+            _bytesOut.add(bytesOut);
+        }
+
+        private double getRatio()
+        {
+            long bytesIn = _bytesIn.longValue();
+            return bytesIn == 0 ? -1 : (double)_bytesOut.longValue() / bytesIn;
+        }
+
+        private boolean isPoor()
+        {
+            return _samples.longValue() >= getMinSamples() && getRatio() > getMaxCompressionRatio();
+        }
+
+        private boolean sample()
+        {
+            return _skips.incrementAndGet() % Math.max(1, getSamplePeriod()) == 0;
+        }
+
+        @Override
+        public String toString()
+        {
+            return String.format("%.2f/%d", getRatio(), _samples.longValue());
+        }
+    }
+}
@@ -0,0 +1,273 @@
+//
+// ========================================================================
+// Copyright (c) 1995-2022 Mort Bay Consulting Pty Ltd and others.
+//
+// This program and the accompanying materials are made available under the
+// terms of the Eclipse Public License v. 2.0 which is available at
+// https://www.eclipse.org/legal/epl-2.0, or the Apache License, Version 2.0
+// which is available at https://www.apache.org/licenses/LICENSE-2.0.
+//
+// SPDX-License-Identifier: EPL-2.0 OR Apache-2.0
+// ========================================================================
+//
+
+package org.eclipse.jetty.server.handler.gzip;
+
+import java.nio.ByteBuffer;
+import java.util.SortedSet;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.eclipse.jetty.http.HttpMethod;
+import org.eclipse.jetty.server.Request;
+import org.eclipse.jetty.util.annotation.ManagedAttribute;
+import org.eclipse.jetty.util.annotation.ManagedObject;
+import org.eclipse.jetty.util.annotation.ManagedOperation;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * <p>A bounded cache of gzipped response content, used by {@link GzipHandler}
+ * to avoid compressing again byte-identical responses.</p>
+ * <p>Responses are cached only for {@code GET} requests, when the response has a
+ * strong entity tag: the cache key is made of the request URI, including the query
+ * string, and of the entity tag, so that a response that changes also changes key.
+ * On a cache hit the gzipped content is written directly, bypassing the
+ * {@link java.util.zip.Deflater}, and the content produced by the application is discarded.</p>
+ * <p>Applications must therefore guarantee that their strong entity tags identify
+ * byte-identical content, as required by RFC 7232.</p>
+ * <p>When the cache grows over its limits, the least recently used entries are evicted.</p>
+ */
+@ManagedObject("Cache of gzipped response content")
+public class GzipContentCache
+{
+    private static final Logger LOG = LoggerFactory.getLogger(GzipContentCache.class);
+
+    private final ConcurrentMap<String, CachedContent> _cache = new ConcurrentHashMap<>();
+    private final AtomicLong _cachedSize = new AtomicLong();
+    private final LongAdder _hits = new LongAdder();
+    private final LongAdder _misses = new LongAdder();
+    private final LongAdder _evictions = new LongAdder();
+    private int _maxCachedEntrySize = 1024 * 1024;
+    private int _maxCachedEntries = 1024;
+    private long _maxCacheSize = 32 * 1024 * 1024;
+
+    /**
+     * @return the max size in bytes of a gzipped response content to be cached
+     */
+    @ManagedAttribute("The max size in bytes of a cached gzipped content")
+    public int getMaxCachedEntrySize()
+    {
+        return _maxCachedEntrySize;
+    }
+
+    /**
+     * @param maxCachedEntrySize the max size in bytes of a gzipped response content to be cached
+     */
+    public void setMaxCachedEntrySize(int maxCachedEntrySize)
+    {
+        _maxCachedEntrySize = maxCachedEntrySize;
+    }
+
+    /**
+     * @return the max number of cached gzipped contents
+     */
+    @ManagedAttribute("The max number of cached gzipped contents")
+    public int getMaxCachedEntries()
+    {
+        return _maxCachedEntries;
+    }
+
+    /**
+     * @param maxCachedEntries the max number of cached gzipped contents
+     */
+    public void setMaxCachedEntries(int maxCachedEntries)
+    {
+        _maxCachedEntries = maxCachedEntries;
+        shrinkCache();
+    }
+
+    /**
+     * @return the max size in bytes of all the cached gzipped contents
+     */
+    @ManagedAttribute("The max size in bytes of all the cached gzipped contents")
+    public long getMaxCacheSize()
+    {
+        return _maxCacheSize;
+    }
+
+    /**
+     * @param maxCacheSize the max size in bytes of all the cached gzipped contents
+     */
+    public void setMaxCacheSize(long maxCacheSize)
+    {
+        _maxCacheSize = maxCacheSize;
+        shrinkCache();
+    }
+
+    @ManagedAttribute("The size in bytes of all the cached gzipped contents")
+    public long getCachedSize()
+    {
+        return _cachedSize.get();
+    }
+
+    @ManagedAttribute("The number of cached gzipped contents")
+    public int getCachedEntries()
+    {
+        return _cache.size();
+    }
+
+    @ManagedAttribute("The number of responses served from the cache")
+    public long getHits()
+    {
+        return _hits.longValue();
+    }
+
+    @ManagedAttribute("The number of cacheable responses not found in the cache")
+    public long getMisses()
+    {
+        return _misses.longValue();
+    }
+
+    @ManagedAttribute("The number of cached gzipped contents evicted from the cache")
+    public long getEvictions()
+    {
+        return _evictions.longValue();
+    }
+
+    @ManagedOperation(value = "Resets the statistics", impact = "ACTION")
+    public void resetStatistics()
+    {
+        _hits.reset();
+        _misses.reset();
+        _evictions.reset();
+    }
+
+    @ManagedOperation(value = "Removes all the cached gzipped contents", impact = "ACTION")
+    public void flushCache()
+    {
+        for (String key : _cache.keySet())
+        {
+            CachedContent content = _cache.remove(key);
+            if (content != null)
+                _cachedSize.addAndGet(-content.getSize());
+        }
+    }
+
+    /**
+     * @param request the request
+     * @param etag the entity tag of the response, before the gzip suffix is added
+     * @return the cache key for the response, or null if the response cannot be cached
+     */
+    protected String getCacheKey(Request request, String etag)
+    {
+        if (etag == null || etag.startsWith("W/"))
+            return null;
+        if (!HttpMethod.GET.is(request.getMethod()))
+            return null;
+        String uri = request.getRequestURI();
+        String query = request.getQueryString();
+        if (query != null)
+            uri = uri + "?" + query;
+        return uri + " " + etag;
+    }
+
+    /**
+     * @param key the cache key
+     * @return a read-only view of the cached gzipped content, or null if there is no cached content
+     */
+    public ByteBuffer get(String key)
+    {
+        CachedContent content = _cache.get(key);
+        if (content == null)
+        {
+            _misses.increment();
+            return null;
+        }
+        _hits.increment();
+        content._lastAccessed = System.nanoTime();
+        return content._buffer.asReadOnlyBuffer();
+    }
+
+    /**
+     * @param key the cache key
+     * @param gzipped the gzipped content
+     */
+    public void put(String key, ByteBuffer gzipped)
+    {
+        int size = gzipped.remaining();
+        if (size > _maxCachedEntrySize)
+            return;
+        CachedContent content = new CachedContent(key, gzipped);
+        CachedContent existing = _cache.putIfAbsent(key, content);
+        if (existing != null)
+            return;
+        _cachedSize.addAndGet(size);
+        if (LOG.isDebugEnabled())
+            LOG.debug("Cached {} in {}", content, this);
+        shrinkCache();
+    }
+
+    private void shrinkCache()
+    {
+        // While we need to shrink
+        while (_cache.size() > 0 && (_cache.size() > _maxCachedEntries || _cachedSize.get() > _maxCacheSize))
+        {
+            // Scan the entire cache and generate an ordered list by last accessed time.
+            SortedSet<CachedContent> sorted = new TreeSet<>((c1, c2) ->
+            {
+                if (c1._lastAccessed < c2._lastAccessed)
+                    return -1;
+                if (c1._lastAccessed > c2._lastAccessed)
+                    return 1;
+                return c1._key.compareTo(c2._key);
+            });
+            sorted.addAll(_cache.values());
+
+            // Evict least recently used first
+            for (CachedContent content : sorted)
+            {
+                if (_cache.size() <= _maxCachedEntries && _cachedSize.get() <= _maxCacheSize)
+                    break;
+                if (_cache.remove(content._key, content))
+                {
+                    _cachedSize.addAndGet(-content.getSize());
+                    _evictions.increment();
+                }
+            }
+        }
+    }
+
+    @Override
+    public String toString()
+    {
+        return String.format("%s@%x{entries=%d,size=%d/%d}", getClass().getSimpleName(), hashCode(), getCachedEntries(), getCachedSize(), getMaxCacheSize());
+    }
+
+    private static class CachedContent
+    {
+        private final String _key;
+        private final ByteBuffer _buffer;
+        private volatile long _lastAccessed = System.nanoTime();
+
+        private CachedContent(String key, ByteBuffer buffer)
+        {
+            _key = key;
+            _buffer = buffer;
+        }
+
+        private int getSize()
+        {
+            return _buffer.remaining();
+        }
+
+        @Override
+        public String toString()
+        {
+            return String.format("%s{key=%s,size=%d}", getClass().getSimpleName(), _key, getSize());
+        }
+    }
+}
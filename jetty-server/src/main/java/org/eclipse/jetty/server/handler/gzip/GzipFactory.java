@@ -13,6 +13,7 @@
 
 package org.eclipse.jetty.server.handler.gzip;
 
+import org.eclipse.jetty.http.ContentEncoder;
 import org.eclipse.jetty.server.Request;
 import org.eclipse.jetty.util.compression.DeflaterPool;
 
@@ -21,4 +22,31 @@ public interface GzipFactory
     DeflaterPool.Entry getDeflaterEntry(Request request, long contentLength);
 
     boolean isMimeTypeGzipable(String mimetype);
+
+    /**
+     * @return the cache of gzipped response content, or null if gzipped content is not cached
+     */
+    default GzipContentCache getContentCache()
+    {
+        return null;
+    }
+
+    /**
+     * @return the policy that chooses the compression level of each response, or null to always use the default level
+     */
+    default GzipCompressionPolicy getCompressionPolicy()
+    {
+        return null;
+    }
+
+    /**
+     * @param request the request
+     * @param contentLength the response content length, or -1 if not known
+     * @return the {@link ContentEncoder} negotiated with the request {@code Accept-Encoding},
+     * or null to use the gzip compression
+     */
+    default ContentEncoder getContentEncoder(Request request, long contentLength)
+    {
+        return null;
+    }
 }
@@ -15,8 +15,11 @@ package org.eclipse.jetty.server.handler.gzip;
 
 import java.io.IOException;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.EnumSet;
+import java.util.List;
 import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.regex.Pattern;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
@@ -28,12 +31,14 @@ import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
 import org.eclipse.jetty.http.CompressedContentFormat;
+import org.eclipse.jetty.http.ContentEncoder;
 import org.eclipse.jetty.http.HttpField;
 import org.eclipse.jetty.http.HttpFields;
 import org.eclipse.jetty.http.HttpHeader;
 import org.eclipse.jetty.http.HttpMethod;
 import org.eclipse.jetty.http.MimeTypes;
 import org.eclipse.jetty.http.PreEncodedHttpField;
+import org.eclipse.jetty.http.QuotedQualityCSV;
 import org.eclipse.jetty.http.pathmap.PathSpecSet;
 import org.eclipse.jetty.server.HttpOutput;
 import org.eclipse.jetty.server.Request;
@@ -171,6 +176,11 @@ public class GzipHandler extends HandlerWrapper implements GzipFactory
     private final IncludeExclude<String> _inflatePaths = new IncludeExclude<>(PathSpecSet.class);
     private final IncludeExclude<String> _mimeTypes = new IncludeExclude<>(AsciiLowerCaseSet.class);
     private HttpField _vary = GzipHttpOutputInterceptor.VARY_ACCEPT_ENCODING;
+    private GzipContentCache _contentCache;
+    private GzipCompressionPolicy _compressionPolicy;
+    private final List<ContentEncoder> _contentEncoders = new CopyOnWriteArrayList<>();
+    private volatile CompressedContentFormat[] _contentEncoderFormats = CompressedContentFormat.NONE;
+    private volatile String[] _preferredEncodings = {GZIP};
 
     /**
      * Instantiates a new GzipHandler.
@@ -508,6 +518,80 @@ public class GzipHandler extends HandlerWrapper implements GzipFactory
         }
     }
 
+    /**
+     * @return the content encoders that may be used instead of gzip, in order of preference
+     */
+    public List<ContentEncoder> getContentEncoders()
+    {
+        return Collections.unmodifiableList(_contentEncoders);
+    }
+
+    /**
+     * Set the content encoders that may be used instead of gzip (replacing any previously set).
+     *
+     * @param contentEncoders the content encoders, in order of preference
+     * @see #addContentEncoder(ContentEncoder)
+     */
+    public void setContentEncoders(List<ContentEncoder> contentEncoders)
+    {
+        _contentEncoders.clear();
+        contentEncoders.forEach(this::addContentEncoder);
+    }
+
+    /**
+     * Add a content encoder that may be used instead of gzip.
+     * <p>
+     *     The content coding of a response is negotiated with the request
+     *     {@code Accept-Encoding} header: among the codings with the highest quality,
+     *     the content encoders are preferred in the order they have been added, and
+     *     are preferred over gzip; the gzip compression is used when the request prefers it.
+     *     The compression policy and the content cache only apply to gzip.
+     * </p>
+     *
+     * @param contentEncoder the content encoder to add
+     * @see ContentEncoder#getContentEncoders()
+     */
+    public void addContentEncoder(ContentEncoder contentEncoder)
+    {
+        if (GZIP.equalsIgnoreCase(contentEncoder.getEncoding()))
+            throw new IllegalArgumentException("gzip is built-in");
+        _contentEncoders.add(contentEncoder);
+        _contentEncoderFormats = _contentEncoders.stream()
+            .map(encoder -> new CompressedContentFormat(encoder.getEncoding(), "." + encoder.getEncoding()))
+            .toArray(CompressedContentFormat[]::new);
+        _preferredEncodings = Stream.concat(_contentEncoders.stream().map(ContentEncoder::getEncoding), Stream.of(GZIP))
+            .toArray(String[]::new);
+    }
+
+    @Override
+    public ContentEncoder getContentEncoder(Request request, long contentLength)
+    {
+        if (_contentEncoders.isEmpty())
+            return null;
+
+        if (contentLength >= 0 && contentLength < _minGzipSize)
+            return null;
+
+        QuotedQualityCSV acceptEncodings = new QuotedQualityCSV(_preferredEncodings);
+        for (HttpField field : request.getHttpFields())
+        {
+            if (field.getHeader() == HttpHeader.ACCEPT_ENCODING)
+                acceptEncodings.addValue(field.getValue());
+        }
+
+        for (String encoding : acceptEncodings)
+        {
+            if (GZIP.equalsIgnoreCase(encoding))
+                return null;
+            for (ContentEncoder encoder : _contentEncoders)
+            {
+                if (encoder.getEncoding().equalsIgnoreCase(encoding))
+                    return encoder;
+            }
+        }
+        return null;
+    }
+
     @Override
     public DeflaterPool.Entry getDeflaterEntry(Request request, long contentLength)
     {
@@ -736,6 +820,10 @@ public class GzipHandler extends HandlerWrapper implements GzipFactory
                     {
                         String etags = field.getValue();
                         String etagsNoSuffix = CompressedContentFormat.GZIP.stripSuffixes(etags);
+                        for (CompressedContentFormat format : _contentEncoderFormats)
+                        {
+                            etagsNoSuffix = format.stripSuffixes(etagsNoSuffix);
+                        }
                         if (etagsNoSuffix.equals(etags))
                             newFields.add(field);
                         else
@@ -1078,6 +1166,58 @@ public class GzipHandler extends HandlerWrapper implements GzipFactory
         return _deflaterPool;
     }
 
+    /**
+     * @return the cache of gzipped response content, or null if gzipped content is not cached
+     */
+    @Override
+    public GzipContentCache getContentCache()
+    {
+        return _contentCache;
+    }
+
+    /**
+     * Set the cache of gzipped response content.
+     * <p>
+     *     When set, the gzipped content of responses to {@code GET} requests that
+     *     have a strong {@code ETag} is cached, and written without compressing it
+     *     again when the same content is requested again.
+     * </p>
+     *
+     * @param contentCache the cache of gzipped response content, or null to not cache gzipped content
+     * @see GzipContentCache
+     */
+    public void setContentCache(GzipContentCache contentCache)
+    {
+        updateBean(_contentCache, contentCache);
+        _contentCache = contentCache;
+    }
+
+    /**
+     * @return the policy that chooses the compression level of each response, or null to always use the default level
+     */
+    @Override
+    public GzipCompressionPolicy getCompressionPolicy()
+    {
+        return _compressionPolicy;
+    }
+
+    /**
+     * Set the policy that chooses the compression level of each response.
+     * <p>
+     *     When set, the compression level of the {@link DeflaterPool} is overridden
+     *     for each response, depending on the server load and on the response
+     *     length, and responses whose MIME type compresses poorly may not be compressed.
+     * </p>
+     *
+     * @param compressionPolicy the compression policy, or null to always use the default level
+     * @see GzipCompressionPolicy
+     */
+    public void setCompressionPolicy(GzipCompressionPolicy compressionPolicy)
+    {
+        updateBean(_compressionPolicy, compressionPolicy);
+        _compressionPolicy = compressionPolicy;
+    }
+
     /**
      * Get the InflaterPool being used. The default value of this is null before starting, but after starting if it is null
      * it will be set to the default InflaterPool which is stored as a bean on the server.
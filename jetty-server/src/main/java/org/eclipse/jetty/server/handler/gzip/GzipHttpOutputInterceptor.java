@@ -13,12 +13,16 @@
 
 package org.eclipse.jetty.server.handler.gzip;
 
+import java.io.IOException;
+import java.io.OutputStream;
 import java.nio.ByteBuffer;
 import java.nio.channels.WritePendingException;
 import java.util.concurrent.atomic.AtomicReference;
 import java.util.zip.CRC32;
 import java.util.zip.Deflater;
 
+import org.eclipse.jetty.http.CompressedContentFormat;
+import org.eclipse.jetty.http.ContentEncoder;
 import org.eclipse.jetty.http.HttpField;
 import org.eclipse.jetty.http.HttpFields;
 import org.eclipse.jetty.http.HttpHeader;
@@ -28,6 +32,7 @@ import org.eclipse.jetty.server.HttpChannel;
 import org.eclipse.jetty.server.HttpOutput;
 import org.eclipse.jetty.server.Response;
 import org.eclipse.jetty.util.BufferUtil;
+import org.eclipse.jetty.util.ByteArrayOutputStream2;
 import org.eclipse.jetty.util.Callback;
 import org.eclipse.jetty.util.IteratingNestedCallback;
 import org.eclipse.jetty.util.compression.DeflaterPool;
@@ -45,7 +50,7 @@ public class GzipHttpOutputInterceptor implements HttpOutput.Interceptor
 
     private enum GZState
     {
-        MIGHT_COMPRESS, NOT_COMPRESSING, COMMITTING, COMPRESSING, FINISHED
+        MIGHT_COMPRESS, NOT_COMPRESSING, COMMITTING, COMPRESSING, CACHED, ENCODING, FINISHED
     }
 
     private final AtomicReference<GZState> _state = new AtomicReference<>(GZState.MIGHT_COMPRESS);
@@ -60,6 +65,12 @@ public class GzipHttpOutputInterceptor implements HttpOutput.Interceptor
 
     private DeflaterPool.Entry _deflaterEntry;
     private ByteBuffer _buffer;
+    private String _cacheKey;
+    private String _mimeType;
+    private GzipCompressionPolicy _policy;
+    private ByteArrayOutputStream2 _encoded;
+    private OutputStream _encoder;
+    private ByteArrayOutputStream2 _cacheContent;
 
     public GzipHttpOutputInterceptor(GzipFactory factory, HttpChannel channel, HttpOutput.Interceptor next, boolean syncFlush)
     {
@@ -108,6 +119,19 @@ public class GzipHttpOutputInterceptor implements HttpOutput.Interceptor
                 gzip(content, complete, callback);
                 break;
 
+            case ENCODING:
+                encode(content, complete, callback);
+                break;
+
+            case CACHED:
+                // The cached gzipped content has already been written,
+                // the content produced by the application is discarded.
+                if (complete)
+                    _interceptor.write(BufferUtil.EMPTY_BUFFER, true, callback);
+                else
+                    callback.succeeded();
+                break;
+
             default:
                 callback.failed(new IllegalStateException("state=" + _state.get()));
                 break;
@@ -159,6 +183,7 @@ public class GzipHttpOutputInterceptor implements HttpOutput.Interceptor
         if (ct != null)
         {
             String baseType = HttpField.valueParameters(ct, null);
+            _mimeType = baseType;
             if (!_factory.isMimeTypeGzipable(baseType))
             {
                 LOG.debug("{} exclude by mimeType {}", this, ct);
@@ -190,6 +215,13 @@ public class GzipHttpOutputInterceptor implements HttpOutput.Interceptor
             if (contentLength < 0 && complete)
                 contentLength = content.remaining();
 
+            ContentEncoder encoder = _factory.getContentEncoder(_channel.getRequest(), contentLength);
+            if (encoder != null)
+            {
+                commitEncoding(encoder, content, complete, callback);
+                return;
+            }
+
             _deflaterEntry = _factory.getDeflaterEntry(_channel.getRequest(), contentLength);
             if (_deflaterEntry == null)
             {
@@ -199,6 +231,23 @@ public class GzipHttpOutputInterceptor implements HttpOutput.Interceptor
                 return;
             }
 
+            _policy = _factory.getCompressionPolicy();
+            if (_policy != null)
+            {
+                int level = _policy.getCompressionLevel(_channel.getRequest(), _mimeType, contentLength);
+                if (level == GzipCompressionPolicy.SKIP_COMPRESSION)
+                {
+                    LOG.debug("{} exclude by compression policy {}", this, _mimeType);
+                    _deflaterEntry.release();
+                    _deflaterEntry = null;
+                    _state.set(GZState.NOT_COMPRESSING);
+                    _interceptor.write(content, complete, callback);
+                    return;
+                }
+                // The pool restores the default level when the Deflater is released.
+                _deflaterEntry.get().setLevel(level);
+            }
+
             fields.put(GZIP.getContentEncoding());
             _crc.reset();
 
@@ -208,6 +257,24 @@ public class GzipHttpOutputInterceptor implements HttpOutput.Interceptor
             if (etag != null)
                 fields.put(HttpHeader.ETAG, etagGzip(etag));
 
+            GzipContentCache cache = _factory.getContentCache();
+            _cacheKey = cache == null ? null : cache.getCacheKey(_channel.getRequest(), etag);
+            if (_cacheKey != null)
+            {
+                ByteBuffer cached = cache.get(_cacheKey);
+                if (cached != null)
+                {
+                    LOG.debug("{} cached {}", this, _cacheKey);
+                    _deflaterEntry.release();
+                    _deflaterEntry = null;
+                    response.setContentLengthLong(cached.remaining());
+                    _state.set(GZState.CACHED);
+                    _interceptor.write(cached, complete, callback);
+                    return;
+                }
+                _cacheContent = new ByteArrayOutputStream2();
+            }
+
             LOG.debug("{} compressing {}", this, _deflaterEntry);
             _state.set(GZState.COMPRESSING);
 
@@ -225,6 +292,93 @@ public class GzipHttpOutputInterceptor implements HttpOutput.Interceptor
             callback.failed(new WritePendingException());
     }
 
+    private void commitEncoding(ContentEncoder encoder, ByteBuffer content, boolean complete, Callback callback)
+    {
+        try
+        {
+            _encoded = new ByteArrayOutputStream2(_bufferSize);
+            _encoder = encoder.newEncoderOutputStream(_encoded);
+        }
+        catch (IOException x)
+        {
+            LOG.debug("{} exclude by encoder failure {}", this, encoder, x);
+            _state.set(GZState.NOT_COMPRESSING);
+            _interceptor.write(content, complete, callback);
+            return;
+        }
+
+        CompressedContentFormat format = new CompressedContentFormat(encoder.getEncoding(), "." + encoder.getEncoding());
+        Response response = _channel.getResponse();
+        HttpFields.Mutable fields = response.getHttpFields();
+        fields.put(format.getContentEncoding());
+        response.setContentLength(-1);
+        String etag = fields.get(HttpHeader.ETAG);
+        if (etag != null)
+            fields.put(HttpHeader.ETAG, format.etag(etag));
+
+        LOG.debug("{} encoding {}", this, encoder);
+        _state.set(GZState.ENCODING);
+        encode(content, complete, callback);
+    }
+
+    private void encode(ByteBuffer content, boolean complete, Callback callback)
+    {
+        try
+        {
+            if (content.hasRemaining())
+                BufferUtil.writeTo(content, _encoder);
+            if (complete)
+                _encoder.close();
+            else if (_syncFlush)
+                _encoder.flush();
+        }
+        catch (IOException x)
+        {
+            closeEncoder();
+            callback.failed(x);
+            return;
+        }
+
+        // Writes are serialized by HttpOutput, so the encoded bytes are written
+        // without copying them, and are only reset when the write completes.
+        ByteBuffer encoded = ByteBuffer.wrap(_encoded.getBuf(), 0, _encoded.getCount());
+        if (encoded.hasRemaining() || complete)
+            _interceptor.write(encoded, complete, new EncodedCB(callback));
+        else
+            callback.succeeded();
+    }
+
+    private void closeEncoder()
+    {
+        try
+        {
+            // Releases the resources of the encoder, such as a Deflater.
+            _encoder.close();
+        }
+        catch (IOException x)
+        {
+            LOG.trace("IGNORED", x);
+        }
+    }
+
+    private void cache() throws IOException
+    {
+        GzipContentCache cache = _factory.getContentCache();
+        if (_cacheContent.size() + _buffer.remaining() > cache.getMaxCachedEntrySize())
+        {
+            // Too large to be cached.
+            _cacheContent = null;
+            return;
+        }
+
+        BufferUtil.writeTo(_buffer.slice(), _cacheContent);
+        if (_deflaterEntry == null)
+        {
+            cache.put(_cacheKey, ByteBuffer.wrap(_cacheContent.getBuf(), 0, _cacheContent.getCount()));
+            _cacheContent = null;
+        }
+    }
+
     private String etagGzip(String etag)
     {
         return GZIP.etag(etag);
@@ -255,6 +409,28 @@ public class GzipHttpOutputInterceptor implements HttpOutput.Interceptor
         return _state.get() == GZState.MIGHT_COMPRESS;
     }
 
+    private class EncodedCB extends Callback.Nested
+    {
+        private EncodedCB(Callback callback)
+        {
+            super(callback);
+        }
+
+        @Override
+        public void succeeded()
+        {
+            _encoded.reset();
+            super.succeeded();
+        }
+
+        @Override
+        public void failed(Throwable x)
+        {
+            closeEncoder();
+            super.failed(x);
+        }
+    }
+
     private class GzipBufferCB extends IteratingNestedCallback
     {
         private final ByteBuffer _content;
@@ -334,10 +510,15 @@ public class GzipHttpOutputInterceptor implements HttpOutput.Interceptor
                 // add the trailer and recycle the deflator to flag that we will have had completeSuccess when
                 // the write below completes.
                 addTrailer();
+                if (_policy != null)
+                    _policy.onCompressed(_mimeType, deflater.getBytesRead(), deflater.getBytesWritten());
                 _deflaterEntry.release();
                 _deflaterEntry = null;
             }
 
+            if (_cacheContent != null)
+                cache();
+
             // write the compressed buffer.
             _interceptor.write(_buffer, _deflaterEntry == null, this);
             return Action.SCHEDULED;
@@ -0,0 +1,261 @@
+//
+// ========================================================================
+// Copyright (c) 1995-2022 Mort Bay Consulting Pty Ltd and others.
+//
+// This program and the accompanying materials are made available under the
+// terms of the Eclipse Public License v. 2.0 which is available at
+// https://www.eclipse.org/legal/epl-2.0, or the Apache License, Version 2.0
+// which is available at https://www.apache.org/licenses/LICENSE-2.0.
+//
+// SPDX-License-Identifier: EPL-2.0 OR Apache-2.0
+// ========================================================================
+//
+
+package org.eclipse.jetty.server;
+
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.Stream;
+import javax.servlet.AsyncContext;
+import javax.servlet.MultipartConfigElement;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.Part;
+
+import org.eclipse.jetty.http.HttpStatus;
+import org.eclipse.jetty.http.HttpTester;
+import org.eclipse.jetty.server.handler.AbstractHandler;
+import org.eclipse.jetty.toolchain.test.jupiter.WorkDir;
+import org.eclipse.jetty.toolchain.test.jupiter.WorkDirExtension;
+import org.eclipse.jetty.util.IO;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsString;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+
+@ExtendWith(WorkDirExtension.class)
+public class AsyncMultiPartFormParserTest
+{
+    private static final String BOUNDARY = "JettyBoundary0123456789";
+
+    public WorkDir workDir;
+    private Server server;
+    private ServerConnector connector;
+
+    private void start(MultipartConfigElement config, AtomicReference<List<Part>> result, AtomicReference<Throwable> failure) throws Exception
+    {
+        Path tmpDir = workDir.getEmptyPathDir();
+        server = new Server();
+        connector = new ServerConnector(server);
+        server.addConnector(connector);
+        server.setHandler(new AbstractHandler()
+        {
+            @Override
+            public void handle(String target, Request baseRequest, HttpServletRequest request, HttpServletResponse response)
+            {
+                baseRequest.setHandled(true);
+                AsyncContext asyncContext = request.startAsync();
+                AsyncMultiPartFormParser.PartStore store = new AsyncMultiPartFormParser.PartStore(config, tmpDir);
+                AsyncMultiPartFormParser parser = new AsyncMultiPartFormParser(baseRequest, store);
+                parser.setMaxRequestSize(config.getMaxRequestSize());
+                parser.start();
+                store.getParts().whenComplete((parts, x) ->
+                {
+                    result.set(parts);
+                    failure.set(x);
+                    response.setStatus(x == null ? HttpStatus.OK_200 : HttpStatus.BAD_REQUEST_400);
+                    asyncContext.complete();
+                });
+            }
+        });
+        server.start();
+    }
+
+    @AfterEach
+    public void dispose() throws Exception
+    {
+        if (server != null)
+            server.stop();
+    }
+
+    private HttpTester.Response upload(byte[] content) throws Exception
+    {
+        try (Socket socket = new Socket("localhost", connector.getLocalPort()))
+        {
+            OutputStream output = socket.getOutputStream();
+            String request = "POST / HTTP/1.1\r\n" +
+                "Host: localhost\r\n" +
+                "Content-Type: multipart/form-data; boundary=" + BOUNDARY + "\r\n" +
+                "Content-Length: " + content.length + "\r\n" +
+                "Connection: close\r\n" +
+                "\r\n";
+            output.write(request.getBytes(StandardCharsets.UTF_8));
+            // Write in pieces, so that boundaries may be split across request buffers.
+            for (int offset = 0; offset < content.length; offset += 1000)
+            {
+                output.write(content, offset, Math.min(1000, content.length - offset));
+                output.flush();
+            }
+            InputStream input = socket.getInputStream();
+            return HttpTester.parseResponse(HttpTester.from(input));
+        }
+    }
+
+    private static byte[] multipart(Map<String, byte[]> parts)
+    {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        parts.forEach((name, bytes) ->
+        {
+            String headers = "--" + BOUNDARY + "\r\n" +
+                "Content-Disposition: form-data; name=\"" + name + "\"; filename=\"" + name + ".bin\"\r\n" +
+                "Content-Type: application/octet-stream\r\n" +
+                "\r\n";
+            output.writeBytes(headers.getBytes(StandardCharsets.UTF_8));
+            output.writeBytes(bytes);
+            output.writeBytes("\r\n".getBytes(StandardCharsets.UTF_8));
+        });
+        output.writeBytes(("--" + BOUNDARY + "--\r\n").getBytes(StandardCharsets.UTF_8));
+        return output.toByteArray();
+    }
+
+    private static byte[] randomBytes(int length)
+    {
+        byte[] bytes = new byte[length];
+        new Random().nextBytes(bytes);
+        return bytes;
+    }
+
+    @Test
+    public void testPartsAreStoredInMemoryOrSpilledToFiles() throws Exception
+    {
+        AtomicReference<List<Part>> result = new AtomicReference<>();
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        start(new MultipartConfigElement(null, -1, -1, 1024), result, failure);
+
+        Map<String, byte[]> parts = new ConcurrentHashMap<>();
+        parts.put("small", randomBytes(512));
+        parts.put("large", randomBytes(256 * 1024));
+        HttpTester.Response response = upload(multipart(parts));
+
+        assertNotNull(response);
+        assertEquals(HttpStatus.OK_200, response.getStatus());
+        assertEquals(2, result.get().size());
+        for (Part part : result.get())
+        {
+            byte[] expected = parts.get(part.getName());
+            assertEquals(part.getName() + ".bin", part.getSubmittedFileName());
+            assertEquals("application/octet-stream", part.getContentType());
+            assertEquals(expected.length, part.getSize());
+            try (InputStream input = part.getInputStream())
+            {
+                assertArrayEquals(expected, IO.readBytes(input));
+            }
+        }
+
+        // Only the large part has been spilled to a file.
+        try (Stream<Path> files = Files.list(workDir.getPath()))
+        {
+            assertEquals(1, files.count());
+        }
+    }
+
+    @Test
+    public void testPartListenerIsNotifiedOfContentChunks() throws Exception
+    {
+        AtomicLong bytes = new AtomicLong();
+        AtomicReference<String> name = new AtomicReference<>();
+        server = new Server();
+        connector = new ServerConnector(server);
+        server.addConnector(connector);
+        server.setHandler(new AbstractHandler()
+        {
+            @Override
+            public void handle(String target, Request baseRequest, HttpServletRequest request, HttpServletResponse response)
+            {
+                baseRequest.setHandled(true);
+                AsyncContext asyncContext = request.startAsync();
+                new AsyncMultiPartFormParser(baseRequest, new AsyncMultiPartFormParser.Listener()
+                {
+                    @Override
+                    public void onPartBegin(AsyncMultiPartFormParser.PartHeaders part)
+                    {
+                        name.set(part.getName());
+                    }
+
+                    @Override
+                    public void onPartContent(AsyncMultiPartFormParser.PartHeaders part, ByteBuffer content, boolean last)
+                    {
+                        bytes.addAndGet(content.remaining());
+                    }
+
+                    @Override
+                    public void onComplete()
+                    {
+                        asyncContext.complete();
+                    }
+                }).start();
+            }
+        });
+        server.start();
+
+        HttpTester.Response response = upload(multipart(Map.of("stream", randomBytes(128 * 1024))));
+
+        assertNotNull(response);
+        assertEquals(HttpStatus.OK_200, response.getStatus());
+        assertEquals("stream", name.get());
+        assertEquals(128 * 1024, bytes.get());
+    }
+
+    @Test
+    public void testMaxFileSize() throws Exception
+    {
+        AtomicReference<List<Part>> result = new AtomicReference<>();
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        start(new MultipartConfigElement(null, 4096, -1, 1024), result, failure);
+
+        HttpTester.Response response = upload(multipart(Map.of("large", randomBytes(64 * 1024))));
+
+        assertNotNull(response);
+        assertEquals(HttpStatus.BAD_REQUEST_400, response.getStatus());
+        assertThat(failure.get().getMessage(), containsString("exceeds max filesize"));
+        // The spilled file has been deleted.
+        try (Stream<Path> files = Files.list(workDir.getPath()))
+        {
+            assertEquals(0, files.count());
+        }
+    }
+
+    @Test
+    public void testIncompleteMultipart() throws Exception
+    {
+        AtomicReference<List<Part>> result = new AtomicReference<>();
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        start(new MultipartConfigElement(null, -1, -1, 1024), result, failure);
+
+        byte[] content = multipart(Map.of("part", randomBytes(2048)));
+        byte[] truncated = new byte[content.length - BOUNDARY.length() - 8];
+        System.arraycopy(content, 0, truncated, 0, truncated.length);
+        HttpTester.Response response = upload(truncated);
+
+        assertNotNull(response);
+        assertEquals(HttpStatus.BAD_REQUEST_400, response.getStatus());
+        assertThat(failure.get().getMessage(), containsString("Incomplete Multipart"));
+    }
+}
@@ -0,0 +1,214 @@
+//
+// ========================================================================
+// Copyright (c) 1995-2022 Mort Bay Consulting Pty Ltd and others.
+//
+// This program and the accompanying materials are made available under the
+// terms of the Eclipse Public License v. 2.0 which is available at
+// https://www.eclipse.org/legal/epl-2.0, or the Apache License, Version 2.0
+// which is available at https://www.apache.org/licenses/LICENSE-2.0.
+//
+// SPDX-License-Identifier: EPL-2.0 OR Apache-2.0
+// ========================================================================
+//
+
+package org.eclipse.jetty.server;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import javax.servlet.AsyncContext;
+import javax.servlet.ReadListener;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.eclipse.jetty.http.HttpStatus;
+import org.eclipse.jetty.http.HttpTester;
+import org.eclipse.jetty.server.handler.AbstractHandler;
+import org.eclipse.jetty.util.BufferUtil;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class HttpInputReadContentTest
+{
+    private Server server;
+    private ServerConnector connector;
+
+    private void start(AbstractHandler handler) throws Exception
+    {
+        server = new Server();
+        connector = new ServerConnector(server);
+        server.addConnector(connector);
+        server.setHandler(handler);
+        server.start();
+    }
+
+    @AfterEach
+    public void dispose() throws Exception
+    {
+        if (server != null)
+            server.stop();
+    }
+
+    private HttpTester.Response upload(byte[] content) throws Exception
+    {
+        try (Socket socket = new Socket("localhost", connector.getLocalPort()))
+        {
+            OutputStream output = socket.getOutputStream();
+            String request = "POST / HTTP/1.1\r\n" +
+                "Host: localhost\r\n" +
+                "Content-Length: " + content.length + "\r\n" +
+                "Connection: close\r\n" +
+                "\r\n";
+            output.write(request.getBytes(StandardCharsets.UTF_8));
+            // Write in pieces, so that the server fills several request buffers.
+            for (int offset = 0; offset < content.length; offset += 4096)
+            {
+                output.write(content, offset, Math.min(4096, content.length - offset));
+                output.flush();
+            }
+            InputStream input = socket.getInputStream();
+            return HttpTester.parseResponse(HttpTester.from(input));
+        }
+    }
+
+    private static byte[] randomBytes(int length)
+    {
+        byte[] bytes = new byte[length];
+        new Random().nextBytes(bytes);
+        return bytes;
+    }
+
+    private static void writeTo(ByteArrayOutputStream output, List<HttpInput.Content> contents)
+    {
+        for (HttpInput.Content content : contents)
+        {
+            ByteBuffer buffer = content.getByteBuffer();
+            byte[] bytes = new byte[buffer.remaining()];
+            buffer.get(bytes);
+            output.writeBytes(bytes);
+            content.succeeded();
+        }
+    }
+
+    @Test
+    public void testBlockingReadContent() throws Exception
+    {
+        ByteArrayOutputStream received = new ByteArrayOutputStream();
+        start(new AbstractHandler()
+        {
+            @Override
+            public void handle(String target, Request baseRequest, HttpServletRequest request, HttpServletResponse response) throws IOException
+            {
+                baseRequest.setHandled(true);
+                HttpInput input = baseRequest.getHttpInput();
+                // Retain all the contents until the end of the request, so
+                // that the request buffers cannot be reused while in use.
+                List<HttpInput.Content> contents = new ArrayList<>();
+                while (true)
+                {
+                    HttpInput.Content content = input.readContent();
+                    if (content.isSpecial())
+                    {
+                        assertTrue(content.isEof());
+                        break;
+                    }
+                    contents.add(content);
+                }
+                assertTrue(input.isFinished());
+                writeTo(received, contents);
+            }
+        });
+
+        byte[] content = randomBytes(256 * 1024);
+        HttpTester.Response response = upload(content);
+
+        assertNotNull(response);
+        assertEquals(HttpStatus.OK_200, response.getStatus());
+        assertArrayEquals(content, received.toByteArray());
+    }
+
+    @Test
+    public void testAsyncReadContent() throws Exception
+    {
+        ByteArrayOutputStream received = new ByteArrayOutputStream();
+        start(new AbstractHandler()
+        {
+            @Override
+            public void handle(String target, Request baseRequest, HttpServletRequest request, HttpServletResponse response) throws IOException
+            {
+                baseRequest.setHandled(true);
+                AsyncContext asyncContext = request.startAsync();
+                HttpInput input = baseRequest.getHttpInput();
+                List<HttpInput.Content> contents = new ArrayList<>();
+                input.setReadListener(new ReadListener()
+                {
+                    @Override
+                    public void onDataAvailable() throws IOException
+                    {
+                        while (input.isReady())
+                        {
+                            HttpInput.Content content = input.readContent();
+                            if (content.isSpecial())
+                                return;
+                            contents.add(content);
+                        }
+                    }
+
+                    @Override
+                    public void onAllDataRead()
+                    {
+                        writeTo(received, contents);
+                        asyncContext.complete();
+                    }
+
+                    @Override
+                    public void onError(Throwable x)
+                    {
+                        contents.forEach(content -> content.failed(x));
+                        response.setStatus(HttpStatus.INTERNAL_SERVER_ERROR_500);
+                        asyncContext.complete();
+                    }
+                });
+            }
+        });
+
+        byte[] content = randomBytes(256 * 1024);
+        HttpTester.Response response = upload(content);
+
+        assertNotNull(response);
+        assertEquals(HttpStatus.OK_200, response.getStatus());
+        assertArrayEquals(content, received.toByteArray());
+    }
+
+    @Test
+    public void testTakeCopiesContent()
+    {
+        ByteBuffer buffer = BufferUtil.toBuffer("0123456789", StandardCharsets.UTF_8);
+        buffer.position(4);
+        HttpInput.Content content = new HttpInput.Content(buffer);
+
+        HttpInput.Content taken = content.take();
+
+        assertTrue(content.isEmpty());
+        assertEquals("456789", BufferUtil.toString(taken.getByteBuffer(), StandardCharsets.UTF_8));
+        // The taken bytes do not change when the original buffer is reused.
+        BufferUtil.clearToFill(buffer);
+        buffer.put("abcdefghij".getBytes(StandardCharsets.UTF_8));
+        assertEquals("456789", BufferUtil.toString(taken.getByteBuffer(), StandardCharsets.UTF_8));
+
+        assertThrows(IllegalStateException.class, () -> new HttpInput.EofContent().take());
+    }
+}
@@ -0,0 +1,215 @@
+//
+// ========================================================================
+// Copyright (c) 1995-2022 Mort Bay Consulting Pty Ltd and others.
+//
+// This program and the accompanying materials are made available under the
+// terms of the Eclipse Public License v. 2.0 which is available at
+// https://www.eclipse.org/legal/epl-2.0, or the Apache License, Version 2.0
+// which is available at https://www.apache.org/licenses/LICENSE-2.0.
+//
+// SPDX-License-Identifier: EPL-2.0 OR Apache-2.0
+// ========================================================================
+//
+
+package org.eclipse.jetty.server;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import javax.servlet.AsyncContext;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.eclipse.jetty.http.HttpStatus;
+import org.eclipse.jetty.http.HttpTester;
+import org.eclipse.jetty.server.LocalConnector.LocalEndPoint;
+import org.eclipse.jetty.server.handler.AbstractHandler;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class PipelinedResponseAggregationTest
+{
+    private final AtomicReference<HttpConnection> connection = new AtomicReference<>();
+    private final CompletableFuture<AsyncContext> suspended = new CompletableFuture<>();
+    private final CountDownLatch blocked = new CountDownLatch(1);
+    private final CountDownLatch unblock = new CountDownLatch(1);
+    private final CountDownLatch unblocked = new CountDownLatch(1);
+    private Server server;
+    private LocalConnector connector;
+
+    private void start(HttpConfiguration config) throws Exception
+    {
+        server = new Server();
+        connector = new LocalConnector(server, new HttpConnectionFactory(config));
+        server.addConnector(connector);
+        server.setHandler(new AbstractHandler()
+        {
+            @Override
+            public void handle(String target, Request baseRequest, HttpServletRequest request, HttpServletResponse response) throws IOException
+            {
+                baseRequest.setHandled(true);
+                connection.set(HttpConnection.getCurrentConnection());
+                response.setContentType("text/plain");
+                if ("/suspend".equals(target))
+                {
+                    suspended.complete(request.startAsync());
+                    return;
+                }
+                if ("/block".equals(target))
+                {
+                    blocked.countDown();
+                    try
+                    {
+                        unblock.await(15, TimeUnit.SECONDS);
+                        unblocked.countDown();
+                    }
+                    catch (InterruptedException x)
+                    {
+                        throw new IOException(x);
+                    }
+                }
+                response.getOutputStream().write(target.getBytes(StandardCharsets.UTF_8));
+            }
+        });
+        server.start();
+    }
+
+    @AfterEach
+    public void dispose() throws Exception
+    {
+        if (server != null)
+            server.stop();
+    }
+
+    private static HttpConfiguration aggregating()
+    {
+        HttpConfiguration config = new HttpConfiguration();
+        config.setPipelinedResponseAggregationSize(4096);
+        return config;
+    }
+
+    private static String request(String path)
+    {
+        return "GET " + path + " HTTP/1.1\r\n" +
+            "Host: localhost\r\n" +
+            "\r\n";
+    }
+
+    private static void assertResponse(LocalEndPoint endPoint, String content) throws Exception
+    {
+        HttpTester.Response response = HttpTester.parseResponse(endPoint.getResponse(false, 5, TimeUnit.SECONDS));
+        assertNotNull(response);
+        assertEquals(HttpStatus.OK_200, response.getStatus());
+        assertEquals(content, response.getContent());
+    }
+
+    private void pipeline(int count) throws Exception
+    {
+        StringBuilder requests = new StringBuilder();
+        for (int i = 0; i < count; ++i)
+        {
+            requests.append(request("/" + i));
+        }
+        LocalEndPoint endPoint = connector.executeRequest(requests.toString());
+        for (int i = 0; i < count; ++i)
+        {
+            assertResponse(endPoint, "/" + i);
+        }
+    }
+
+    @Test
+    public void testAggregationIsDisabledByDefault() throws Exception
+    {
+        start(new HttpConfiguration());
+
+        pipeline(5);
+
+        // All the requests but the first are pipelined.
+        assertEquals(4, connection.get().getPipelinedRequests());
+        assertEquals(0, connection.get().getAggregatedResponses());
+    }
+
+    @Test
+    public void testPipelinedResponsesAreAggregated() throws Exception
+    {
+        start(aggregating());
+
+        pipeline(5);
+
+        // All the responses but the last are aggregated.
+        assertEquals(4, connection.get().getPipelinedRequests());
+        assertEquals(4, connection.get().getAggregatedResponses());
+    }
+
+    @Test
+    public void testMaxPipelinedResponseAggregation() throws Exception
+    {
+        HttpConfiguration config = aggregating();
+        config.setMaxPipelinedResponseAggregation(2);
+        start(config);
+
+        pipeline(5);
+
+        // Responses 0 and 1 are aggregated and written with response 2,
+        // then response 3 is aggregated and written with response 4.
+        assertEquals(3, connection.get().getAggregatedResponses());
+    }
+
+    @Test
+    public void testResponsesLargerThanAggregationSizeAreNotAggregated() throws Exception
+    {
+        HttpConfiguration config = new HttpConfiguration();
+        config.setPipelinedResponseAggregationSize(16);
+        start(config);
+
+        pipeline(3);
+
+        assertEquals(0, connection.get().getAggregatedResponses());
+    }
+
+    @Test
+    public void testAggregatedResponseIsWrittenWhenNextPipelinedRequestSuspends() throws Exception
+    {
+        HttpConfiguration config = aggregating();
+        config.setMaxPipelinedResponseAggregationDelay(0);
+        start(config);
+
+        LocalEndPoint endPoint = connector.executeRequest(request("/first") + request("/suspend"));
+
+        // The first response is written although the second request does not complete.
+        AsyncContext asyncContext = suspended.get(5, TimeUnit.SECONDS);
+        assertResponse(endPoint, "/first");
+        assertEquals(1, connection.get().getAggregatedResponses());
+
+        asyncContext.getResponse().getOutputStream().write("/second".getBytes(StandardCharsets.UTF_8));
+        asyncContext.complete();
+        assertResponse(endPoint, "/second");
+        assertEquals(1, connection.get().getPipelinedRequests());
+    }
+
+    @Test
+    public void testAggregatedResponseIsWrittenAfterMaxDelay() throws Exception
+    {
+        HttpConfiguration config = aggregating();
+        config.setMaxPipelinedResponseAggregationDelay(100);
+        start(config);
+
+        LocalEndPoint endPoint = connector.executeRequest(request("/first") + request("/block"));
+
+        // The first response is written although the second request is still being handled.
+        assertTrue(blocked.await(5, TimeUnit.SECONDS));
+        assertResponse(endPoint, "/first");
+        assertEquals(1, unblocked.getCount());
+        assertEquals(1, connection.get().getAggregatedResponses());
+
+        unblock.countDown();
+        assertResponse(endPoint, "/block");
+    }
+}
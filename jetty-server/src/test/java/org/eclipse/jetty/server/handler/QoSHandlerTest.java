@@ -0,0 +1,321 @@
+//
+// ========================================================================
+// Copyright (c) 1995-2022 Mort Bay Consulting Pty Ltd and others.
+//
+// This program and the accompanying materials are made available under the
+// terms of the Eclipse Public License v. 2.0 which is available at
+// https://www.eclipse.org/legal/epl-2.0, or the Apache License, Version 2.0
+// which is available at https://www.apache.org/licenses/LICENSE-2.0.
+//
+// SPDX-License-Identifier: EPL-2.0 OR Apache-2.0
+// ========================================================================
+//
+
+package org.eclipse.jetty.server.handler;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntSupplier;
+import javax.servlet.AsyncContext;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.eclipse.jetty.http.HttpStatus;
+import org.eclipse.jetty.http.HttpTester;
+import org.eclipse.jetty.server.LocalConnector;
+import org.eclipse.jetty.server.LocalConnector.LocalEndPoint;
+import org.eclipse.jetty.server.Request;
+import org.eclipse.jetty.server.Server;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.anyOf;
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.is;
+
+public class QoSHandlerTest
+{
+    private Server _server;
+    private LocalConnector _local;
+    private QoSHandler _qos;
+    private final List<String> _handled = new CopyOnWriteArrayList<>();
+    private final CountDownLatch _proceed = new CountDownLatch(1);
+
+    @BeforeEach
+    public void before() throws Exception
+    {
+        _server = new Server();
+        _local = new LocalConnector(_server);
+        _server.addConnector(_local);
+        _qos = new QoSHandler();
+        _qos.setMaxRequests(1);
+        _qos.setClassHeader("X-Tenant");
+        _qos.setHandler(new AbstractHandler()
+        {
+            @Override
+            public void handle(String target, Request baseRequest, HttpServletRequest request, HttpServletResponse response) throws IOException
+            {
+                baseRequest.setHandled(true);
+                if ("/async".equals(target))
+                {
+                    AsyncContext asyncContext = request.startAsync();
+                    _handled.add(request.getHeader("X-Tenant"));
+                    new Thread(() ->
+                    {
+                        try
+                        {
+                            _proceed.await(5, TimeUnit.SECONDS);
+                        }
+                        catch (InterruptedException ignored)
+                        {
+                        }
+                        asyncContext.complete();
+                    }).start();
+                    return;
+                }
+                if ("/sleep".equals(target))
+                {
+                    try
+                    {
+                        Thread.sleep(ThreadLocalRandom.current().nextInt(3));
+                    }
+                    catch (InterruptedException x)
+                    {
+                        throw new IOException(x);
+                    }
+                }
+                if ("/block".equals(target))
+                {
+                    try
+                    {
+                        _proceed.await(5, TimeUnit.SECONDS);
+                    }
+                    catch (InterruptedException x)
+                    {
+                        throw new IOException(x);
+                    }
+                }
+                _handled.add(request.getHeader("X-Tenant"));
+                response.setStatus(HttpStatus.OK_200);
+            }
+        });
+        _server.setHandler(_qos);
+    }
+
+    @AfterEach
+    public void after() throws Exception
+    {
+        _proceed.countDown();
+        _server.stop();
+    }
+
+    private LocalEndPoint send(String path, String tenant)
+    {
+        return _local.executeRequest("GET " + path + " HTTP/1.1\r\n" +
+            "Host: localhost\r\n" +
+            "X-Tenant: " + tenant + "\r\n" +
+            "\r\n");
+    }
+
+    private static int status(LocalEndPoint endPoint) throws Exception
+    {
+        HttpTester.Response response = HttpTester.parseResponse(endPoint.getResponse(false, 5, TimeUnit.SECONDS));
+        return response.getStatus();
+    }
+
+    private static void await(IntSupplier value, int expected) throws InterruptedException
+    {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (value.getAsInt() != expected && System.nanoTime() < deadline)
+        {
+            Thread.sleep(10);
+        }
+        assertThat(value.getAsInt(), is(expected));
+    }
+
+    @Test
+    public void testWeightedFairQueueing() throws Exception
+    {
+        _qos.addQoSClass("premium", 3, 100, 0);
+        _qos.addQoSClass("free", 1, 100, 0);
+        _server.start();
+
+        LocalEndPoint blocked = send("/block", "free");
+        await(_qos::getActiveRequests, 1);
+
+        List<LocalEndPoint> endPoints = new ArrayList<>();
+        for (int i = 0; i < 4; ++i)
+        {
+            endPoints.add(send("/", "free"));
+            await(_qos::getQueuedRequests, endPoints.size());
+        }
+        for (int i = 0; i < 4; ++i)
+        {
+            endPoints.add(send("/", "premium"));
+            await(_qos::getQueuedRequests, endPoints.size());
+        }
+
+        _proceed.countDown();
+        assertThat(status(blocked), is(HttpStatus.OK_200));
+        for (LocalEndPoint endPoint : endPoints)
+        {
+            assertThat(status(endPoint), is(HttpStatus.OK_200));
+        }
+
+        // Premium requests are resumed 3 times as often as free requests, although they queued last.
+        assertThat(_handled, is(List.of("free", "premium", "free", "premium", "premium", "premium", "free", "free", "free")));
+        assertThat(_qos.getActiveRequests(), is(0));
+        assertThat(_qos.getQueuedRequests(), is(0));
+    }
+
+    @Test
+    public void testQueueFullRejected() throws Exception
+    {
+        _qos.addQoSClass("free", 1, 1, 0);
+        _server.start();
+
+        LocalEndPoint blocked = send("/block", "free");
+        await(_qos::getActiveRequests, 1);
+        LocalEndPoint queued = send("/", "free");
+        await(_qos::getQueuedRequests, 1);
+
+        // The queue of the class is full, the request is rejected without waiting.
+        assertThat(status(send("/", "free")), is(HttpStatus.SERVICE_UNAVAILABLE_503));
+
+        _proceed.countDown();
+        assertThat(status(blocked), is(HttpStatus.OK_200));
+        assertThat(status(queued), is(HttpStatus.OK_200));
+
+        String statistics = _qos.getQoSClassStatistics().get("free");
+        assertThat(statistics, containsString("resumed=1,rejected=1"));
+    }
+
+    @Test
+    public void testQueueSlotReleasedWhenSuspensionFails() throws Exception
+    {
+        _qos.addQoSClass("free", 1, 1, 0);
+        HandlerWrapper syncOnly = new HandlerWrapper()
+        {
+            @Override
+            public void handle(String target, Request baseRequest, HttpServletRequest request, HttpServletResponse response) throws IOException, ServletException
+            {
+                if ("/sync".equals(target))
+                    baseRequest.setAsyncSupported(false, "test");
+                super.handle(target, baseRequest, request, response);
+            }
+        };
+        syncOnly.setHandler(_qos);
+        _server.setHandler(syncOnly);
+        _server.start();
+
+        LocalEndPoint blocked = send("/block", "free");
+        await(_qos::getActiveRequests, 1);
+
+        // The request cannot be suspended, so the slot reserved in the queue is released.
+        assertThat(status(send("/sync", "free")), is(HttpStatus.INTERNAL_SERVER_ERROR_500));
+        assertThat(_qos.getQueuedRequests(), is(0));
+        LocalEndPoint queued = send("/", "free");
+        await(_qos::getQueuedRequests, 1);
+
+        _proceed.countDown();
+        assertThat(status(blocked), is(HttpStatus.OK_200));
+        assertThat(status(queued), is(HttpStatus.OK_200));
+        assertThat(_qos.getQoSClassStatistics().get("free"), containsString("resumed=1,rejected=1"));
+    }
+
+    @Test
+    public void testMaxWaitRejected() throws Exception
+    {
+        _qos.addQoSClass("free", 1, 10, 500);
+        _qos.addQoSClass("premium", 1, 10, 0);
+        _server.start();
+
+        LocalEndPoint blocked = send("/block", "premium");
+        await(_qos::getActiveRequests, 1);
+        LocalEndPoint free = send("/", "free");
+        LocalEndPoint premium = send("/", "premium");
+        await(_qos::getQueuedRequests, 2);
+
+        // The free request is rejected when its wait time expires, the premium one keeps waiting.
+        assertThat(status(free), is(HttpStatus.SERVICE_UNAVAILABLE_503));
+        assertThat(_qos.getQueuedRequests(), is(1));
+
+        _proceed.countDown();
+        assertThat(status(blocked), is(HttpStatus.OK_200));
+        assertThat(status(premium), is(HttpStatus.OK_200));
+        assertThat(_handled, is(List.of("premium", "premium")));
+
+        Map<String, String> statistics = _qos.getQoSClassStatistics();
+        assertThat(statistics.get("free"), containsString("resumed=0,rejected=1"));
+        assertThat(statistics.get("premium"), containsString("resumed=1,rejected=0"));
+        await(_qos::getActiveRequests, 0);
+    }
+
+    @Test
+    public void testAsyncRequestHoldsPermitUntilComplete() throws Exception
+    {
+        _qos.addQoSClass("free", 1, 10, 0);
+        _server.start();
+
+        LocalEndPoint async = send("/async", "free");
+        await(() -> _handled.size(), 1);
+        LocalEndPoint queued = send("/", "free");
+
+        // The asynchronous request still holds the permit after its dispatch returned.
+        await(_qos::getQueuedRequests, 1);
+        assertThat(_qos.getActiveRequests(), is(1));
+
+        _proceed.countDown();
+        assertThat(status(async), is(HttpStatus.OK_200));
+        assertThat(status(queued), is(HttpStatus.OK_200));
+        await(_qos::getActiveRequests, 0);
+    }
+
+    @Test
+    public void testTimeoutRacingRelease() throws Exception
+    {
+        // Wait times close to the handling times, so that timeouts race with releases.
+        _qos.setMaxRequests(2);
+        _qos.addQoSClass("free", 1, 100, 2);
+        _server.start();
+
+        for (int round = 0; round < 50; ++round)
+        {
+            List<LocalEndPoint> endPoints = new ArrayList<>();
+            for (int i = 0; i < 8; ++i)
+            {
+                endPoints.add(send("/sleep", "free"));
+            }
+            for (LocalEndPoint endPoint : endPoints)
+            {
+                // Never the 500 of an async timeout not handled by the QoSHandler.
+                assertThat(status(endPoint), anyOf(is(HttpStatus.OK_200), is(HttpStatus.SERVICE_UNAVAILABLE_503)));
+            }
+        }
+
+        // No permit has been lost.
+        await(_qos::getActiveRequests, 0);
+        assertThat(_qos.getQueuedRequests(), is(0));
+        assertThat(status(send("/", "free")), is(HttpStatus.OK_200));
+    }
+
+    @Test
+    public void testDefaultClass() throws Exception
+    {
+        _server.start();
+
+        assertThat(status(send("/", "unknown")), is(HttpStatus.OK_200));
+        assertThat(_qos.getQoSClassStatistics().keySet(), is(Set.of(QoSHandler.DEFAULT_CLASS)));
+        assertThat(_qos.getActiveRequests(), is(0));
+    }
+}
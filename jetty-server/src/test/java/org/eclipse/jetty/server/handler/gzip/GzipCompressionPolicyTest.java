@@ -0,0 +1,95 @@
+//
+// ========================================================================
+// Copyright (c) 1995-2022 Mort Bay Consulting Pty Ltd and others.
+//
+// This program and the accompanying materials are made available under the
+// terms of the Eclipse Public License v. 2.0 which is available at
+// https://www.eclipse.org/legal/epl-2.0, or the Apache License, Version 2.0
+// which is available at https://www.apache.org/licenses/LICENSE-2.0.
+//
+// SPDX-License-Identifier: EPL-2.0 OR Apache-2.0
+// ========================================================================
+//
+
+package org.eclipse.jetty.server.handler.gzip;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.eclipse.jetty.server.Request;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class GzipCompressionPolicyTest
+{
+    private final AtomicReference<Double> load = new AtomicReference<>(0.0D);
+    private GzipCompressionPolicy policy;
+
+    @BeforeEach
+    public void prepare()
+    {
+        policy = new GzipCompressionPolicy()
+        {
+            @Override
+            protected double getLoad(Request request)
+            {
+                return load.get();
+            }
+        };
+        policy.setMinCompressionLevel(1);
+        policy.setMaxCompressionLevel(9);
+        policy.setLowLoad(0.2D);
+        policy.setHighLoad(0.6D);
+    }
+
+    @Test
+    public void testLevelDependsOnLoad()
+    {
+        load.set(0.1D);
+        assertEquals(9, policy.getCompressionLevel(null, "text/plain", -1));
+        load.set(0.4D);
+        assertEquals(5, policy.getCompressionLevel(null, "text/plain", -1));
+        load.set(0.9D);
+        assertEquals(1, policy.getCompressionLevel(null, "text/plain", -1));
+    }
+
+    @Test
+    public void testLargeContentIsCappedAtMiddleLevel()
+    {
+        policy.setLargeContentLength(1024);
+        assertEquals(9, policy.getCompressionLevel(null, "text/plain", 1024));
+        assertEquals(5, policy.getCompressionLevel(null, "text/plain", 1025));
+    }
+
+    @Test
+    public void testPoorlyCompressingMimeTypeIsSampled()
+    {
+        policy.setMinSamples(2);
+        policy.setMaxCompressionRatio(0.9D);
+        policy.setSamplePeriod(4);
+
+        policy.onCompressed("image/x-custom", 1000, 990);
+        policy.onCompressed("text/plain", 1000, 200);
+        // Not enough samples yet.
+        assertEquals(9, policy.getCompressionLevel(null, "image/x-custom", -1));
+
+        policy.onCompressed("image/x-custom", 1000, 1010);
+        policy.onCompressed("text/plain", 1000, 200);
+        assertEquals(1.0D, policy.getCompressionRatio("image/x-custom"));
+        assertEquals(0.2D, policy.getCompressionRatio("text/plain"));
+
+        int compressed = 0;
+        for (int i = 0; i < 8; ++i)
+        {
+            if (policy.getCompressionLevel(null, "image/x-custom", -1) != GzipCompressionPolicy.SKIP_COMPRESSION)
+                ++compressed;
+            assertEquals(9, policy.getCompressionLevel(null, "text/plain", -1));
+        }
+        assertEquals(2, compressed);
+        assertEquals(6, policy.getSkipped());
+
+        policy.reset();
+        assertEquals(9, policy.getCompressionLevel(null, "image/x-custom", -1));
+    }
+}
@@ -27,6 +27,8 @@ import java.util.Objects;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.function.Consumer;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
@@ -64,6 +66,8 @@ import org.eclipse.jetty.util.MultiException;
 import org.eclipse.jetty.util.MultiMap;
 import org.eclipse.jetty.util.annotation.ManagedAttribute;
 import org.eclipse.jetty.util.annotation.ManagedObject;
+import org.eclipse.jetty.util.annotation.ManagedOperation;
+import org.eclipse.jetty.util.component.Dumpable;
 import org.eclipse.jetty.util.component.DumpableCollection;
 import org.eclipse.jetty.util.component.LifeCycle;
 import org.eclipse.jetty.util.thread.AutoLock;
@@ -118,6 +122,10 @@ public class ServletHandler extends ScopedHandler
 
     @SuppressWarnings("unchecked")
     protected final ConcurrentMap<String, FilterChain>[] _chainCache = new ConcurrentMap[FilterMapping.ALL];
+    private final ChainCache[] _chainCaches = new ChainCache[FilterMapping.ALL];
+    private final LongAdder _chainCacheHits = new LongAdder();
+    private final LongAdder _chainCacheMisses = new LongAdder();
+    private final LongAdder _chainCacheEvictions = new LongAdder();
 
     /**
      * Constructor.
@@ -153,7 +161,9 @@ public class ServletHandler extends ScopedHandler
             DumpableCollection.from("filterMappings " + this, _filterMappings),
             DumpableCollection.from("servlets " + this, _servlets),
             DumpableCollection.from("servletMappings " + this, _servletMappings),
-            DumpableCollection.from("durable " + this, _durable));
+            DumpableCollection.from("durable " + this, _durable),
+            Dumpable.named("filterChainsCache", String.format("size=%d,hits=%d,misses=%d,evictions=%d",
+                getFilterChainsCacheSize(), getFilterChainsCacheHits(), getFilterChainsCacheMisses(), getFilterChainsCacheEvictions())));
     }
 
     @Override
@@ -191,11 +201,11 @@ public class ServletHandler extends ScopedHandler
 
             if (isFilterChainsCached())
             {
-                _chainCache[FilterMapping.REQUEST] = new ConcurrentHashMap<>();
-                _chainCache[FilterMapping.FORWARD] = new ConcurrentHashMap<>();
-                _chainCache[FilterMapping.INCLUDE] = new ConcurrentHashMap<>();
-                _chainCache[FilterMapping.ERROR] = new ConcurrentHashMap<>();
-                _chainCache[FilterMapping.ASYNC] = new ConcurrentHashMap<>();
+                newChainCache(FilterMapping.REQUEST);
+                newChainCache(FilterMapping.FORWARD);
+                newChainCache(FilterMapping.INCLUDE);
+                newChainCache(FilterMapping.ERROR);
+                newChainCache(FilterMapping.ASYNC);
             }
 
             if (_contextHandler == null)
@@ -575,14 +585,38 @@ public class ServletHandler extends ScopedHandler
     protected FilterChain getFilterChain(Request baseRequest, String pathInContext, ServletHolder servletHolder)
     {
         Objects.requireNonNull(servletHolder);
-        String key = pathInContext == null ? servletHolder.getName() : pathInContext;
         int dispatch = FilterMapping.dispatch(baseRequest.getDispatcherType());
 
+        // The name filter mappings only depend on the servlet, so the chain is keyed by
+        // the servlet and by the path filter mappings that apply, rather than by path,
+        // so that distinct paths mapped to the same servlet and filters share the chain.
+        List<FilterMapping> filterPathMappings = pathInContext == null ? null : _filterPathMappings;
+        StringBuilder appliedPathMappings = null;
+        if (filterPathMappings != null)
+        {
+            for (int i = 0; i < filterPathMappings.size(); ++i)
+            {
+                if (filterPathMappings.get(i).appliesTo(pathInContext, dispatch))
+                {
+                    if (appliedPathMappings == null)
+                        appliedPathMappings = new StringBuilder(servletHolder.getName()).append('\u0000');
+                    else
+                        appliedPathMappings.append(',');
+                    appliedPathMappings.append(i);
+                }
+            }
+        }
+        String key = appliedPathMappings == null ? servletHolder.getName() : appliedPathMappings.toString();
+
         if (_filterChainsCached)
         {
-            FilterChain chain = _chainCache[dispatch].get(key);
+            FilterChain chain = _chainCaches[dispatch].get(key);
             if (chain != null)
+            {
+                _chainCacheHits.increment();
                 return chain;
+            }
+            _chainCacheMisses.increment();
         }
 
         // Build the filter chain from the inside out.
@@ -607,10 +641,11 @@ public class ServletHandler extends ScopedHandler
             }
         }
 
-        if (pathInContext != null && _filterPathMappings != null)
+        if (appliedPathMappings != null)
         {
-            for (FilterMapping mapping : _filterPathMappings)
+            for (int i = 0; i < filterPathMappings.size(); ++i)
             {
+                FilterMapping mapping = filterPathMappings.get(i);
                 if (mapping.appliesTo(pathInContext, dispatch))
                     chain = newFilterChain(mapping.getFilterHolder(), chain == null ? new ChainEnd(servletHolder) : chain);
             }
@@ -618,18 +653,16 @@ public class ServletHandler extends ScopedHandler
 
         if (_filterChainsCached)
         {
-            final Map<String, FilterChain> cache = _chainCache[dispatch];
-            // Do we have too many cached chains?
-            if (_maxFilterChainsCacheSize > 0 && cache.size() >= _maxFilterChainsCacheSize)
+            chain = chain == null ? new ChainEnd(servletHolder) : chain;
+            if (LOG.isDebugEnabled())
+                LOG.debug("{} cached filter chain for {}: {}", this, baseRequest.getDispatcherType(), chain);
+            int evicted = _chainCaches[dispatch].put(key, chain, _maxFilterChainsCacheSize);
+            if (evicted > 0)
             {
-                // flush the cache
-                LOG.debug("{} flushed filter chain cache for {}", this, baseRequest.getDispatcherType());
-                cache.clear();
+                if (LOG.isDebugEnabled())
+                    LOG.debug("{} evicted {} filter chain(s) for {}", this, evicted, baseRequest.getDispatcherType());
+                _chainCacheEvictions.add(evicted);
             }
-            chain = chain == null ? new ChainEnd(servletHolder) : chain;
-            // flush the cache
-            LOG.debug("{} cached filter chain for {}: {}", this, baseRequest.getDispatcherType(), chain);
-            cache.put(key, chain);
         }
         return chain;
     }
@@ -647,16 +680,20 @@ public class ServletHandler extends ScopedHandler
 
     protected void invalidateChainsCache()
     {
-        if (_chainCache[FilterMapping.REQUEST] != null)
+        for (ChainCache cache : _chainCaches)
         {
-            _chainCache[FilterMapping.REQUEST].clear();
-            _chainCache[FilterMapping.FORWARD].clear();
-            _chainCache[FilterMapping.INCLUDE].clear();
-            _chainCache[FilterMapping.ERROR].clear();
-            _chainCache[FilterMapping.ASYNC].clear();
+            if (cache != null)
+                cache.clear();
         }
     }
 
+    private void newChainCache(int dispatch)
+    {
+        ChainCache cache = new ChainCache();
+        _chainCaches[dispatch] = cache;
+        _chainCache[dispatch] = cache._chains;
+    }
+
     /**
      * @return true if the handler is started and there are no unavailable servlets
      */
@@ -785,11 +822,50 @@ public class ServletHandler extends ScopedHandler
     /**
      * @return whether the filter chains are cached.
      */
+    @ManagedAttribute("Whether filter chains are cached")
     public boolean isFilterChainsCached()
     {
         return _filterChainsCached;
     }
 
+    @ManagedAttribute("The number of entries in the filter chain cache")
+    public int getFilterChainsCacheSize()
+    {
+        int size = 0;
+        for (ConcurrentMap<String, FilterChain> cache : _chainCache)
+        {
+            if (cache != null)
+                size += cache.size();
+        }
+        return size;
+    }
+
+    @ManagedAttribute("The number of filter chain cache hits")
+    public long getFilterChainsCacheHits()
+    {
+        return _chainCacheHits.longValue();
+    }
+
+    @ManagedAttribute("The number of filter chain cache misses")
+    public long getFilterChainsCacheMisses()
+    {
+        return _chainCacheMisses.longValue();
+    }
+
+    @ManagedAttribute("The number of filter chains evicted from the cache")
+    public long getFilterChainsCacheEvictions()
+    {
+        return _chainCacheEvictions.longValue();
+    }
+
+    @ManagedOperation(value = "Resets the filter chain cache statistics", impact = "ACTION")
+    public void resetFilterChainsCacheStatistics()
+    {
+        _chainCacheHits.reset();
+        _chainCacheMisses.reset();
+        _chainCacheEvictions.reset();
+    }
+
     /**
      * Add a holder for a listener
      *
@@ -1403,10 +1479,10 @@ public class ServletHandler extends ScopedHandler
             _servletPathMap = pm;
 
             // flush filter chain cache
-            for (int i = _chainCache.length; i-- > 0; )
+            for (ChainCache cache : _chainCaches)
             {
-                if (_chainCache[i] != null)
-                    _chainCache[i].clear();
+                if (cache != null)
+                    cache.clear();
             }
 
             if (LOG.isDebugEnabled())
@@ -1508,6 +1584,7 @@ public class ServletHandler extends ScopedHandler
     /**
      * @return The maximum entries in a filter chain cache.
      */
+    @ManagedAttribute("The maximum entries in the filter chain cache")
     public int getMaxFilterChainsCacheSize()
     {
         return _maxFilterChainsCacheSize;
@@ -1516,7 +1593,10 @@ public class ServletHandler extends ScopedHandler
     /**
      * Set the maximum filter chain cache size.
      * Filter chains are cached if {@link #isFilterChainsCached()} is true. If the max cache size
-     * is greater than zero, then the cache is flushed whenever it grows to be this size.
+     * is greater than zero, then the least frequently used chain is evicted whenever the cache
+     * grows to be this size.
+     * Chains are cached by servlet and by the set of path filters that apply, rather than by path,
+     * so the number of entries is usually small even for applications with many distinct paths.
      *
      * @param maxFilterChainsCacheSize the maximum number of entries in a filter chain cache.
      */
@@ -1642,6 +1722,84 @@ public class ServletHandler extends ScopedHandler
         }
     }
 
+    /**
+     * <p>The filter chains cached for a dispatch type, evicted in least frequently used order.</p>
+     * <p>Chains are looked up without locking, and a hit only increments the frequency of the chain.
+     * Frequencies are halved at every eviction, so that chains that were popular in the past
+     * do not stay in the cache forever. Chains put directly in the protected {@code _chainCache}
+     * map have no frequency and are the first to be evicted.</p>
+     */
+    private static class ChainCache
+    {
+        private final ConcurrentMap<String, FilterChain> _chains = new ConcurrentHashMap<>();
+        private final ConcurrentMap<String, AtomicLong> _frequencies = new ConcurrentHashMap<>();
+        private final AutoLock _lock = new AutoLock();
+
+        private FilterChain get(String key)
+        {
+            FilterChain chain = _chains.get(key);
+            if (chain != null)
+            {
+                AtomicLong frequency = _frequencies.get(key);
+                if (frequency != null)
+                    frequency.incrementAndGet();
+            }
+            return chain;
+        }
+
+        /**
+         * @return the number of chains evicted to make room for the new chain
+         */
+        private int put(String key, FilterChain chain, int maxSize)
+        {
+            try (AutoLock l = _lock.lock())
+            {
+                int evicted = 0;
+                if (maxSize > 0 && !_chains.containsKey(key) && _chains.size() >= maxSize)
+                {
+                    // Forget the frequencies of the chains removed directly from the protected map.
+                    _frequencies.keySet().retainAll(_chains.keySet());
+                    while (_chains.size() >= maxSize)
+                    {
+                        String leastFrequent = null;
+                        long minFrequency = Long.MAX_VALUE;
+                        for (String cached : _chains.keySet())
+                        {
+                            AtomicLong frequency = _frequencies.get(cached);
+                            long value = frequency == null ? 0 : frequency.get();
+                            if (value < minFrequency)
+                            {
+                                leastFrequent = cached;
+                                minFrequency = value;
+                            }
+                        }
+                        if (leastFrequent == null)
+                            break;
+                        _chains.remove(leastFrequent);
+                        _frequencies.remove(leastFrequent);
+                        ++evicted;
+                    }
+                    for (AtomicLong frequency : _frequencies.values())
+                    {
+                        frequency.updateAndGet(value -> value >>> 1);
+                    }
+                }
+                _chains.put(key, chain);
+                _frequencies.computeIfAbsent(key, k -> new AtomicLong()).incrementAndGet();
+                return evicted;
+            }
+        }
+
+        private void clear()
+        {
+            try (AutoLock l = _lock.lock())
+            {
+                _chains.clear();
+                _frequencies.clear();
+            }
+        }
+    }
+
     static class ChainEnd implements FilterChain
     {
         private final ServletHolder _servletHolder;
@@ -15,16 +15,20 @@ package org.eclipse.jetty.servlet;
 
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
+import java.io.FilterOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.io.PrintWriter;
 import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
 import java.util.Arrays;
 import java.util.EnumSet;
 import java.util.Enumeration;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.zip.GZIPInputStream;
 import java.util.zip.GZIPOutputStream;
+import java.util.zip.InflaterInputStream;
 import javax.servlet.AsyncContext;
 import javax.servlet.DispatcherType;
 import javax.servlet.Filter;
@@ -40,11 +44,15 @@ import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
 import org.eclipse.jetty.http.CompressedContentFormat;
+import org.eclipse.jetty.http.ContentEncoder;
+import org.eclipse.jetty.http.DeflateContentEncoder;
 import org.eclipse.jetty.http.HttpStatus;
 import org.eclipse.jetty.http.HttpTester;
 import org.eclipse.jetty.server.HttpOutput;
 import org.eclipse.jetty.server.LocalConnector;
 import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.server.handler.gzip.GzipCompressionPolicy;
+import org.eclipse.jetty.server.handler.gzip.GzipContentCache;
 import org.eclipse.jetty.server.handler.gzip.GzipHandler;
 import org.eclipse.jetty.util.BufferUtil;
 import org.eclipse.jetty.util.IO;
@@ -62,6 +70,7 @@ import static org.hamcrest.Matchers.is;
 import static org.hamcrest.Matchers.not;
 import static org.hamcrest.Matchers.nullValue;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 public class GzipHandlerTest
 {
@@ -117,6 +126,7 @@ public class GzipHandlerTest
         context.addServlet(DumpServlet.class, "/dump/*");
         context.addServlet(AsyncServlet.class, "/async/*");
         context.addServlet(BufferServlet.class, "/buffer/*");
+        context.addServlet(StrongETagServlet.class, "/strong/*");
         context.addFilter(CheckFilter.class, "/*", EnumSet.of(DispatcherType.REQUEST));
 
         _server.start();
@@ -175,6 +185,17 @@ public class GzipHandlerTest
         }
     }
 
+    public static class StrongETagServlet extends HttpServlet
+    {
+        @Override
+        protected void doGet(HttpServletRequest req, HttpServletResponse response) throws ServletException, IOException
+        {
+            response.setContentType("text/plain");
+            response.setHeader("ETag", String.format("\"%x\"", __content.hashCode()));
+            response.getWriter().write(__content);
+        }
+    }
+
     public static class TestServlet extends HttpServlet
     {
         @Override
@@ -344,6 +365,206 @@ public class GzipHandlerTest
         assertEquals(__content, testOut.toString("UTF8"));
     }
 
+    @Test
+    public void testContentCache() throws Exception
+    {
+        GzipContentCache cache = new GzipContentCache();
+        gzipHandler.setContentCache(cache);
+
+        for (int i = 0; i < 3; ++i)
+        {
+            HttpTester.Request request = HttpTester.newRequest();
+            request.setMethod("GET");
+            request.setURI("/ctx/strong/content?q=1");
+            request.setVersion("HTTP/1.0");
+            request.setHeader("Host", "tester");
+            request.setHeader("accept-encoding", "gzip");
+
+            HttpTester.Response response = HttpTester.parseResponse(_connector.getResponse(request.generate()));
+
+            assertThat(response.getStatus(), is(200));
+            assertThat(response.get("Content-Encoding"), Matchers.equalToIgnoringCase("gzip"));
+            assertThat(response.get("ETag"), is(String.format("\"%x" + CompressedContentFormat.GZIP.getEtagSuffix() + "\"", __content.hashCode())));
+            InputStream testIn = new GZIPInputStream(new ByteArrayInputStream(response.getContentBytes()));
+            assertEquals(__content, IO.toString(testIn, StandardCharsets.UTF_8));
+        }
+
+        assertEquals(1, cache.getCachedEntries());
+        assertEquals(1, cache.getMisses());
+        assertEquals(2, cache.getHits());
+
+        // A different query is a different entry.
+        HttpTester.Request request = HttpTester.newRequest();
+        request.setMethod("GET");
+        request.setURI("/ctx/strong/content?q=2");
+        request.setVersion("HTTP/1.0");
+        request.setHeader("Host", "tester");
+        request.setHeader("accept-encoding", "gzip");
+        HttpTester.Response response = HttpTester.parseResponse(_connector.getResponse(request.generate()));
+        assertThat(response.getStatus(), is(200));
+        assertEquals(2, cache.getCachedEntries());
+        assertEquals(2, cache.getMisses());
+
+        // Entries larger than the max are evicted.
+        cache.setMaxCachedEntries(1);
+        assertEquals(1, cache.getCachedEntries());
+        assertEquals(1, cache.getEvictions());
+    }
+
+    @Test
+    public void testContentCacheIgnoresWeakETag() throws Exception
+    {
+        GzipContentCache cache = new GzipContentCache();
+        gzipHandler.setContentCache(cache);
+
+        for (int i = 0; i < 2; ++i)
+        {
+            HttpTester.Request request = HttpTester.newRequest();
+            request.setMethod("GET");
+            request.setURI("/ctx/content");
+            request.setVersion("HTTP/1.0");
+            request.setHeader("Host", "tester");
+            request.setHeader("accept-encoding", "gzip");
+
+            HttpTester.Response response = HttpTester.parseResponse(_connector.getResponse(request.generate()));
+
+            assertThat(response.getStatus(), is(200));
+            assertThat(response.get("Content-Encoding"), Matchers.equalToIgnoringCase("gzip"));
+        }
+
+        assertEquals(0, cache.getCachedEntries());
+        assertEquals(0, cache.getHits());
+        assertEquals(0, cache.getMisses());
+    }
+
+    @Test
+    public void testContentEncoder() throws Exception
+    {
+        gzipHandler.addContentEncoder(new DeflateContentEncoder());
+
+        HttpTester.Request request = HttpTester.newRequest();
+        request.setMethod("GET");
+        request.setURI("/ctx/content");
+        request.setVersion("HTTP/1.0");
+        request.setHeader("Host", "tester");
+        request.setHeader("accept-encoding", "gzip, deflate");
+
+        HttpTester.Response response = HttpTester.parseResponse(_connector.getResponse(request.generate()));
+
+        assertThat(response.getStatus(), is(200));
+        assertThat(response.get("Content-Encoding"), Matchers.equalToIgnoringCase("deflate"));
+        assertThat(response.get("ETag"), is(String.format("W/\"%x--deflate\"", __content.hashCode())));
+        assertThat(response.getCSV("Vary", false), Matchers.contains("Accept-Encoding"));
+        InputStream testIn = new InflaterInputStream(new ByteArrayInputStream(response.getContentBytes()));
+        assertEquals(__content, IO.toString(testIn, StandardCharsets.UTF_8));
+
+        // The request quality values are honoured.
+        request.setHeader("accept-encoding", "gzip, deflate;q=0.5");
+        response = HttpTester.parseResponse(_connector.getResponse(request.generate()));
+
+        assertThat(response.getStatus(), is(200));
+        assertThat(response.get("Content-Encoding"), Matchers.equalToIgnoringCase("gzip"));
+        testIn = new GZIPInputStream(new ByteArrayInputStream(response.getContentBytes()));
+        assertEquals(__content, IO.toString(testIn, StandardCharsets.UTF_8));
+
+        // Only deflate is accepted.
+        request.setHeader("accept-encoding", "deflate");
+        response = HttpTester.parseResponse(_connector.getResponse(request.generate()));
+
+        assertThat(response.getStatus(), is(200));
+        assertThat(response.get("Content-Encoding"), Matchers.equalToIgnoringCase("deflate"));
+        testIn = new InflaterInputStream(new ByteArrayInputStream(response.getContentBytes()));
+        assertEquals(__content, IO.toString(testIn, StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void testContentEncoderClosedOnFailure() throws Exception
+    {
+        AtomicBoolean closed = new AtomicBoolean();
+        gzipHandler.addContentEncoder(new ContentEncoder()
+        {
+            @Override
+            public String getEncoding()
+            {
+                return "failing";
+            }
+
+            @Override
+            public OutputStream newEncoderOutputStream(OutputStream output)
+            {
+                return new FilterOutputStream(output)
+                {
+                    @Override
+                    public void write(int b) throws IOException
+                    {
+                        throw new IOException("explicitly_thrown_by_test");
+                    }
+
+                    @Override
+                    public void write(byte[] b, int off, int len) throws IOException
+                    {
+                        throw new IOException("explicitly_thrown_by_test");
+                    }
+
+                    @Override
+                    public void close() throws IOException
+                    {
+                        closed.set(true);
+                        super.close();
+                    }
+                };
+            }
+        });
+
+        HttpTester.Request request = HttpTester.newRequest();
+        request.setMethod("GET");
+        request.setURI("/ctx/content");
+        request.setVersion("HTTP/1.0");
+        request.setHeader("Host", "tester");
+        request.setHeader("accept-encoding", "failing");
+
+        _connector.getResponse(request.generate());
+
+        // The encoder is closed to release its resources.
+        assertTrue(closed.get());
+    }
+
+    @Test
+    public void testCompressionPolicySkipsPoorlyCompressingContent() throws Exception
+    {
+        GzipCompressionPolicy policy = new GzipCompressionPolicy();
+        policy.setMinSamples(1);
+        policy.setMaxCompressionRatio(0.01D);
+        policy.setSamplePeriod(Integer.MAX_VALUE);
+        gzipHandler.setCompressionPolicy(policy);
+
+        for (int i = 0; i < 2; ++i)
+        {
+            HttpTester.Request request = HttpTester.newRequest();
+            request.setMethod("GET");
+            request.setURI("/ctx/strong/content");
+            request.setVersion("HTTP/1.0");
+            request.setHeader("Host", "tester");
+            request.setHeader("accept-encoding", "gzip");
+
+            HttpTester.Response response = HttpTester.parseResponse(_connector.getResponse(request.generate()));
+
+            assertThat(response.getStatus(), is(200));
+            if (i == 0)
+            {
+                assertThat(response.get("Content-Encoding"), Matchers.equalToIgnoringCase("gzip"));
+            }
+            else
+            {
+                // The compression ratio of the first response was too poor.
+                assertThat(response.get("Content-Encoding"), nullValue());
+                assertEquals(__content, response.getContent());
+            }
+        }
+        assertThat(policy.getCompressionRatio("text/plain"), Matchers.greaterThan(0.01D));
+        assertEquals(1, policy.getSkipped());
+    }
+
     @Test
     public void testBlockingResponse() throws Exception
     {
@@ -41,7 +41,9 @@ import org.junit.jupiter.api.Test;
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.contains;
 import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.hasItem;
 import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
@@ -835,6 +837,141 @@ public class ServletHandlerTest
         assertThat(connector.getResponse("GET /other.bob HTTP/1.0\r\n\r\n"), containsString("path-/*-path-*.bob-default"));
     }
 
+    @Test
+    public void testFilterChainsCacheStatistics() throws Exception
+    {
+        Server server = new Server();
+        ServletHandler handler = new ServletHandler();
+        server.setHandler(handler);
+
+        handler.addServletWithMapping(new ServletHolder(new HttpServlet()
+        {
+            @Override
+            protected void doGet(HttpServletRequest req, HttpServletResponse resp) throws IOException
+            {
+                resp.getOutputStream().println("item");
+            }
+        }), "/items/*");
+        handler.addFilterWithMapping(SomeFilter.class, "/*", EnumSet.of(DispatcherType.REQUEST));
+
+        LocalConnector connector = new LocalConnector(server);
+        server.addConnector(connector);
+
+        server.start();
+
+        for (int i = 0; i < 10; ++i)
+        {
+            for (int j = 0; j < 10; ++j)
+            {
+                assertThat(connector.getResponse("GET /items/" + j + " HTTP/1.0\r\n\r\n"), containsString("item"));
+            }
+        }
+
+        // Distinct paths mapped to the same servlet and filters share the same chain.
+        assertEquals(1, handler._chainCache[FilterMapping.REQUEST].size());
+        assertEquals(1, handler.getFilterChainsCacheSize());
+        assertEquals(1, handler.getFilterChainsCacheMisses());
+        assertEquals(99, handler.getFilterChainsCacheHits());
+        assertEquals(0, handler.getFilterChainsCacheEvictions());
+        assertThat(handler.dump(), containsString("filterChainsCache: size=1,hits=99,misses=1,evictions=0"));
+
+        server.stop();
+    }
+
+    @Test
+    public void testFilterChainsCacheEvictsLeastFrequentlyUsed() throws Exception
+    {
+        Server server = new Server();
+        ServletHandler handler = new ServletHandler();
+        handler.setMaxFilterChainsCacheSize(2);
+        server.setHandler(handler);
+
+        for (String name : new String[]{"a", "b", "c"})
+        {
+            ServletHolder holder = new ServletHolder(new HttpServlet()
+            {
+                @Override
+                protected void doGet(HttpServletRequest req, HttpServletResponse resp) throws IOException
+                {
+                    resp.getOutputStream().println(req.getServletPath() + req.getPathInfo());
+                }
+            });
+            holder.setName(name);
+            handler.addServletWithMapping(holder, "/" + name + "/*");
+        }
+        handler.addFilterWithMapping(SomeFilter.class, "/*", EnumSet.of(DispatcherType.REQUEST));
+
+        LocalConnector connector = new LocalConnector(server);
+        server.addConnector(connector);
+
+        server.start();
+
+        assertThat(connector.getResponse("GET /a/1 HTTP/1.0\r\n\r\n"), containsString("/a/1"));
+        assertThat(connector.getResponse("GET /a/2 HTTP/1.0\r\n\r\n"), containsString("/a/2"));
+        assertThat(connector.getResponse("GET /a/3 HTTP/1.0\r\n\r\n"), containsString("/a/3"));
+        assertThat(connector.getResponse("GET /b/1 HTTP/1.0\r\n\r\n"), containsString("/b/1"));
+        assertThat(connector.getResponse("GET /b/2 HTTP/1.0\r\n\r\n"), containsString("/b/2"));
+        assertEquals(2, handler.getFilterChainsCacheSize());
+        assertEquals(2, handler.getFilterChainsCacheMisses());
+        assertEquals(3, handler.getFilterChainsCacheHits());
+
+        // The cache is full, so the least frequently used chain for "b" is evicted,
+        // although it was used more recently than the chain for "a".
+        assertThat(connector.getResponse("GET /c/1 HTTP/1.0\r\n\r\n"), containsString("/c/1"));
+        assertEquals(2, handler.getFilterChainsCacheSize());
+        assertEquals(1, handler.getFilterChainsCacheEvictions());
+
+        // The chains for "a" and for the newly cached "c" are still cached.
+        assertThat(connector.getResponse("GET /a/4 HTTP/1.0\r\n\r\n"), containsString("/a/4"));
+        assertThat(connector.getResponse("GET /c/2 HTTP/1.0\r\n\r\n"), containsString("/c/2"));
+        assertEquals(3, handler.getFilterChainsCacheMisses());
+        assertEquals(5, handler.getFilterChainsCacheHits());
+        assertEquals(1, handler.getFilterChainsCacheEvictions());
+
+        server.stop();
+    }
+
+    @Test
+    public void testFilterChainsCacheEvictsChainsPutDirectly() throws Exception
+    {
+        Server server = new Server();
+        ServletHandler handler = new ServletHandler();
+        handler.setMaxFilterChainsCacheSize(2);
+        server.setHandler(handler);
+
+        handler.addServletWithMapping(new ServletHolder(new HttpServlet()
+        {
+            @Override
+            protected void doGet(HttpServletRequest req, HttpServletResponse resp) throws IOException
+            {
+                resp.getOutputStream().println(req.getPathInfo());
+            }
+        }), "/*");
+        handler.addFilterWithMapping(SomeFilter.class, "/*", EnumSet.of(DispatcherType.REQUEST));
+        handler.addFilterWithMapping(SomeFilter.class, "*.bob", EnumSet.of(DispatcherType.REQUEST));
+
+        LocalConnector connector = new LocalConnector(server);
+        server.addConnector(connector);
+
+        server.start();
+
+        assertThat(connector.getResponse("GET /a HTTP/1.0\r\n\r\n"), containsString("/a"));
+        handler._chainCache[FilterMapping.REQUEST].put("direct", (request, response) -> {});
+        assertEquals(2, handler.getFilterChainsCacheSize());
+
+        // Only the chain put directly in the protected map is evicted, the cache is not flushed.
+        assertThat(connector.getResponse("GET /a.bob HTTP/1.0\r\n\r\n"), containsString("/a.bob"));
+        assertEquals(2, handler.getFilterChainsCacheSize());
+        assertEquals(1, handler.getFilterChainsCacheEvictions());
+        assertThat(handler._chainCache[FilterMapping.REQUEST].keySet(), not(hasItem("direct")));
+
+        assertThat(connector.getResponse("GET /b HTTP/1.0\r\n\r\n"), containsString("/b"));
+        assertEquals(2, handler.getFilterChainsCacheMisses());
+        assertEquals(1, handler.getFilterChainsCacheHits());
+
+        server.stop();
+    }
+
     @Test
     public void testDurable() throws Exception
     {
@@ -56,6 +56,7 @@ import org.eclipse.jetty.util.annotation.ManagedAttribute;
 import org.eclipse.jetty.util.annotation.ManagedObject;
 import org.eclipse.jetty.util.annotation.ManagedOperation;
 import org.eclipse.jetty.util.annotation.Name;
+import org.eclipse.jetty.util.statistic.RateSketch;
 import org.eclipse.jetty.util.thread.AutoLock;
 import org.eclipse.jetty.util.thread.ScheduledExecutorScheduler;
 import org.eclipse.jetty.util.thread.Scheduler;
@@ -111,6 +112,10 @@ import org.slf4j.LoggerFactory;
  * <dd>if true and session tracking is not used, then rate is tracked by IP+port (effectively connection). Defaults to false.</dd>
  * <dt>ipWhitelist</dt>
  * <dd>a comma-separated list of IP addresses that will not be rate limited</dd>
+ * <dt>ipRateSketchWidth</dt>
+ * <dd>if greater than 0, the request rates of IP addresses are estimated by a {@link RateSketch}
+ * with this number of counters per row, rather than tracked exactly; the memory used is then
+ * fixed, whatever the number of IP addresses. Defaults to 0.</dd>
  * <dt>managedAttr</dt>
  * <dd>if set to true, then this servlet is set as a {@link ServletContext} attribute with the
  * filter name as the attribute name.  This allows context external mechanism (eg JMX via {@link ContextHandler#MANAGED_ATTRIBUTES}) to
@@ -158,6 +163,7 @@ public class DoSFilter implements Filter
     static final String TRACK_SESSIONS_INIT_PARAM = "trackSessions";
     static final String REMOTE_PORT_INIT_PARAM = "remotePort";
     static final String IP_WHITELIST_INIT_PARAM = "ipWhitelist";
+    static final String IP_RATE_SKETCH_WIDTH_INIT_PARAM = "ipRateSketchWidth";
     static final String ENABLED_INIT_PARAM = "enabled";
     static final String TOO_MANY_CODE = "tooManyCode";
 
@@ -188,6 +194,7 @@ public class DoSFilter implements Filter
     private Semaphore _passes;
     private volatile int _throttledRequests;
     private volatile int _maxRequestsPerSec;
+    private volatile RateSketch _ipRateSketch;
     private Map<RateType, Queue<AsyncContext>> _queues = new HashMap<>();
     private Map<RateType, AsyncListener> _listeners = new HashMap<>();
     private Scheduler _scheduler;
@@ -252,6 +259,9 @@ public class DoSFilter implements Filter
             whiteList = parameter;
         setWhitelist(whiteList);
 
+        parameter = filterConfig.getInitParameter(IP_RATE_SKETCH_WIDTH_INIT_PARAM);
+        setIpRateSketchWidth(parameter == null ? 0 : Integer.parseInt(parameter));
+
         parameter = filterConfig.getInitParameter(INSERT_HEADERS_INIT_PARAM);
         setInsertHeaders(parameter == null || Boolean.parseBoolean(parameter));
 
@@ -601,6 +611,10 @@ public class DoSFilter implements Filter
             }
         }
 
+        RateSketch ipRateSketch = _ipRateSketch;
+        if (type == RateType.IP && ipRateSketch != null)
+            return new SketchRateTracker(ipRateSketch, loadId, request.getRemoteAddr());
+
         RateTracker tracker = _rateTrackers.get(loadId);
 
         if (tracker == null)
@@ -951,6 +965,34 @@ public class DoSFilter implements Filter
         _maxIdleTrackerMs = value;
     }
 
+    /**
+     * @return the number of counters per row of the sketch that estimates the request rates
+     * of IP addresses, or 0 if the request rates of IP addresses are tracked exactly
+     * @see #setIpRateSketchWidth(int)
+     */
+    @ManagedAttribute("number of counters per row of the sketch of IP request rates (0 to track IP request rates exactly)")
+    public int getIpRateSketchWidth()
+    {
+        RateSketch ipRateSketch = _ipRateSketch;
+        return ipRateSketch == null ? 0 : ipRateSketch.getWidth();
+    }
+
+    /**
+     * <p>Set whether the request rates of IP addresses are estimated by a {@link RateSketch},
+     * rather than tracked exactly.</p>
+     * <p>Exact tracking keeps a tracker for each IP address, until it has been idle for
+     * {@link #getMaxIdleTrackerMs()}, so its memory grows with the number of IP addresses.
+     * A sketch uses a fixed amount of memory, {@code 64 * width} bytes, and it is updated
+     * without locks; its estimates may exceed the exact rates, by at most {@code e / width}
+     * of the total request rate with high probability, but never fall short of them.</p>
+     *
+     * @param width the number of counters per row of the sketch, or 0 to track the request rates of IP addresses exactly
+     */
+    public void setIpRateSketchWidth(int width)
+    {
+        _ipRateSketch = width > 0 ? new RateSketch(width) : null;
+    }
+
     /**
      * The unique name of the filter when there is more than
      * one DosFilter instance.
@@ -1392,6 +1434,42 @@ public class DoSFilter implements Filter
         }
     }
 
+    /**
+     * A tracker of the request rate of an IP address, estimated by a {@link RateSketch}.
+     * It is created for each request, and it is neither stored nor expired.
+     */
+    private class SketchRateTracker extends RateTracker
+    {
+        private final RateSketch _sketch;
+        private final String _remoteAddr;
+
+        public SketchRateTracker(RateSketch sketch, String id, String remoteAddr)
+        {
+            super(DoSFilter.this._context, _name, id, RateType.IP, 0);
+            _sketch = sketch;
+            _remoteAddr = remoteAddr;
+        }
+
+        @Override
+        public OverLimit isRateExceeded(long now)
+        {
+            // Whitelisted requests are not recorded, as they would
+            // inflate the estimates of the colliding IP addresses.
+            if (checkWhitelist(_remoteAddr))
+                return null;
+            long rate = _sketch.record(getId(), now);
+            if (rate <= getMaxRequestsPerSec())
+                return null;
+            return new Overage(Duration.ofSeconds(1), rate);
+        }
+
+        @Override
+        public String toString()
+        {
+            return "Sketch" + super.toString();
+        }
+    }
+
     private static class DoSTimeoutAsyncListener implements AsyncListener
     {
         @Override
@@ -34,6 +34,8 @@ import org.junit.jupiter.api.extension.ExtendWith;
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.anyOf;
 import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.notNullValue;
+import static org.hamcrest.Matchers.nullValue;
 import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
@@ -126,6 +128,51 @@ public class DoSFilterTest extends AbstractDoSFilterTest
         }
     }
 
+    @Test
+    public void testIpRateSketch() throws ServletException
+    {
+        DoSFilter doSFilter = new DoSFilter();
+        doSFilter.init(new NoOpFilterConfig());
+        doSFilter.setMaxRequestsPerSec(4);
+        doSFilter.setIpRateSketchWidth(1024);
+        assertThat(doSFilter.getIpRateSketchWidth(), is(1024));
+
+        try
+        {
+            ServletRequest request = new RemoteAddressRequest("10.0.0.1", 12345);
+            long now = System.nanoTime();
+            for (int i = 0; i < 4; ++i)
+            {
+                assertThat(doSFilter.getRateTracker(request).isRateExceeded(now), nullValue());
+            }
+            RateTracker tracker = doSFilter.getRateTracker(request);
+            assertThat(tracker.getType(), is(DoSFilter.RateType.IP));
+            assertThat(tracker.getId(), is("10.0.0.1"));
+            assertThat(tracker.isRateExceeded(now), notNullValue());
+
+            // Other IP addresses are not affected.
+            ServletRequest other = new RemoteAddressRequest("10.0.0.2", 12345);
+            assertThat(doSFilter.getRateTracker(other).isRateExceeded(now), nullValue());
+
+            // Whitelisted IP addresses are never over the limit.
+            doSFilter.setWhitelist("10.0.0.1,10.0.0.3");
+            assertThat(doSFilter.getRateTracker(request).isRateExceeded(now), nullValue());
+
+            // Whitelisted requests are not recorded in the sketch.
+            ServletRequest whitelisted = new RemoteAddressRequest("10.0.0.3", 12345);
+            for (int i = 0; i < 8; ++i)
+            {
+                assertThat(doSFilter.getRateTracker(whitelisted).isRateExceeded(now), nullValue());
+            }
+            doSFilter.clearWhitelist();
+            assertThat(doSFilter.getRateTracker(whitelisted).isRateExceeded(now), nullValue());
+        }
+        finally
+        {
+            doSFilter.stopScheduler();
+        }
+    }
+
     @Test
     public void testRateIsRateExceeded() throws InterruptedException
     {
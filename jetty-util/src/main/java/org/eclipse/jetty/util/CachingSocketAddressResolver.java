@@ -0,0 +1,528 @@
+//
+// ========================================================================
+// Copyright (c) 1995-2022 Mort Bay Consulting Pty Ltd and others.
+//
+// This program and the accompanying materials are made available under the
+// terms of the Eclipse Public License v. 2.0 which is available at
+// https://www.eclipse.org/legal/epl-2.0, or the Apache License, Version 2.0
+// which is available at https://www.apache.org/licenses/LICENSE-2.0.
+//
+// SPDX-License-Identifier: EPL-2.0 OR Apache-2.0
+// ========================================================================
+//
+
+package org.eclipse.jetty.util;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.eclipse.jetty.util.annotation.ManagedAttribute;
+import org.eclipse.jetty.util.annotation.ManagedObject;
+import org.eclipse.jetty.util.annotation.ManagedOperation;
+import org.eclipse.jetty.util.annotation.Name;
+import org.eclipse.jetty.util.component.Dumpable;
+import org.eclipse.jetty.util.component.DumpableCollection;
+import org.eclipse.jetty.util.thread.AutoLock;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * <p>A {@link SocketAddressResolver} that caches the results of another {@link SocketAddressResolver}.</p>
+ * <p>Successful resolutions are cached for {@link #getTimeToLive() timeToLive} milliseconds.
+ * After that time, the cached addresses are still returned for a further
+ * {@link #getStaleTimeToLive() staleTimeToLive} milliseconds, while a single background
+ * resolution refreshes the entry, so that callers are never blocked by DNS once a host
+ * has been resolved.
+ * If the background resolution fails, the stale addresses keep being returned until the
+ * stale period expires.</p>
+ * <p>Failed resolutions are cached for {@link #getNegativeTimeToLive() negativeTimeToLive}
+ * milliseconds, so that a misbehaving DNS server is not queried for every new connection.</p>
+ * <p>Concurrent resolutions of the same host that miss the cache are coalesced into a single
+ * resolution performed by the delegate resolver.</p>
+ * <p>Example usage:</p>
+ * <pre>
+ * HttpClient httpClient = new HttpClient();
+ * SocketAddressResolver async = new SocketAddressResolver.Async(executor, scheduler, timeout);
+ * httpClient.setSocketAddressResolver(new CachingSocketAddressResolver(async));
+ * </pre>
+ */
+@ManagedObject("A caching address resolver")
+public class CachingSocketAddressResolver implements SocketAddressResolver, Dumpable
+{
+    private static final Logger LOG = LoggerFactory.getLogger(CachingSocketAddressResolver.class);
+
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder staleHits = new LongAdder();
+    private final LongAdder negativeHits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder refreshes = new LongAdder();
+    private final SocketAddressResolver resolver;
+    private long timeToLive = 30000;
+    private long staleTimeToLive = 300000;
+    private long negativeTimeToLive = 5000;
+    private int maxEntries = 1024;
+
+    /**
+     * @param resolver the resolver that performs the actual resolutions, typically a {@link SocketAddressResolver.Async}
+     */
+    public CachingSocketAddressResolver(SocketAddressResolver resolver)
+    {
+        this.resolver = resolver;
+    }
+
+    /**
+     * @return the resolver that performs the actual resolutions
+     */
+    public SocketAddressResolver getSocketAddressResolver()
+    {
+        return resolver;
+    }
+
+    @ManagedAttribute("The time, in milliseconds, resolved addresses are cached")
+    public long getTimeToLive()
+    {
+        return timeToLive;
+    }
+
+    /**
+     * @param timeToLive the time, in milliseconds, resolved addresses are cached
+     */
+    public void setTimeToLive(long timeToLive)
+    {
+        this.timeToLive = timeToLive;
+    }
+
+    @ManagedAttribute("The time, in milliseconds, expired addresses are returned while being refreshed")
+    public long getStaleTimeToLive()
+    {
+        return staleTimeToLive;
+    }
+
+    /**
+     * @param staleTimeToLive the time, in milliseconds, after the expiration of the
+     * {@link #getTimeToLive() timeToLive} during which the expired addresses are still
+     * returned while they are refreshed in background, or zero to disable background refreshes
+     */
+    public void setStaleTimeToLive(long staleTimeToLive)
+    {
+        this.staleTimeToLive = staleTimeToLive;
+    }
+
+    @ManagedAttribute("The time, in milliseconds, resolution failures are cached")
+    public long getNegativeTimeToLive()
+    {
+        return negativeTimeToLive;
+    }
+
+    /**
+     * @param negativeTimeToLive the time, in milliseconds, resolution failures are cached,
+     * or zero to disable negative caching
+     */
+    public void setNegativeTimeToLive(long negativeTimeToLive)
+    {
+        this.negativeTimeToLive = negativeTimeToLive;
+    }
+
+    @ManagedAttribute("The max number of cached hosts")
+    public int getMaxEntries()
+    {
+        return maxEntries;
+    }
+
+    /**
+     * @param maxEntries the max number of cached hosts
+     */
+    public void setMaxEntries(int maxEntries)
+    {
+        this.maxEntries = maxEntries;
+    }
+
+    @ManagedAttribute("The number of cached hosts")
+    public int getSize()
+    {
+        return entries.size();
+    }
+
+    @ManagedAttribute("The number of resolutions served from the cache")
+    public long getHits()
+    {
+        return hits.longValue();
+    }
+
+    @ManagedAttribute("The number of resolutions served from the cache with expired addresses")
+    public long getStaleHits()
+    {
+        return staleHits.longValue();
+    }
+
+    @ManagedAttribute("The number of resolutions failed from the cache")
+    public long getNegativeHits()
+    {
+        return negativeHits.longValue();
+    }
+
+    @ManagedAttribute("The number of resolutions performed by the delegate resolver")
+    public long getMisses()
+    {
+        return misses.longValue();
+    }
+
+    @ManagedAttribute("The number of background refreshes")
+    public long getRefreshes()
+    {
+        return refreshes.longValue();
+    }
+
+    @ManagedOperation(value = "Resets the statistics", impact = "ACTION")
+    public void resetStats()
+    {
+        hits.reset();
+        staleHits.reset();
+        negativeHits.reset();
+        misses.reset();
+        refreshes.reset();
+    }
+
+    /**
+     * <p>Removes the cached entry for the given host, if any.</p>
+     *
+     * @param host the host to evict from the cache
+     */
+    @ManagedOperation(value = "Evicts a host from the cache", impact = "ACTION")
+    public void evict(@Name("host") String host)
+    {
+        entries.remove(normalize(host));
+    }
+
+    /**
+     * <p>Removes all the cached entries.</p>
+     */
+    @ManagedOperation(value = "Clears the cache", impact = "ACTION")
+    public void clear()
+    {
+        entries.clear();
+    }
+
+    @Override
+    public void resolve(String host, int port, Promise<List<InetSocketAddress>> promise)
+    {
+        String key = normalize(host);
+        while (true)
+        {
+            Entry entry = entries.get(key);
+            if (entry == null)
+            {
+                entry = new Entry(key);
+                Entry existing = entries.putIfAbsent(key, entry);
+                if (existing != null)
+                    continue;
+                evictIfNecessary();
+            }
+            if (entry.resolve(port, promise))
+                return;
+            // The entry was expired, remove it and retry.
+            entries.remove(key, entry);
+        }
+    }
+
+    protected long nanoTime()
+    {
+        return System.nanoTime();
+    }
+
+    private static String normalize(String host)
+    {
+        return StringUtil.asciiToLowerCase(host);
+    }
+
+    private void evictIfNecessary()
+    {
+        int excess = entries.size() - getMaxEntries();
+        if (excess <= 0)
+            return;
+        // Evict the expired entries, and snapshot the expiration of the others,
+        // so that they are sorted consistently while they are being refreshed.
+        long now = nanoTime();
+        List<Eviction> evictions = new ArrayList<>(entries.size());
+        for (Entry entry : entries.values())
+        {
+            if (entry.isExpired(now))
+                entries.remove(entry.host, entry);
+            else
+                evictions.add(entry.toEviction());
+        }
+        excess = entries.size() - getMaxEntries();
+        if (excess <= 0)
+            return;
+        // Still too many entries, evict those that expire first.
+        evictions.sort(null);
+        for (int i = 0; i < excess && i < evictions.size(); ++i)
+        {
+            Entry entry = evictions.get(i).entry;
+            entries.remove(entry.host, entry);
+        }
+    }
+
+    @Override
+    public void dump(Appendable out, String indent) throws IOException
+    {
+        Dumpable.dumpObjects(out, indent, this, resolver, new DumpableCollection("entries", entries.values()));
+    }
+
+    @Override
+    public String toString()
+    {
+        return String.format("%s@%x[size=%d,hits=%d,misses=%d]", getClass().getSimpleName(), hashCode(), getSize(), getHits(), getMisses());
+    }
+
+    private static class Eviction implements Comparable<Eviction>
+    {
+        private final Entry entry;
+        private final boolean resolved;
+        private final long expireNanoTime;
+
+        private Eviction(Entry entry, boolean resolved, long expireNanoTime)
+        {
+            this.entry = entry;
+            this.resolved = resolved;
+            this.expireNanoTime = expireNanoTime;
+        }
+
+        @Override
+        public int compareTo(Eviction that)
+        {
+            // Entries being resolved for the first time are evicted last.
+            if (resolved != that.resolved)
+                return resolved ? -1 : 1;
+            // Compare the difference, as nanoTimes may overflow.
+            return Long.signum(expireNanoTime - that.expireNanoTime);
+        }
+    }
+
+    private class Entry
+    {
+        private final AutoLock lock = new AutoLock();
+        private final List<Waiter> waiters = new ArrayList<>();
+        private final String host;
+        private List<InetAddress> addresses;
+        private Throwable failure;
+        private long expireNanoTime;
+        private long refreshNanoTime;
+        private boolean resolving;
+
+        private Entry(String host)
+        {
+            this.host = host;
+        }
+
+        /**
+         * @return false if this entry has expired and must be replaced
+         */
+        private boolean resolve(int port, Promise<List<InetSocketAddress>> promise)
+        {
+            List<InetAddress> cached;
+            Throwable failed;
+            boolean refresh = false;
+            boolean resolve = false;
+            try (AutoLock l = lock.lock())
+            {
+                long now = nanoTime();
+                if (addresses != null)
+                {
+                    long staleNanos = TimeUnit.MILLISECONDS.toNanos(getStaleTimeToLive());
+                    if (now - expireNanoTime < 0)
+                    {
+                        hits.increment();
+                    }
+                    else if (now - (expireNanoTime + staleNanos) < 0)
+                    {
+                        staleHits.increment();
+                        if (!resolving && now - refreshNanoTime >= 0)
+                            resolving = refresh = true;
+                    }
+                    else
+                    {
+                        return false;
+                    }
+                    cached = addresses;
+                    failed = null;
+                }
+                else if (failure != null)
+                {
+                    if (now - expireNanoTime >= 0)
+                        return false;
+                    negativeHits.increment();
+                    cached = null;
+                    failed = failure;
+                }
+                else
+                {
+                    // Resolution in progress.
+                    waiters.add(new Waiter(port, promise));
+                    if (!resolving)
+                        resolving = resolve = true;
+                    cached = null;
+                    failed = null;
+                }
+            }
+
+            if (cached != null)
+            {
+                if (LOG.isDebugEnabled())
+                    LOG.debug("Resolved {} from cache {}{}", host, cached, refresh ? ", refreshing" : "");
+                promise.succeeded(toSocketAddresses(cached, port));
+                if (refresh)
+                {
+                    refreshes.increment();
+                    resolveAsync(port);
+                }
+            }
+            else if (failed != null)
+            {
+                if (LOG.isDebugEnabled())
+                    LOG.debug("Failed resolution of {} from cache", host, failed);
+                promise.failed(newUnknownHostException(failed));
+            }
+            else if (resolve)
+            {
+                misses.increment();
+                resolveAsync(port);
+            }
+            return true;
+        }
+
+        private void resolveAsync(int port)
+        {
+            resolver.resolve(host, port, new Promise<>()
+            {
+                @Override
+                public void succeeded(List<InetSocketAddress> result)
+                {
+                    List<InetAddress> resolved = new ArrayList<>(result.size());
+                    for (InetSocketAddress socketAddress : result)
+                    {
+                        resolved.add(socketAddress.getAddress());
+                    }
+                    onResolved(resolved, null);
+                }
+
+                @Override
+                public void failed(Throwable x)
+                {
+                    onResolved(null, x);
+                }
+            });
+        }
+
+        private void onResolved(List<InetAddress> resolved, Throwable x)
+        {
+            List<Waiter> pending;
+            try (AutoLock l = lock.lock())
+            {
+                resolving = false;
+                long now = nanoTime();
+                if (resolved != null)
+                {
+                    addresses = List.copyOf(resolved);
+                    failure = null;
+                    expireNanoTime = now + TimeUnit.MILLISECONDS.toNanos(getTimeToLive());
+                    refreshNanoTime = expireNanoTime;
+                }
+                else if (addresses == null)
+                {
+                    failure = x;
+                    expireNanoTime = now + TimeUnit.MILLISECONDS.toNanos(getNegativeTimeToLive());
+                }
+                else
+                {
+                    // Keep the stale addresses until they expire,
+                    // but do not retry the refresh immediately.
+                    refreshNanoTime = now + TimeUnit.MILLISECONDS.toNanos(getNegativeTimeToLive());
+                }
+                pending = new ArrayList<>(waiters);
+                waiters.clear();
+            }
+
+            if (LOG.isDebugEnabled())
+                LOG.debug("Resolved {} to {}", host, resolved, x);
+
+            if (resolved == null && getNegativeTimeToLive() <= 0)
+                entries.remove(host, this);
+
+            for (Waiter waiter : pending)
+            {
+                if (resolved != null)
+                    waiter.promise.succeeded(toSocketAddresses(resolved, waiter.port));
+                else
+                    waiter.promise.failed(x);
+            }
+        }
+
+        private boolean isExpired(long now)
+        {
+            try (AutoLock l = lock.lock())
+            {
+                if (addresses != null)
+                    return now - (expireNanoTime + TimeUnit.MILLISECONDS.toNanos(getStaleTimeToLive())) >= 0;
+                if (failure != null)
+                    return now - expireNanoTime >= 0;
+                return false;
+            }
+        }
+
+        private Eviction toEviction()
+        {
+            try (AutoLock l = lock.lock())
+            {
+                return new Eviction(this, addresses != null || failure != null, expireNanoTime);
+            }
+        }
+
+        private UnknownHostException newUnknownHostException(Throwable cause)
+        {
+            UnknownHostException x = new UnknownHostException(host);
+            x.initCause(cause);
+            return x;
+        }
+
+        private List<InetSocketAddress> toSocketAddresses(List<InetAddress> addresses, int port)
+        {
+            List<InetSocketAddress> result = new ArrayList<>(addresses.size());
+            for (InetAddress address : addresses)
+            {
+                result.add(new InetSocketAddress(address, port));
+            }
+            return result;
+        }
+
+        @Override
+        public String toString()
+        {
+            try (AutoLock l = lock.lock())
+            {
+                return String.format("%s@%x[%s,addresses=%s,failure=%s,resolving=%b]", getClass().getSimpleName(), hashCode(), host, addresses, failure, resolving);
+            }
+        }
+    }
+
+    private static class Waiter
+    {
+        private final int port;
+        private final Promise<List<InetSocketAddress>> promise;
+
+        private Waiter(int port, Promise<List<InetSocketAddress>> promise)
+        {
+            this.port = port;
+            this.promise = promise;
+        }
+    }
+}
@@ -0,0 +1,152 @@
+//
+// ========================================================================
+// Copyright (c) 1995-2022 Mort Bay Consulting Pty Ltd and others.
+//
+// This program and the accompanying materials are made available under the
+// terms of the Eclipse Public License v. 2.0 which is available at
+// https://www.eclipse.org/legal/epl-2.0, or the Apache License, Version 2.0
+// which is available at https://www.apache.org/licenses/LICENSE-2.0.
+//
+// SPDX-License-Identifier: EPL-2.0 OR Apache-2.0
+// ========================================================================
+//
+
+package org.eclipse.jetty.util;
+
+import java.util.Arrays;
+import java.util.function.Consumer;
+import java.util.regex.Pattern;
+
+/**
+ * <p>A character tree of values, keyed by the literal prefix that the strings they apply to must start with.</p>
+ * <p>A lookup walks the tree along a string with {@link Node#getChild(char)}, visiting the node of every
+ * prefix of the string that has been added to the tree, so that only the values of those nodes need to be
+ * considered, rather than all the values. The literal prefix of a regular expression is
+ * given by {@link #literalPrefix(Pattern)}.
+ * Suffixes can be indexed by adding them reversed, and by walking the string backwards.</p>
+ * <p>The tree is not thread safe while it is being built, and must be safely published before it is read.</p>
+ *
+ * @param <V> the type of the values of the nodes
+ */
+public class LiteralPrefixTree<V>
+{
+    private final Node<V> _root = new Node<>();
+
+    /**
+     * @return the node of the empty prefix
+     */
+    public Node<V> getRoot()
+    {
+        return _root;
+    }
+
+    /**
+     * @param prefix the prefix
+     * @return the node of the given prefix, created if necessary along with the nodes of its own prefixes
+     */
+    public Node<V> add(CharSequence prefix)
+    {
+        Node<V> node = _root;
+        for (int i = 0; i < prefix.length(); ++i)
+        {
+            node = node.add(prefix.charAt(i));
+        }
+        return node;
+    }
+
+    /**
+     * <p>Returns the literal text that any string fully matching the given pattern starts with.</p>
+     * <p>The empty string is returned when the pattern has flags, contains an alternation, or starts
+     * with a construct that is not a plain literal; this is always correct, just less selective.</p>
+     *
+     * @param pattern the regular expression
+     * @return the literal prefix of the pattern
+     */
+    public static String literalPrefix(Pattern pattern)
+    {
+        if (pattern.flags() != 0)
+            return "";
+        String regex = pattern.pattern();
+        // A top level alternation may not share the prefix of its first branch;
+        // conservatively give up on any alternation.
+        if (regex.indexOf('|') >= 0)
+            return "";
+        int start = regex.startsWith("^") ? 1 : 0;
+        int end = start;
+        while (end < regex.length() && "\\.[]{}()*+?^$|".indexOf(regex.charAt(end)) < 0)
+        {
+            end++;
+        }
+        // A quantifier makes the preceding character optional or repeatable.
+        if (end > start && end < regex.length() && "*+?{".indexOf(regex.charAt(end)) >= 0)
+            end--;
+        return regex.substring(start, end);
+    }
+
+    /**
+     * @param <V> the type of the value of the node
+     */
+    public static class Node<V>
+    {
+        private char[] _chars = new char[0];
+        @SuppressWarnings("unchecked")
+        private Node<V>[] _children = new Node[0];
+        private V _value;
+
+        /**
+         * @return the value of this node, or null if none has been set
+         */
+        public V getValue()
+        {
+            return _value;
+        }
+
+        /**
+         * @param value the value of this node
+         */
+        public void setValue(V value)
+        {
+            _value = value;
+        }
+
+        /**
+         * @param c the next character of the string
+         * @return the node of the prefix extended by the given character, or null if no added prefix starts so
+         */
+        public Node<V> getChild(char c)
+        {
+            int i = Arrays.binarySearch(_chars, c);
+            return i < 0 ? null : _children[i];
+        }
+
+        /**
+         * @param consumer the consumer of the children of this node, in character order
+         */
+        public void forEachChild(Consumer<Node<V>> consumer)
+        {
+            for (Node<V> child : _children)
+            {
+                consumer.accept(child);
+            }
+        }
+
+        private Node<V> add(char c)
+        {
+            int i = Arrays.binarySearch(_chars, c);
+            if (i >= 0)
+                return _children[i];
+            i = -i - 1;
+            char[] chars = new char[_chars.length + 1];
+            System.arraycopy(_chars, 0, chars, 0, i);
+            System.arraycopy(_chars, i, chars, i + 1, _chars.length - i);
+            chars[i] = c;
+            Node<V>[] children = Arrays.copyOf(_children, _children.length + 1);
+            System.arraycopy(_children, i, children, i + 1, _children.length - i);
+            Node<V> child = new Node<>();
+            children[i] = child;
+            _chars = chars;
+            _children = children;
+            return child;
+        }
+    }
+}
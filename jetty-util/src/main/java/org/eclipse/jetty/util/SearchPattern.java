@@ -13,6 +13,7 @@
 
 package org.eclipse.jetty.util;
 
+import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
 import java.util.Arrays;
 
@@ -159,6 +160,94 @@ public class SearchPattern
         return matched + matchedCount;
     }
 
+    /**
+     * Search for a complete match of the pattern within the remaining bytes of the buffer.
+     * The position of the buffer is not modified.
+     *
+     * @param buffer The buffer in which to search for, which may be a direct buffer.
+     * @return The index relative to the buffer position of the first instance of the pattern or -1 if not found
+     */
+    public int match(ByteBuffer buffer)
+    {
+        if (buffer.hasArray())
+        {
+            int offset = buffer.arrayOffset() + buffer.position();
+            int match = match(buffer.array(), offset, buffer.remaining());
+            return match < 0 ? match : match - offset;
+        }
+
+        int position = buffer.position();
+        int length = buffer.remaining();
+        int skip = 0;
+        while (skip <= length - pattern.length)
+        {
+            for (int i = pattern.length - 1; buffer.get(position + skip + i) == pattern[i]; i--)
+            {
+                if (i == 0)
+                    return skip;
+            }
+
+            skip += table[0xff & buffer.get(position + skip + pattern.length - 1)];
+        }
+
+        return -1;
+    }
+
+    /**
+     * Search for a partial match of the pattern at the end of the remaining bytes of the buffer.
+     * The position of the buffer is not modified.
+     *
+     * @param buffer The buffer in which to search for, which may be a direct buffer.
+     * @return the length of the partial pattern matched and 0 for no match.
+     */
+    public int endsWith(ByteBuffer buffer)
+    {
+        if (buffer.hasArray())
+            return endsWith(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining());
+
+        int position = buffer.position();
+        int length = buffer.remaining();
+        int skip = (pattern.length <= length) ? (length - pattern.length) : 0;
+        while (skip < length)
+        {
+            for (int i = (length - 1) - skip; buffer.get(position + skip + i) == pattern[i]; --i)
+            {
+                if (i == 0)
+                    return (length - skip);
+            }
+            skip++;
+        }
+
+        return 0;
+    }
+
+    /**
+     * Search for a possibly partial match of the pattern at the start of the remaining bytes of the buffer.
+     * The position of the buffer is not modified.
+     *
+     * @param buffer The buffer in which to search for, which may be a direct buffer.
+     * @param matched The length of the partial pattern already matched
+     * @return the length of the partial pattern matched and 0 for no match.
+     */
+    public int startsWith(ByteBuffer buffer, int matched)
+    {
+        if (buffer.hasArray())
+            return startsWith(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining(), matched);
+
+        int position = buffer.position();
+        int length = buffer.remaining();
+        int matchedCount = 0;
+        for (int i = 0; i < pattern.length - matched && i < length; i++)
+        {
+            if (buffer.get(position + i) == pattern[i + matched])
+                matchedCount++;
+            else
+                return 0;
+        }
+
+        return matched + matchedCount;
+    }
+
     /**
      * Performs legality checks for standard arguments input into SearchPattern methods.
      *
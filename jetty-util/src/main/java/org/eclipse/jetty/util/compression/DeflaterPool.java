@@ -57,6 +57,16 @@ public class DeflaterPool extends CompressionPool<Deflater>
     protected void reset(Deflater deflater)
     {
         deflater.reset();
+        // Users may have changed the level of the pooled Deflater.
+        deflater.setLevel(compressionLevel);
+    }
+
+    /**
+     * @return the default compression level for new Deflater objects
+     */
+    public int getCompressionLevel()
+    {
+        return compressionLevel;
     }
 
     public static DeflaterPool ensurePool(Container container)
@@ -0,0 +1,184 @@
+//
+// ========================================================================
+// Copyright (c) 1995-2022 Mort Bay Consulting Pty Ltd and others.
+//
+// This program and the accompanying materials are made available under the
+// terms of the Eclipse Public License v. 2.0 which is available at
+// https://www.eclipse.org/legal/epl-2.0, or the Apache License, Version 2.0
+// which is available at https://www.apache.org/licenses/LICENSE-2.0.
+//
+// SPDX-License-Identifier: EPL-2.0 OR Apache-2.0
+// ========================================================================
+//
+
+package org.eclipse.jetty.util.statistic;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * <p>Estimates the rate of events per key over a sliding time window, in constant memory.</p>
+ * <p>This is a count-min sketch: each key is hashed to one counter in each of
+ * {@code depth} rows of {@code width} counters, and the count of a key is estimated as the
+ * minimum of its counters. Estimates may exceed the exact count, because of the other keys
+ * that share the counters of a key, but they never fall short of it: with {@code N} events
+ * in a window, the excess is at most {@code e * N / width} with a probability of at least
+ * {@code 1 - e^-depth}, whatever the number of distinct keys.</p>
+ * <p>Each counter is kept for the current and the previous window, and the rate over the
+ * sliding window is interpolated from the two. Counters are updated with a compare-and-set,
+ * and counters of past windows are reset by the first event that updates them, so that
+ * neither locks nor expiry tasks are needed.</p>
+ * <p>Keys are hashed with a random seed, so that they cannot be chosen to collide.</p>
+ */
+public class RateSketch
+{
+    private final AtomicLongArray _counters;
+    private final int _depth;
+    private final int _width;
+    private final long _windowNanos;
+    private final long _origin;
+    private final long _seed;
+
+    /**
+     * Creates a sketch with 4 rows, and a window of 1 second.
+     *
+     * @param width the number of counters in each row
+     */
+    public RateSketch(int width)
+    {
+        this(4, width, 1, TimeUnit.SECONDS);
+    }
+
+    /**
+     * @param depth the number of rows of counters
+     * @param width the number of counters in each row
+     * @param window the duration of the sliding window
+     * @param unit the unit of the window duration
+     */
+    public RateSketch(int depth, int width, long window, TimeUnit unit)
+    {
+        if (depth <= 0 || width <= 0)
+            throw new IllegalArgumentException("Invalid sketch size " + depth + "x" + width);
+        if (window <= 0)
+            throw new IllegalArgumentException("Invalid window " + window);
+        _depth = depth;
+        _width = width;
+        _windowNanos = unit.toNanos(window);
+        // Two counters, one for the even windows and one for the odd windows.
+        _counters = new AtomicLongArray(2 * depth * width);
+        _origin = System.nanoTime();
+        _seed = ThreadLocalRandom.current().nextLong();
+    }
+
+    public int getDepth()
+    {
+        return _depth;
+    }
+
+    public int getWidth()
+    {
+        return _width;
+    }
+
+    /**
+     * @return the number of bytes used by the counters
+     */
+    public long getMemorySize()
+    {
+        return _counters.length() * (long)Long.BYTES;
+    }
+
+    /**
+     * Records an event for the given key, and estimates the number of events of the key
+     * in the sliding window that ends at the given time.
+     *
+     * @param key the key
+     * @param nanoTime the time of the event, as returned by {@link System#nanoTime()}
+     * @return the estimated number of events of the key in the window, including this one
+     */
+    public long record(String key, long nanoTime)
+    {
+        return estimate(key, nanoTime, true);
+    }
+
+    /**
+     * Estimates the number of events of the given key in the sliding window that ends at the given time.
+     *
+     * @param key the key
+     * @param nanoTime the end of the window, as returned by {@link System#nanoTime()}
+     * @return the estimated number of events of the key in the window
+     */
+    public long estimate(String key, long nanoTime)
+    {
+        return estimate(key, nanoTime, false);
+    }
+
+    private long estimate(String key, long nanoTime, boolean record)
+    {
+        long elapsed = Math.max(0, nanoTime - _origin);
+        long window = elapsed / _windowNanos;
+        // The fraction of the previous window that still is in the sliding window.
+        long previousNanos = _windowNanos - elapsed % _windowNanos;
+        int currentTag = (int)window;
+        int previousTag = (int)(window - 1);
+        int currentParity = (int)(window & 1);
+
+        long hash = hash(key);
+        int h1 = (int)hash;
+        int h2 = (int)(hash >>> 32) | 1;
+        long estimate = Long.MAX_VALUE;
+        for (int row = 0; row < _depth; ++row)
+        {
+            int column = Math.floorMod(h1 + row * h2, _width);
+            int index = 2 * (row * _width + column);
+            long current = record ? increment(index + currentParity, currentTag) : count(index + currentParity, currentTag);
+            long previous = count(index + (currentParity ^ 1), previousTag);
+            estimate = Math.min(estimate, current + previous * previousNanos / _windowNanos);
+        }
+        return estimate;
+    }
+
+    private long increment(int index, int tag)
+    {
+        while (true)
+        {
+            long counter = _counters.get(index);
+            int count = (int)(counter >>> 32) == tag ? (int)counter : 0;
+            if (count == Integer.MAX_VALUE)
+                return count;
+            long update = ((long)tag << 32) | (count + 1);
+            if (_counters.compareAndSet(index, counter, update))
+                return count + 1;
+        }
+    }
+
+    private long count(int index, int tag)
+    {
+        long counter = _counters.get(index);
+        return (int)(counter >>> 32) == tag ? (counter & 0xFFFF_FFFFL) : 0;
+    }
+
+    private long hash(String key)
+    {
+        // FNV-1a with a random offset, followed by the 64-bit finalizer of MurmurHash3.
+        long hash = _seed;
+        for (int i = 0; i < key.length(); ++i)
+        {
+            hash ^= key.charAt(i);
+            hash *= 0x100000001B3L;
+        }
+        hash ^= hash >>> 33;
+        hash *= 0xFF51AFD7ED558CCDL;
+        hash ^= hash >>> 33;
+        hash *= 0xC4CEB9FE1A85EC53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+
+    @Override
+    public String toString()
+    {
+        return String.format("%s@%x[%dx%d,window=%dms]", getClass().getSimpleName(), hashCode(), _depth, _width, TimeUnit.NANOSECONDS.toMillis(_windowNanos));
+    }
+}
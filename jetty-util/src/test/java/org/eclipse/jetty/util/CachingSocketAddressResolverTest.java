@@ -0,0 +1,209 @@
+//
+// ========================================================================
+// Copyright (c) 1995-2022 Mort Bay Consulting Pty Ltd and others.
+//
+// This program and the accompanying materials are made available under the
+// terms of the Eclipse Public License v. 2.0 which is available at
+// https://www.eclipse.org/legal/epl-2.0, or the Apache License, Version 2.0
+// which is available at https://www.apache.org/licenses/LICENSE-2.0.
+//
+// SPDX-License-Identifier: EPL-2.0 OR Apache-2.0
+// ========================================================================
+//
+
+package org.eclipse.jetty.util;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.UnknownHostException;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.instanceOf;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class CachingSocketAddressResolverTest
+{
+    private final AtomicLong nanoTime = new AtomicLong();
+    private final Queue<Promise<List<InetSocketAddress>>> pending = new ConcurrentLinkedQueue<>();
+    private CachingSocketAddressResolver resolver;
+
+    @BeforeEach
+    public void prepare()
+    {
+        // A stand-in resolver that completes the resolutions only when told so.
+        SocketAddressResolver standIn = (host, port, promise) -> pending.offer(promise);
+        resolver = new CachingSocketAddressResolver(standIn)
+        {
+            @Override
+            protected long nanoTime()
+            {
+                return nanoTime.get();
+            }
+        };
+        resolver.setTimeToLive(1000);
+        resolver.setStaleTimeToLive(1000);
+        resolver.setNegativeTimeToLive(1000);
+    }
+
+    private void advance(long millis)
+    {
+        nanoTime.addAndGet(TimeUnit.MILLISECONDS.toNanos(millis));
+    }
+
+    private static List<InetSocketAddress> addresses(String... ips) throws Exception
+    {
+        InetSocketAddress[] result = new InetSocketAddress[ips.length];
+        for (int i = 0; i < ips.length; ++i)
+        {
+            result[i] = new InetSocketAddress(InetAddress.getByName(ips[i]), 0);
+        }
+        return List.of(result);
+    }
+
+    @Test
+    public void testConcurrentMissesAreCoalesced() throws Exception
+    {
+        FuturePromise<List<InetSocketAddress>> promise1 = new FuturePromise<>();
+        resolver.resolve("host", 80, promise1);
+        FuturePromise<List<InetSocketAddress>> promise2 = new FuturePromise<>();
+        resolver.resolve("HOST", 443, promise2);
+
+        assertEquals(1, pending.size());
+        assertFalse(promise1.isDone());
+        assertFalse(promise2.isDone());
+
+        pending.poll().succeeded(addresses("127.0.0.1"));
+
+        assertEquals(List.of(new InetSocketAddress("127.0.0.1", 80)), promise1.get(5, TimeUnit.SECONDS));
+        assertEquals(List.of(new InetSocketAddress("127.0.0.1", 443)), promise2.get(5, TimeUnit.SECONDS));
+        assertEquals(1, resolver.getMisses());
+    }
+
+    @Test
+    public void testHitWithinTimeToLive() throws Exception
+    {
+        resolver.resolve("host", 80, new FuturePromise<>());
+        pending.poll().succeeded(addresses("127.0.0.1"));
+
+        advance(500);
+        FuturePromise<List<InetSocketAddress>> promise = new FuturePromise<>();
+        resolver.resolve("host", 8080, promise);
+
+        assertTrue(pending.isEmpty());
+        assertEquals(List.of(new InetSocketAddress("127.0.0.1", 8080)), promise.get(5, TimeUnit.SECONDS));
+        assertEquals(1, resolver.getHits());
+        assertEquals(1, resolver.getMisses());
+    }
+
+    @Test
+    public void testStaleWhileRevalidate() throws Exception
+    {
+        resolver.resolve("host", 80, new FuturePromise<>());
+        pending.poll().succeeded(addresses("127.0.0.1"));
+
+        // Expired, but within the stale period.
+        advance(1500);
+        FuturePromise<List<InetSocketAddress>> promise1 = new FuturePromise<>();
+        resolver.resolve("host", 80, promise1);
+        FuturePromise<List<InetSocketAddress>> promise2 = new FuturePromise<>();
+        resolver.resolve("host", 80, promise2);
+
+        // The stale addresses are returned immediately, with only one refresh.
+        assertEquals(List.of(new InetSocketAddress("127.0.0.1", 80)), promise1.get(5, TimeUnit.SECONDS));
+        assertEquals(List.of(new InetSocketAddress("127.0.0.1", 80)), promise2.get(5, TimeUnit.SECONDS));
+        assertEquals(1, pending.size());
+        assertEquals(2, resolver.getStaleHits());
+        assertEquals(1, resolver.getRefreshes());
+
+        pending.poll().succeeded(addresses("127.0.0.2"));
+
+        FuturePromise<List<InetSocketAddress>> promise3 = new FuturePromise<>();
+        resolver.resolve("host", 80, promise3);
+        assertEquals(List.of(new InetSocketAddress("127.0.0.2", 80)), promise3.get(5, TimeUnit.SECONDS));
+        assertEquals(1, resolver.getHits());
+    }
+
+    @Test
+    public void testFailedRefreshKeepsStaleAddresses() throws Exception
+    {
+        resolver.resolve("host", 80, new FuturePromise<>());
+        pending.poll().succeeded(addresses("127.0.0.1"));
+
+        advance(1500);
+        resolver.resolve("host", 80, new FuturePromise<>());
+        pending.poll().failed(new UnknownHostException("host"));
+
+        FuturePromise<List<InetSocketAddress>> promise = new FuturePromise<>();
+        resolver.resolve("host", 80, promise);
+        assertEquals(List.of(new InetSocketAddress("127.0.0.1", 80)), promise.get(5, TimeUnit.SECONDS));
+        // The refresh is not retried before the negative time to live.
+        assertTrue(pending.isEmpty());
+
+        // Past the stale period, the entry is resolved again.
+        advance(1000);
+        promise = new FuturePromise<>();
+        resolver.resolve("host", 80, promise);
+        assertFalse(promise.isDone());
+        assertEquals(1, pending.size());
+    }
+
+    @Test
+    public void testNegativeCaching() throws Exception
+    {
+        FuturePromise<List<InetSocketAddress>> promise1 = new FuturePromise<>();
+        resolver.resolve("host", 80, promise1);
+        pending.poll().failed(new UnknownHostException("host"));
+        ExecutionException failure1 = assertThrows(ExecutionException.class, () -> promise1.get(5, TimeUnit.SECONDS));
+        assertThat(failure1.getCause(), instanceOf(UnknownHostException.class));
+
+        advance(500);
+        FuturePromise<List<InetSocketAddress>> promise2 = new FuturePromise<>();
+        resolver.resolve("host", 80, promise2);
+        ExecutionException failure2 = assertThrows(ExecutionException.class, () -> promise2.get(5, TimeUnit.SECONDS));
+        assertThat(failure2.getCause(), instanceOf(UnknownHostException.class));
+        assertTrue(pending.isEmpty());
+        assertEquals(1, resolver.getNegativeHits());
+
+        // After the negative time to live, the resolution is attempted again.
+        advance(500);
+        resolver.resolve("host", 80, new FuturePromise<>());
+        assertEquals(1, pending.size());
+    }
+
+    @Test
+    public void testMaxEntries() throws Exception
+    {
+        resolver.setMaxEntries(2);
+        for (int i = 0; i < 3; ++i)
+        {
+            resolver.resolve("host" + i, 80, new FuturePromise<>());
+            pending.poll().succeeded(addresses("127.0.0." + (i + 1)));
+            advance(1);
+        }
+        assertEquals(2, resolver.getSize());
+
+        // The entry that expires first was evicted.
+        resolver.resolve("host0", 80, new FuturePromise<>());
+        assertEquals(1, pending.size());
+    }
+
+    @Test
+    public void testMaxEntriesAcrossNanoTimeOverflow() throws Exception
+    {
+        // The first entry expires just before nanoTime overflows, the others after.
+        nanoTime.set(Long.MAX_VALUE - TimeUnit.MILLISECONDS.toNanos(resolver.getTimeToLive()));
+        testMaxEntries();
+    }
+}
@@ -0,0 +1,68 @@
+//
+// ========================================================================
+// Copyright (c) 1995-2022 Mort Bay Consulting Pty Ltd and others.
+//
+// This program and the accompanying materials are made available under the
+// terms of the Eclipse Public License v. 2.0 which is available at
+// https://www.eclipse.org/legal/epl-2.0, or the Apache License, Version 2.0
+// which is available at https://www.apache.org/licenses/LICENSE-2.0.
+//
+// SPDX-License-Identifier: EPL-2.0 OR Apache-2.0
+// ========================================================================
+//
+
+package org.eclipse.jetty.util;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Pattern;
+
+import org.junit.jupiter.api.Test;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class LiteralPrefixTreeTest
+{
+    @Test
+    public void testWalk()
+    {
+        LiteralPrefixTree<String> tree = new LiteralPrefixTree<>();
+        tree.add("/a/b").setValue("/a/b");
+        tree.add("/a").setValue("/a");
+        tree.add("/b").setValue("/b");
+        tree.getRoot().setValue("");
+
+        List<String> values = new ArrayList<>();
+        String path = "/a/bc";
+        LiteralPrefixTree.Node<String> node = tree.getRoot();
+        for (int i = 0; node != null; ++i)
+        {
+            if (node.getValue() != null)
+                values.add(node.getValue());
+            node = i < path.length() ? node.getChild(path.charAt(i)) : null;
+        }
+        assertThat(values, contains("", "/a", "/a/b"));
+
+        List<LiteralPrefixTree.Node<String>> children = new ArrayList<>();
+        tree.add("/").forEachChild(children::add);
+        assertEquals(2, children.size());
+        assertEquals(children.get(0), tree.add("/a"));
+        assertEquals(children.get(1), tree.add("/b"));
+    }
+
+    @Test
+    public void testLiteralPrefix()
+    {
+        assertEquals("/foo/", LiteralPrefixTree.literalPrefix(Pattern.compile("/foo/(.*)")));
+        assertEquals("/foo", LiteralPrefixTree.literalPrefix(Pattern.compile("^/foo.*")));
+        assertEquals("/fo", LiteralPrefixTree.literalPrefix(Pattern.compile("/foo?")));
+        assertEquals("/a/", LiteralPrefixTree.literalPrefix(Pattern.compile("^/a/b{2}")));
+        assertEquals("/foo", LiteralPrefixTree.literalPrefix(Pattern.compile("/foo\\.html")));
+        assertEquals("", LiteralPrefixTree.literalPrefix(Pattern.compile("/foo|/bar")));
+        assertEquals("", LiteralPrefixTree.literalPrefix(Pattern.compile("/foo", Pattern.CASE_INSENSITIVE)));
+        assertEquals("", LiteralPrefixTree.literalPrefix(Pattern.compile("(?i)/foo")));
+        assertEquals("", LiteralPrefixTree.literalPrefix(Pattern.compile(".*/foo")));
+    }
+}
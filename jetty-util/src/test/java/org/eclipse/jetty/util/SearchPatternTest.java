@@ -231,4 +231,30 @@ public class SearchPatternTest
         int partialMatch = pattern.endsWith(data, 0, length);
         System.err.println("match1: " + partialMatch);
     }
+
+    @Test
+    public void testDirectBuffer()
+    {
+        SearchPattern sp = SearchPattern.compile("violent".getBytes(StandardCharsets.US_ASCII));
+        String text = "xxThese violent delights have violent ends.";
+        ByteBuffer buffer = BufferUtil.allocateDirect(text.length());
+        BufferUtil.append(buffer, BufferUtil.toBuffer(text));
+        buffer.position(2);
+
+        // The index is relative to the buffer position, for both direct and heap buffers.
+        assertEquals(6, sp.match(buffer));
+        assertEquals(6, sp.match(BufferUtil.toBuffer(text.substring(2))));
+        buffer.position(9);
+        assertEquals(21, sp.match(buffer));
+        assertEquals(9, buffer.position());
+
+        buffer.limit(text.length() - 9);
+        assertEquals(-1, sp.match(buffer));
+        assertEquals(4, sp.endsWith(buffer));
+
+        buffer.limit(text.length());
+        buffer.position(34);
+        assertEquals(7, sp.startsWith(buffer, 4));
+        assertEquals(0, sp.startsWith(buffer, 0));
+    }
 }
@@ -0,0 +1,111 @@
+//
+// ========================================================================
+// Copyright (c) 1995-2022 Mort Bay Consulting Pty Ltd and others.
+//
+// This program and the accompanying materials are made available under the
+// terms of the Eclipse Public License v. 2.0 which is available at
+// https://www.eclipse.org/legal/epl-2.0, or the Apache License, Version 2.0
+// which is available at https://www.apache.org/licenses/LICENSE-2.0.
+//
+// SPDX-License-Identifier: EPL-2.0 OR Apache-2.0
+// ========================================================================
+//
+
+package org.eclipse.jetty.util.statistic;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+
+public class RateSketchTest
+{
+    @Test
+    public void testSingleKeyIsExact()
+    {
+        RateSketch sketch = new RateSketch(1024);
+        long now = System.nanoTime();
+        for (int i = 1; i <= 10; ++i)
+        {
+            assertThat(sketch.record("10.0.0.1", now), is((long)i));
+        }
+        assertThat(sketch.estimate("10.0.0.1", now), is(10L));
+        assertThat(sketch.estimate("10.0.0.2", now), is(0L));
+    }
+
+    @Test
+    public void testSlidingWindow()
+    {
+        RateSketch sketch = new RateSketch(4, 1024, 1, TimeUnit.SECONDS);
+        long now = System.nanoTime();
+        for (int i = 0; i < 100; ++i)
+        {
+            sketch.record("key", now);
+        }
+
+        // Half a window later, between half and all of the events are still in the window.
+        long later = now + TimeUnit.MILLISECONDS.toNanos(500);
+        assertThat(sketch.estimate("key", later), greaterThanOrEqualTo(50L));
+        assertThat(sketch.estimate("key", later), lessThanOrEqualTo(100L));
+
+        // Two windows later, all of the events have left the window.
+        later = now + TimeUnit.SECONDS.toNanos(2);
+        assertThat(sketch.estimate("key", later), is(0L));
+        assertThat(sketch.record("key", later), is(1L));
+    }
+
+    @Test
+    public void testBoundedErrorWithManyKeys()
+    {
+        int width = 1024;
+        RateSketch sketch = new RateSketch(4, width, 1, TimeUnit.HOURS);
+        long now = System.nanoTime();
+        int keys = 100_000;
+        for (int i = 0; i < keys; ++i)
+        {
+            sketch.record("key" + i, now);
+        }
+        for (int i = 0; i < 50; ++i)
+        {
+            sketch.record("target", now);
+        }
+
+        long events = keys + 50;
+        long bound = (long)(Math.E * events / width);
+        long estimate = sketch.estimate("target", now);
+        assertThat(estimate, greaterThanOrEqualTo(50L));
+        assertThat(estimate, lessThanOrEqualTo(50L + bound));
+        // The memory does not depend on the number of keys.
+        assertThat(sketch.getMemorySize(), is(2L * 4 * width * Long.BYTES));
+    }
+
+    @Test
+    public void testConcurrentRecords() throws Exception
+    {
+        RateSketch sketch = new RateSketch(4, 64, 1, TimeUnit.HOURS);
+        long now = System.nanoTime();
+        int threads = 8;
+        int records = 10_000;
+        Thread[] workers = new Thread[threads];
+        for (int t = 0; t < threads; ++t)
+        {
+            workers[t] = new Thread(() ->
+            {
+                for (int i = 0; i < records; ++i)
+                {
+                    sketch.record("hot", now);
+                }
+            });
+            workers[t].start();
+        }
+        for (Thread worker : workers)
+        {
+            worker.join();
+        }
+        assertThat(sketch.estimate("hot", now), is((long)threads * records));
+    }
+}
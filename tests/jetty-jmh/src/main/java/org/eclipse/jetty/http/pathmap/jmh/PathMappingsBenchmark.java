@@ -0,0 +1,119 @@
+//
+// ========================================================================
+// Copyright (c) 1995-2022 Mort Bay Consulting Pty Ltd and others.
+//
+// This program and the accompanying materials are made available under the
+// terms of the Eclipse Public License v. 2.0 which is available at
+// https://www.eclipse.org/legal/epl-2.0, or the Apache License, Version 2.0
+// which is available at https://www.apache.org/licenses/LICENSE-2.0.
+//
+// SPDX-License-Identifier: EPL-2.0 OR Apache-2.0
+// ========================================================================
+//
+
+package org.eclipse.jetty.http.pathmap.jmh;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.jetty.http.pathmap.MatchedResource;
+import org.eclipse.jetty.http.pathmap.PathMappings;
+import org.eclipse.jetty.http.pathmap.RegexPathSpec;
+import org.eclipse.jetty.http.pathmap.ServletPathSpec;
+import org.eclipse.jetty.http.pathmap.UriTemplatePathSpec;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+@State(Scope.Benchmark)
+@Threads(4)
+@Warmup(iterations = 5, time = 2000, timeUnit = TimeUnit.MILLISECONDS)
+@Measurement(iterations = 5, time = 2000, timeUnit = TimeUnit.MILLISECONDS)
+public class PathMappingsBenchmark
+{
+    @Param({"1000", "3000", "10000"})
+    public int mappings;
+
+    @Param({"false", "true"})
+    public boolean compiled;
+
+    private PathMappings<String> pathMappings;
+    private String[] paths;
+
+    @Setup
+    public void setUp()
+    {
+        pathMappings = new PathMappings<>();
+        pathMappings.setCompiled(compiled);
+        pathMappings.put(new ServletPathSpec("/"), "default");
+        pathMappings.put(new ServletPathSpec("/static/*"), "static");
+        pathMappings.put(new ServletPathSpec("*.css"), "css");
+
+        // Mostly URI templates, as registered by REST and WebSocket endpoints, and some regexes.
+        Random random = new Random(1234);
+        List<String> paths = new ArrayList<>();
+        for (int i = 0; i < mappings; ++i)
+        {
+            String id = Integer.toString(random.nextInt(1_000_000));
+            switch (i % 4)
+            {
+                case 0:
+                    pathMappings.put(new UriTemplatePathSpec("/api/v1/resource" + i + "/{id}"), "r" + i);
+                    paths.add("/api/v1/resource" + i + "/" + id);
+                    break;
+                case 1:
+                    pathMappings.put(new UriTemplatePathSpec("/api/v1/resource" + i + "/{id}/items/{item}"), "r" + i);
+                    paths.add("/api/v1/resource" + i + "/" + id + "/items/" + i);
+                    break;
+                case 2:
+                    pathMappings.put(new UriTemplatePathSpec("/ws/channel" + i + "/{room}"), "w" + i);
+                    paths.add("/ws/channel" + i + "/" + id);
+                    break;
+                default:
+                    pathMappings.put(new RegexPathSpec("^/legacy/service" + i + "/[0-9]+$"), "l" + i);
+                    paths.add("/legacy/service" + i + "/" + id);
+                    break;
+            }
+        }
+        paths.add("/static/style.css");
+        paths.add("/unknown/path");
+        this.paths = paths.toArray(new String[0]);
+    }
+
+    @Benchmark
+    @BenchmarkMode({Mode.Throughput})
+    public MatchedResource<String> testGetMatched()
+    {
+        String path = paths[ThreadLocalRandom.current().nextInt(paths.length)];
+        return pathMappings.getMatched(path);
+    }
+
+    public static void main(String[] args) throws RunnerException
+    {
+        Options opt = new OptionsBuilder()
+            .include(PathMappingsBenchmark.class.getSimpleName())
+            .warmupIterations(5)
+            .measurementIterations(5)
+            .addProfiler(GCProfiler.class)
+            .forks(1)
+            .threads(1)
+            .build();
+
+        new Runner(opt).run();
+    }
+}
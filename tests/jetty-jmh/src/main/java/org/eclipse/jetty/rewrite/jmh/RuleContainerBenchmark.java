@@ -0,0 +1,106 @@
+//
+// ========================================================================
+// Copyright (c) 1995-2022 Mort Bay Consulting Pty Ltd and others.
+//
+// This program and the accompanying materials are made available under the
+// terms of the Eclipse Public License v. 2.0 which is available at
+// https://www.eclipse.org/legal/epl-2.0, or the Apache License, Version 2.0
+// which is available at https://www.apache.org/licenses/LICENSE-2.0.
+//
+// SPDX-License-Identifier: EPL-2.0 OR Apache-2.0
+// ========================================================================
+//
+
+package org.eclipse.jetty.rewrite.jmh;
+
+import java.io.IOException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.jetty.rewrite.handler.RedirectPatternRule;
+import org.eclipse.jetty.rewrite.handler.RedirectRegexRule;
+import org.eclipse.jetty.rewrite.handler.RuleContainer;
+import org.eclipse.jetty.rewrite.handler.TerminatingPatternRule;
+import org.eclipse.jetty.server.Request;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+@State(Scope.Benchmark)
+@Threads(4)
+@Warmup(iterations = 5, time = 2000, timeUnit = TimeUnit.MILLISECONDS)
+@Measurement(iterations = 5, time = 2000, timeUnit = TimeUnit.MILLISECONDS)
+public class RuleContainerBenchmark
+{
+    @Param({"100", "1000", "4000"})
+    public int rules;
+
+    @Param({"false", "true"})
+    public boolean compiled;
+
+    private RuleContainer ruleContainer;
+    private Request request;
+    private String[] targets;
+
+    @Setup
+    public void setUp()
+    {
+        ruleContainer = new RuleContainer();
+        ruleContainer.setCompiled(compiled);
+        ruleContainer.setRewriteRequestURI(false);
+        ruleContainer.setRewritePathInfo(false);
+
+        // Legacy redirects, that most requests do not match.
+        for (int i = 0; i < rules; ++i)
+        {
+            if (i % 2 == 0)
+                ruleContainer.addRule(new RedirectPatternRule("/legacy/page" + i + ".html", "/app/page/" + i));
+            else
+                ruleContainer.addRule(new RedirectRegexRule("/old/section" + i + "/(.*)", "/app/section/" + i + "/$1"));
+        }
+        ruleContainer.addRule(new TerminatingPatternRule("/app/*"));
+
+        request = new Request(null, null);
+        targets = new String[]{
+            "/app/page/1",
+            "/app/section/17/item",
+            "/static/style.css",
+            "/index.html",
+            "/old/unknown/path"
+        };
+    }
+
+    @Benchmark
+    @BenchmarkMode({Mode.Throughput})
+    public String testMatchAndApply() throws IOException
+    {
+        String target = targets[ThreadLocalRandom.current().nextInt(targets.length)];
+        return ruleContainer.matchAndApply(target, request, null);
+    }
+
+    public static void main(String[] args) throws RunnerException
+    {
+        Options opt = new OptionsBuilder()
+            .include(RuleContainerBenchmark.class.getSimpleName())
+            .warmupIterations(5)
+            .measurementIterations(5)
+            .addProfiler(GCProfiler.class)
+            .forks(1)
+            .threads(1)
+            .build();
+
+        new Runner(opt).run();
+    }
+}
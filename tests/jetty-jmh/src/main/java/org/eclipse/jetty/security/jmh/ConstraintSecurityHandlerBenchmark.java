@@ -0,0 +1,150 @@
+//
+// ========================================================================
+// Copyright (c) 1995-2022 Mort Bay Consulting Pty Ltd and others.
+//
+// This program and the accompanying materials are made available under the
+// terms of the Eclipse Public License v. 2.0 which is available at
+// https://www.eclipse.org/legal/epl-2.0, or the Apache License, Version 2.0
+// which is available at https://www.apache.org/licenses/LICENSE-2.0.
+//
+// SPDX-License-Identifier: EPL-2.0 OR Apache-2.0
+// ========================================================================
+//
+
+package org.eclipse.jetty.security.jmh;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.jetty.security.ConstraintMapping;
+import org.eclipse.jetty.security.ConstraintSecurityHandler;
+import org.eclipse.jetty.security.HashLoginService;
+import org.eclipse.jetty.security.RoleInfo;
+import org.eclipse.jetty.security.UserStore;
+import org.eclipse.jetty.security.authentication.BasicAuthenticator;
+import org.eclipse.jetty.server.Request;
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.util.security.Constraint;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+@State(Scope.Benchmark)
+@Threads(4)
+@Warmup(iterations = 5, time = 2000, timeUnit = TimeUnit.MILLISECONDS)
+@Measurement(iterations = 5, time = 2000, timeUnit = TimeUnit.MILLISECONDS)
+public class ConstraintSecurityHandlerBenchmark
+{
+    @Param({"100", "1500"})
+    public int tenants;
+
+    private BenchmarkSecurityHandler securityHandler;
+    private String[] paths;
+    private Request[] requests;
+
+    @Setup
+    public void setUp() throws Exception
+    {
+        securityHandler = new BenchmarkSecurityHandler();
+        List<ConstraintMapping> mappings = new ArrayList<>();
+        List<String> paths = new ArrayList<>();
+        for (int i = 0; i < tenants; ++i)
+        {
+            String tenant = "/tenant" + i;
+            mappings.add(newMapping(tenant + "/*", null, null, "user" + i));
+            mappings.add(newMapping(tenant + "/admin/*", "GET", null, "admin" + i));
+            mappings.add(newMapping(tenant + "/admin/*", null, new String[]{"GET"}, "root"));
+            mappings.add(newMapping(tenant + "/api/*", "POST", null, "writer" + i));
+            paths.add(tenant + "/index.html");
+            paths.add(tenant + "/admin/users");
+            paths.add(tenant + "/api/items");
+        }
+        mappings.add(newMapping("*.jsp", null, null, "user0"));
+        paths.add("/public/style.css");
+        paths.add("/public/index.jsp");
+        securityHandler.setConstraintMappings(mappings);
+        HashLoginService loginService = new HashLoginService("benchmark");
+        loginService.setUserStore(new UserStore());
+        securityHandler.setLoginService(loginService);
+        securityHandler.setAuthenticator(new BasicAuthenticator());
+        securityHandler.setServer(new Server());
+        securityHandler.start();
+        this.paths = paths.toArray(new String[0]);
+
+        List<Request> requests = new ArrayList<>();
+        for (String method : new String[]{"GET", "POST", "PUT", "DELETE"})
+        {
+            Request request = new Request(null, null);
+            request.setMethod(method);
+            requests.add(request);
+        }
+        this.requests = requests.toArray(new Request[0]);
+    }
+
+    @TearDown
+    public void tearDown() throws Exception
+    {
+        securityHandler.stop();
+    }
+
+    private static ConstraintMapping newMapping(String pathSpec, String method, String[] omissions, String role)
+    {
+        Constraint constraint = new Constraint();
+        constraint.setAuthenticate(true);
+        constraint.setRoles(new String[]{role});
+        ConstraintMapping mapping = new ConstraintMapping();
+        mapping.setPathSpec(pathSpec);
+        mapping.setMethod(method);
+        mapping.setMethodOmissions(omissions);
+        mapping.setConstraint(constraint);
+        return mapping;
+    }
+
+    @Benchmark
+    @BenchmarkMode({Mode.Throughput})
+    public RoleInfo testPrepareConstraintInfo()
+    {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        String path = paths[random.nextInt(paths.length)];
+        Request request = requests[random.nextInt(requests.length)];
+        return securityHandler.prepareConstraintInfo(path, request);
+    }
+
+    private static class BenchmarkSecurityHandler extends ConstraintSecurityHandler
+    {
+        @Override
+        public RoleInfo prepareConstraintInfo(String pathInContext, Request request)
+        {
+            return super.prepareConstraintInfo(pathInContext, request);
+        }
+    }
+
+    public static void main(String[] args) throws RunnerException
+    {
+        Options opt = new OptionsBuilder()
+            .include(ConstraintSecurityHandlerBenchmark.class.getSimpleName())
+            .warmupIterations(5)
+            .measurementIterations(5)
+            .addProfiler(GCProfiler.class)
+            .forks(1)
+            .threads(1)
+            .build();
+
+        new Runner(opt).run();
+    }
+}